@@ -18,10 +18,14 @@
 package analytics;
 
 import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Ordering;
 
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
 import openpas.SentenceUtils;
 import openpas.basics.Assumption;
 import openpas.basics.Expressions.Expression;
@@ -31,28 +35,310 @@ import openpas.basics.LogicalOps.LogicalAnd;
 import openpas.basics.LogicalOps.LogicalOr;
 import openpas.basics.NumericResolver;
 import openpas.basics.PAS;
-import openpas.basics.PropFactory;
 
+/**
+ * Scenario analysis of a DNF made of assumptions. <br>
+ * A scenario is an assignment to all the assumptions found in the DNF, so there are 2^n of them for n assumptions.
+ * Rather than visiting each one, the aggregate figures are found by model counting over BDDs built for the DNF
+ * and for the contradiction of the KB, which is linear in the size of the BDDs. <br>
+ * Going through the scenarios one by one is only needed to print the rows of the table, which can be filtered and
+ * paged so that only the rows asked for are visited.
+ */
 public class Scenarios 
 {
-	// Of course this should be inside the operators - but that's a bit of a mess right now,
-	// and I'll have to sort that out at some point alongside what's below.
-	static void andWith(SimpleSentence<LogicalOr, LogicalAnd> dnf, Literal lit)
+	/**
+	 * Selects which scenarios are listed in the table.
+	 */
+	public enum Filter
 	{
-		for(Expression<LogicalAnd> ex : dnf.getElements())
-			ex.addLiteral(lit);
+		/** All scenarios. */
+		All,
+		/** Scenarios that satisfy (i.e. are quasi-supporting for) the DNF. */
+		Satisfying,
+		/** Scenarios that don't satisfy the DNF. */
+		NotSatisfying,
+		/** Scenarios that are inconsistent with the KB. */
+		Inconsistent,
+		/** Scenarios that are inconsistent for some assignment of the assumptions left out of the DNF. */
+		PartiallyInconsistent,
+		/** Scenarios that are neither fully nor partially inconsistent. */
+		Consistent,
+		/** No scenarios, only the summary is printed. */
+		None
 	}
 	
-	public static void printScenarios(SimpleSentence<LogicalOr, LogicalAnd> dnf, PAS pas, NumericResolver nr, PrintStream out)
+	/**
+	 * The aggregate figures of a scenario analysis. <br>
+	 * Counts are doubles since they can get well beyond what a long can hold for larger number of assumptions.
+	 */
+	public static class Summary
+	{
+		protected final int mNumAssumptions;
+		protected final double mNumSatisfying;
+		protected final double mNumInconsistent;
+		protected final double mNumPartiallyInconsistent;
+		protected final double mProbability;
+		
+		protected Summary(int numAssumptions, double numSat, double numI, double numPartialI, double prob)
+		{
+			mNumAssumptions = numAssumptions;
+			mNumSatisfying = numSat;
+			mNumInconsistent = numI;
+			mNumPartiallyInconsistent = numPartialI;
+			mProbability = prob;
+		}
+		
+		public int getNumAssumptions() {
+			return mNumAssumptions;
+		}
+		
+		public double getNumScenarios() {
+			return Math.pow(2, mNumAssumptions);
+		}
+
+		public double getNumSatisfying() {
+			return mNumSatisfying;
+		}
+		
+		public double getNumInconsistent() {
+			return mNumInconsistent;
+		}
+		
+		public double getNumPartiallyInconsistent() {
+			return mNumPartiallyInconsistent;
+		}
+		
+		/**
+		 * @return Probability of the DNF (not normalised), i.e. total probability of the satisfying scenarios.
+		 */
+		public double getProbability() {
+			return mProbability;
+		}
+	}
+	
+	/**
+	 * Holds the BDDs of a scenario analysis, one variable per assumption in index order so that the first assumption
+	 * is the most significant digit of the scenario number. The variable order is fixed to keep this numbering.
+	 */
+	protected static class ScenarioSpace
+	{
+		protected final BDDFactory mBddf;
+		protected final List<Assumption> mAssumptions;
+		protected final int mNumVars;
+		protected final double[] mProbs;
+		protected final Map<Integer, Integer> mIndex2Var;
+		protected BDD mSat;
+		protected BDD mInconsistent;
+		protected BDD mPartial; // inconsistent for some assignment of the assumptions outside the DNF, but not all
+		protected final Map<BDD, Double> mCounts = new HashMap<>();
+		
+		protected ScenarioSpace(BDDFactory bddf, List<Assumption> laSorted)
+		{
+			mBddf = bddf;
+			mAssumptions = laSorted;
+			mNumVars = laSorted.size();
+			// JavaBDD needs at least one variable, if it's surplus it's never used by the BDDs below.
+			mBddf.setVarNum(Math.max(mNumVars, 1));
+			mProbs = new double[mNumVars];
+			mIndex2Var = new HashMap<>(mNumVars);
+			for(int ix = 0; ix < mNumVars; ++ix)
+			{
+				mProbs[ix] = laSorted.get(ix).getProbability();
+				mIndex2Var.put(laSorted.get(ix).getIndex(), ix);
+			}
+		}
+		
+		/**
+		 * Builds the BDD for the terms of a DNF projected on the assumptions of this space. <br>
+		 * Literals outside the space are dropped from a term when dropOthers is set, otherwise the whole term is dropped.
+		 */
+		protected BDD createBDD(SimpleSentence<LogicalOr, LogicalAnd> dnf, boolean dropOthers)
+		{
+			BDD bdd = mBddf.zero();
+			for(Expression<LogicalAnd> trm : dnf.getElements())
+			{
+				// These hold the special True or False literal, which isn't an assumption of the space.
+				if(trm.isTrue())
+				{
+					bdd.orWith(mBddf.one());
+					continue;
+				}
+				if(trm.isFalse())
+					continue;
+				BDD bddTrm = mBddf.one();
+				for(Literal lit : trm.getLiterals())
+				{
+					Integer var = mIndex2Var.get(lit.getIndex());
+					if(var == null)
+					{
+						if(dropOthers)
+							continue;
+						bddTrm.free();
+						bddTrm = null;
+						break;
+					}
+					bddTrm.andWith(lit.getNeg() ? mBddf.nithVar(var) : mBddf.ithVar(var));
+				}
+				if(bddTrm != null)
+					bdd.orWith(bddTrm);
+			}
+			return bdd;
+		}
+		
+		protected int varOf(BDD bdd)
+		{
+			return bdd.isOne() || bdd.isZero() ? mNumVars : bdd.var();
+		}
+		
+		/**
+		 * @return Number of assignments to the variables from fromVar onwards that satisfy the given BDD.
+		 */
+		protected double count(BDD bdd, int fromVar)
+		{
+			if(bdd.isZero())
+				return 0;
+			int var = varOf(bdd);
+			double cnt;
+			if(bdd.isOne())
+				cnt = 1;
+			else
+			{
+				Double cached = mCounts.get(bdd);
+				if(cached == null)
+				{
+					cached = count(bdd.low(), var + 1) + count(bdd.high(), var + 1);
+					mCounts.put(bdd, cached);
+				}
+				cnt = cached;
+			}
+			return cnt * Math.pow(2, var - fromVar);
+		}
+		
+		/**
+		 * @return Total probability of the scenarios that satisfy the given BDD.
+		 */
+		protected double probability(BDD bdd, Map<BDD, Double> cache)
+		{
+			if(bdd.isZero())
+				return 0;
+			if(bdd.isOne())
+				return 1;
+			Double cached = cache.get(bdd);
+			if(cached == null)
+			{
+				double p = mProbs[bdd.var()];
+				cached = p * probability(bdd.high(), cache) + (1 - p) * probability(bdd.low(), cache);
+				cache.put(bdd, cached);
+			}
+			return cached;
+		}
+		
+		protected boolean evaluate(BDD bdd, long scen)
+		{
+			while(!bdd.isOne() && !bdd.isZero())
+				bdd = ((scen >> (mNumVars - 1 - bdd.var())) & 1) == 1 ? bdd.high() : bdd.low();
+			return bdd.isOne();
+		}
+		
+		protected BDD createFilter(Filter filter)
+		{
+			switch(filter)
+			{
+				case All:
+					return mBddf.one();
+				case Satisfying:
+					return mSat.id();
+				case NotSatisfying:
+					return mSat.not();
+				case Inconsistent:
+					return mInconsistent.id();
+				case PartiallyInconsistent:
+					return mPartial.id();
+				case Consistent:
+					return mInconsistent.or(mPartial).not();
+				case None:
+				default:
+					return mBddf.zero();
+			}
+		}
+		
+		/**
+		 * Visits the scenarios satisfying the given BDD in increasing scenario number, skipping over the first ones
+		 * as given in toSkip[0] and stopping after toVisit[0] scenarios. Whole subtrees are skipped using the counts.
+		 */
+		protected void enumerate(BDD bdd, int var, long scen, long[] toSkip, long[] toVisit, ScenarioVisitor visitor)
+		{
+			if(toVisit[0] == 0 || bdd.isZero())
+				return;
+			if(toSkip[0] > 0)
+			{
+				double cnt = count(bdd, var);
+				if(toSkip[0] >= cnt)
+				{
+					toSkip[0] -= (long) cnt;
+					return;
+				}
+			}
+			if(var == mNumVars)
+			{
+				if(toSkip[0] > 0)
+					--toSkip[0];
+				else
+				{
+					visitor.visit(scen);
+					--toVisit[0];
+				}
+				return;
+			}
+			boolean skipsVar = varOf(bdd) > var;
+			enumerate(skipsVar ? bdd : bdd.low(), var + 1, scen << 1, toSkip, toVisit, visitor);
+			enumerate(skipsVar ? bdd : bdd.high(), var + 1, (scen << 1) | 1, toSkip, toVisit, visitor);
+		}
+		
+		protected Summary summarise()
+		{
+			return new Summary(mNumVars, count(mSat, 0), count(mInconsistent, 0), count(mPartial, 0), 
+					probability(mSat, new HashMap<>()));
+		}
+	}
+	
+	protected static interface ScenarioVisitor
+	{
+		void visit(long scen);
+	}
+
+	/**
+	 * Prints the summary and all the scenarios for a DNF.
+	 * See {@link #printScenarios(SimpleSentence, PAS, NumericResolver, Filter, long, long, PrintStream)}.
+	 */
+	public static Summary printScenarios(SimpleSentence<LogicalOr, LogicalAnd> dnf, PAS pas, NumericResolver nr, PrintStream out)
+	{
+		return printScenarios(dnf, pas, nr, Filter.All, 0, 0, out);
+	}
+
+	/**
+	 * Prints a scenario analysis for a DNF made of assumptions. <br>
+	 * The table has a row per scenario, i.e. an assignment for all the assumptions in the DNF, showing if it
+	 * satisfies the DNF (QS), if it's inconsistent with the KB (I) and its probability. A scenario is partially
+	 * inconsistent (P) if it's only inconsistent for some assignments of the assumptions not in the DNF. <br>
+	 * The aggregate figures are computed symbolically, so only the rows printed are visited.
+	 * @param dnf A DNF made of assumptions.
+	 * @param pas PAS the DNF belongs to.
+	 * @param nr Resolver used to find the contradiction of the KB.
+	 * @param filter Selects the scenarios to print.
+	 * @param offset Number of selected scenarios to skip before printing.
+	 * @param limit Largest number of scenarios to print, 0 for no limit.
+	 * @param out Stream to print to.
+	 * @return The aggregate figures, or null if the DNF has no assumptions or has propositions.
+	 */
+	public static Summary printScenarios(SimpleSentence<LogicalOr, LogicalAnd> dnf, PAS pas, NumericResolver nr, 
+			Filter filter, long offset, long limit, PrintStream out)
 	{
-		// TODO: Better documentation here to explain what's what.
-		// TODO: Extend this to support partial assumption assignments (ie. by passing a list of assumptions)
-		PropFactory fac = pas.getFactory();
 		List<Assumption> la = SentenceUtils.extractAssumptionsFromDNF(dnf);
 		if(la == null)
 		{
 			out.println("No assumptions in given DNF.");
-			return;
+			return null;
 		}
 	
 		// Get a sorted view of the assumptions by index - that's what will need to be presented.
@@ -60,102 +346,97 @@ public class Scenarios
 		List<Assumption> laSorted = orderByIndex.immutableSortedCopy(la);
 		
 		// Find the contradiction
-		SimpleSentence<LogicalOr, LogicalAnd> contra = nr.findQS(fac.getFalseCNF());
-		
-		final int numAsm = laSorted.size();
-		
-		out.println("Assumptions:");
-		for(Assumption a : laSorted)
-			out.println(String.format("%03d : %s (%.7f)", a.getIndex(), a.getName(), a.getProbability()));
-		out.println();
+		SimpleSentence<LogicalOr, LogicalAnd> contra = nr.findQS(pas.getFactory().getFalseCNF());
+
+		BDDFactory bddf = BDDFactory.init("", 10000, 10000);
+		try
+		{
+			ScenarioSpace space = new ScenarioSpace(bddf, laSorted);
+			space.mSat = space.createBDD(dnf, false);
+			// A contradiction term within the DNF's assumptions makes its scenarios inconsistent, 
+			// a term that needs other assumptions too makes them at least partially inconsistent.
+			space.mInconsistent = space.createBDD(contra, false);
+			space.mPartial = space.createBDD(contra, true).apply(space.mInconsistent, BDDFactory.diff);
+			
+			Summary summary = space.summarise();
+			
+			out.println("Assumptions:");
+			for(Assumption a : laSorted)
+				out.println(String.format("%03d : %s (%.7f)", a.getIndex(), a.getName(), a.getProbability()));
+			out.println();
+			
+			if(filter != Filter.None)
+				printRows(space, filter, offset, limit, out);
+			
+			out.println("Probability of expression: " + summary.getProbability() + " (not normalised)");
+			out.println("# satisfying (quasi-supporting): " + formatCount(summary.getNumSatisfying()));
+			out.println("# inconsistent: " + formatCount(summary.getNumInconsistent()));
+			out.println("# partially inconsistent: " + formatCount(summary.getNumPartiallyInconsistent()));
+			return summary;
+		}
+		finally
+		{
+			bddf.done();
+		}
+	}
+	
+	protected static void printRows(ScenarioSpace space, Filter filter, long offset, long limit, PrintStream out)
+	{
+		final int numAsm = space.mNumVars;
+		if(numAsm >= Long.SIZE - 1)
+		{
+			out.println("Too many assumptions to list the scenarios.");
+			out.println();
+			return;
+		}
 
 		// Print the header
 		out.print("Sce|");
-		for(Assumption a : laSorted)
+		for(Assumption a : space.mAssumptions)
 			out.print(String.format("%03d|", a.getIndex()));
 		out.print("QS |");
 		out.print(" I |");
 		out.print("   p(s)  |");
 		out.print("  p(exp) |");
 		out.println();
-
-		int numSat = 0;
-		int numI = 0;
-		int numPartialI = 0;
-		double probExpr = 0;
-		// Traverse through all possible scenarios.
-		for(int scen = 0; scen < (1 << numAsm); ++scen)
-		{
+		
+		BDD bddFilter = space.createFilter(filter);
+		double numSelected = space.count(bddFilter, 0);
+		long[] toSkip = {offset};
+		long[] toVisit = {limit > 0 ? limit : Long.MAX_VALUE};
+		space.enumerate(bddFilter, 0, 0, toSkip, toVisit, (scen) -> {
 			out.print(String.format("%03d|", scen));
-			
-			SimpleSentence<LogicalOr, LogicalAnd> dnfEval = dnf.cloneSimpleSentence();
-			SimpleSentence<LogicalOr, LogicalAnd> contraEval = contra.cloneSimpleSentence();
-			Expression<LogicalAnd> termTried = fac.createTerm();
 			double probScen = 1;
-			int ixAsm = laSorted.size() - 1;
-			for(Assumption a : laSorted)
+			for(int ixAsm = 0; ixAsm < numAsm; ++ixAsm)
 			{
-				boolean positive = (scen >> ixAsm) % 2 == 1;
+				// The first assumption is the most significant digit
+				boolean positive = ((scen >> (numAsm - 1 - ixAsm)) & 1) == 1;
 				out.print(positive ? " T |" : " F |");
-				--ixAsm; // this makes the first assumption the most significant digit
-				Assumption sa = positive ? a : (Assumption) a.getNegated();
-				andWith(dnfEval, sa);
-				probScen *= sa.getProbability();
-				andWith(contraEval, sa);
-				termTried.addLiteral(sa);
+				probScen *= positive ? space.mProbs[ixAsm] : 1 - space.mProbs[ixAsm];
 			}
-
-			boolean satMaybe = false;
-			dnfEval.update();
-			if(dnfEval.isFalse())
-				out.print("   |");
-			else if(dnfEval.getLength() == 1 && dnfEval.getElements().iterator().next().equals(termTried))
-			{
+			// The DNF only has assumptions from this scenario, so it's always either fully satisfied or not at all.
+			boolean sat = space.evaluate(space.mSat, scen);
+			out.print(sat ? " Y |" : "   |");
+			if(space.evaluate(space.mInconsistent, scen))
 				out.print(" Y |");
-				++numSat;
-			}
-			else
-			{
+			else if(space.evaluate(space.mPartial, scen))
 				out.print(" P |"); // partially
-				satMaybe = true;
-			}
-
-			contraEval.update();
-			// If what we're left with after assignment has only one term and it's the term we're evaluating for,
-			// then this is contained in contradiction.
-			// We could possibly express this more directly, but this works for now.
-			if(contraEval.isFalse())
-				out.print("   |");
-			else if(contraEval.getLength() == 1 && contraEval.getElements().iterator().next().equals(termTried))
-			{
-				out.print(" Y |");
-				++numI;
-			}
 			else
-			{
-				out.print(" P |"); // partially
-				++numPartialI;
-			}
-
+				out.print("   |");
 			out.print(String.format("%.7f|", probScen));
-
-			// Check if this was a full assigmnent for this DNF. If not, calculate what it actually is.
-			double probAssn;
-			if(satMaybe)
-				probAssn = nr.computeDNFProbability(dnfEval);
-			else if(dnfEval.isFalse())
-				probAssn = 0;
-			else
-				probAssn = probScen;
-			out.print(String.format("%.7f|", probAssn));
-			probExpr += probAssn;
-			
+			out.print(String.format("%.7f|", sat ? probScen : 0));
 			out.println();
-		}
+		});
+		
+		long numPrinted = (limit > 0 ? limit : Long.MAX_VALUE) - toVisit[0];
+		double numLeft = numSelected - offset - numPrinted;
+		if(numLeft > 0)
+			out.println(String.format("... %s more scenarios.", formatCount(numLeft)));
 		out.println();
-		out.println("Probability of expression: " + probExpr + " (not normalised)");
-		out.println("# satisfying (quasi-supporting): " + numSat);
-		out.println("# inconsistent: " + numI);
-		out.println("# partially inconsistent: " + numPartialI);
+	}
+	
+	protected static String formatCount(double cnt)
+	{
+		return cnt < 1e15 ? Long.toString((long) cnt) : String.format("%.2e", cnt);
 	}
 }
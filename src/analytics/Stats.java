@@ -18,19 +18,50 @@
 package analytics;
 
 import java.io.PrintStream;
+import java.util.Map;
 
 import com.google.common.collect.Iterables;
 
+import openpas.basics.KBStats;
+import openpas.basics.Literal;
 import openpas.basics.PAS;
 
 public class Stats {
 
 	public static void printPASStats(PAS pas, PrintStream out)
 	{
-		int numAsm = Iterables.size(pas.getAssumptions(true));
-		out.println("# assumptions:" + numAsm);
-		out.println(String.format("# of scenarios: %.2e", Math.pow(2, numAsm)));
-		out.println("# propositions: " + Iterables.size(pas.getPropositions()));
-		out.println("# clauses: " + pas.getKB().getLength());
+		printPASStats(pas, false, out);
+	}
+
+	/**
+	 * Prints the statistics for the KB of a PAS instance.
+	 * @param pas
+	 * @param full Also print the clause and interaction graph statistics if true.
+	 * @param out
+	 */
+	public static void printPASStats(PAS pas, boolean full, PrintStream out)
+	{
+		KBStats stats = pas.getStats();
+		out.println("# assumptions:" + stats.getNumAssumptions());
+		out.println(String.format("# of scenarios: %.2e", stats.getNumScenarios()));
+		out.println("# propositions: " + Iterables.size(pas.getPropositions())); // counts both signs as before, unlike KBStats.getNumPropositions
+		out.println("# clauses: " + stats.getNumClauses());
+		if(!full)
+			return;
+		
+		out.println(String.format("Horn clauses: %d (%.1f%%)", stats.getNumHorn(), 100 * stats.getHornRatio()));
+		out.println(String.format("Clause length: avg. %.2f, max. %d", stats.getAverageClauseLength(), stats.getMaxClauseLength()));
+		out.println("Clause length histogram:");
+		for(Map.Entry<Integer, Integer> length : stats.getClauseLengthHistogram().entrySet())
+			out.println(String.format("%5d : %d", length.getKey(), length.getValue()));
+		out.println("Most frequent literals (+/-):");
+		for(Literal lit : stats.getMostFrequent(10))
+			out.println(String.format("%s : %d/%d", lit.getName(), stats.getOccurrences(lit), stats.getOccurrences(lit.getNegated())));
+		out.println("Interaction graph:");
+		out.println(String.format("# vertices: %d, # edges: %d, max. degree: %d", 
+				stats.getNumVariables(), stats.getNumEdges(), stats.getMaxDegree()));
+		out.println(String.format("# components: %d, largest component: %d", 
+				stats.getNumComponents(), stats.getLargestComponentSize()));
+		out.println("Treewidth (min-degree upper bound): " + stats.estimateTreewidth());
 	}
 }
@@ -17,15 +17,14 @@
 
 package fopas;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 
 import fopas.FOAliasBindingByRecursionImpl.AliasEntry;
 import fopas.FOFormulaBRImpl.FormulaType;
+import fopas.FORuntime.FOStats;
 import fopas.basics.FOAlias;
 import fopas.basics.FOConstructionException;
 import fopas.basics.FOElement;
@@ -41,12 +40,12 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 	static class AliasEntry
 	{
 		final FOAliasBindingByRecursionImpl alias;
-		final Map<FOVariable, FOElement> assignment;
+		final FOElement[] args; // the (mapped) values given to the args of the alias, null if unassigned
 		
-		AliasEntry(FOAliasBindingByRecursionImpl alias, Map<FOVariable, FOElement> assignment)
+		AliasEntry(FOAliasBindingByRecursionImpl alias, FOAssignment mappedAssignment)
 		{
 			this.alias = alias;
-			this.assignment = assignment;
+			this.args = Arrays.copyOf(mappedAssignment.mValues, alias.mTerms.size());
 		}
 	
 		@Override
@@ -54,7 +53,7 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 			final int prime = 37;
 			int result = 1;
 			result = prime * result + ((alias == null) ? 0 : alias.hashCode());
-			result = prime * result + ((assignment == null) ? 0 : assignment.hashCode());
+			result = prime * result + Arrays.hashCode(args);
 			return result;
 		}
 	
@@ -72,15 +71,50 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 					return false;
 			} else if (!alias.equals(other.alias))
 				return false;
-			if (assignment == null) {
-				if (other.assignment != null)
-					return false;
-			} else if (!assignment.equals(other.assignment))
+			if (!Arrays.equals(args, other.args))
 				return false;
 			return true;
 		}
 	}
 
+	/**
+	 * Key for the alias memo (see FORuntime.enableAliasMemo()). This is keyed by the alias itself rather than the binding,
+	 * so that all the calls into an alias share their results.
+	 */
+	static class MemoKey
+	{
+		final FOStructure structure;
+		final FOAliasByRecursionImpl alias;
+		final FOElement[] args;
+		
+		MemoKey(FOStructure structure, FOAliasByRecursionImpl alias, FOAssignment mappedAssignment)
+		{
+			this.structure = structure;
+			this.alias = alias;
+			this.args = Arrays.copyOf(mappedAssignment.mValues, alias.getCardinality());
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 37;
+			int result = 1;
+			result = prime * result + System.identityHashCode(structure);
+			result = prime * result + System.identityHashCode(alias);
+			result = prime * result + Arrays.hashCode(args);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			MemoKey other = (MemoKey) obj;
+			return structure == other.structure && alias == other.alias && Arrays.equals(args, other.args);
+		}
+	}
+
 	// The hashCode and equals of this class is intentionally left unimplemented as each instance should be unique.
 	protected final List<FOTerm> mTerms;
 	protected final FOAliasByRecursionImpl mBoundFormula;
@@ -98,40 +132,68 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 	}
 
 	@Override
-	public boolean checkAssignment(int depth, FOStructure structure, Map<FOVariable, FOElement> assignment)
+	public boolean checkAssignment(int depth, FOStructure structure, FOAssignment assignment)
 	{
 		FORuntime settings = structure.getRuntime();
 
-		Map<FOVariable, FOElement> mappedAssignment = mapAssignments(structure, assignment, false);
+		FOAssignment mappedAssignment = mapAssignments(structure, assignment, false);
 		
 		//TODO: Need to start a new assignment round here with the free variables given an assignment.
 		//TODO: Should cache the free variables during the bind creation since this is root level at that point.
 		
-		if(settings.getTraceLevel() >= 1)
+		int trace = settings.getTraceLevel();
+		if(trace >= 1)
 		{
 			settings.getStats().numL1CheckAsgIntoAlias++;
-			if(settings.getTraceLevel() >= 2)
+			if(trace >= 2)
 			{
 				settings.trace(-5, depth, this, "FOAliasBindingByRecursionImpl", hashCode(), "checkAssignment", "%s", stringiseAssignments(assignment));
-				settings.trace( 2, depth, this, "FOAliasBindingByRecursionImpl", hashCode(), "checkAssignment", "checkAssignment into alias: %s", formatAliasCall());							
+				settings.trace( 2, depth, this, "FOAliasBindingByRecursionImpl", hashCode(), "checkAssignment", "checkAssignment into alias: %s", formatAliasCall(mappedAssignment));							
 			}
 		}
 
-		boolean satisfied = mBoundFormula.checkAssignment(depth + 1, structure, mappedAssignment);
+		boolean satisfied;
+		FORuntime.AliasMemo memo = settings.getAliasMemo();
+		if(memo != null)
+		{
+			MemoKey key = new MemoKey(structure, mBoundFormula, mappedAssignment);
+			Boolean memoised = memo.get(key);
+			if(memoised != null)
+			{
+				if(trace >= 1)
+					settings.getStats().numL1AliasMemoHit++;
+				satisfied = memoised;
+			}
+			else
+			{
+				satisfied = mBoundFormula.checkAssignment(depth + 1, structure, mappedAssignment);
+				boolean evicted = memo.put(key, satisfied);
+				if(trace >= 1)
+				{
+					FOStats stats = settings.getStats();
+					stats.numL1AliasMemoMiss++;
+					if(evicted)
+						stats.numL1AliasMemoEvict++;
+				}
+			}
+		}
+		else
+			satisfied = mBoundFormula.checkAssignment(depth + 1, structure, mappedAssignment);
 		
 		return mNegated ^ satisfied;
 	}
 
-	protected Map<FOVariable, FOElement> mapAssignments(FOStructure structure,
-			Map<FOVariable, FOElement> assignment, boolean isPartial)
+	/**
+	 * Creates a new assignment for the alias, where the args of the alias (which are its first slots) take the values of the terms here.
+	 */
+	protected FOAssignment mapAssignments(FOStructure structure,
+			FOAssignment assignment, boolean isPartial)
 	{
-		Map<FOVariable, FOElement> mappedAssignment = new LinkedHashMap<FOVariable, FOElement>();
+		FOAssignment mappedAssignment = mBoundFormula.createAssignment();
 
 		for(int i = 0; i < mTerms.size(); i++)
 		{
-			FOTerm term = mTerms.get(i);
-			term.assignVariables(structure, assignment, isPartial);
-			FOElement asg = term.getAssignment();
+			FOElement asg = ((FOTermByRecursionImpl) mTerms.get(i)).evaluate(structure, assignment, isPartial);
 			if(asg == null)
 			{
 				assert isPartial; // All variables should be assigned by this point if it's not partial.					
@@ -139,11 +201,19 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 					throw new FORuntimeException("Expected assignment not found for alias.");
 			}
 			else
-				mappedAssignment.put(mBoundFormula.getListArgs().get(i), asg);
+				mappedAssignment.set(i, asg);
 		}
 		return mappedAssignment;
 	}
 
+	@Override
+	void assignSlots(FOAssignment.Layout layout)
+	{
+		// The alias has its own assignment, so it's compiled on its own when it's first called.
+		for(FOTerm term : mTerms)
+			((FOTermByRecursionImpl) term).assignSlots(layout);
+	}
+
 	@Override
 	public Iterable<FOVariable> getArgs()
 	{
@@ -188,7 +258,7 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 		return new FOAliasBindingByRecursionImpl(!mNegated, mName, mBoundFormula, mTerms);
 	}
 	
-	String formatAliasCall()
+	String formatAliasCall(FOAssignment mappedAssignment)
 	{
 		StringBuffer sb = new StringBuffer();
 		sb.append(mName);
@@ -198,9 +268,8 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 			if(i != 0)
 				sb.append(", ");
 			
-			FOTerm term = mTerms.get(i);
-			FOElement asg = term.getAssignment();
 			FOVariable arg = mBoundFormula.getListArgs().get(i);
+			FOElement asg = mappedAssignment.get(i);
 			if(asg == null)
 			{
 				sb.append(arg.getName());
@@ -220,19 +289,20 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 
 	@Override
 	public <TI extends FOElement> FOSet<? extends FOElement> tryEliminateTrue(int depth, FOStructure structure, FOSet<TI> universeSubset, FOVariable var,
-			boolean complement, Map<FOVariable, FOElement> assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
+			boolean complement, FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
 	{
 		FORuntime settings = structure.getRuntime();
 
 		// Note that this does more than just mapping the assignments. It also does a partial evaluation of the parameters of an alias
 		// while doing that thereby creating a new assignment.
-		Map<FOVariable, FOElement> mappedAssignment = mapAssignments(structure, assignment, true);
-		if(settings.getTraceLevel() >= 2)
+		FOAssignment mappedAssignment = mapAssignments(structure, assignment, true);
+		int trace = settings.getTraceLevel();
+		if(trace >= 2)
 		{
 			String assignmentStr = stringiseAssignments(assignment);
 			settings.trace(-5, depth, this, "FOAliasBindingByRecursionImpl", hashCode(), "eliminateTrue", "(partial for %s) %s", var.getName(), assignmentStr);
 			settings.trace( 2, depth, this, "FOAliasBindingByRecursionImpl", hashCode(), "eliminateTrue", "eliminateTrue into alias: %s (partial for %s) assignment: %s", 
-					formatAliasCall(), var.getName(), assignmentStr);
+					formatAliasCall(mappedAssignment), var.getName(), assignmentStr);
 		}
 		
 		// We track any calls into an alias with a given list of parameters. This is so that, when the same set of params are used into the alias again
@@ -247,12 +317,12 @@ class FOAliasBindingByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 		}
 		else
 		{
-			if(settings.getTraceLevel() >= 1)
+			if(trace >= 1)
 			{
-				if(settings.getTraceLevel() >= 2)
+				if(trace >= 2)
 				{
 					settings.trace(2, depth, this, "FOAliasBindingByRecursionImpl", hashCode(), "eliminateTrue", "Alias call %s (partial for %s) %s repeat found.",
-							formatAliasCall(), var.getName(), stringiseAssignments(assignment));
+							formatAliasCall(mappedAssignment), var.getName(), stringiseAssignments(assignment));
 				}
 				settings.getStats().numL1ElimTrueRepeatCall++;				
 			}
@@ -19,7 +19,6 @@ package fopas;
 
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import fopas.basics.FOAlias;
@@ -66,12 +65,26 @@ public class FOAliasByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 	}
 
 	@Override
-	public boolean checkAssignment(int depth, FOStructure structure, Map<FOVariable, FOElement> assignment)
+	public boolean checkAssignment(int depth, FOStructure structure, FOAssignment assignment)
 	{
 		// Add caching here.
 		return mNegated ^ mScopeForm.checkAssignment(depth + 1, structure, assignment);
 	}
 
+	@Override
+	void seedSlots(FOAssignment.Layout layout)
+	{
+		// The args come first so that a call into the alias can fill them by their position.
+		for(FOVariable var : mArgs)
+			layout.addVariable(var);
+	}
+
+	@Override
+	void assignSlots(FOAssignment.Layout layout)
+	{
+		mScopeForm.assignSlots(layout);
+	}
+
 	@Override
 	FormulaType getType()
 	{
@@ -119,7 +132,7 @@ public class FOAliasByRecursionImpl extends FOFormulaBRImpl implements FOAlias
 
 	@Override
 	public <TI extends FOElement> FOSet<? extends FOElement> tryEliminateTrue(int depth, FOStructure structure, FOSet<TI> universeSubset, FOVariable var,
-			boolean complement, Map<FOVariable, FOElement> assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
+			boolean complement, FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
 	{
 		// The only thing at this level to do is to handover the decision to the contained formula.
 		return mScopeForm.tryEliminateTrue(depth + 1, structure, universeSubset, var, complement, assignment, aliasCalls);
@@ -270,6 +270,59 @@ public class FOAliasByRecursionImplTest
 		testFormula(structure, "multiply(c3, c4, c2)", true, null); // 3*4 mode 5=12 mod 5=2
 	}
 
+	@Test
+	public void testMultiplyWithAliasMemo() throws FOConstructionException
+	{
+		String[] formulas = {
+				"multiply(c2, c2, c4)",
+				"multiply(c4, c4, c1)",
+				"multiply(c4, c4, c0)",
+				"multiply(c4, c3, c2)",
+				"multiply(c3, c4, c1)",
+		};
+		boolean[] expected = { true, true, false, true, false };
+		
+		// No memo, small memo which has to evict and a memo large enough for everything.
+		int[] memoSizes = { 0, 2, 1000 };
+		int[] aliasCalls = new int[memoSizes.length];
+		for(int i = 0; i < memoSizes.length; i++)
+		{
+			FORuntime runtime = new FORuntime();
+			if(memoSizes[i] > 0)
+				runtime.enableAliasMemo(memoSizes[i]);
+			FOStructure structure = createSimpleStructure(runtime);
+			structure.addAlias(
+					builder.buildAlias(structure, 
+							"substract",
+							Arrays.asList(new FOVariableImpl("x"), new FOVariableImpl("y"), new FOVariableImpl("z")), "_x = (_y + _z)")				
+					);
+			structure.addAlias(builder.buildAlias(structure, 
+					"multiply",
+					Arrays.asList(new FOVariableImpl("x"), new FOVariableImpl("y"), new FOVariableImpl("z")),
+						"(_x = c0 -> _z = c0)"
+					+ 	"& (_x = c1 -> _z = _y)"
+					+   "& (forall _x1)((forall _z1)(¬(_x = c0) & ¬(_x = c1) & substract(_x, c1, _x1) & multiply(_x1, _y, _z1) -> _z = _z1 + _y))"
+					));
+			
+			FOStats stats = runtime.getStats();
+			for(int j = 0; j < formulas.length; j++)
+			{
+				testFormula(structure, formulas[j], expected[j], null);
+				aliasCalls[i] += stats.numL1CheckAsgIntoAlias;
+				if(memoSizes[i] == 0)
+					Assert.assertEquals(0, stats.numL1AliasMemoHit + stats.numL1AliasMemoMiss);
+				else
+					Assert.assertEquals(stats.numL1CheckAsgIntoAlias, stats.numL1AliasMemoHit + stats.numL1AliasMemoMiss);
+			}
+			if(memoSizes[i] == 2)
+				Assert.assertTrue(stats.numL1AliasMemoEvict > 0);
+			if(memoSizes[i] == 1000)
+				Assert.assertEquals(0, stats.numL1AliasMemoEvict);
+		}
+		// A hit doesn't go any further into the alias, which saves all the calls the recursion would've made.
+		Assert.assertTrue(aliasCalls[2] < aliasCalls[0]);
+	}
+
 	@Test
 	public void testMultiplyUsingRecursionOneRelation() throws FOConstructionException
 	{
@@ -0,0 +1,137 @@
+//    Copyright (c) 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+package fopas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fopas.basics.FOElement;
+import fopas.basics.FORuntimeException;
+import fopas.basics.FOVariable;
+
+/**
+ * The assignment of the variables while a formula is evaluated. The formula that's the root of the evaluation gives each of its
+ * variables a slot in its layout when it's compiled (see FOFormulaBRImpl.createAssignment()), and the values are kept in a flat
+ * array addressed by these slots. The layout is kept by the root rather than the subformulas, so a subformula can be shared by
+ * roots that give its variables different slots. A formula and each alias it calls have their own assignments.
+ */
+final class FOAssignment
+{
+	final Layout mLayout; // shared by all the assignments for a formula
+	final FOVariable[] mVars; // the variable for each slot
+	final FOElement[] mValues;
+	
+	FOAssignment(Layout layout)
+	{
+		mLayout = layout;
+		mVars = layout.mSlotVars;
+		mValues = new FOElement[mVars.length];
+	}
+	
+	FOAssignment(FOAssignment other)
+	{
+		mLayout = other.mLayout;
+		mVars = other.mVars;
+		mValues = other.mValues.clone();
+	}
+	
+	int slotOf(FOVariable var)
+	{
+		return mLayout.slotOf(var);
+	}
+	
+	FOElement get(int slot)
+	{
+		return mValues[slot];
+	}
+	
+	FOElement get(FOVariable var)
+	{
+		return mValues[mLayout.slotOf(var)];
+	}
+	
+	void set(int slot, FOElement elt)
+	{
+		mValues[slot] = elt;
+	}
+	
+	/**
+	 * Sets all the slots from the given assignment, any variable not in the map is left unassigned.
+	 * @param assignment
+	 * @return this
+	 */
+	FOAssignment setAll(Map<FOVariable, FOElement> assignment)
+	{
+		for(int i = 0; i < mVars.length; i++)
+			mValues[i] = assignment.get(mVars[i]);
+		return this;
+	}
+	
+	Map<FOVariable, FOElement> toMap()
+	{
+		Map<FOVariable, FOElement> map = new LinkedHashMap<>();
+		for(int i = 0; i < mVars.length; i++)
+			if(mValues[i] != null)
+				map.put(mVars[i], mValues[i]);
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return "FOAssignment " + Arrays.toString(mValues);
+	}
+
+	/**
+	 * The slots of the variables for a root formula, given out in the order the variables are met while it's compiled.
+	 */
+	static class Layout
+	{
+		protected final Map<FOVariable, Integer> mSlots = new HashMap<>();
+		protected final List<FOVariable> mVars = new ArrayList<>();
+		protected FOVariable[] mSlotVars; // set once all the variables are added
+		
+		/**
+		 * Gives the variable the next free slot if it doesn't have one yet.
+		 * @param var
+		 */
+		void addVariable(FOVariable var)
+		{
+			if(mSlots.putIfAbsent(var, mVars.size()) == null)
+				mVars.add(var);
+		}
+		
+		/**
+		 * Ends the compilation, no variables can be added after this.
+		 */
+		void complete()
+		{
+			mSlotVars = mVars.toArray(new FOVariable[mVars.size()]);
+		}
+		
+		int slotOf(FOVariable var)
+		{
+			Integer slot = mSlots.get(var);
+			if(slot == null)
+				throw new FORuntimeException("Variable not found in the compiled formula: " + var.getName());
+			return slot;
+		}
+	}
+}
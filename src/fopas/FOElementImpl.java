@@ -141,8 +141,88 @@ abstract class FOElementImpl implements FOElement
 	}
 
 	// This is no different to Integer in that it boxes an int.
+	// Use valueOf() to get the canonical instance for small integers instead of allocating a new one, and an FOIntCache
+	// for the integers of a bounded range that's iterated over and over.
 	static class FOIntImpl extends FOElementImpl implements FOInteger
 	{	
+		// The small integers (constants, indices and the like) every structure uses, the rest are cached per range.
+		static final int CACHE_LOW = -128;
+		static final int CACHE_HIGH = 1023;
+		private static final FOIntImpl[] sCache = new FOIntImpl[CACHE_HIGH - CACHE_LOW + 1];
+		static
+		{
+			for(int i = 0; i < sCache.length; i++)
+				sCache[i] = new FOIntImpl(i + CACHE_LOW);
+		}
+		
+		/**
+		 * Returns the canonical instance for the integer if it's in the cached range, or a new one otherwise.
+		 * @param elt
+		 * @return
+		 */
+		static FOIntImpl valueOf(int elt)
+		{
+			if(elt >= CACHE_LOW && elt <= CACHE_HIGH)
+				return sCache[elt - CACHE_LOW];
+			return new FOIntImpl(elt);
+		}
+		
+		/**
+		 * Flyweight instances for the integers of a bounded range, created the first time they're asked for.
+		 * This is owned by the set that gives out the integers (eg. the universe range of a structure) so that going through it
+		 * again (eg. for each assignment of an outer quantifier) doesn't allocate again.<br>
+		 * The slots may be filled by multiple threads at once, which at worst creates the same integer twice. This is safe
+		 * since FOIntImpl is immutable with final fields.
+		 */
+		static class FOIntCache
+		{
+			// Largest range we keep a cache for, above this the cache itself would be the bigger cost.
+			static final int MAX_CACHED_RANGE = 1 << 16;
+			
+			final int mFirst;
+			final FOIntImpl[] mInts;
+			
+			protected FOIntCache(int first, int size)
+			{
+				mFirst = first;
+				mInts = new FOIntImpl[size];
+			}
+			
+			/**
+			 * Creates a cache for the given range (both inclusive).
+			 * @return The cache, or null if the range is infinite or too large to cache.
+			 */
+			static FOIntCache createFor(int first, int last)
+			{
+				if(first == Integer.MIN_VALUE || last == Integer.MAX_VALUE)
+					return null;
+				long size = (long) last - first + 1;
+				if(size <= 0 || size > MAX_CACHED_RANGE)
+					return null;
+				return new FOIntCache(first, (int) size);
+			}
+			
+			/**
+			 * Returns the cached instance for the integer, or the same as FOIntImpl.valueOf() if it's outside the range.
+			 * @param elt
+			 * @return
+			 */
+			FOIntImpl valueOf(int elt)
+			{
+				int ix = elt - mFirst;
+				if(ix < 0 || ix >= mInts.length)
+					return FOIntImpl.valueOf(elt);
+				FOIntImpl val = mInts[ix];
+				if(val == null)
+				{
+					val = FOIntImpl.valueOf(elt);
+					mInts[ix] = val;
+				}
+				return val;
+			}
+		}
+		
+
 		static class FOIntComparator implements Comparator<FOElement>
 		{
 			@Override
@@ -167,9 +247,12 @@ abstract class FOElementImpl implements FOElement
 		}
 		static final Comparator<FOElement> DEFAULT_COMPARATOR = new FOIntComparator();
 		
+		final int mInt; // same as mElt, but saves the unboxing
+		
 		FOIntImpl(int elt)
 		{
 			super(elt);
+			mInt = elt;
 		}
 		
 		@Override
@@ -180,13 +263,30 @@ abstract class FOElementImpl implements FOElement
 		@Override
 		public int getInteger() 
 		{
-			return (Integer) mElt;
+			return mInt;
 		}
 
 		@Override
 		public int compareTo(FOInteger o)
 		{
-			return o.getInteger() - (Integer) mElt;
+			return o.getInteger() - mInt;
+		}
+
+		// Same as the generic ones, but without going through the boxed value.
+		@Override
+		public int hashCode()
+		{
+			return 31 + mInt;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			return mInt == ((FOIntImpl) obj).mInt;
 		}
 
 		@Override
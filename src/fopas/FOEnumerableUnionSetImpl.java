@@ -17,13 +17,16 @@
 
 package fopas;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Iterables;
@@ -47,6 +50,53 @@ public class FOEnumerableUnionSetImpl<T extends FOElement> implements FOUnionSet
 	protected final Map<String, FOEnumerableSet<? extends T>> mNamedSubsets;
 	protected final Class<T> mEltType;
 	protected final String mName;
+	
+	// Largest finite subset that gets an index, bigger ones are left to do their own membership checks.
+	protected static final int INDEX_MAX_SUBSET_SIZE = 1 << 16;
+	
+	/**
+	 * Snapshot of the elements of a subset, for subsets that don't have a cheap membership check of their own.<br>
+	 * Subsets such as FOBridgeSet may change after they're put in a union, so the size of the subset is recorded with it,
+	 * and the snapshot is taken again when the subset is found to have a different size. A change that leaves the size the same
+	 * (eg. an element replaced by another) isn't seen, so subsets shouldn't be changed that way while they're in a union.
+	 */
+	protected static class SubsetIndex
+	{
+		final int mSize;
+		final Set<Object> mElements;
+		
+		SubsetIndex(FOEnumerableSet<?> subset, int size)
+		{
+			mSize = size;
+			mElements = new HashSet<>(size * 2);
+			for(Object elt : subset)
+				mElements.add(elt);
+		}
+	}
+	
+	/**
+	 * A subset as seen by the membership checks.
+	 */
+	protected static class SubsetEntry<T extends FOElement>
+	{
+		final FOEnumerableSet<? extends T> mSubset;
+		final boolean mIndexed; // whether membership is checked in mIndex rather than by the subset
+		volatile SubsetIndex mIndex; // taken when first needed, and again when the subset changes
+		
+		SubsetEntry(FOEnumerableSet<? extends T> subset)
+		{
+			mSubset = subset;
+			mIndexed = subset != null && !hasCheapContains(subset);
+		}
+	}
+	// Marks element classes which none of the subsets can hold (concurrent maps don't take nulls).
+	@SuppressWarnings("rawtypes")
+	protected static final SubsetEntry NO_SUBSET = new SubsetEntry<>(null);
+	
+	// Dispatch table from element classes to the only subset which can hold them, since subsets can't have related types.
+	// Elements are of implementation classes rather than the subset types, so this gets filled as the classes are seen.
+	protected final Map<Class<?>, SubsetEntry<T>> mClassDispatch = new ConcurrentHashMap<>();
+	protected final List<SubsetEntry<T>> mSubsetEntries;
 
 	/**
 	 * A union of named sets that enforces a few constraints:
@@ -75,6 +125,7 @@ public class FOEnumerableUnionSetImpl<T extends FOElement> implements FOUnionSet
 		mName = name;
 
 		mNamedSubsets = validateAndCreateNamedSubset(subsets);
+		mSubsetEntries = createSubsetEntries(mNamedSubsets);
 	}
 
 	protected FOEnumerableUnionSetImpl(Map<String, FOEnumerableSet<? extends T>> namedSubsets, Class<T> eltType,
@@ -88,6 +139,30 @@ public class FOEnumerableUnionSetImpl<T extends FOElement> implements FOUnionSet
 									// validated already (but don't want to write extra code to ensure that).
 		mEltType = eltType;
 		mName = name; // this can be null since this is an internal constructor
+		mSubsetEntries = createSubsetEntries(mNamedSubsets);
+	}
+	
+	protected static <T extends FOElement> List<SubsetEntry<T>> createSubsetEntries(Map<String, FOEnumerableSet<? extends T>> namedSubsets)
+	{
+		List<SubsetEntry<T>> entries = new ArrayList<>(namedSubsets.size());
+		for(FOEnumerableSet<? extends T> subset : namedSubsets.values())
+			entries.add(new SubsetEntry<>(subset));
+		return entries;
+	}
+	
+	/**
+	 * @return Whether the subset's own membership check is already constant or logarithmic time, so indexing it would only cost memory.
+	 */
+	protected static boolean hasCheapContains(FOSet<?> subset)
+	{
+		if(subset instanceof FOBridgeSet)
+		{
+			Set<?> bridged = ((FOBridgeSet<?>) subset).mSet;
+			return bridged instanceof HashSet || bridged instanceof SortedSet;
+		}
+		return subset instanceof FOSetRangedNaturals || subset instanceof FOSetSequenceOfRanges || subset instanceof FOSetBitmap
+				|| subset instanceof FOSetUtils.EmptySet || subset instanceof FOSetUtils.SingleElementSet
+				|| subset instanceof FOEnumerableUnionSetImpl;
 	}
 
 	//------ Set incompleteness functionality ---------------------------------------------------
@@ -171,13 +246,68 @@ public class FOEnumerableUnionSetImpl<T extends FOElement> implements FOUnionSet
 	@Override
 	public boolean contains(Object o)
 	{
-		for (FOSet<? extends FOElement> foset : mNamedSubsets.values()) {
-			if (!foset.getType().isAssignableFrom(o.getClass()))
-				continue; // this set won't contain an element of this type
-			if (foset.contains(o))
-				return true;
+		return getSubsetContaining(o) != null;
+	}
+	
+	/**
+	 * Finds the subset an element belongs to, which is a dispatch on the element class followed by a membership check,
+	 * either in the subset itself, or in its index for a subset whose own check isn't cheap.
+	 * @param o
+	 * @return The subset, or null if the element isn't in this set.
+	 */
+	public FOEnumerableSet<? extends T> getSubsetContaining(Object o)
+	{
+		if(o == null)
+			return null;
+		SubsetEntry<T> entry = getSubsetEntry(o.getClass());
+		if(entry.mSubset == null)
+			return null; // no subset would contain an element of this type
+		if(entry.mIndexed)
+		{
+			SubsetIndex index = getSubsetIndex(entry);
+			if(index != null)
+				return index.mElements.contains(o) ? entry.mSubset : null;
+		}
+		return entry.mSubset.contains(o) ? entry.mSubset : null;
+	}
+	
+	protected SubsetEntry<T> getSubsetEntry(Class<?> eltClass)
+	{
+		SubsetEntry<T> entry = mClassDispatch.get(eltClass);
+		if(entry == null)
+		{
+			entry = findSubsetEntry(eltClass);
+			mClassDispatch.put(eltClass, entry);
+		}
+		return entry;
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected SubsetEntry<T> findSubsetEntry(Class<?> eltClass)
+	{
+		for(SubsetEntry<T> entry : mSubsetEntries)
+			if(entry.mSubset.getType().isAssignableFrom(eltClass))
+				return entry;
+		return NO_SUBSET;
+	}
+	
+	/**
+	 * @return The index of the entry's subset, taken again if the subset isn't the size it had when it was indexed,
+	 * or null if the subset is too big to index (eg. infinite).
+	 */
+	protected SubsetIndex getSubsetIndex(SubsetEntry<T> entry)
+	{
+		SubsetIndex index = entry.mIndex;
+		int size = entry.mSubset.size();
+		if(index == null || index.mSize != size)
+		{
+			if(size > INDEX_MAX_SUBSET_SIZE)
+				return null;
+			// Racing threads would take the same snapshot, so there's no need to lock.
+			index = new SubsetIndex(entry.mSubset, size);
+			entry.mIndex = index;
 		}
-		return false;
+		return index;
 	}
 
 	@Override
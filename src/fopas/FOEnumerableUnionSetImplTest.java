@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -169,4 +170,68 @@ public class FOEnumerableUnionSetImplTest {
 			assertEquals(complementSetRNS, unionSetRNS);
 		}
 	}
+
+	@Test
+	public void testSubsetDispatch() throws FOConstructionException
+	{
+		FOSetRangedNaturals naturals = new FOSetRangedNaturals();
+		FOBridgeSet<FOString> names = createNamesSet();
+		FOBridgeSet<FOSymbol> symbols = createMathsSmybolsSet();
+		FOEnumerableUnionSetImpl<FOElement> unionSet = new FOEnumerableUnionSetImpl<>(Arrays.asList(naturals, names, symbols), FOElement.class);
+		
+		assertSame(names, unionSet.getSubsetContaining(new FOElementImpl.FOStringImpl("selami")));
+		assertSame(symbols, unionSet.getSubsetContaining(new FOElementImpl.FOSymbolImpl("pi")));
+		assertSame(naturals, unionSet.getSubsetContaining(FOElementImpl.FOIntImpl.valueOf(1000000)));
+		assertNull(unionSet.getSubsetContaining(new FOElementImpl.FOStringImpl("pi")));
+		assertNull(unionSet.getSubsetContaining(new FOElementImpl.FOSymbolImpl("burak")));
+		assertFalse(unionSet.contains(FOElementImpl.FOIntImpl.valueOf(-1)));
+		assertFalse(unionSet.contains("burak")); // not even an element
+		
+		// One dispatch entry per element class seen.
+		assertEquals(4, unionSet.mClassDispatch.size());
+		assertNull(unionSet.mClassDispatch.get(String.class).mSubset);
+		assertTrue(unionSet.contains(new FOElementImpl.FOStringImpl("burak")));
+		assertEquals(4, unionSet.mClassDispatch.size());
+		
+		// These all check membership cheaply themselves, so none of them is indexed.
+		for(FOEnumerableUnionSetImpl.SubsetEntry<FOElement> entry : unionSet.mSubsetEntries)
+		{
+			assertFalse(entry.mIndexed);
+			assertNull(entry.mIndex);
+		}
+	}
+
+	@Test
+	public void testSubsetIndex() throws FOConstructionException
+	{
+		// Bridges over sets with a linear membership check.
+		FOBridgeSet<FOString> names = new FOBridgeSet<>("names", new CopyOnWriteArraySet<>(createNamesSet()), FOString.class);
+		FOBridgeSet<FOSymbol> symbols = new FOBridgeSet<>("maths_symbols", new CopyOnWriteArraySet<>(createMathsSmybolsSet()), FOSymbol.class);
+		FOSetRangedNaturals range = new FOSetRangedNaturals(10, 14);
+		FOEnumerableUnionSetImpl<FOElement> unionSet = new FOEnumerableUnionSetImpl<>(Arrays.asList(range, names, symbols), FOElement.class);
+		FOEnumerableUnionSetImpl.SubsetEntry<FOElement> rangeEntry = unionSet.mSubsetEntries.get(0);
+		FOEnumerableUnionSetImpl.SubsetEntry<FOElement> namesEntry = unionSet.mSubsetEntries.get(1);
+		FOEnumerableUnionSetImpl.SubsetEntry<FOElement> symbolsEntry = unionSet.mSubsetEntries.get(2);
+		
+		assertTrue(unionSet.contains(FOElementImpl.FOIntImpl.valueOf(12)));
+		assertSame(names, unionSet.getSubsetContaining(new FOElementImpl.FOStringImpl("selami")));
+		assertSame(symbols, unionSet.getSubsetContaining(new FOElementImpl.FOSymbolImpl("pi")));
+		assertFalse(rangeEntry.mIndexed);
+		assertNull(rangeEntry.mIndex);
+		assertEquals(3, namesEntry.mIndex.mElements.size());
+		FOEnumerableUnionSetImpl.SubsetIndex symbolsIndex = symbolsEntry.mIndex;
+		assertEquals(3, symbolsIndex.mElements.size());
+		
+		// Changes to a subset are picked up by its size, and only its own index is taken again.
+		FOElementImpl.FOStringImpl added = new FOElementImpl.FOStringImpl("ahmet");
+		assertNull(unionSet.getSubsetContaining(added));
+		names.add(added);
+		assertSame(names, unionSet.getSubsetContaining(added));
+		assertEquals(4, namesEntry.mIndex.mElements.size());
+		names.remove(new FOElementImpl.FOStringImpl("burak"));
+		assertFalse(unionSet.contains(new FOElementImpl.FOStringImpl("burak")));
+		assertEquals(3, namesEntry.mIndex.mElements.size());
+		assertTrue(unionSet.contains(new FOElementImpl.FOSymbolImpl("exp")));
+		assertSame(symbolsIndex, symbolsEntry.mIndex);
+	}
 }
@@ -17,12 +17,15 @@
 
 package fopas;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import fopas.FOFormulaBRImpl.FormulaType;
 import fopas.FORuntime.FOStats;
@@ -60,19 +63,19 @@ class FOFormulaBRForAll extends FOFormulaBRImpl
 	}
 	
 	@Override
-	public boolean checkAssignment(int depth, FOStructure structure, Map<FOVariable, FOElement> assignment)
+	public boolean checkAssignment(int depth, FOStructure structure, FOAssignment assignment)
 	{
-		if(assignment.containsKey(mVar)) // variable collision from earlier scope, this is illegal, should be caught during formula analysis.
+		if(assignment.get(mVar) != null) // variable collision from earlier scope, this is illegal, should be caught during formula analysis.
 			throw new FORuntimeException("Variable name collision for scope.");
 		
 		//stats.incrementedStat("numL1ElimTrueRelAttempts", ++stats.numL1ElimTrueRelAttempts, settings.getTraceLevel(), this);
 
 		FORuntime settings = structure.getRuntime();
 		int trace = settings.getTraceLevel();
-		FOStats stats = settings.getStats();
 		if(trace >= 1)
 		{
-			stats.incrementedStat("numL1CheckAsgAll", ++stats.numL1CheckAsgAll, settings.getTraceLevel(), this);
+			FOStats stats = settings.getStats();
+			stats.incrementedStat("numL1CheckAsgAll", ++stats.numL1CheckAsgAll, trace, this);
 			if(trace >= 5)
 			{
 				settings.trace(-5, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "%s", stringiseAssignments(assignment));
@@ -87,21 +90,24 @@ class FOFormulaBRForAll extends FOFormulaBRImpl
 		
 		if(trace >= 1)
 		{
+			FOStats stats = settings.getStats();
 			if(constrained != null)
 			{
-				stats.incrementedStat("numL1ElimTrueForallSuccess", ++stats.numL1ElimTrueForallSuccess, settings.getTraceLevel(), this);
+				stats.incrementedStat("numL1ElimTrueForallSuccess", ++stats.numL1ElimTrueForallSuccess, trace, this);
 				if(constrained.size() == 1)
-					stats.incrementedStat("numL1ElimTrueForallSuccess1", ++stats.numL1ElimTrueForallSuccess1, settings.getTraceLevel(), this);					
+					stats.incrementedStat("numL1ElimTrueForallSuccess1", ++stats.numL1ElimTrueForallSuccess1, trace, this);					
 				else if(constrained.size() == 0)
-					stats.incrementedStat("numL1ElimTrueForallSuccess0", ++stats.numL1ElimTrueForallSuccess0, settings.getTraceLevel(), this);					
+					stats.incrementedStat("numL1ElimTrueForallSuccess0", ++stats.numL1ElimTrueForallSuccess0, trace, this);					
 
-				settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "eliminateTrue for %s success new universeSubset: %s", mVar.getName(), constrained.getName());
+				if(trace >= 2)
+					settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "eliminateTrue for %s success new universeSubset: %s", mVar.getName(), constrained.getName());
 			}
 			else
 			{
-				stats.incrementedStat("numL1ElimTrueForallFail", ++stats.numL1ElimTrueForallFail, settings.getTraceLevel(), this);					
+				stats.incrementedStat("numL1ElimTrueForallFail", ++stats.numL1ElimTrueForallFail, trace, this);					
 
-				settings.trace(5, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "eliminateTrue for %s failed. Using existing universeSubset: %s", mVar.getName(), structure.getUniverse().getName());
+				if(trace >= 5)
+					settings.trace(5, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "eliminateTrue for %s failed. Using existing universeSubset: %s", mVar.getName(), structure.getUniverse().getName());
 			}
 		}
 		assert aliasCalls.size() == 0;
@@ -116,33 +122,154 @@ class FOFormulaBRForAll extends FOFormulaBRImpl
 		
 		FOEnumerableSet<? extends FOElement> enumerableConstrained = (FOEnumerableSet<? extends FOElement>) constrained; 
 
+		boolean failed;
+		if(settings.getParallelPool() != null && enumerableConstrained.size() >= settings.getParallelMinElements())
+			failed = checkParallel(depth, structure, assignment, enumerableConstrained);
+		else
+			failed = !checkElements(depth, structure, assignment, enumerableConstrained, null);
+
+		if(trace >= 2)
+			settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "satisfaction: %s (return: %s)", !failed, mNegated ^ !failed);
+
+		return mNegated ^ !failed;
+	}
+	
+	/**
+	 * Checks the scope formula for each of the elements, stopping at the first failure.
+	 * @param stop If given, this is checked before each element and set on failure so that parallel checks can stop each other.
+	 * @return true if the scope formula is satisfied for all of the elements checked.
+	 */
+	protected boolean checkElements(int depth, FOStructure structure, FOAssignment assignment,
+			Iterable<? extends FOElement> elements, AtomicBoolean stop)
+	{
+		FORuntime settings = structure.getRuntime();
+		int trace = settings.getTraceLevel();
+		FOStats stats = trace >= 1 ? settings.getStats() : null;
+		int slot = assignment.slotOf(mVar);
+		
 		boolean failed = false;
-		for(FOElement elt : enumerableConstrained)
+		for(FOElement elt : elements)
 		{
+			if(stop != null && stop.get())
+				break; // another chunk found a failure, so the result is known.
+			
 			if(trace >= 1)
 			{
-				stats.incrementedStat("numL1CheckAsgAllSub", ++stats.numL1CheckAsgAllSub, settings.getTraceLevel(), this);					
-				settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "Assigned %s=%s for %s", mVar.getName(), elt.getElement(), settings.stringiseFormulaForTrace(2, this));
+				stats.incrementedStat("numL1CheckAsgAllSub", ++stats.numL1CheckAsgAllSub, trace, this);					
+				if(trace >= 2)
+					settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "Assigned %s=%s for %s", mVar.getName(), elt.getElement(), settings.stringiseFormulaForTrace(2, this));
 			}
 			
-			assignment.put(mVar, elt);
+			assignment.set(slot, elt);
 			failed |= !mScopeFormula.checkAssignment(depth + 1, structure, assignment);
 			
 			if(failed)
 			{
 				if(trace >= 1)
 				{
-					stats.incrementedStat("numL1CheckAsgAllSubFail", ++stats.numL1CheckAsgAllSubFail, settings.getTraceLevel(), this);					
-					settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "Assignment failed for %s", elt.getElement());
+					stats.incrementedStat("numL1CheckAsgAllSubFail", ++stats.numL1CheckAsgAllSubFail, trace, this);					
+					if(trace >= 2)
+						settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "Assignment failed for %s", elt.getElement());
 				}
+				if(stop != null)
+					stop.set(true);
 				break; // no point going further we know not all subformulas are satified.
 			}
 		}
-		assignment.remove(mVar); // we need to remove the variable assignment either way.
+		assignment.set(slot, null); // we need to remove the variable assignment either way.
+		return !failed;
+	}
+	
+	/**
+	 * Splits the elements to chunks and checks them in the runtime's pool.
+	 * @return true if the scope formula failed for any element.
+	 */
+	protected boolean checkParallel(int depth, FOStructure structure, FOAssignment assignment,
+			FOEnumerableSet<? extends FOElement> elements)
+	{
+		FORuntime settings = structure.getRuntime();
+		List<FOElement> listElements = new ArrayList<>(elements.size());
+		for(FOElement elt : elements)
+			listElements.add(elt);
+		
+		if(settings.getTraceLevel() >= 2)
+			settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "Checking %d elements for %s in parallel.",
+					listElements.size(), mVar.getName());
 
-		settings.trace(2, depth, this, "FOFormulaBRForAll", hashCode(), "checkAssignment", "satisfaction: %s (return: %s)", !failed, mNegated ^ !failed);
+		AtomicBoolean stop = new AtomicBoolean();
+		ChunkCheck check = new ChunkCheck(depth, structure, assignment, listElements, 0, listElements.size(),
+				settings.getParallelChunkSize(), stop);
+		// A quantifier inside an already parallel one forks into the same pool from its worker thread.
+		if(ForkJoinTask.inForkJoinPool())
+			check.invoke();
+		else
+			settings.getParallelPool().invoke(check);
+		settings.getStats().merge(check.mChunkStats);
+		return stop.get();
+	}
+	
+	protected class ChunkCheck extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		final int mDepth;
+		final FOStructure mStructure;
+		final FOAssignment mAssignment; // this is the caller's, and each chunk works on its own copy
+		final List<FOElement> mElements;
+		final int mFrom;
+		final int mTo;
+		final int mChunkSize;
+		final AtomicBoolean mStop;
+		final FOStats mChunkStats; // counted by this chunk, and merged with its sub-chunks once they're done
+		
+		ChunkCheck(int depth, FOStructure structure, FOAssignment assignment, List<FOElement> elements,
+				int from, int to, int chunkSize, AtomicBoolean stop)
+		{
+			mDepth = depth;
+			mStructure = structure;
+			mAssignment = assignment;
+			mElements = elements;
+			mFrom = from;
+			mTo = to;
+			mChunkSize = chunkSize;
+			mStop = stop;
+			mChunkStats = new FOStats(structure.getRuntime());
+		}
 
-		return mNegated ^ !failed;
+		@Override
+		protected void compute()
+		{
+			if(mStop.get())
+				return;
+			if(mTo - mFrom > mChunkSize)
+			{
+				int mid = (mFrom + mTo) >>> 1;
+				ChunkCheck first = new ChunkCheck(mDepth, mStructure, mAssignment, mElements, mFrom, mid, mChunkSize, mStop);
+				ChunkCheck second = new ChunkCheck(mDepth, mStructure, mAssignment, mElements, mid, mTo, mChunkSize, mStop);
+				invokeAll(first, second);
+				mChunkStats.merge(first.mChunkStats);
+				mChunkStats.merge(second.mChunkStats);
+				return;
+			}
+			
+			// The thread counts into this chunk's stats while it's checking it, and goes back to whatever it was using after.
+			FORuntime settings = mStructure.getRuntime();
+			FOStats previous = settings.setThreadStats(mChunkStats);
+			try
+			{
+				checkElements(mDepth, mStructure, new FOAssignment(mAssignment), mElements.subList(mFrom, mTo), mStop);
+			}
+			finally
+			{
+				settings.setThreadStats(previous);
+			}
+		}
+	}
+	
+	@Override
+	void assignSlots(FOAssignment.Layout layout)
+	{
+		layout.addVariable(mVar);
+		mScopeFormula.assignSlots(layout);
 	}
 	
 	FOVariable getVariable()
@@ -204,7 +331,7 @@ class FOFormulaBRForAll extends FOFormulaBRImpl
 	}
 	@Override
 	public <TI extends FOElement> FOSet<? extends FOElement> tryEliminateTrue(int depth, FOStructure structure, FOSet<TI> universeSubset, FOVariable var,
-			boolean complement, Map<FOVariable, FOElement> assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
+			boolean complement, FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
 	{
 		// The only thing to do is to see is if the scoped formula somehow already constrains our variable.
 		return mScopeFormula.tryEliminateTrue(depth + 1, structure, universeSubset, var, complement ^ mNegated, assignment, aliasCalls);
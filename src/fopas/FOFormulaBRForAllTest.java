@@ -19,12 +19,24 @@ package fopas;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import fopas.basics.FOConstant;
+import fopas.basics.FOConstructionException;
+import fopas.basics.FOElement;
+import fopas.basics.FOFormula;
+import fopas.basics.FOFunction;
+import fopas.basics.FORelation;
+import fopas.basics.FOStructure;
+
 public class FOFormulaBRForAllTest {
 
 	@BeforeClass
@@ -48,5 +60,83 @@ public class FOFormulaBRForAllTest {
 	{
 		
 	}
+	
+	private static FOStructure createRangeStructure(int size, FORuntime runtime)
+	{
+		FOConstant c0 = new FOConstantImpl("c0");
+		FOConstant c1 = new FOConstantImpl("c1");
+		FORelation<FOElement> foequals = new FORelationOfComparison.FORelationImplEquals();
+		FOFunction funaddmod = new FOFunctionsInternalInt.FOInternalSumModulus(size);
+		
+		FOStructure structure = new FOStructureImpl(new FOSetRangedNaturals(0, size - 1),
+				new HashSet<>(Arrays.asList(foequals)), new HashSet<>(Arrays.asList(funaddmod)), runtime);
+		structure.setConstantMapping(c0, new FOElementImpl.FOIntImpl(0));
+		structure.setConstantMapping(c1, new FOElementImpl.FOIntImpl(1));
+		return structure;
+	}
+	
+	@Test
+	public void testParallelMatchesSequential() throws FOConstructionException
+	{
+		FOFormulaBuilderByRecursion builder = new FOFormulaBuilderByRecursion();
+		// None of these can constrain the universe, so the quantifiers have to go through the elements.
+		String[] formulas = {
+				"(forall _x)¬((_x + c1) = _x)",
+				"(forall _x)¬((_x + c1) = c0)",
+				"(exists _x)((_x + c1) = c0)",
+				"(exists _x)((_x + c1) = _x)",
+				"(forall _x)(exists _y)((_x + _y) = c0)",
+		};
+		boolean[] expected = { true, false, true, false, true };
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			for(int i = 0; i < formulas.length; i++)
+			{
+				FOStructure sequential = createRangeStructure(300, new FORuntime());
+				FOFormula form = builder.buildFormula(formulas[i], sequential);
+				assertEquals(formulas[i], expected[i], sequential.models(form));
 
+				FORuntime runtime = new FORuntime();
+				runtime.enableParallel(pool, 16, 8);
+				FOStructure parallel = createRangeStructure(300, runtime);
+				assertEquals(formulas[i], expected[i], parallel.models(builder.buildFormula(formulas[i], parallel)));
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelStats() throws FOConstructionException
+	{
+		FOFormulaBuilderByRecursion builder = new FOFormulaBuilderByRecursion();
+		// This goes through every element either way, so the counts have to add up to the same.
+		String formula = "(forall _x)¬((_x + c1) = _x)";
+		
+		FORuntime sequentialRuntime = new FORuntime();
+		FOStructure sequential = createRangeStructure(300, sequentialRuntime);
+		assertTrue(sequential.models(builder.buildFormula(formula, sequential)));
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			FORuntime parallelRuntime = new FORuntime();
+			parallelRuntime.enableParallel(pool, 16, 8);
+			FOStructure parallel = createRangeStructure(300, parallelRuntime);
+			assertTrue(parallel.models(builder.buildFormula(formula, parallel)));
+			
+			assertEquals(300, sequentialRuntime.getStats().numL1CheckAsgAllSub);
+			assertEquals(sequentialRuntime.getStats().numL1CheckAsgAllSub, parallelRuntime.getStats().numL1CheckAsgAllSub);
+			assertEquals(sequentialRuntime.getStats().numL1CheckAsgRel, parallelRuntime.getStats().numL1CheckAsgRel);
+			assertEquals(1, parallelRuntime.getStats().numL1CheckAsgAll);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
 }
@@ -43,6 +43,8 @@ import fopas.basics.FOVariable;
 public abstract class FOFormulaBRImpl implements FOFormula {
 
 	final protected boolean mNegated;
+	// The slots of the variables once this is compiled as the root of an evaluation, see createAssignment().
+	private volatile FOAssignment.Layout mLayout;
 	
 	FOFormulaBRImpl(boolean isNegated)
 	{
@@ -60,9 +62,40 @@ public abstract class FOFormulaBRImpl implements FOFormula {
 	}
 	abstract FormulaType getType(); 
 	abstract <TI extends FOElement> FOSet<? extends FOElement> tryEliminateTrue(int depth, FOStructure structure, FOSet<TI> universeSubset, FOVariable var,
-			boolean complement, Map<FOVariable, FOElement> assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls);
+			boolean complement, FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls);
 	abstract boolean checkAssignment(int depth, FOStructure structure,
-			Map<FOVariable, FOElement> assignment);
+			FOAssignment assignment);
+	
+	/**
+	 * Adds each variable used in this formula to the layout of the root that's compiled, see FOAssignment.
+	 * @param layout
+	 */
+	abstract void assignSlots(FOAssignment.Layout layout);
+	
+	/**
+	 * Slots that need to be in place before the rest of the formula is compiled.
+	 * @param layout
+	 */
+	void seedSlots(FOAssignment.Layout layout) {}
+	
+	/**
+	 * Compiles the formula as the root of an evaluation if it isn't already, and creates an empty assignment to evaluate it with.
+	 * Nothing is written into the subformulas, so a race to compile just builds the same layout twice.
+	 * @return
+	 */
+	FOAssignment createAssignment()
+	{
+		FOAssignment.Layout layout = mLayout;
+		if(layout == null)
+		{
+			layout = new FOAssignment.Layout();
+			seedSlots(layout);
+			assignSlots(layout);
+			layout.complete();
+			mLayout = layout;
+		}
+		return new FOAssignment(layout);
+	}
 	
 	@Override
 	public boolean models(FOStructure structure) throws FOConstructionException
@@ -71,9 +104,10 @@ public abstract class FOFormulaBRImpl implements FOFormula {
 		if(setFreeVars.size() > 0)
 		{
 			boolean failed = false;
+			FOAssignment assignment = createAssignment();
 			for(Map<FOVariable, FOElement> pickings : getAssignments(structure))
 			{
-				failed |= !checkAssignment(0, structure, pickings);
+				failed |= !checkAssignment(0, structure, assignment.setAll(pickings));
 				if(failed)
 					break;
 			}
@@ -81,18 +115,16 @@ public abstract class FOFormulaBRImpl implements FOFormula {
 			return !failed;			
 		}
 		else
-		{
-			HashMap<FOVariable, FOElement> assignment = new LinkedHashMap<>();			
-			return checkAssignment(0, structure, assignment);
-		}
+			return checkAssignment(0, structure, createAssignment());
 	}
 	
 	@Override
 	public Iterable<Map<FOVariable, FOElement>> getSatisfyingAssignments(FOStructure structure)
 			throws FOConstructionException
 	{
+		FOAssignment assignment = createAssignment();
 		return FluentIterable.from(
-				getAssignments(structure)).filter(pickings -> checkAssignment(0, structure, pickings)
+				getAssignments(structure)).filter(pickings -> checkAssignment(0, structure, new FOAssignment(assignment).setAll(pickings))
 						);
 	}
 
@@ -287,11 +319,11 @@ public abstract class FOFormulaBRImpl implements FOFormula {
 		return mNegated;
 	}
 	
-	String stringiseAssignments(Map<FOVariable, FOElement> assignment)
+	String stringiseAssignments(FOAssignment assignment)
 	{
 		StringBuffer sb = new StringBuffer();
 		sb.append('{');
-		for(Map.Entry<FOVariable, FOElement> entry : assignment.entrySet())
+		for(Map.Entry<FOVariable, FOElement> entry : assignment.toMap().entrySet())
 		{
 			if(sb.length() > 1)
 				sb.append(", ");
@@ -19,7 +19,6 @@ package fopas;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import fopas.FOFormulaBRImpl.FormulaType;
@@ -57,14 +56,15 @@ class FOFormulaBROr extends FOFormulaBRImpl
 	}
 
 	@Override
-	public boolean checkAssignment(int depth, FOStructure structure, Map<FOVariable, FOElement> assignment)
+	public boolean checkAssignment(int depth, FOStructure structure, FOAssignment assignment)
 	{
 		FORuntime settings = structure.getRuntime();
 		int trace = settings.getTraceLevel();
 		if(trace >= 1)
 		{
 			settings.getStats().numL1CheckAsgOr++;
-			settings.trace(-5, depth, this, "FOFormulaBROr", hashCode(), "checkAssignment", "%s", trace >= 5 ? stringiseAssignments(assignment) : "");			
+			if(trace >= 5)
+				settings.trace(-5, depth, this, "FOFormulaBROr", hashCode(), "checkAssignment", "%s", stringiseAssignments(assignment));			
 		}
 		
 		for(FOFormula form : mFormulas)
@@ -78,7 +78,8 @@ class FOFormulaBROr extends FOFormulaBRImpl
 			}
 		}
 		
-		settings.trace(5, depth, this, "FOFormulaBROr", hashCode(), "checkAssignment", "Not satisfied (return: %s).", mNegated);
+		if(trace >= 5)
+			settings.trace(5, depth, this, "FOFormulaBROr", hashCode(), "checkAssignment", "Not satisfied (return: %s).", mNegated);
 		
 		return mNegated;
 	}
@@ -86,6 +87,13 @@ class FOFormulaBROr extends FOFormulaBRImpl
 	@Override
 	FormulaType getType() { return FormulaType.OR; }
 
+	@Override
+	void assignSlots(FOAssignment.Layout layout)
+	{
+		for(FOFormula form : mFormulas)
+			((FOFormulaBRImpl) form).assignSlots(layout);
+	}
+
 	@Override
 	void analyseVars(Set<FOVariable> setVarsInScope, Set<FOVariable> setVarsSeenInScope,
 			Set<FOVariable> setFreeVars, List<String> listWarnings) throws FOConstructionException
@@ -125,10 +133,11 @@ class FOFormulaBROr extends FOFormulaBRImpl
 
 	@Override
 	public <TI extends FOElement> FOSet<? extends FOElement> tryEliminateTrue(int depth, FOStructure structure, FOSet<TI> universeSubset, FOVariable var,
-			boolean complement, Map<FOVariable, FOElement> assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
+			boolean complement, FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
 	{
 		FORuntime settings = structure.getRuntime();
-		if(settings.getTraceLevel() >= 5)
+		int trace = settings.getTraceLevel();
+		if(trace >= 5)
 		{
 			settings.trace(-5, depth, this, "FOFormulaBROr", hashCode(), "eliminateTrue", "(partial for %s) %s", var.getName(), stringiseAssignments(assignment));
 			settings.trace( 5, depth, this, "FOFormulaBROr", hashCode(), "eliminateTrue", "variable: %s, complement: %s, universe: %s", var.getName(), complement, universeSubset.getName());			
@@ -141,54 +150,242 @@ class FOFormulaBROr extends FOFormulaBRImpl
 		//     This also relies on the type selection to be at the start. If that's failed, it can cause a runtime failure in a relation refusing to act on a universe subset.
 		// (2) Greedy O(NxN): This can pick up one layer find out the best, take the best, and repeat.
 		// (3) Exhaustive O(N!): Follow any possible lineage to find the absolute best combination.
+		// The runtime picks which, and the last two use the set sizes to decide which is best.
 		
-		FOSet<? extends FOElement> fosetResultSubset;
+		FOSet<? extends FOElement> fosetSubset;
+		switch(settings.getElimStrategy())
+		{
+		case GREEDY:
+			fosetSubset = eliminateTrueGreedy(depth, structure, universeSubset, var, assignment, aliasCalls, elimTarget);
+			break;
+		case EXHAUSTIVE:
+			if(mFormulas.size() <= settings.getElimExhaustiveLimit())
+				fosetSubset = eliminateTrueExhaustive(depth, structure, universeSubset, var, assignment, aliasCalls, elimTarget);
+			else
+				fosetSubset = eliminateTrueGreedy(depth, structure, universeSubset, var, assignment, aliasCalls, elimTarget);
+			break;
+		default:
+			fosetSubset = eliminateTrueSimple(depth, structure, universeSubset, var, assignment, aliasCalls, elimTarget);
+			break;
+		}
 		
+		if(trace >= 1)
 		{
-			// Simple strategy:
-			FOSet<? extends FOElement> fosetSubset = universeSubset;
-			for(FOFormula form : mFormulas)
+			FOStats stats = settings.getStats();
+			if(fosetSubset == universeSubset)
+				stats.incrementedStat("numL1ElimTrueOrFail", ++stats.numL1ElimTrueOrFail, trace, this);
+			else
 			{
-				FOFormulaBRImpl formimpl = (FOFormulaBRImpl) form; 
-				FOSet<? extends FOElement> fosetET_Neg = formimpl.tryEliminateTrue(depth + 1, structure, fosetSubset, var, true, assignment, aliasCalls);
+				stats.incrementedStat("numL1ElimTrueOrSuccess", ++stats.numL1ElimTrueOrSuccess, trace, this);
+				if(fosetSubset.size() <= elimTarget)
+					stats.incrementedStat("numL1ElimTrueOrSuccessTarget", ++stats.numL1ElimTrueOrSuccessTarget, trace, this);
+			}
+		}
+		
+		FOSet<? extends FOElement> fosetResultSubset;
+		if(fosetSubset == universeSubset)
+			fosetResultSubset = null; //failed to constrain
+		else
+		{ // Let's deal with the complementing
+			if(complement ^ mNegated)
+				fosetResultSubset = fosetSubset.complementAcross(universeSubset);
+			else
+				fosetResultSubset = fosetSubset;
+		}			
+		
+		if(trace >= 5)
+			settings.trace(5, depth, this, "FOFormulaBROr", hashCode(), "eliminateTrue", 
+					"Elimination variable: %s, success: %s, smallest subset: %s, negate: %s, complementing: %s", var.getName(), fosetResultSubset != null,
+							fosetResultSubset == null ? "<null>" : fosetResultSubset.getName(), mNegated, mNegated ^ complement);
+		
+		return fosetResultSubset;
+	}
+
+	/**
+	 * Constrains the universe subset by each disjunct in the order they're written.
+	 * @return The constrained subset, or the universe subset itself if it couldn't be constrained.
+	 */
+	protected FOSet<? extends FOElement> eliminateTrueSimple(int depth, FOStructure structure, FOSet<? extends FOElement> universeSubset, FOVariable var,
+			FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls, int elimTarget)
+	{
+		FORuntime settings = structure.getRuntime();
+		int trace = settings.getTraceLevel();
+		
+		FOSet<? extends FOElement> fosetSubset = universeSubset;
+		for(FOFormula form : mFormulas)
+		{
+			FOFormulaBRImpl formimpl = (FOFormulaBRImpl) form; 
+			FOSet<? extends FOElement> fosetET_Neg = formimpl.tryEliminateTrue(depth + 1, structure, fosetSubset, var, true, assignment, aliasCalls);
 
-				if(fosetET_Neg == null)
+			if(fosetET_Neg == null)
+			{
+				// This tryElim operation failed, therefore the existing subset we have now is an incomplete superset.
+				fosetSubset.setIncompleteSuperset(true);
+				if(trace >= 1)
 				{
-					// This tryElim operation failed, therefore the existing subset we have now is an incomplete superset.
-					fosetSubset.setIncompleteSuperset(true);
-					continue;
+					FOStats stats = settings.getStats();
+					stats.incrementedStat("numL1ElimTrueOrSubFail", ++stats.numL1ElimTrueOrSubFail, trace, this);
 				}
-				
-				FOSet<? extends FOElement> fosetSubsetNext = fosetET_Neg.complementAcross(fosetSubset);
-				if(fosetSubsetNext == null)
+				continue;
+			}
+			
+			FOSet<? extends FOElement> fosetSubsetNext = fosetET_Neg.complementAcross(fosetSubset);
+			if(trace >= 1)
+			{
+				FOStats stats = settings.getStats();
+				if(fosetSubsetNext != null)
+					stats.incrementedStat("numL1ElimTrueOrSubSuccess", ++stats.numL1ElimTrueOrSubSuccess, trace, this);
+				else
+					stats.incrementedStat("numL1ElimTrueOrSubFail", ++stats.numL1ElimTrueOrSubFail, trace, this);
+			}
+			if(fosetSubsetNext == null)
+			{
+				// Failed to complement.
+				return universeSubset;
+			}
+			else
+				fosetSubset = fosetSubsetNext;
+			
+			if(fosetSubset.size() <= elimTarget)
+				break;
+		}
+		return fosetSubset;
+	}
+	
+	/**
+	 * Constrains the universe subset by each of the remaining disjuncts at every step, and carries on with the smallest result.
+	 * Disjuncts that can't constrain the subset at one step are tried again at the next since they may work on a smaller subset.
+	 * @return The constrained subset, or the universe subset itself if it couldn't be constrained.
+	 */
+	protected FOSet<? extends FOElement> eliminateTrueGreedy(int depth, FOStructure structure, FOSet<? extends FOElement> universeSubset, FOVariable var,
+			FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls, int elimTarget)
+	{
+		List<FOFormulaBRImpl> remaining = new ArrayList<>(mFormulas.size());
+		for(FOFormula form : mFormulas)
+			remaining.add((FOFormulaBRImpl) form);
+		
+		FOSet<? extends FOElement> fosetSubset = universeSubset;
+		while(!remaining.isEmpty() && fosetSubset.size() > elimTarget)
+		{
+			int bestIx = -1;
+			FOSet<? extends FOElement> best = null;
+			for(int i = 0; i < remaining.size(); i++)
+			{
+				FOSet<? extends FOElement> next = constrainByDisjunct(depth, structure, fosetSubset, remaining.get(i), var, assignment, aliasCalls);
+				if(next != null && (best == null || next.size() < best.size()))
 				{
-					// Failed to complement TODO: Count this
-					fosetSubset = universeSubset;
-					break;
+					best = next;
+					bestIx = i;
 				}
-				else
-					fosetSubset = fosetSubsetNext;
-				
-				if(fosetSubset.size() <= elimTarget)
-					break;
 			}
-			// TODO: Add the new counts here.
+			if(best == null)
+			{
+				// None of the rest can constrain it, therefore the subset we have now is an incomplete superset.
+				if(fosetSubset != universeSubset)
+					fosetSubset.setIncompleteSuperset(true);
+				break;
+			}
+			remaining.remove(bestIx);
+			fosetSubset = best;
+		}
+		return fosetSubset;
+	}
+	
+	/**
+	 * Constrains the universe subset by the disjuncts in every possible order, and picks the smallest result
+	 * (preferring the one with the fewest disjuncts left out for the same size).
+	 * @return The constrained subset, or the universe subset itself if it couldn't be constrained.
+	 */
+	protected FOSet<? extends FOElement> eliminateTrueExhaustive(int depth, FOStructure structure, FOSet<? extends FOElement> universeSubset, FOVariable var,
+			FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls, int elimTarget)
+	{
+		FOFormulaBRImpl[] formulas = new FOFormulaBRImpl[mFormulas.size()];
+		for(int i = 0; i < formulas.length; i++)
+			formulas[i] = (FOFormulaBRImpl) mFormulas.get(i);
+		
+		EliminationCandidate best = searchElimination(depth, structure, universeSubset, var, assignment, aliasCalls, elimTarget,
+				formulas, new boolean[formulas.length], formulas.length);
+		if(best.mLeftOut > 0 && best.mSubset != universeSubset)
+			best.mSubset.setIncompleteSuperset(true);
+		return best.mSubset;
+	}
+	
+	protected static class EliminationCandidate
+	{
+		final FOSet<? extends FOElement> mSubset;
+		// Number of disjuncts that couldn't be used to constrain it.
+		final int mLeftOut;
+		
+		EliminationCandidate(FOSet<? extends FOElement> subset, int leftOut)
+		{
+			mSubset = subset;
+			mLeftOut = leftOut;
+		}
+		
+		boolean isBetterThan(EliminationCandidate other)
+		{
+			if(other == null)
+				return true;
+			int size = mSubset.size();
+			int otherSize = other.mSubset.size();
+			return size < otherSize || size == otherSize && mLeftOut < other.mLeftOut;
+		}
+	}
+	
+	protected EliminationCandidate searchElimination(int depth, FOStructure structure, FOSet<? extends FOElement> fosetSubset, FOVariable var,
+			FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls, int elimTarget,
+			FOFormulaBRImpl[] formulas, boolean[] used, int unused)
+	{
+		// Reaching the target is as good as it gets, the same as the other strategies stop there.
+		if(unused == 0 || fosetSubset.size() <= elimTarget)
+			return new EliminationCandidate(fosetSubset, 0);
+		
+		EliminationCandidate best = null;
+		for(int i = 0; i < formulas.length; i++)
+		{
+			if(used[i])
+				continue;
+			FOSet<? extends FOElement> next = constrainByDisjunct(depth, structure, fosetSubset, formulas[i], var, assignment, aliasCalls);
+			if(next == null)
+				continue;
 			
-			if(fosetSubset == universeSubset)
-				fosetResultSubset = null; //failed to constrain
-			else
-			{ // Let's deal with the complementing
-				if(complement ^ mNegated)
-					fosetResultSubset = fosetSubset.complementAcross(universeSubset);
-				else
-					fosetResultSubset = fosetSubset;
-			}			
+			used[i] = true;
+			EliminationCandidate candidate = searchElimination(depth, structure, next, var, assignment, aliasCalls, elimTarget, formulas, used, unused - 1);
+			used[i] = false;
+			if(candidate.isBetterThan(best))
+				best = candidate;
+			if(best.mSubset.size() <= elimTarget && best.mLeftOut == 0)
+				break;
 		}
 		
-		settings.trace(5, depth, this, "FOFormulaBROr", hashCode(), "eliminateTrue", 
-				"Elimination variable: %s, success: %s, smallest subset: %s, negate: %s, complementing: %s", var.getName(), fosetResultSubset != null,
-						fosetResultSubset == null ? "<null>" : fosetResultSubset.getName(), mNegated, mNegated ^ complement);
+		if(best == null)
+			return new EliminationCandidate(fosetSubset, unused); // none of the rest can constrain this
+		return best;
+	}
+	
+	/**
+	 * Takes out of the subset the elements for which the given disjunct is true.
+	 * @return The constrained subset, or null if the disjunct can't be used on this subset.
+	 */
+	protected FOSet<? extends FOElement> constrainByDisjunct(int depth, FOStructure structure, FOSet<? extends FOElement> fosetSubset, FOFormulaBRImpl formimpl,
+			FOVariable var, FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
+	{
+		FORuntime settings = structure.getRuntime();
+		int trace = settings.getTraceLevel();
 		
-		return fosetResultSubset;
+		FOSet<? extends FOElement> fosetSubsetNext = null;
+		FOSet<? extends FOElement> fosetET_Neg = formimpl.tryEliminateTrue(depth + 1, structure, fosetSubset, var, true, assignment, aliasCalls);
+		if(fosetET_Neg != null)
+			fosetSubsetNext = fosetET_Neg.complementAcross(fosetSubset);
+		
+		if(trace >= 1)
+		{
+			FOStats stats = settings.getStats();
+			if(fosetSubsetNext != null)
+				stats.incrementedStat("numL1ElimTrueOrSubSuccess", ++stats.numL1ElimTrueOrSubSuccess, trace, this);
+			else
+				stats.incrementedStat("numL1ElimTrueOrSubFail", ++stats.numL1ElimTrueOrSubFail, trace, this);
+		}
+		return fosetSubsetNext;
 	}
 }
@@ -2,12 +2,22 @@ package fopas;
 
 import static org.junit.Assert.*;
 
+import java.util.HashSet;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import fopas.FORuntime.ElimStrategy;
+import fopas.FORuntime.FOStats;
+import fopas.basics.FOConstructionException;
+import fopas.basics.FOElement;
+import fopas.basics.FOFormula;
+import fopas.basics.FOSet;
+import fopas.basics.FOStructure;
+
 /**
  * Mainly a collection of integration type tests that focus on the 
  * elimTrue computations.
@@ -36,5 +46,72 @@ public class FOFormulaBROrTest {
 	{
 		// Will want to move over some tests here.
 	}
+	
+	/**
+	 * Runs the formula over [0, 1000] with the given strategy, and returns how many elements the forall had to check.
+	 */
+	int checkWithStrategy(String strFormula, boolean expectSatisfaction, ElimStrategy strategy) throws FOConstructionException
+	{
+		FOStructure structure = FORelationOfComparisonTest.createStructureIneqWithRange(0, 1000, new FORuntime(1, strategy));
+		FOFormula form = new FOFormulaBuilderByRecursion().buildFormula(strFormula, structure);
+		assertEquals(strategy + ": " + strFormula, expectSatisfaction, structure.models(form));
+		return structure.getRuntime().getStats().numL1CheckAsgAllSub;
+	}
+
+	@Test
+	public void testElimStrategies() throws FOConstructionException
+	{
+		// Constraining by the equality first leaves a set the inequalities can't constrain, so the simple strategy
+		// depends on the order of the disjuncts, whereas the others pick the inequalities first since they give smaller sets.
+		String formula1 = "(forall _v1)(_v1 = c10 | _v1 < c100 | _v1 > c20)";
+		assertEquals(1000, checkWithStrategy(formula1, true, ElimStrategy.SIMPLE));
+		assertEquals(0, checkWithStrategy(formula1, true, ElimStrategy.GREEDY));
+		assertEquals(0, checkWithStrategy(formula1, true, ElimStrategy.EXHAUSTIVE));
+		assertEquals(0, checkWithStrategy("(forall _v1)(_v1 < c100 | _v1 > c20 | _v1 = c10)", true, ElimStrategy.SIMPLE));
+		
+		String formula2 = "(forall _v1)(_v1 = c0 | _v1 < c10 | _v1 > c20)";
+		assertEquals(10, checkWithStrategy(formula2, false, ElimStrategy.SIMPLE));
+		assertEquals(1, checkWithStrategy(formula2, false, ElimStrategy.GREEDY));
+		assertEquals(1, checkWithStrategy(formula2, false, ElimStrategy.EXHAUSTIVE));
+		
+		// The results are the same whichever the strategy.
+		String[] formulas = {
+				"(forall _v1)(_v1 > c10 | _v1 = c0)",
+				"(forall _v1)(_v1 < c10 | _v1 > c20 | _v1 = c0)",
+				"(exists _v1)(_v1 > c20 & _v1 < c50 & _v1 = c50)",
+				"(exists _v1)(_v1 > c20 & _v1 < c50 & _v1 = c20 + c10)",
+		};
+		boolean[] expected = { false, false, false, true };
+		for(int i = 0; i < formulas.length; i++)
+			for(ElimStrategy strategy : ElimStrategy.values())
+				checkWithStrategy(formulas[i], expected[i], strategy);
+		
+		// Too many disjuncts for exhaustive, so it falls back to greedy.
+		FOStructure structure = FORelationOfComparisonTest.createStructureIneqWithRange(0, 1000, new FORuntime(1, ElimStrategy.EXHAUSTIVE, 2));
+		assertTrue(structure.models(new FOFormulaBuilderByRecursion().buildFormula(formula1, structure)));
+		FOStats stats = structure.getRuntime().getStats();
+		assertEquals(0, stats.numL1CheckAsgAllSub);
+		assertEquals(5, stats.numL1ElimTrueOrSubSuccess); // 3 tries for the first pick, 2 for the second.
+	}
+
+	@Test
+	public void testShortRangesToBitmap() throws FOConstructionException
+	{
+		// Taking out the ranges of the disjuncts one by one leaves ranges that get shorter on average, which at the
+		// end are better kept as a bitmap for the forall to go through.
+		FOStructure structure = FORelationOfComparisonTest.createStructureIneqWithRange(0, 60, new FORuntime(1));
+		FOFormulaBRForAll form = (FOFormulaBRForAll) new FOFormulaBuilderByRecursion().buildFormula(
+				"(forall _v1)((_v1 > c0 & _v1 < c10) | (_v1 > c10 & _v1 < c20) | (_v1 > c20 & _v1 < c50))", structure);
+		FOFormulaBRImpl scope = (FOFormulaBRImpl) form.getScopeFormula();
+		FOSet<? extends FOElement> domain = scope.tryEliminateTrue(0, structure, structure.getUniverse(), form.getVariable(), false,
+				form.createAssignment(), new HashSet<>());
+		assertEquals(FOSetBitmap.class, domain.getClass());
+		assertEquals(14, domain.size()); // 0, 10, 20 and [50, 60]
+		assertTrue(domain.contains(new FOElementImpl.FOIntImpl(10)));
+		assertFalse(domain.contains(new FOElementImpl.FOIntImpl(11)));
+		
+		assertFalse(structure.models(form));
+		assertEquals(1, structure.getRuntime().getStats().numL1CheckAsgAllSub);
+	}
 
 }
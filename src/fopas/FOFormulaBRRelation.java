@@ -18,10 +18,10 @@
 package fopas;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import fopas.FOFormulaBRImpl.FormulaType;
+import fopas.FORuntime.FOStats;
 import fopas.basics.FOElement;
 import fopas.basics.FOFormula;
 import fopas.basics.FORelation;
@@ -42,32 +42,39 @@ class FOFormulaBRRelation extends FOFormulaBRImpl
 	}
 	
 	@Override
-	public boolean checkAssignment(int depth, FOStructure structure, Map<FOVariable, FOElement> assignment)
+	public boolean checkAssignment(int depth, FOStructure structure, FOAssignment assignment)
 	{
 		FORuntime settings = structure.getRuntime();
 		int trace = settings.getTraceLevel();
 		if(trace >= 1)
 		{
 			settings.getStats().numL1CheckAsgRel++;
-			settings.trace(-5, depth, this, "FOFormulaBRRelation", hashCode(), "checkAssignment", "%s", trace >= 5 ? stringiseAssignments(assignment) : "");
+			if(trace >= 5)
+				settings.trace(-5, depth, this, "FOFormulaBRRelation", hashCode(), "checkAssignment", "%s", stringiseAssignments(assignment));
 		}
 
 		FOElement[] args = new FOElement[mTerms.size()]; 
 		for(int i = 0; i < mTerms.size(); i++)
 		{
-			FOTerm term = mTerms.get(i);
-			term.assignVariables(structure, assignment, false);
-			FOElement asg = term.getAssignment();
+			FOElement asg = ((FOTermByRecursionImpl) mTerms.get(i)).evaluate(structure, assignment, false);
 			assert asg != null; // All variables should be assigned by this point.
 			args[i] = asg;
 		}
 		
 		boolean satisfied = mRel.satisfies(args);
-		settings.trace(5, depth, this, "FOFormulaBRRelation", hashCode(), "checkAssignment", "satisfaction: %s (return: %s)", satisfied, mNegated ^ satisfied);
+		if(trace >= 5)
+			settings.trace(5, depth, this, "FOFormulaBRRelation", hashCode(), "checkAssignment", "satisfaction: %s (return: %s)", satisfied, mNegated ^ satisfied);
 		
 		return mNegated ^ satisfied;
 	}
 
+	@Override
+	void assignSlots(FOAssignment.Layout layout)
+	{
+		for(FOTerm term : mTerms)
+			((FOTermByRecursionImpl) term).assignSlots(layout);
+	}
+
 	@Override
 	FormulaType getType() { return FormulaType.RELATION; }
 	
@@ -97,14 +104,16 @@ class FOFormulaBRRelation extends FOFormulaBRImpl
 
 	@Override
 	public <TI extends FOElement> FOSet<? extends TI> tryEliminateTrue(int depth, FOStructure structure, FOSet<TI> universeSubset, FOVariable var,
-			boolean complement, Map<FOVariable, FOElement> assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
+			boolean complement, FOAssignment assignment, Set<FOAliasBindingByRecursionImpl.AliasEntry> aliasCalls)
 	{
 		FORuntime settings = structure.getRuntime();
-		if(settings.getTraceLevel() >= 1)
+		int trace = settings.getTraceLevel();
+		if(trace >= 1)
 		{
 			// This is the only place that truly does elimination.
-			settings.getStats().incrementedStat("numL1ElimTrueRelAttempts", ++settings.getStats().numL1ElimTrueRelAttempts, settings.getTraceLevel(), this);
-			if(settings.getTraceLevel() >= 5)
+			FOStats stats = settings.getStats();
+			stats.incrementedStat("numL1ElimTrueRelAttempts", ++stats.numL1ElimTrueRelAttempts, trace, this);
+			if(trace >= 5)
 			{
 				settings.trace(-5, depth, this, "FOFormulaBRRelation", hashCode(), "eliminateTrue", "(partial for %s) %s", var.getName(), stringiseAssignments(assignment));
 				settings.trace( 5, depth, this, "FOFormulaBRRelation", hashCode(), "eliminateTrue", "variable: %s, complement: %s, universe: %s", var.getName(), complement, universeSubset.getName());				
@@ -125,8 +134,9 @@ class FOFormulaBRRelation extends FOFormulaBRImpl
 		// From this point on we know the universeSubset is of a type that the rel supports.
 
 		// Do a partial assignment to the terms.
-		for(FOTerm term : mTerms)
-			term.assignVariables(structure, assignment, true);
+		FOElement[] termValues = new FOElement[mTerms.size()];
+		for(int i = 0; i < mTerms.size(); i++)
+			termValues[i] = ((FOTermByRecursionImpl) mTerms.get(i)).evaluate(structure, assignment, true);
 		
 		// Let's see if the relation can constrain its universe from here.
 		// Constrain tries to return elements of the universe where the relation is true.
@@ -137,17 +147,21 @@ class FOFormulaBRRelation extends FOFormulaBRImpl
 		// that the universe contains a type that's a descendant (assignable) of the type the rel needs. This is per the tryConstrain interface
 		// which says <TI extends T> FOSet<TI> where T is the type for the relation and TI is the type of the universeSubset.
 		@SuppressWarnings({ "unchecked", "rawtypes" })
-		FOSet<? extends TI> constrained = mRel.tryConstrain(var, (FOSet) universeSubset, mTerms, complement ^ !mNegated);
+		FOSet<? extends TI> constrained = mRel.tryConstrain(var, (FOSet) universeSubset, mTerms, termValues, complement ^ !mNegated);
 
-		if(settings.getTraceLevel() >= 1)
+		if(trace >= 1)
 		{
 			// This is the only place that truly does elimination.
 			if(constrained != null)
-				settings.getStats().incrementedStat("numL1ElimTrueRelSuccess", ++settings.getStats().numL1ElimTrueRelSuccess, settings.getTraceLevel(), this);
+			{
+				FOStats stats = settings.getStats();
+				stats.incrementedStat("numL1ElimTrueRelSuccess", ++stats.numL1ElimTrueRelSuccess, trace, this);
+			}
 			
-			settings.trace(5, depth, this, "FOFormulaBRRelation", hashCode(), "eliminateTrue", 
-					"Elimination variable: %s, success: %s, subset: %s", var.getName(), constrained != null,
-					constrained == null ? "<null>" : constrained.getName());
+			if(trace >= 5)
+				settings.trace(5, depth, this, "FOFormulaBRRelation", hashCode(), "eliminateTrue", 
+						"Elimination variable: %s, success: %s, subset: %s", var.getName(), constrained != null,
+						constrained == null ? "<null>" : constrained.getName());
 		}
 
 		return constrained;
@@ -310,4 +310,105 @@ public class FOFormulaByRecursionImplTest {
 			Assert.assertTrue(structure.models(form));			
 		}		
 	}
+
+	@Test
+	public void testSharedFormula() throws FOConstructionException, InterruptedException
+	{
+		FOConstant c0 = new FOConstantImpl("c0");
+		FOConstant c1 = new FOConstantImpl("c1");
+		FOInteger zero = new FOElementImpl.FOIntImpl(0);
+		FOInteger one = new FOElementImpl.FOIntImpl(1);
+		
+		FOStructure[] structures = new FOStructure[2];
+		for(int i = 0; i < structures.length; i++)
+		{
+			FOSet<FOInteger> universe = new FOSetRangedNaturals(0, 9);
+			FORelation<FOElement> foequals = new FORelationOfComparison.FORelationImplEquals();
+			FOFunction funaddmod = new FOFunctionsInternalInt.FOInternalSumModulus(10);
+			structures[i] = new FOStructureImpl(universe, new HashSet<>(Arrays.asList(foequals)), new HashSet<>(Arrays.asList(funaddmod)));
+			// The constants are swapped in the second structure.
+			structures[i].setConstantMapping(c0, i == 0 ? zero : one);
+			structures[i].setConstantMapping(c1, i == 0 ? one : zero);
+		}
+
+		// The same formula object gives the right result for each structure.
+		FOFormulaBuilderByRecursion builder = new FOFormulaBuilderByRecursion();
+		FOFormula form = builder.buildFormula("(forall _x)((_x + c0) = _x)", structures[0]);
+		Assert.assertTrue(structures[0].models(form));
+		Assert.assertFalse(structures[1].models(form));
+		Assert.assertTrue(structures[0].models(form));
+		
+		// And it can be evaluated by many threads at once.
+		FOFormula formShared = builder.buildFormula("(forall _x)(exists _y)((_x + _y) = c1)", structures[0]);
+		boolean[] results = new boolean[8];
+		Thread[] threads = new Thread[results.length];
+		for(int i = 0; i < threads.length; i++)
+		{
+			final int ix = i;
+			threads[i] = new Thread(() -> {
+				boolean all = true;
+				try {
+					for(int j = 0; j < 50; j++)
+						all &= formShared.models(structures[ix % 2]);
+				} catch (FOConstructionException e) {
+					all = false;
+				}
+				results[ix] = all;
+			});
+			threads[i].start();
+		}
+		for(int i = 0; i < threads.length; i++)
+		{
+			threads[i].join();
+			Assert.assertTrue(results[i]);
+		}
+	}
+
+	@Test
+	public void testAssignmentSlots() throws FOConstructionException
+	{
+		FOSet<FOInteger> universe = new FOSetRangedNaturals(0, 9);
+		FORelation<FOElement> foequals = new FORelationOfComparison.FORelationImplEquals();
+		FOFunction funaddmod = new FOFunctionsInternalInt.FOInternalSumModulus(10);
+		FOStructure structure = new FOStructureImpl(universe, new HashSet<>(Arrays.asList(foequals)), new HashSet<>(Arrays.asList(funaddmod)));
+		FOFormulaBuilderByRecursion builder = new FOFormulaBuilderByRecursion();
+		
+		// Each variable gets a slot in the order they are met.
+		FOFormulaBRImpl form = (FOFormulaBRImpl) builder.buildFormula("(forall _x)(exists _y)((_x + _y) = _x)", structure);
+		FOAssignment assignment = form.createAssignment();
+		Assert.assertEquals(2, assignment.mVars.length);
+		Assert.assertEquals("x", assignment.mVars[0].getName());
+		Assert.assertEquals("y", assignment.mVars[1].getName());
+		Assert.assertTrue(structure.models(form));
+		
+		// The negation shares the scope formula, and compiles it the same way.
+		FOFormulaBRImpl negated = (FOFormulaBRImpl) form.negate();
+		Assert.assertArrayEquals(assignment.mVars, negated.createAssignment().mVars);
+		Assert.assertFalse(structure.models(negated));
+	}
+
+	@Test
+	public void testSharedSubformulaSlots() throws FOConstructionException
+	{
+		FOSet<FOInteger> universe = new FOSetRangedNaturals(0, 9);
+		FORelation<FOElement> foequals = new FORelationOfComparison.FORelationImplEquals();
+		FOFunction funaddmod = new FOFunctionsInternalInt.FOInternalSumModulus(10);
+		FOStructure structure = new FOStructureImpl(universe, new HashSet<>(Arrays.asList(foequals)), new HashSet<>(Arrays.asList(funaddmod)));
+		
+		// (_x + _y) = (_y + _x) shared by two roots that meet its variables in the opposite order.
+		FOVariable x = new FOVariableImpl("x");
+		FOVariable y = new FOVariableImpl("y");
+		FOTermByRecursionImpl termX = new FOTermByRecursionImpl.FOTermVariable(x);
+		FOTermByRecursionImpl termY = new FOTermByRecursionImpl.FOTermVariable(y);
+		FOFormulaBRImpl shared = new FOFormulaBRRelation(false, foequals, Arrays.asList(
+				new FOTermByRecursionImpl.FOTermFunction(funaddmod, Arrays.asList(termX, termY)),
+				new FOTermByRecursionImpl.FOTermFunction(funaddmod, Arrays.asList(termY, termX))));
+		FOFormulaBRImpl formXY = new FOFormulaBRForAll(false, x, new FOFormulaBRForAll(false, y, shared));
+		FOFormulaBRImpl formYX = new FOFormulaBRForAll(false, y, new FOFormulaBRForAll(false, x, shared));
+		
+		Assert.assertTrue(structure.models(formXY));
+		Assert.assertTrue(structure.models(formYX));
+		Assert.assertEquals("x", formXY.createAssignment().mVars[0].getName());
+		Assert.assertEquals("y", formYX.createAssignment().mVars[0].getName());
+	}
 }
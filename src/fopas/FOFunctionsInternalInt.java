@@ -36,6 +36,14 @@ abstract class FOFunctionsInternalInt extends FOFunctionImpl
 	
 	boolean presentInfix() { return mPresentInfix; }
 	
+	/**
+	 * Evaluates the function for two args without boxing them, this is what's used when evaluating terms with two args.
+	 * @param arg0
+	 * @param arg1
+	 * @return
+	 */
+	abstract int evalInt(int arg0, int arg1);
+	
 	static class FOInternalSumModulus extends FOFunctionsInternalInt
 	{
 		protected final int mModulus;
@@ -67,7 +75,16 @@ abstract class FOFunctionsInternalInt extends FOFunctionImpl
 			}
 			if(mModulus > 0)
 				sum %= mModulus;
-			return new FOElementImpl.FOIntImpl(sum);
+			return FOIntImpl.valueOf(sum);
+		}
+
+		@Override
+		int evalInt(int arg0, int arg1)
+		{
+			int sum = arg0 + arg1;
+			if(mModulus > 0)
+				sum %= mModulus;
+			return sum;
 		}
 
 		@Override
@@ -125,14 +142,20 @@ abstract class FOFunctionsInternalInt extends FOFunctionImpl
 		@Override
 		public FOElement eval(FOElement... args)
 		{
-			int result = ((FOInteger) args[0]).getInteger() - ((FOInteger) args[1]).getInteger();
+			return FOIntImpl.valueOf(evalInt(((FOInteger) args[0]).getInteger(), ((FOInteger) args[1]).getInteger()));
+		}
+
+		@Override
+		int evalInt(int arg0, int arg1)
+		{
+			int result = arg0 - arg1;
 			if(mModulus > 0)
 			{
 				if(result < 0)
 					result += mModulus;
 				result %= mModulus;
 			}
-			return new FOElementImpl.FOIntImpl(result);
+			return result;
 		}
 
 		@Override
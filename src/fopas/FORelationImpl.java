@@ -98,7 +98,7 @@ abstract class FORelationImpl<T extends FOElement> implements FORelation<T>
 
 		@Override
 		public <TI extends FOElement> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset,
-				List<FOTerm> terms, boolean isComplemented)
+				List<FOTerm> terms, FOElement[] termValues, boolean isComplemented)
 		{
 			// TODO Auto-generated method stub
 			return null;
@@ -20,6 +20,7 @@ package fopas;
 import java.util.Comparator;
 import java.util.List;
 
+import fopas.FOElementImpl.FOIntImpl;
 import fopas.FOTermByRecursionImpl.FOTermVariable;
 import fopas.basics.FOElement;
 import fopas.basics.FOElement.FOInteger;
@@ -107,18 +108,19 @@ abstract public class FORelationOfComparison<T extends FOElement> extends FORela
 		}
 
 		@Override
-		public <TI extends FOElement> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset, List<FOTerm> terms, boolean isComplemented)
+		public <TI extends FOElement> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset, List<FOTerm> terms, FOElement[] termValues,
+				boolean isComplemented)
 		{
 			assert terms.size() == 2;
 			// We need to figure out which arg is the variable and which one is the "other" (non-variable) arg.
-			// It's possible none of the args related to the variable, in this case other will be null.
+			// It's possible none of the args related to the variable, in this case other will be -1.
 			
-			FOTerm other = null;
+			int other = -1; // index of the other term
 			if(terms.get(0).getType() == TermType.VARIABLE && ((FOTermVariable) terms.get(0)).getVariable().equals(var))
-				other = terms.get(1);
+				other = 1;
 			if(terms.get(1).getType() == TermType.VARIABLE && ((FOTermVariable) terms.get(1)).getVariable().equals(var))
 			{
-				if(other != null)
+				if(other != -1)
 				{
 					// This is the case where both args are the variable in question, so either everything is true or false depending on the complement.
 					// This will return the universe in the non-complement case, but crucially, in the complemented case,
@@ -130,22 +132,22 @@ abstract public class FORelationOfComparison<T extends FOElement> extends FORela
 				}
 				
 				// The first arg is the non-variable arg.
-				other = terms.get(0); 
+				other = 0;
 			}
 			
 			// If it's not related to the variable, or if there's no assignment yet, we can't do anything.
-			if(other == null || other.getAssignment() == null)
+			if(other == -1 || termValues[other] == null)
 				return null;
 
 			// This is a non-fatal error - means the programmer missed a type elimination somewhere.
 			// TODO: Make this configurable so that it can throw an error.
 			// TODO: Also count this when I get acccess to the runtime here.
-			if(!universeSubset.getType().isAssignableFrom(other.getAssignment().getClass()))
+			if(!universeSubset.getType().isAssignableFrom(termValues[other].getClass()))
 				return null;
 			
 			// Can ignore type check here since we dealt with it above.
 			@SuppressWarnings("unchecked")
-			FOSet<TI> returnSet = new FOSetUtils.SingleElementSet<>((TI) other.getAssignment(), universeSubset.getType())
+			FOSet<TI> returnSet = new FOSetUtils.SingleElementSet<>((TI) termValues[other], universeSubset.getType())
 						.complementIf(isComplemented, universeSubset);
 			
 			return returnSet;
@@ -228,6 +230,9 @@ abstract public class FORelationOfComparison<T extends FOElement> extends FORela
 			if(args[0] == null || args[1] == null)
 				throw new FORuntimeException(String.format("Got null arg(s): %s/%s", args[0], args[1]));
 
+			if(mOrder == FOIntImpl.DEFAULT_COMPARATOR)
+				return satisfiesInt(((FOInteger) args[0]).getInteger(), ((FOInteger) args[1]).getInteger());
+
 			int compare = mOrder.compare(args[0], args[1]);
 			if(compare == 0)
 				return mEquals;
@@ -235,27 +240,42 @@ abstract public class FORelationOfComparison<T extends FOElement> extends FORela
 			return mLessThan ^ compare < 0;
 		}
 		
+		/**
+		 * Same as satisfies() for integers in their natural order, but without going through the comparator.
+		 * @param arg0
+		 * @param arg1
+		 * @return
+		 */
+		boolean satisfiesInt(int arg0, int arg1)
+		{
+			if(arg0 == arg1)
+				return mEquals;
+			
+			return mLessThan == arg0 < arg1;
+		}
+		
 		@Override
-		public <TI extends T> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset, List<FOTerm> terms, boolean isComplemented)
+		public <TI extends T> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset, List<FOTerm> terms, FOElement[] termValues,
+				boolean isComplemented)
 		{
 			assert terms.size() == 2;
 			// We need to figure out which arg is the variable and which one is the "other" (non-variable) arg.
-			// It's possible none of the args related to the variable, in this case other will be null.
+			// It's possible none of the args related to the variable, in this case other will be -1.
 			
 			boolean inverseTermOrder = false;
 			
-			FOTerm other = null;
+			int other = -1; // index of the other term
 			if(terms.get(0).getType() == TermType.VARIABLE && ((FOTermVariable) terms.get(0)).getVariable().equals(var))
 			{
-				assert terms.get(0).getAssignment() == null;
-				other = terms.get(1);
+				assert termValues[0] == null;
+				other = 1;
 			}
 			if(terms.get(1).getType() == TermType.VARIABLE && ((FOTermVariable) terms.get(1)).getVariable().equals(var))
 			{
-				assert terms.get(1).getAssignment() == null;
+				assert termValues[1] == null;
 				
 				// This is the case where both args are the variable in question, so either everything is true or false depending on the complement.
-				if(other != null)
+				if(other != -1)
 				{
 					// This does a trick in negating the complement on the empty set to get back the universe set in a different way.
 					// Should consider changing the API here to signal the failure to contsrain in a different way than returning the universet set
@@ -273,20 +293,20 @@ abstract public class FORelationOfComparison<T extends FOElement> extends FORela
 				}
 
 				// The first arg is the non-variable arg.
-				other = terms.get(0);
+				other = 0;
 				inverseTermOrder = true;
 			}
 			
 			// No constraining possible if the variable isn't present in this formula.
-			if(other == null)
+			if(other == -1)
 				return null;
 			
 			// If we have no assignment on the other term, we may be able to get something by solving the equation for var.
 			// We don't support that _yet_, so we need to skip for now.
 			// TODO: Add type checks to the relation here to make sure we handle the cast here.
-			FOElement termAssignmentPretype = other.getAssignment();
+			FOElement termAssignmentPretype = termValues[other];
 			if(termAssignmentPretype == null)
-				return universeSubset;
+				return null;
 			
 			// This is a non-fatal error - means the programmer missed a type elimination somewhere.
 			// TODO: Make this configurable so that it can throw an error.
@@ -300,13 +320,14 @@ abstract public class FORelationOfComparison<T extends FOElement> extends FORela
 			
 			// If universe subset isn't ordered, we don't have an intrinsic way to constrain the set.
 			// The forall iteration will be constrained by the relation already, so we will need to leave it to that phase.
+			// Returning the universe subset here would claim the relation is true (or false if complemented) for all of it.
 			if(!(universeSubset instanceof FOOrderedEnumerableSet))
-				return universeSubset;
+				return null;
 			
 			FOOrderedEnumerableSet<TI> fosetOEUniverseSubset = (FOOrderedEnumerableSet<TI>) universeSubset;
 			// Check if the universe subset has the same order this inequality expects.
 			if(!fosetOEUniverseSubset.getOrder().equals(mOrder))
-				return universeSubset;
+				return null;
 			
 			if(inverseTermOrder ^ mLessThan)
 			{
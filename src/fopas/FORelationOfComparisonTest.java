@@ -93,7 +93,8 @@ public class FORelationOfComparisonTest {
 		@Override
 		public int getPrecedence() { return super.getPrecedence() + 1; }
 		@Override
-		public <TI extends FOElement> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset, List<FOTerm> terms, boolean isComplemented)
+		public <TI extends FOElement> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset, List<FOTerm> terms, FOElement[] termValues,
+				boolean isComplemented)
 		{
 			// Disable constrain so we force checkAsg in action.
 			return null;
@@ -171,6 +172,11 @@ public class FORelationOfComparisonTest {
 	}
 
 	static FOStructure createStructureIneqWithRange(int first, int last)
+	{
+		return createStructureIneqWithRange(first, last, new FORuntime());
+	}
+
+	static FOStructure createStructureIneqWithRange(int first, int last, FORuntime runtime)
 	{
 		FOConstant c0 = new FOConstantImpl("c0");
 		FOConstant c10 = new FOConstantImpl("c10");
@@ -201,7 +207,7 @@ public class FORelationOfComparisonTest {
 		
 		FOFunction funaddmod = new FOFunctionsInternalInt.FOInternalSumModulus(1000);
 		
-		FOStructure structure = new FOStructureImpl(universe, rels, new HashSet<>(Arrays.asList(funaddmod)));
+		FOStructure structure = new FOStructureImpl(universe, rels, new HashSet<>(Arrays.asList(funaddmod)), runtime);
 		structure.setConstantMapping(c0, fi0);
 		structure.setConstantMapping(c10, fi10);
 		structure.setConstantMapping(c20, fi20);
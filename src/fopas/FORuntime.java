@@ -18,6 +18,9 @@
 package fopas;
 
 import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import com.google.common.base.Strings;
 
@@ -56,6 +59,9 @@ public class FORuntime
 		int numL1ElimTrueOrSubSuccess;
 		int numL1ElimTrueOrSubFail;
 		int numL1ElimTrueOrSuccessTarget;
+		int numL1AliasMemoHit;
+		int numL1AliasMemoMiss;
+		int numL1AliasMemoEvict;
 		
 		protected FORuntime mRuntime;
 		public FOStats(FORuntime runtime)
@@ -83,6 +89,38 @@ public class FORuntime
 			numL1ElimTrueOrSubSuccess = 0;
 			numL1ElimTrueOrSubFail = 0;
 			numL1ElimTrueOrSuccessTarget = 0;
+			numL1AliasMemoHit = 0;
+			numL1AliasMemoMiss = 0;
+			numL1AliasMemoEvict = 0;
+		}
+		
+		/**
+		 * Adds the counts from another set of stats to this one, e.g. from a thread that evaluated part of a formula.
+		 * @param other
+		 */
+		void merge(FOStats other)
+		{
+			numL1CheckAsgIntoAlias += other.numL1CheckAsgIntoAlias;
+			numL1CheckAsgOr += other.numL1CheckAsgOr;
+			numL1CheckAsgAll += other.numL1CheckAsgAll;
+			numL1CheckAsgAllSub += other.numL1CheckAsgAllSub;
+			numL1CheckAsgAllSubFail += other.numL1CheckAsgAllSubFail;
+			numL1CheckAsgRel += other.numL1CheckAsgRel;
+			numL1ElimTrueRelAttempts += other.numL1ElimTrueRelAttempts;
+			numL1ElimTrueRelSuccess += other.numL1ElimTrueRelSuccess;
+			numL1ElimTrueRepeatCall += other.numL1ElimTrueRepeatCall;
+			numL1ElimTrueForallSuccess += other.numL1ElimTrueForallSuccess;
+			numL1ElimTrueForallSuccess1 += other.numL1ElimTrueForallSuccess1;
+			numL1ElimTrueForallSuccess0 += other.numL1ElimTrueForallSuccess0;
+			numL1ElimTrueForallFail += other.numL1ElimTrueForallFail;
+			numL1ElimTrueOrSuccess += other.numL1ElimTrueOrSuccess;
+			numL1ElimTrueOrFail += other.numL1ElimTrueOrFail;
+			numL1ElimTrueOrSubSuccess += other.numL1ElimTrueOrSubSuccess;
+			numL1ElimTrueOrSubFail += other.numL1ElimTrueOrSubFail;
+			numL1ElimTrueOrSuccessTarget += other.numL1ElimTrueOrSuccessTarget;
+			numL1AliasMemoHit += other.numL1AliasMemoHit;
+			numL1AliasMemoMiss += other.numL1AliasMemoMiss;
+			numL1AliasMemoEvict += other.numL1AliasMemoEvict;
 		}
 		
 		private void formatln(PrintStream ps, String format, Object...args)
@@ -110,6 +148,9 @@ public class FORuntime
 			formatln(ps, "ElimTrueOrSubSuccess: %d", numL1ElimTrueOrSubSuccess);
 			formatln(ps, "ElimTrueOrSubFail: %d", numL1ElimTrueOrSubFail);
 			formatln(ps, "ElimTrueOrSuccessTarget: %d", numL1ElimTrueOrSuccessTarget);
+			formatln(ps, "AliasMemoHit: %d", numL1AliasMemoHit);
+			formatln(ps, "AliasMemoMiss: %d", numL1AliasMemoMiss);
+			formatln(ps, "AliasMemoEvict: %d", numL1AliasMemoEvict);
 		}
 		
 		void incrementedStat(String metricName, int newValue, int currentTraceLevel, FOFormula form)
@@ -123,16 +164,91 @@ public class FORuntime
 	}
 
 	protected final int mDefaultStringLen = 100;
+	/**
+	 * Results of alias calls for the structure being evaluated, keyed by the alias and the values given to its args.
+	 * This keeps at most the given number of entries, evicting the least recently used ones after that.
+	 */
+	static class AliasMemo
+	{
+		protected final int mMaxEntries;
+		protected final LinkedHashMap<Object, Boolean> mEntries;
+		
+		AliasMemo(int maxEntries)
+		{
+			mMaxEntries = maxEntries;
+			mEntries = new LinkedHashMap<>(16, 0.75f, true);
+		}
+		
+		synchronized Boolean get(Object key)
+		{
+			return mEntries.get(key);
+		}
+		
+		/**
+		 * @return true if an entry was evicted to make space for this one.
+		 */
+		synchronized boolean put(Object key, boolean result)
+		{
+			mEntries.put(key, result);
+			if(mEntries.size() <= mMaxEntries)
+				return false;
+			Iterator<Object> it = mEntries.keySet().iterator();
+			it.next();
+			it.remove();
+			return true;
+		}
+		
+		synchronized void clear()
+		{
+			mEntries.clear();
+		}
+		
+		synchronized int size()
+		{
+			return mEntries.size();
+		}
+	}
+
 	protected final FOLanguage mLang = new FOLanguage();
 	protected final FOByRecursionStringiser mSgiser = new FOByRecursionStringiser(mLang, mDefaultStringLen);
 	protected int mTraceLevel =  1; // Increase this to (2) to turn on debug tracing.
+	// Set this to false to compile out all tracing and stats: every call site is guarded by getTraceLevel() which then
+	// always returns 0, so the guarded code is dead once the JIT inlines it.
+	static final boolean TRACE_ENABLED = true;
 
 	protected final int mFormTraceLen = 100;
 	protected final String mEmptyForm = Strings.repeat(" ", mFormTraceLen);
 	
 	protected final FOStats mStats = new FOStats(this);
+	// The stats each thread counts into, this is mStats unless the thread is given its own, see setThreadStats().
+	protected final ThreadLocal<FOStats> mThreadStats = ThreadLocal.withInitial(() -> mStats);
 	
 	protected final int mTargetElimTrue; // default 1
+	
+	/**
+	 * How an or formula picks the order of its disjuncts when it constrains a quantifier's domain:<br>
+	 * SIMPLE: constrains by each in the order they're written, O(N).<br>
+	 * GREEDY: constrains by each remaining one at every step and keeps the one giving the smallest set, O(N^2).<br>
+	 * EXHAUSTIVE: tries every order to find the smallest set, O(N!), so it's only done for up to a limited number of
+	 * disjuncts and greedy is used for longer ones.
+	 */
+	enum ElimStrategy
+	{
+		SIMPLE,
+		GREEDY,
+		EXHAUSTIVE
+	}
+	static final int DEFAULT_ELIM_EXHAUSTIVE_LIMIT = 5;
+	protected final ElimStrategy mElimStrategy; // default SIMPLE
+	protected final int mElimExhaustiveLimit;
+	
+	// Parallel evaluation of quantifiers, off (null pool) by default, see enableParallel().
+	protected ForkJoinPool mParallelPool;
+	protected int mParallelMinElements;
+	protected int mParallelChunkSize;
+	
+	// Memo table for alias calls, off (null) by default, see enableAliasMemo().
+	protected volatile AliasMemo mAliasMemo;
 
 	FORuntime()
 	{
@@ -140,29 +256,87 @@ public class FORuntime
 	}
 
 	FORuntime(int targetElimTrue)
+	{
+		this(targetElimTrue, ElimStrategy.SIMPLE);
+	}
+
+	FORuntime(int targetElimTrue, ElimStrategy elimStrategy)
+	{
+		this(targetElimTrue, elimStrategy, DEFAULT_ELIM_EXHAUSTIVE_LIMIT);
+	}
+
+	FORuntime(int targetElimTrue, ElimStrategy elimStrategy, int elimExhaustiveLimit)
 	{
 		mTargetElimTrue = targetElimTrue;
+		mElimStrategy = elimStrategy;
+		mElimExhaustiveLimit = elimExhaustiveLimit;
 	}
 	
 	// Of course these really belong here, and I need a kind of runtime context to house them.
-	int getTraceLevel() { return mTraceLevel; }
+	int getTraceLevel() { return TRACE_ENABLED ? mTraceLevel : 0; }
 	FOStringiser getDefaultStringiser() { return mSgiser; }
-	FOStats getStats() { return mStats; }
+	FOStats getStats() { return mThreadStats.get(); }
+	
+	/**
+	 * Makes the current thread count its stats into the given ones (until it's set back), so that threads evaluating
+	 * parts of the same formula don't contend on the same counters. The caller is expected to merge them at the end.
+	 * @param stats
+	 * @return The stats the thread was using before, to be set back when done.
+	 */
+	FOStats setThreadStats(FOStats stats)
+	{
+		FOStats previous = mThreadStats.get();
+		mThreadStats.set(stats);
+		return previous;
+	}
 	
 	String stringiseFormulaForTrace(int level, FOFormula form)
 	{
-		if(mTraceLevel < level || level < 0 && mTraceLevel < -level)
+		if(!isTraced(level))
 			return "";
 		return mSgiser.stringiseFormula(form, mFormTraceLen);
 	}
 	
+	// The fixed arity versions save the args array, but the call sites are all expected to be guarded by a check
+	// against getTraceLevel() so that nothing is evaluated (or boxed) for them unless the trace is on.
+	void trace(int level, int depth, FOFormula form, String className, int instanceHash, String methodName, String message)
+	{
+		if(isTraced(level))
+			traceLine(level, depth, form, className, instanceHash, methodName, message);
+	}
+	
+	void trace(int level, int depth, FOFormula form, String className, int instanceHash, String methodName, String format, Object arg0)
+	{
+		if(isTraced(level))
+			traceLine(level, depth, form, className, instanceHash, methodName, String.format(format, arg0));
+	}
+	
+	void trace(int level, int depth, FOFormula form, String className, int instanceHash, String methodName, String format, Object arg0, Object arg1)
+	{
+		if(isTraced(level))
+			traceLine(level, depth, form, className, instanceHash, methodName, String.format(format, arg0, arg1));
+	}
+	
+	void trace(int level, int depth, FOFormula form, String className, int instanceHash, String methodName, String format, Object arg0, Object arg1, Object arg2)
+	{
+		if(isTraced(level))
+			traceLine(level, depth, form, className, instanceHash, methodName, String.format(format, arg0, arg1, arg2));
+	}
+	
 	void trace(int level, int depth, FOFormula form, String className, int instanceHash, String methodName, String format, Object... args)
-	{		
-		if(mTraceLevel < level || level < 0 && mTraceLevel < -level)
-			return;
-		
-		// Formatting it here means a complex string isn't constructed unnecessarily when trace is turned off.
-		String message = String.format(format, args);
+	{
+		if(isTraced(level))
+			traceLine(level, depth, form, className, instanceHash, methodName, String.format(format, args));
+	}
+	
+	protected boolean isTraced(int level)
+	{
+		int traceLevel = getTraceLevel();
+		return !(traceLevel < level || level < 0 && traceLevel < -level);
+	}
+	
+	protected void traceLine(int level, int depth, FOFormula form, String className, int instanceHash, String methodName, String message)
+	{
 		String line;
 		if(level > 0)
 			line = String.format("%d#%s(%s).%s#%03d#%s", level,
@@ -189,4 +363,72 @@ public class FORuntime
 	{
 		return mTargetElimTrue;
 	}
+	
+	ElimStrategy getElimStrategy()
+	{
+		return mElimStrategy;
+	}
+	
+	/**
+	 * @return The largest number of disjuncts for which the exhaustive strategy tries every order.
+	 */
+	int getElimExhaustiveLimit()
+	{
+		return mElimExhaustiveLimit;
+	}
+	
+	/**
+	 * Turns on the parallel evaluation of quantifiers (forall and exists). Any quantifier with at least minElements
+	 * elements left to iterate after its domain is constrained is split into chunks of chunkSize elements to
+	 * be evaluated in the given pool, and all of its chunks stop as soon as a counterexample (or witness) is found.<br>
+	 * Each chunk counts its stats separately, and these are added to the caller's stats once the quantifier is done.
+	 * @param pool
+	 * @param minElements
+	 * @param chunkSize
+	 */
+	public void enableParallel(ForkJoinPool pool, int minElements, int chunkSize)
+	{
+		if(pool == null || chunkSize < 1)
+			throw new IllegalArgumentException("Parallel evaluation needs a pool and a positive chunk size.");
+		mParallelPool = pool;
+		mParallelMinElements = Math.max(minElements, 2);
+		mParallelChunkSize = chunkSize;
+	}
+	
+	public void disableParallel()
+	{
+		mParallelPool = null;
+	}
+	
+	/**
+	 * Turns on memoising the results of alias calls: when an alias is called with the same values for its args again
+	 * during the evaluation of a structure the earlier result is used instead of evaluating it again. This helps
+	 * recursive aliases which keep coming back to the same args.<br>
+	 * The table is cleared at the start of each evaluation, since the results are only valid for the structure as it was.
+	 * @param maxEntries Most entries to keep, the least recently used ones are evicted after this.
+	 */
+	public void enableAliasMemo(int maxEntries)
+	{
+		if(maxEntries < 1)
+			throw new IllegalArgumentException("Alias memo needs space for at least one entry.");
+		mAliasMemo = new AliasMemo(maxEntries);
+	}
+	
+	public void disableAliasMemo()
+	{
+		mAliasMemo = null;
+	}
+	
+	AliasMemo getAliasMemo() { return mAliasMemo; }
+	
+	void resetAliasMemo()
+	{
+		AliasMemo memo = mAliasMemo;
+		if(memo != null)
+			memo.clear();
+	}
+	
+	ForkJoinPool getParallelPool() { return mParallelPool; }
+	int getParallelMinElements() { return mParallelMinElements; }
+	int getParallelChunkSize() { return mParallelChunkSize; }
 }
@@ -0,0 +1,1033 @@
+//    Copyright (c) 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package fopas;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import fopas.FOElementImpl.FOIntImpl;
+import fopas.basics.FOElement;
+import fopas.basics.FOElement.FOInteger;
+import fopas.basics.FOEnumerableSet;
+import fopas.basics.FOOrderedEnumerableSet;
+import fopas.basics.FORelation;
+import fopas.basics.FORuntimeException;
+import fopas.basics.FOSet;
+import fopas.basics.FOTerm;
+
+/**
+ * A finite set of integers kept as a compressed bitmap in the style of Roaring bitmaps.<br>
+ * The integers are split on their high 16 bits into containers kept in key order, and each container holds the low 16 bits
+ * either as a sorted array while it's sparse, or as a 65536 bit bitmap once it's dense. This suits the sparse sets
+ * (eg. x mod 7 = 3) which would otherwise need a range per element in FOSetSequenceOfRanges.<br>
+ * Operations against ranges and sequences of ranges work a container at a time, where containers wholly inside or outside
+ * of a range are kept or dropped as they are, and only the containers on the boundaries are masked.<br>
+ * The set is immutable, and it's never empty: the factory methods return an EmptySet instead. Since the operations on
+ * FOSetSequenceOfRanges may give either form (see createBest()), it's named, hashed and compared equal the same way as
+ * the sequence of ranges with the same elements.
+ */
+public class FOSetBitmap implements FOOrderedEnumerableSet<FOInteger>
+{
+	// The largest container kept as an array, above this a bitmap is smaller.
+	protected static final int ARRAY_MAX = 4096;
+	protected static final int BITMAP_WORDS = 1024;
+	// The shortest average range length for which a sequence of ranges is preferred to a bitmap when we have the choice.
+	protected static final int SEQUENCE_MIN_AVERAGE_RANGE = 16;
+
+	final protected String mName;
+	final protected int[] mKeys;
+	final protected Container[] mContainers;
+	final protected int mSize;
+	protected int mHash; // worked out when first needed
+	
+	/**
+	 * Holds the low 16 bits of the elements that share the same high 16 bits.
+	 * Only one of mArray and mWords is set depending on whether the container is sparse or dense.
+	 */
+	protected static final class Container
+	{
+		final char[] mArray;
+		final long[] mWords;
+		final int mCardinality;
+		
+		Container(char[] array, int cardinality)
+		{
+			mArray = array;
+			mWords = null;
+			mCardinality = cardinality;
+		}
+		
+		Container(long[] words, int cardinality)
+		{
+			mArray = null;
+			mWords = words;
+			mCardinality = cardinality;
+		}
+		
+		/**
+		 * Creates the container for the given bitmap choosing the smallest representation.
+		 * @return The container, or null if the bitmap has no bits set.
+		 */
+		static Container createBest(long[] words)
+		{
+			int cardinality = 0;
+			for(long word : words)
+				cardinality += Long.bitCount(word);
+			if(cardinality == 0)
+				return null;
+			if(cardinality > ARRAY_MAX)
+				return new Container(words, cardinality);
+			
+			char[] array = new char[cardinality];
+			int ix = 0;
+			for(int w = 0; w < words.length; w++)
+			{
+				long word = words[w];
+				while(word != 0)
+				{
+					array[ix++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new Container(array, cardinality);
+		}
+		
+		/**
+		 * Creates the container for the given sorted array of low bits choosing the smallest representation.
+		 * @return The container, or null if there are no elements.
+		 */
+		static Container createBest(char[] array, int cardinality)
+		{
+			if(cardinality == 0)
+				return null;
+			if(cardinality > ARRAY_MAX)
+			{
+				long[] words = new long[BITMAP_WORDS];
+				for(int i = 0; i < cardinality; i++)
+					words[array[i] >>> 6] |= 1L << array[i];
+				return new Container(words, cardinality);
+			}
+			return new Container(cardinality == array.length ? array : Arrays.copyOf(array, cardinality), cardinality);
+		}
+		
+		/**
+		 * Creates a dense container with the given range of low bits set, regardless of how many there are.
+		 * This is only meant for masking other containers.
+		 */
+		static Container createMask(int[] firsts, int[] lasts, int start, int containerFirst, int containerLast)
+		{
+			long[] words = new long[BITMAP_WORDS];
+			int cardinality = 0;
+			for(int r = start; r < firsts.length && firsts[r] <= containerLast; r++)
+			{
+				int lowFirst = Math.max(firsts[r], containerFirst) - containerFirst;
+				int lowLast = Math.min(lasts[r], containerLast) - containerFirst;
+				setRange(words, lowFirst, lowLast);
+				cardinality += lowLast - lowFirst + 1;
+			}
+			return new Container(words, cardinality);
+		}
+		
+		static void setRange(long[] words, int lowFirst, int lowLast)
+		{
+			int wordFirst = lowFirst >>> 6;
+			int wordLast = lowLast >>> 6;
+			long firstMask = -1L << lowFirst;
+			long lastMask = -1L >>> (63 - (lowLast & 63));
+			if(wordFirst == wordLast)
+				words[wordFirst] |= firstMask & lastMask;
+			else
+			{
+				words[wordFirst] |= firstMask;
+				for(int w = wordFirst + 1; w < wordLast; w++)
+					words[w] = -1L;
+				words[wordLast] |= lastMask;
+			}
+		}
+		
+		boolean contains(int low)
+		{
+			if(mArray != null)
+				return Arrays.binarySearch(mArray, 0, mCardinality, (char) low) >= 0;
+			return (mWords[low >>> 6] & (1L << low)) != 0;
+		}
+		
+		/**
+		 * @return The smallest low value at or after the given one, or -1 if there's none.
+		 */
+		int ceiling(int low)
+		{
+			if(mArray != null)
+			{
+				int ix = Arrays.binarySearch(mArray, 0, mCardinality, (char) low);
+				if(ix < 0)
+					ix = -ix - 1;
+				return ix < mCardinality ? mArray[ix] : -1;
+			}
+			
+			int w = low >>> 6;
+			long word = mWords[w] & (-1L << low);
+			while(true)
+			{
+				if(word != 0)
+					return (w << 6) + Long.numberOfTrailingZeros(word);
+				if(++w == BITMAP_WORDS)
+					return -1;
+				word = mWords[w];
+			}
+		}
+
+		/**
+		 * @return The largest low value at or before the given one, or -1 if there's none.
+		 */
+		int floor(int low)
+		{
+			if(mArray != null)
+			{
+				int ix = Arrays.binarySearch(mArray, 0, mCardinality, (char) low);
+				if(ix < 0)
+					ix = -ix - 2;
+				return ix >= 0 ? mArray[ix] : -1;
+			}
+			
+			int w = low >>> 6;
+			long word = mWords[w] & (-1L >>> (63 - (low & 63)));
+			while(true)
+			{
+				if(word != 0)
+					return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+				if(--w < 0)
+					return -1;
+				word = mWords[w];
+			}
+		}
+		
+		static Container and(Container a, Container b)
+		{
+			if(a.mArray != null && b.mArray != null)
+			{
+				char[] array = new char[Math.min(a.mCardinality, b.mCardinality)];
+				int count = 0;
+				int ia = 0;
+				int ib = 0;
+				while(ia < a.mCardinality && ib < b.mCardinality)
+				{
+					if(a.mArray[ia] < b.mArray[ib])
+						ia++;
+					else if(a.mArray[ia] > b.mArray[ib])
+						ib++;
+					else
+					{
+						array[count++] = a.mArray[ia++];
+						ib++;
+					}
+				}
+				return createBest(array, count);
+			}
+			else if(a.mArray != null)
+				return filter(a, b, true);
+			else if(b.mArray != null)
+				return filter(b, a, true);
+			
+			long[] words = new long[BITMAP_WORDS];
+			for(int w = 0; w < BITMAP_WORDS; w++)
+				words[w] = a.mWords[w] & b.mWords[w];
+			return createBest(words);
+		}
+		
+		static Container or(Container a, Container b)
+		{
+			if(a.mArray != null && b.mArray != null)
+			{
+				char[] array = new char[a.mCardinality + b.mCardinality];
+				int count = 0;
+				int ia = 0;
+				int ib = 0;
+				while(ia < a.mCardinality || ib < b.mCardinality)
+				{
+					if(ib == b.mCardinality || (ia < a.mCardinality && a.mArray[ia] < b.mArray[ib]))
+						array[count++] = a.mArray[ia++];
+					else if(ia == a.mCardinality || b.mArray[ib] < a.mArray[ia])
+						array[count++] = b.mArray[ib++];
+					else
+					{
+						array[count++] = a.mArray[ia++];
+						ib++;
+					}
+				}
+				return createBest(array, count);
+			}
+			
+			if(a.mArray != null)
+			{
+				Container swap = a;
+				a = b;
+				b = swap;
+			}
+			long[] words = a.mWords.clone();
+			if(b.mArray != null)
+			{
+				for(int i = 0; i < b.mCardinality; i++)
+					words[b.mArray[i] >>> 6] |= 1L << b.mArray[i];
+			}
+			else
+			{
+				for(int w = 0; w < BITMAP_WORDS; w++)
+					words[w] |= b.mWords[w];
+			}
+			return createBest(words);
+		}
+		
+		static Container andNot(Container a, Container b)
+		{
+			if(a.mArray != null)
+				return filter(a, b, false);
+			
+			long[] words = a.mWords.clone();
+			if(b.mArray != null)
+			{
+				for(int i = 0; i < b.mCardinality; i++)
+					words[b.mArray[i] >>> 6] &= ~(1L << b.mArray[i]);
+			}
+			else
+			{
+				for(int w = 0; w < BITMAP_WORDS; w++)
+					words[w] &= ~b.mWords[w];
+			}
+			return createBest(words);
+		}
+		
+		/**
+		 * Keeps the elements of the array container which are in (or not in) the other container.
+		 */
+		static Container filter(Container arrayContainer, Container other, boolean keepContained)
+		{
+			char[] array = new char[arrayContainer.mCardinality];
+			int count = 0;
+			for(int i = 0; i < arrayContainer.mCardinality; i++)
+				if(other.contains(arrayContainer.mArray[i]) == keepContained)
+					array[count++] = arrayContainer.mArray[i];
+			return count == arrayContainer.mCardinality ? arrayContainer : createBest(array, count);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			// Containers are always in their smallest representation, so the same elements mean the same representation.
+			return mArray != null ? Arrays.hashCode(mArray) : Arrays.hashCode(mWords);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			Container other = (Container) obj;
+			if(mCardinality != other.mCardinality)
+				return false;
+			if(mArray != null)
+				return other.mArray != null && Arrays.equals(mArray, other.mArray);
+			return other.mWords != null && Arrays.equals(mWords, other.mWords);
+		}
+	}
+	
+	protected FOSetBitmap(String name, int[] keys, Container[] containers)
+	{
+		assert keys.length > 0 && keys.length == containers.length;
+		mName = name;
+		mKeys = keys;
+		mContainers = containers;
+		int size = 0;
+		for(Container container : containers)
+			size += container.mCardinality;
+		mSize = size;
+	}
+	
+	protected static FOOrderedEnumerableSet<FOInteger> create(String name, int[] keys, Container[] containers, int count)
+	{
+		if(count == 0)
+			return new FOSetUtils.EmptySet<FOInteger>(FOInteger.class);
+		return new FOSetBitmap(name, Arrays.copyOf(keys, count), Arrays.copyOf(containers, count));
+	}
+	
+	protected static int getKey(int value)
+	{
+		return value >> 16;
+	}
+	
+	protected static int getLow(int value)
+	{
+		return value & 0xFFFF;
+	}
+	
+	protected static int getContainerFirst(int key)
+	{
+		return key << 16;
+	}
+	
+	/**
+	 * Creates the bitmap of the given integers, which can be in any order and have duplicates.
+	 * @param name Name for the set, may be null.
+	 * @param values
+	 * @return The bitmap, or an empty set if there are no values.
+	 */
+	public static FOOrderedEnumerableSet<FOInteger> createFromInts(String name, int... values)
+	{
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		
+		int[] keys = new int[sorted.length];
+		Container[] containers = new Container[sorted.length];
+		int count = 0;
+		int i = 0;
+		while(i < sorted.length)
+		{
+			int key = getKey(sorted[i]);
+			char[] array = new char[Math.min(sorted.length - i, 1 << 16)];
+			int cardinality = 0;
+			for(; i < sorted.length && getKey(sorted[i]) == key; i++)
+			{
+				char low = (char) getLow(sorted[i]);
+				if(cardinality == 0 || array[cardinality - 1] != low)
+					array[cardinality++] = low;
+			}
+			keys[count] = key;
+			containers[count++] = Container.createBest(array, cardinality);
+		}
+		return create(name, keys, containers, count);
+	}
+	
+	/**
+	 * Creates the bitmap of the given finite ranges, which have to be in order and disjoint.
+	 * @param name Name for the set, may be null.
+	 * @param firsts
+	 * @param lasts
+	 * @param count Number of ranges to use from the arrays.
+	 * @return The bitmap, or an empty set if there are no ranges.
+	 */
+	public static FOOrderedEnumerableSet<FOInteger> createFromBounds(String name, int[] firsts, int[] lasts, int count)
+	{
+		if(count > 0 && (firsts[0] == Integer.MIN_VALUE || lasts[count - 1] == Integer.MAX_VALUE))
+			throw new FORuntimeException("Can't create a bitmap for an infinite set.");
+		
+		int[] keys = new int[count];
+		Container[] containers = new Container[count];
+		int containerCount = 0;
+		long[] words = null;
+		int currentKey = 0;
+		for(int r = 0; r < count; r++)
+		{
+			for(int key = getKey(firsts[r]); key <= getKey(lasts[r]); key++)
+			{
+				if(words == null || key != currentKey)
+				{
+					if(words != null)
+					{
+						if(containerCount == keys.length)
+						{
+							keys = Arrays.copyOf(keys, keys.length * 2);
+							containers = Arrays.copyOf(containers, containers.length * 2);
+						}
+						keys[containerCount] = currentKey;
+						containers[containerCount++] = Container.createBest(words);
+					}
+					words = new long[BITMAP_WORDS];
+					currentKey = key;
+				}
+				int containerFirst = getContainerFirst(key);
+				Container.setRange(words,
+						Math.max(firsts[r], containerFirst) - containerFirst,
+						Math.min(lasts[r], containerFirst + 0xFFFF) - containerFirst);
+			}
+		}
+		if(words != null)
+		{
+			if(containerCount == keys.length)
+			{
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				containers = Arrays.copyOf(containers, containers.length + 1);
+			}
+			keys[containerCount] = currentKey;
+			containers[containerCount++] = Container.createBest(words);
+		}
+		return create(name, keys, containers, containerCount);
+	}
+	
+	/**
+	 * Creates the smallest set for the given ranges, which have to be in order and disjoint: a single range or a sequence
+	 * when the ranges are long (or infinite), and a bitmap when they're short.
+	 * @param name Name for the set, may be null.
+	 * @param firsts
+	 * @param lasts
+	 * @return
+	 */
+	public static FOOrderedEnumerableSet<FOInteger> createBest(String name, int[] firsts, int[] lasts)
+	{
+		int count = firsts.length;
+		if(count <= 1 || firsts[0] == Integer.MIN_VALUE || lasts[count - 1] == Integer.MAX_VALUE)
+			return FOSetSequenceOfRanges.createFromBounds(name, firsts, lasts, count);
+		
+		long size = 0;
+		for(int r = 0; r < count; r++)
+			size += (long) lasts[r] - firsts[r] + 1;
+		if(size < (long) count * SEQUENCE_MIN_AVERAGE_RANGE)
+			return createFromBounds(name, firsts, lasts, count);
+		return FOSetSequenceOfRanges.createFromBounds(name, firsts, lasts, count);
+	}
+	
+	//------ Set incompleteness functionality ---------------------------------------------------
+	// This couldn've been a based class functionality to avoid duplication, but I'd rather leave the freedom of implentation and copy.
+	protected boolean mIsIncompleteSuperset;
+	@Override
+	public boolean isIncompleteSuperset() { return mIsIncompleteSuperset; }
+	@Override
+	public void setIncompleteSuperset(boolean isIncomplete) { mIsIncompleteSuperset = isIncomplete; }	
+	//-------------------------------------------------------------------------------------------	
+
+	@Override
+	public int size()
+	{
+		return mSize;
+	}
+
+	@Override
+	public String getName()
+	{
+		if(mName != null)
+			return mName;
+		// Named by its runs the same way as FOSetSequenceOfRanges, since the same set may be kept either way.
+		StringBuilder sb = new StringBuilder();
+		final int MAX_LEN = 100;
+		sb.append(mKeys[0] < 0 ? "Z" : "N");
+		sb.append(" ");
+		int[][] runs = getRuns();
+		for(int r = 0; r < runs[0].length; r++)
+		{
+			if(sb.length() > 2)
+				sb.append(" U ");
+			sb.append("[").append(runs[0][r]).append(", ").append(runs[1][r]).append("]");
+			if(sb.length() + 3 > MAX_LEN)
+			{
+				sb.append("...");
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		if(o == null || !(o instanceof FOInteger))
+			throw new FORuntimeException("Unexpected object: " + o);
+		
+		return containsInt(((FOInteger) o).getInteger());
+	}
+	
+	boolean containsInt(int check)
+	{
+		int ix = Arrays.binarySearch(mKeys, getKey(check));
+		return ix >= 0 && mContainers[ix].contains(getLow(check));
+	}
+	
+	//------ Set operations ---------------------------------------------------------------------
+	
+	protected static FOOrderedEnumerableSet<FOInteger> and(String name, FOSetBitmap a, FOSetBitmap b)
+	{
+		int[] keys = new int[Math.min(a.mKeys.length, b.mKeys.length)];
+		Container[] containers = new Container[keys.length];
+		int count = 0;
+		int ia = 0;
+		int ib = 0;
+		while(ia < a.mKeys.length && ib < b.mKeys.length)
+		{
+			if(a.mKeys[ia] < b.mKeys[ib])
+				ia++;
+			else if(a.mKeys[ia] > b.mKeys[ib])
+				ib++;
+			else
+			{
+				Container container = Container.and(a.mContainers[ia], b.mContainers[ib]);
+				if(container != null)
+				{
+					keys[count] = a.mKeys[ia];
+					containers[count++] = container;
+				}
+				ia++;
+				ib++;
+			}
+		}
+		return create(name, keys, containers, count);
+	}
+	
+	protected static FOOrderedEnumerableSet<FOInteger> or(String name, FOSetBitmap a, FOSetBitmap b)
+	{
+		int[] keys = new int[a.mKeys.length + b.mKeys.length];
+		Container[] containers = new Container[keys.length];
+		int count = 0;
+		int ia = 0;
+		int ib = 0;
+		while(ia < a.mKeys.length || ib < b.mKeys.length)
+		{
+			if(ib == b.mKeys.length || (ia < a.mKeys.length && a.mKeys[ia] < b.mKeys[ib]))
+			{
+				keys[count] = a.mKeys[ia];
+				containers[count++] = a.mContainers[ia++];
+			}
+			else if(ia == a.mKeys.length || b.mKeys[ib] < a.mKeys[ia])
+			{
+				keys[count] = b.mKeys[ib];
+				containers[count++] = b.mContainers[ib++];
+			}
+			else
+			{
+				keys[count] = a.mKeys[ia];
+				containers[count++] = Container.or(a.mContainers[ia++], b.mContainers[ib++]);
+			}
+		}
+		return create(name, keys, containers, count);
+	}
+	
+	protected static FOOrderedEnumerableSet<FOInteger> andNot(String name, FOSetBitmap a, FOSetBitmap b)
+	{
+		int[] keys = new int[a.mKeys.length];
+		Container[] containers = new Container[keys.length];
+		int count = 0;
+		int ib = 0;
+		for(int ia = 0; ia < a.mKeys.length; ia++)
+		{
+			while(ib < b.mKeys.length && b.mKeys[ib] < a.mKeys[ia])
+				ib++;
+			Container container = a.mContainers[ia];
+			if(ib < b.mKeys.length && b.mKeys[ib] == a.mKeys[ia])
+				container = Container.andNot(container, b.mContainers[ib]);
+			if(container != null)
+			{
+				keys[count] = a.mKeys[ia];
+				containers[count++] = container;
+			}
+		}
+		return create(name, keys, containers, count);
+	}
+	
+	/**
+	 * Keeps (or takes out) the elements that are in the given ranges, which have to be in order and disjoint.
+	 * Containers that are wholly inside or outside of a range are used as they are, only the others get masked.
+	 */
+	protected FOOrderedEnumerableSet<FOInteger> restrict(String name, int[] firsts, int[] lasts, boolean keep)
+	{
+		int[] keys = new int[mKeys.length];
+		Container[] containers = new Container[keys.length];
+		int count = 0;
+		int r = 0;
+		for(int i = 0; i < mKeys.length; i++)
+		{
+			int containerFirst = getContainerFirst(mKeys[i]);
+			int containerLast = containerFirst + 0xFFFF;
+			// Skip the ranges that end before this container, keys are in order so these can't matter for the rest either.
+			while(r < firsts.length && lasts[r] < containerFirst)
+				r++;
+			
+			Container container = mContainers[i];
+			Container result;
+			if(r == firsts.length || firsts[r] > containerLast)
+				result = keep ? null : container; // no range overlaps
+			else if(firsts[r] <= containerFirst && lasts[r] >= containerLast)
+				result = keep ? container : null; // a range covers it all
+			else
+			{
+				Container mask = Container.createMask(firsts, lasts, r, containerFirst, containerLast);
+				result = keep ? Container.and(container, mask) : Container.andNot(container, mask);
+			}
+			
+			if(result != null)
+			{
+				keys[count] = mKeys[i];
+				containers[count++] = result;
+			}
+		}
+		if(count == mKeys.length && !keep)
+		{
+			boolean unchanged = true;
+			for(int i = 0; i < count && unchanged; i++)
+				unchanged = containers[i] == mContainers[i];
+			if(unchanged)
+				return this;
+		}
+		return create(name, keys, containers, count);
+	}
+	
+	/**
+	 * Finds the contiguous runs of elements in this set.
+	 * @return The firsts and the lasts of the runs, in order.
+	 */
+	protected int[][] getRuns()
+	{
+		int[] firsts = new int[Math.min(mSize, 16)];
+		int[] lasts = new int[firsts.length];
+		int count = 0;
+		BitmapIterator it = new BitmapIterator();
+		while(it.hasNext())
+		{
+			int value = it.nextInt();
+			if(count > 0 && lasts[count - 1] + 1 == value)
+				lasts[count - 1] = value;
+			else
+			{
+				if(count == firsts.length)
+				{
+					firsts = Arrays.copyOf(firsts, count * 2);
+					lasts = Arrays.copyOf(lasts, count * 2);
+				}
+				firsts[count] = value;
+				lasts[count++] = value;
+			}
+		}
+		return new int[][] { Arrays.copyOf(firsts, count), Arrays.copyOf(lasts, count) };
+	}
+	
+	/**
+	 * Keeps the elements of this set that are (or aren't) in the given set, checking them one by one.
+	 */
+	protected FOOrderedEnumerableSet<FOInteger> filter(String name, FOSet<FOInteger> set, boolean keepContained)
+	{
+		int[] values = new int[mSize];
+		int count = 0;
+		BitmapIterator it = new BitmapIterator();
+		while(it.hasNext())
+		{
+			int value = it.nextInt();
+			if(set.contains(FOIntImpl.valueOf(value)) == keepContained)
+				values[count++] = value;
+		}
+		if(count == mSize)
+			return this;
+		return createFromInts(name, Arrays.copyOf(values, count));
+	}
+	
+	/**
+	 * Union of two sets of integers, where either can be a bitmap, a range or a sequence of ranges.
+	 * @return The union, or null if either isn't one of these.
+	 */
+	public static FOOrderedEnumerableSet<FOInteger> createUnion(FOSet<FOInteger> set1, FOSet<FOInteger> set2)
+	{
+		if(set1 instanceof FOSetBitmap && set2 instanceof FOSetBitmap)
+			return or(null, (FOSetBitmap) set1, (FOSetBitmap) set2);
+		
+		if(set2 instanceof FOSetBitmap)
+		{
+			FOSet<FOInteger> swap = set1;
+			set1 = set2;
+			set2 = swap;
+		}
+		if(set1 instanceof FOSetBitmap)
+		{
+			int[][] bounds = FOSetSequenceOfRanges.getBounds(set2);
+			if(bounds == null)
+				return null;
+			int[][] runs = ((FOSetBitmap) set1).getRuns();
+			int[][] result = FOSetSequenceOfRanges.union(runs[0], runs[1], bounds[0], bounds[1]);
+			return createBest(null, result[0], result[1]);
+		}
+		
+		return FOSetSequenceOfRanges.createUnion(set1, set2);
+	}
+	
+	/**
+	 * Intersection of two sets of integers, where either can be a bitmap, a range or a sequence of ranges.
+	 * @return The intersection, or null if either isn't one of these.
+	 */
+	public static FOOrderedEnumerableSet<FOInteger> createIntersection(FOSet<FOInteger> set1, FOSet<FOInteger> set2)
+	{
+		if(set1 instanceof FOSetBitmap && set2 instanceof FOSetBitmap)
+			return and(null, (FOSetBitmap) set1, (FOSetBitmap) set2);
+		
+		if(set2 instanceof FOSetBitmap)
+		{
+			FOSet<FOInteger> swap = set1;
+			set1 = set2;
+			set2 = swap;
+		}
+		if(set1 instanceof FOSetBitmap)
+		{
+			int[][] bounds = FOSetSequenceOfRanges.getBounds(set2);
+			if(bounds == null)
+				return null;
+			return ((FOSetBitmap) set1).restrict(null, bounds[0], bounds[1], true);
+		}
+		
+		return FOSetSequenceOfRanges.createIntersection(set1, set2);
+	}
+
+	@Override
+	public FOSet<FOInteger> complementOut(FOSet<FOInteger> relativeSet)
+	{
+		if(relativeSet == this)
+			return new FOSetUtils.EmptySet<>(FOInteger.class);
+		String name = mName != null ? relativeSet.getName() + " \\ " + mName : null;
+		
+		if(relativeSet instanceof FOSetBitmap)
+			return andNot(name, (FOSetBitmap) relativeSet, this);
+		
+		int[][] bounds = FOSetSequenceOfRanges.getBounds(relativeSet);
+		if(bounds != null)
+		{
+			// The result may well be infinite, so we work it out as ranges, and then see what suits it best.
+			int[][] runs = getRuns();
+			int[][] result = FOSetSequenceOfRanges.difference(bounds[0], bounds[1], runs[0], runs[1]);
+			if(relativeSet instanceof FOSetRangedNaturals && result[0].length == 1
+					&& result[0][0] == bounds[0][0] && result[1][0] == bounds[1][0])
+				return relativeSet; // nothing taken out
+			return createBest(name, result[0], result[1]);
+		}
+		
+		// Any other finite set we can go through.
+		if(relativeSet instanceof FOEnumerableSet && relativeSet.size() != Integer.MAX_VALUE)
+		{
+			int[] values = new int[relativeSet.size()];
+			int count = 0;
+			for(FOInteger element : (FOEnumerableSet<FOInteger>) relativeSet)
+				if(!containsInt(element.getInteger()))
+					values[count++] = element.getInteger();
+			return createFromInts(name, Arrays.copyOf(values, count));
+		}
+		
+		return null;
+	}
+
+	@Override
+	public FOSet<FOInteger> complementIn(FOSet<FOInteger> relativeSet)
+	{
+		if(relativeSet == this)
+			return new FOSetUtils.EmptySet<>(FOInteger.class);
+		String name = mName != null ? mName + " \\ " + relativeSet.getName() : null;
+		
+		if(relativeSet instanceof FOSetBitmap)
+			return andNot(name, this, (FOSetBitmap) relativeSet);
+		
+		int[][] bounds = FOSetSequenceOfRanges.getBounds(relativeSet);
+		if(bounds != null)
+			return restrict(name, bounds[0], bounds[1], false);
+		
+		// We can't know which elements to take out of an incomplete superset.
+		if(relativeSet.isIncompleteSuperset())
+			return null;
+		// This set is finite, so we can check our elements against any other set.
+		return filter(name, relativeSet, false);
+	}
+	
+	//-------------------------------------------------------------------------------------------	
+	
+	/**
+	 * Goes through the containers in key order, and the low bits of each in order, so the integers are in ascending order.
+	 */
+	protected class BitmapIterator implements Iterator<FOInteger>
+	{
+		int mContainer;
+		// Index in the array, or index of the next word to load for bitmaps.
+		int mIx;
+		// Remaining bits of the current word for bitmaps.
+		long mWord;
+		
+		@Override
+		public boolean hasNext()
+		{
+			while(mContainer < mContainers.length)
+			{
+				Container container = mContainers[mContainer];
+				if(container.mArray != null)
+				{
+					if(mIx < container.mCardinality)
+						return true;
+				}
+				else
+				{
+					while(mWord == 0 && mIx < BITMAP_WORDS)
+						mWord = container.mWords[mIx++];
+					if(mWord != 0)
+						return true;
+				}
+				mContainer++;
+				mIx = 0;
+				mWord = 0;
+			}
+			return false;
+		}
+		
+		int nextInt()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Container container = mContainers[mContainer];
+			int containerFirst = getContainerFirst(mKeys[mContainer]);
+			if(container.mArray != null)
+				return containerFirst | container.mArray[mIx++];
+			
+			int low = ((mIx - 1) << 6) + Long.numberOfTrailingZeros(mWord);
+			mWord &= mWord - 1;
+			return containerFirst | low;
+		}
+
+		@Override
+		public FOInteger next()
+		{
+			return FOIntImpl.valueOf(nextInt());
+		}
+	}
+
+	@Override
+	public Iterator<FOInteger> iterator()
+	{
+		return new BitmapIterator();
+	}
+
+	@Override
+	public FOOrderedEnumerableSet<FOInteger> constrainToRange(FOInteger first, FOInteger last)
+	{
+		int intFirst = first.getInteger();
+		int intLast = last.getInteger();
+		if(intFirst > intLast)
+			return new FOSetUtils.EmptySet<>(FOInteger.class);
+		
+		FOOrderedEnumerableSet<FOInteger> constrained = restrict(null, new int[] { intFirst }, new int[] { intLast }, true);
+		if(constrained instanceof FOSetBitmap && ((FOSetBitmap) constrained).mSize == mSize)
+			return this;
+		return constrained;
+	}
+
+	@Override
+	public int getConstrainedSize(FORelation<FOInteger> relation, List<FOTerm> terms) {
+		// TODO Auto-generated method stub
+		return 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "FOSetBitmap [" + getName() + "]";
+	}
+
+	@Override
+	public Comparator<FOElement> getOrder()
+	{
+		return FOElementImpl.FOIntImpl.DEFAULT_COMPARATOR;
+	}
+
+	@Override
+	public FOInteger getFirstOrInfinite()
+	{
+		return FOIntImpl.valueOf(getContainerFirst(mKeys[0]) | mContainers[0].ceiling(0));
+	}
+
+	@Override
+	public FOInteger getLastOrInfinite()
+	{
+		int last = mKeys.length - 1;
+		return FOIntImpl.valueOf(getContainerFirst(mKeys[last]) | mContainers[last].floor(0xFFFF));
+	}
+
+	@Override
+	public FOInteger getNextOrNull(FOInteger element)
+	{
+		int eltInt = element.getInteger();
+		if(eltInt == Integer.MAX_VALUE)
+			return null;
+		int next = eltInt + 1;
+		
+		int ix = Arrays.binarySearch(mKeys, getKey(next));
+		if(ix >= 0)
+		{
+			int low = mContainers[ix].ceiling(getLow(next));
+			if(low >= 0)
+				return FOIntImpl.valueOf(getContainerFirst(mKeys[ix]) | low);
+			ix++;
+		}
+		else
+			ix = -ix - 1;
+		
+		if(ix == mKeys.length)
+			return null;
+		return FOIntImpl.valueOf(getContainerFirst(mKeys[ix]) | mContainers[ix].ceiling(0));
+	}
+
+	@Override
+	public FOInteger getPreviousOrNull(FOInteger element)
+	{
+		int eltInt = element.getInteger();
+		if(eltInt == Integer.MIN_VALUE)
+			return null;
+		int prev = eltInt - 1;
+		
+		int ix = Arrays.binarySearch(mKeys, getKey(prev));
+		if(ix >= 0)
+		{
+			int low = mContainers[ix].floor(getLow(prev));
+			if(low >= 0)
+				return FOIntImpl.valueOf(getContainerFirst(mKeys[ix]) | low);
+		}
+		else
+			ix = -ix - 1;
+		ix--;
+		
+		if(ix < 0)
+			return null;
+		return FOIntImpl.valueOf(getContainerFirst(mKeys[ix]) | mContainers[ix].floor(0xFFFF));
+	}
+
+	@Override
+	public Class<FOInteger> getType() { return FOInteger.class;}
+
+	@Override
+	public int hashCode() {
+		// Hashed as ranges, so that it matches the FOSetSequenceOfRanges of the same elements.
+		int hash = mHash;
+		if(hash == 0)
+		{
+			int[][] runs = getRuns();
+			hash = FOSetSequenceOfRanges.hashBounds(runs[0], runs[1]);
+			mHash = hash;
+		}
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (obj instanceof FOSetSequenceOfRanges)
+		{
+			// The same set may be kept either way, see createBest().
+			FOSetSequenceOfRanges seq = (FOSetSequenceOfRanges) obj;
+			if(mSize != seq.mSize)
+				return false;
+			int[][] runs = getRuns();
+			return Arrays.equals(runs[0], seq.mFirsts) && Arrays.equals(runs[1], seq.mLasts);
+		}
+		if (getClass() != obj.getClass())
+			return false;
+		FOSetBitmap other = (FOSetBitmap) obj;
+		return mSize == other.mSize && Arrays.equals(mKeys, other.mKeys) && Arrays.equals(mContainers, other.mContainers);
+	}
+}
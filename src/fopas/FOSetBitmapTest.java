@@ -0,0 +1,183 @@
+//    Copyright (c) 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package fopas;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import fopas.FOSetUtils.EmptySet;
+import fopas.basics.FOElement.FOInteger;
+import fopas.basics.FOOrderedEnumerableSet;
+import fopas.basics.FOSet;
+
+public class FOSetBitmapTest {
+
+	// x mod 7 = 3 around zero, plus a dense block so both kinds of container are used.
+	static TreeSet<Integer> createExpected()
+	{
+		TreeSet<Integer> expected = new TreeSet<>();
+		for(int i = -100000; i < 200000; i++)
+			if(Math.floorMod(i, 7) == 3)
+				expected.add(i);
+		for(int i = 300000; i < 310000; i++)
+			expected.add(i);
+		return expected;
+	}
+	
+	static FOOrderedEnumerableSet<FOInteger> createBitmap(TreeSet<Integer> values)
+	{
+		int[] ints = new int[values.size()];
+		int ix = 0;
+		for(int value : values)
+			ints[ix++] = value;
+		return FOSetBitmap.createFromInts(null, ints);
+	}
+	
+	static void assertSameElements(TreeSet<Integer> expected, FOSet<FOInteger> set, int checkFirst, int checkLast)
+	{
+		for(int i = checkFirst; i <= checkLast; i++)
+			assertEquals("Element: " + i, expected.contains(i), set.contains(FOElementImpl.FOIntImpl.valueOf(i)));
+		assertEquals(expected.size(), set.size());
+	}
+	
+	@Test
+	public void testContainsAndOrder()
+	{
+		TreeSet<Integer> expected = createExpected();
+		FOOrderedEnumerableSet<FOInteger> bitmap = createBitmap(expected);
+		assertEquals(FOSetBitmap.class, bitmap.getClass());
+		assertSameElements(expected, bitmap, -110000, 320000);
+		
+		// Iterates in ascending order.
+		int ix = 0;
+		Integer[] expectedArray = expected.toArray(new Integer[0]);
+		for(FOInteger elt : bitmap)
+			assertEquals(expectedArray[ix++].intValue(), elt.getInteger());
+		assertEquals(expected.size(), ix);
+		
+		assertEquals(expected.first().intValue(), bitmap.getFirstOrInfinite().getInteger());
+		assertEquals(expected.last().intValue(), bitmap.getLastOrInfinite().getInteger());
+		for(int i = -100010; i < 310010; i += 997)
+		{
+			FOInteger next = bitmap.getNextOrNull(FOElementImpl.FOIntImpl.valueOf(i));
+			assertEquals(expected.higher(i), next == null ? null : next.getInteger());
+			FOInteger prev = bitmap.getPreviousOrNull(FOElementImpl.FOIntImpl.valueOf(i));
+			assertEquals(expected.lower(i), prev == null ? null : prev.getInteger());
+		}
+		
+		// Same elements however they're put together.
+		FOSet<FOInteger> block = FOSetBitmap.createFromBounds(null, new int[] { 300000 }, new int[] { 309999 }, 1);
+		FOSet<FOInteger> sparse = bitmap.constrainToRange(FOElementImpl.FOIntImpl.valueOf(-100000), FOElementImpl.FOIntImpl.valueOf(200000));
+		assertEquals(bitmap, FOSetBitmap.createUnion(block, sparse));
+		assertEquals(bitmap.hashCode(), FOSetBitmap.createUnion(sparse, block).hashCode());
+		assertEquals("N [0, 0] U [2, 2] U [5, 6]", FOSetBitmap.createFromInts(null, 5, 0, 2, 6, 5).getName());
+		
+		// Or whichever way they're kept.
+		FOSet<FOInteger> asBitmap = FOSetBitmap.createFromInts(null, 0, 2, 5, 6);
+		FOSet<FOInteger> asSequence = FOSetSequenceOfRanges.createFromBounds(null, new int[] { 0, 2, 5 }, new int[] { 0, 2, 6 }, 3);
+		assertEquals(asBitmap, asSequence);
+		assertEquals(asSequence, asBitmap);
+		assertEquals(asSequence.hashCode(), asBitmap.hashCode());
+		assertEquals(asSequence.getName(), asBitmap.getName());
+		assertNotEquals(asSequence, FOSetBitmap.createFromInts(null, 0, 2, 5));
+	}
+
+	@Test
+	public void testOperationsWithRanges()
+	{
+		TreeSet<Integer> expected = createExpected();
+		FOOrderedEnumerableSet<FOInteger> bitmap = createBitmap(expected);
+		
+		// Cuts through the middle of containers as well as covering some whole.
+		FOSetRangedNaturals range = new FOSetRangedNaturals(-1000, 305000);
+		FOOrderedEnumerableSet<FOInteger> sequence = FOSetSequenceOfRanges.createFromBounds(null,
+				new int[] { -50000, 10, 150000 }, new int[] { -49000, 65536 * 2 + 5, Integer.MAX_VALUE }, 3);
+		
+		for(FOSet<FOInteger> other : Arrays.asList(range, sequence))
+		{
+			TreeSet<Integer> inOther = new TreeSet<>();
+			for(int i = -110000; i <= 320000; i++)
+				if(other.contains(FOElementImpl.FOIntImpl.valueOf(i)))
+					inOther.add(i);
+			
+			// this \ other through both directions of complementAcross.
+			TreeSet<Integer> bitmapMinusOther = new TreeSet<>(expected);
+			bitmapMinusOther.removeAll(inOther);
+			FOSet<FOInteger> difference = other.complement(bitmap);
+			assertEquals(FOSetBitmap.class, difference.getClass());
+			assertSameElements(bitmapMinusOther, difference, -110000, 320000);
+			
+			TreeSet<Integer> intersection = new TreeSet<>(expected);
+			intersection.retainAll(inOther);
+			assertSameElements(intersection, FOSetBitmap.createIntersection(other, bitmap), -110000, 320000);
+			
+			FOSet<FOInteger> union = FOSetBitmap.createUnion(bitmap, other);
+			for(int i = -110000; i <= 320000; i++)
+				assertEquals(expected.contains(i) || inOther.contains(i), union.contains(FOElementImpl.FOIntImpl.valueOf(i)));
+		}
+		
+		// other \ this, which stays a sequence when it's infinite.
+		FOSet<FOInteger> rangeMinusBitmap = bitmap.complement(range);
+		assertEquals(FOSetBitmap.class, rangeMinusBitmap.getClass());
+		FOSet<FOInteger> seqMinusBitmap = bitmap.complement(sequence);
+		assertEquals(FOSetSequenceOfRanges.class, seqMinusBitmap.getClass());
+		for(int i = -110000; i <= 320000; i++)
+		{
+			FOInteger elt = FOElementImpl.FOIntImpl.valueOf(i);
+			assertEquals(range.contains(elt) && !expected.contains(i), rangeMinusBitmap.contains(elt));
+			assertEquals(sequence.contains(elt) && !expected.contains(i), seqMinusBitmap.contains(elt));
+		}
+		
+		// Ranges that take nothing or everything out.
+		assertSame(bitmap, new FOSetRangedNaturals(400000, 500000).complement(bitmap));
+		assertEquals(EmptySet.class, new FOSetRangedNaturals(-200000, 400000).complement(bitmap).getClass());
+	}
+	
+	@Test
+	public void testOperationsWithBitmaps()
+	{
+		TreeSet<Integer> expected1 = createExpected();
+		TreeSet<Integer> expected2 = new TreeSet<>();
+		for(int i = -200000; i < 320000; i += 3)
+			expected2.add(i);
+		FOOrderedEnumerableSet<FOInteger> bitmap1 = createBitmap(expected1);
+		FOOrderedEnumerableSet<FOInteger> bitmap2 = createBitmap(expected2);
+		
+		TreeSet<Integer> union = new TreeSet<>(expected1);
+		union.addAll(expected2);
+		TreeSet<Integer> intersection = new TreeSet<>(expected1);
+		intersection.retainAll(expected2);
+		TreeSet<Integer> difference = new TreeSet<>(expected1);
+		difference.removeAll(expected2);
+		
+		assertSameElements(union, FOSetBitmap.createUnion(bitmap1, bitmap2), -210000, 330000);
+		assertSameElements(intersection, FOSetBitmap.createIntersection(bitmap1, bitmap2), -210000, 330000);
+		assertSameElements(difference, bitmap2.complement(bitmap1), -210000, 330000);
+		assertEquals(createBitmap(difference), bitmap2.complement(bitmap1));
+		
+		// Single elements are handled through the generic paths.
+		FOSetUtils.SingleElementSet<FOInteger> single = new FOSetUtils.SingleElementSet<>(FOElementImpl.FOIntImpl.valueOf(3), FOInteger.class);
+		assertEquals(expected1.size() - 1, single.complement(bitmap1).size());
+		assertEquals(EmptySet.class, bitmap1.complement(single).getClass());
+		assertEquals(EmptySet.class, bitmap1.complement(bitmap1).getClass());
+	}
+}
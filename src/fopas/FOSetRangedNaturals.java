@@ -28,6 +28,7 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Range;
 
+import fopas.FOElementImpl.FOIntImpl.FOIntCache;
 import fopas.FOSetSequenceOfRanges.FOInvalidSingleRangeSequence;
 import fopas.basics.FOConstructionException;
 import fopas.basics.FOElement;
@@ -48,6 +49,8 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 	protected final boolean mIncStart;
 	protected final int mRangeLast;
 	protected final boolean mIncEnd;
+	// Created when the range is first iterated, and shared with the ranges constrained from this.
+	protected volatile FOIntCache mIntCache;
 
 	// This enforces a different constructor/parameters and checks when creating an infinite range.
 	// This should help with treating these more carefully.
@@ -121,20 +124,39 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 			if(mRangeLast == Integer.MAX_VALUE && mRangeFirst == Integer.MIN_VALUE)
 				rangeStart = 0; // iterate the positive half for Z - no good other default behaviour I can see
 
-			return new FOIntRange(rangeStart, rangeEnd, dir);
+			return new FOIntRange(rangeStart, rangeEnd, dir, getIntCache());
 		}
 		else
 		{
-			return new FOIntRange(rangeEnd, rangeStart, dir);
+			return new FOIntRange(rangeEnd, rangeStart, dir, getIntCache());
 		}
 	}
+	
+	/**
+	 * @return The integer cache of this range, or null if it's too large to cache.
+	 */
+	protected FOIntCache getIntCache()
+	{
+		FOIntCache cache = mIntCache;
+		if(cache == null)
+		{
+			cache = FOIntCache.createFor(mRangeFirst, mRangeLast);
+			mIntCache = cache;
+		}
+		return cache;
+	}
 
 	protected int getDir()
+	{
+		return getDir(mRangeFirst, mRangeLast);
+	}
+	
+	static int getDir(int rangeFirst, int rangeLast)
 	{
 		int dir;
-		if(mRangeLast < 0) // if this is all a negative range we iterate backwards.
+		if(rangeLast < 0) // if this is all a negative range we iterate backwards.
 			dir = -1;
-		else if(mRangeFirst < 0 && mRangeLast == 0)
+		else if(rangeFirst < 0 && rangeLast == 0)
 			dir = -1;
 		else
 			dir = 1;
@@ -146,13 +168,15 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 	{
 		final int mRangeLast;
 		final int mDir;
+		final FOIntCache mCache;
 		int mIx;
 		
-		FOIntRange(int rangeFirst, int rangeLast, int dir)
+		FOIntRange(int rangeFirst, int rangeLast, int dir, FOIntCache cache)
 		{
 			mRangeLast = rangeLast;
 			mIx = rangeFirst;
 			mDir = dir;
+			mCache = cache;
 		}
 
 		@Override
@@ -170,7 +194,7 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 		@Override
 		public FOInteger next()
 		{
-			FOInteger val = new FOElementImpl.FOIntImpl(mIx);
+			FOInteger val = mCache != null ? mCache.valueOf(mIx) : FOElementImpl.FOIntImpl.valueOf(mIx);
 			mIx += mDir;
 			return val;
 		}
@@ -254,7 +278,11 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 		if(o == null || !(o instanceof FOInteger))
 			throw new FORuntimeException("Unexpected object: " + o);
 		
-		int check = ((FOInteger)o).getInteger();
+		return containsInt(((FOInteger)o).getInteger());
+	}
+	
+	boolean containsInt(int check)
+	{
 		return check >= mRangeFirst && check <= mRangeLast;
 	}
 		
@@ -274,12 +302,12 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 			if(rsFirst < mRangeFirst)
 			{
 				int firstComplementLast = Math.min(mRangeFirst -1, rsLast);				
-				fosetNat1 = relativeEnumSet.constrainToRange(relativeEnumSet.getStart(), new FOElementImpl.FOIntImpl(firstComplementLast));
+				fosetNat1 = relativeEnumSet.constrainToRange(relativeEnumSet.getStart(), FOElementImpl.FOIntImpl.valueOf(firstComplementLast));
 			}
 			if(rsLast > mRangeLast)
 			{
 				int secondComplementFirst = Math.max(mRangeLast + 1, rsFirst);
-				fosetNat2 = relativeEnumSet.constrainToRange(new FOElementImpl.FOIntImpl(secondComplementFirst), relativeEnumSet.getEnd());
+				fosetNat2 = relativeEnumSet.constrainToRange(FOElementImpl.FOIntImpl.valueOf(secondComplementFirst), relativeEnumSet.getEnd());
 			}
 			
 			if(fosetNat1 == null)
@@ -320,7 +348,9 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 			int newLast = Math.min(lastInt, mRangeLast);
 			boolean incLast = newLast == Integer.MAX_VALUE ? false : true;
 			//TODO: Return a single item set here if needed, also do I need a contrain that allows returning an empty set?
-			return new FOSetRangedNaturals(newFirst, incFirst, newLast, incLast);
+			FOSetRangedNaturals constrained = new FOSetRangedNaturals(newFirst, incFirst, newLast, incLast);
+			constrained.mIntCache = mIntCache; // it's only a subrange, so any cache we have works for it too
+			return constrained;
 		}
 		else
 			return this;
@@ -371,13 +401,13 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 	@Override
 	public FOInteger getStart()
 	{
-		return new FOElementImpl.FOIntImpl(getStartOrInfInternal(mIncStart));
+		return FOElementImpl.FOIntImpl.valueOf(getStartOrInfInternal(mIncStart));
 	}
 
 	@Override
 	public FOInteger getEnd()
 	{
-		return new FOElementImpl.FOIntImpl(getEndOrInfInternal(mIncEnd));
+		return FOElementImpl.FOIntImpl.valueOf(getEndOrInfInternal(mIncEnd));
 	}
 
 	@Override
@@ -396,14 +426,14 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 	@Override
 	public FOInteger getStartOrInfinite(boolean includeStart)
 	{
-		return new FOElementImpl.FOIntImpl(getStartOrInfInternal(includeStart));
+		return FOElementImpl.FOIntImpl.valueOf(getStartOrInfInternal(includeStart));
 	}
 
 	// TODO: Remove this to replace it with getLastOrInf
 	@Override
 	public FOInteger getEndOrInfinite(boolean includeEnd)
 	{
-		return new FOElementImpl.FOIntImpl(getEndOrInfInternal(includeEnd));
+		return FOElementImpl.FOIntImpl.valueOf(getEndOrInfInternal(includeEnd));
 	}
 
 	@Override
@@ -476,7 +506,7 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 		else if(eltInt < mRangeFirst)
 			return getFirstOrInfinite();
 
-		return new FOElementImpl.FOIntImpl(eltInt + 1);
+		return FOElementImpl.FOIntImpl.valueOf(eltInt + 1);
 	}
 
 	@Override
@@ -497,7 +527,7 @@ public class FOSetRangedNaturals implements FOOrderedEnumerableSet<FOInteger>, F
 		else if (eltInt > mRangeLast)
 			return getLastOrInfinite();
 		
-		return new FOElementImpl.FOIntImpl(eltInt - 1);
+		return FOElementImpl.FOIntImpl.valueOf(eltInt - 1);
 	}
 
 	@Override
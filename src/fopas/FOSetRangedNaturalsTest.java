@@ -531,4 +531,55 @@ public class FOSetRangedNaturalsTest {
 		assertEquals(new FOElementImpl.FOIntImpl(11), foset.getPreviousOrNull(new FOElementImpl.FOIntImpl(12)));
 		assertEquals(new FOElementImpl.FOIntImpl(Integer.MAX_VALUE), foset.getPreviousOrNull(new FOElementImpl.FOIntImpl(Integer.MAX_VALUE)));
 	}
+
+	@Test
+	public void testCanonicalIntegers()
+	{
+		// Iteration over a small range hands out the cached instances.
+		FOSetRangedNaturals foset = new FOSetRangedNaturals(-5, 5);
+		for(FOInteger elt : foset)
+			Assert.assertSame(FOElementImpl.FOIntImpl.valueOf(elt.getInteger()), elt);
+		
+		// Outside the cache these are new, but still equal to each other.
+		FOInteger big = FOElementImpl.FOIntImpl.valueOf(FOElementImpl.FOIntImpl.CACHE_HIGH + 1);
+		Assert.assertNotSame(big, FOElementImpl.FOIntImpl.valueOf(FOElementImpl.FOIntImpl.CACHE_HIGH + 1));
+		assertEquals(new FOElementImpl.FOIntImpl(FOElementImpl.FOIntImpl.CACHE_HIGH + 1), big);
+		assertEquals(new FOElementImpl.FOIntImpl(7).hashCode(), FOElementImpl.FOIntImpl.valueOf(7).hashCode());
+
+		// The functions use the cache too.
+		FOFunctionsInternalInt sum = new FOFunctionsInternalInt.FOInternalSumModulus(10);
+		Assert.assertSame(FOElementImpl.FOIntImpl.valueOf(3), sum.eval(FOElementImpl.FOIntImpl.valueOf(5), FOElementImpl.FOIntImpl.valueOf(8)));
+		assertEquals(3, sum.evalInt(5, 8));
+		assertTrue(foset.containsInt(-5));
+		assertFalse(foset.containsInt(6));
+	}
+	
+	@Test
+	public void testRangeIntCache()
+	{
+		// Going through a range again gives the same instances, even outside the global cache.
+		int first = FOElementImpl.FOIntImpl.CACHE_HIGH + 1000;
+		FOSetRangedNaturals foset = new FOSetRangedNaturals(first, first + 100);
+		FOInteger[] firstPass = Iterables.toArray(foset, FOInteger.class);
+		Iterator<FOInteger> it = foset.iterator();
+		for(FOInteger elt : firstPass)
+			Assert.assertSame(elt, it.next());
+		
+		// So do the ranges constrained from it.
+		FOOrderedEnumerableSet<FOInteger> constrained = foset.constrainToRange(firstPass[10], firstPass[20]);
+		Iterator<FOInteger> itConstrained = constrained.iterator();
+		for(int i = 10; i <= 20; i++)
+			Assert.assertSame(firstPass[i], itConstrained.next());
+		
+		// Small integers still come from the global cache.
+		FOSetRangedNaturals fosetSmall = new FOSetRangedNaturals(-10, 10);
+		for(FOInteger elt : fosetSmall)
+			Assert.assertSame(FOElementImpl.FOIntImpl.valueOf(elt.getInteger()), elt);
+		
+		// Too large a range isn't cached.
+		Assert.assertNull(FOElementImpl.FOIntImpl.FOIntCache.createFor(0, FOElementImpl.FOIntImpl.FOIntCache.MAX_CACHED_RANGE));
+		Assert.assertNull(new FOSetRangedNaturals().getIntCache());
+		FOSetRangedNaturals fosetLarge = new FOSetRangedNaturals(first, first + FOElementImpl.FOIntImpl.FOIntCache.MAX_CACHED_RANGE);
+		Assert.assertNotSame(fosetLarge.iterator().next(), fosetLarge.iterator().next());
+	}
 }
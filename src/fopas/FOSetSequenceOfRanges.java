@@ -22,13 +22,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-
-import com.google.common.collect.Iterables;
+import java.util.NoSuchElementException;
 
 import fopas.FOElementImpl.FOIntImpl;
-import fopas.FOElementImpl.FOIntImpl.FOIntComparator;
+import fopas.FOElementImpl.FOIntImpl.FOIntCache;
 import fopas.basics.FOElement;
 import fopas.basics.FOElement.FOInteger;
 import fopas.basics.FOOrderedEnumerableSet;
@@ -37,10 +35,24 @@ import fopas.basics.FORuntimeException;
 import fopas.basics.FOSet;
 import fopas.basics.FOTerm;
 
+/**
+ * A union of disjoint, non-contiguous integer ranges in order.<br>
+ * The ranges are kept as two arrays of their first and last elements (both inclusive), where Integer.MIN_VALUE and
+ * Integer.MAX_VALUE stand for infinity the same way as in FOSetRangedNaturals. This allows binary searching for elements,
+ * and combining sequences with a single merging pass over their bounds.<br>
+ * The results of the set operations are created with FOSetBitmap.createBest(), so that many short ranges (eg. a range
+ * with a lot of single elements taken out) end up as a bitmap instead.
+ */
 public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 {
 	final protected String mName;
-	final protected List<FOSetRangedNaturals> mRanges;
+	final protected int[] mFirsts;
+	final protected int[] mLasts;
+	final protected int mSize;
+	// Only created when asked for (unless the sequence was created from them) since most of the work is done with the bounds.
+	protected volatile List<FOSetRangedNaturals> mRanges;
+	// Created when the sequence is first iterated (if it's compact enough), or shared by the set this is a subset of.
+	protected volatile FOIntCache mIntCache;
 	
 	/**
 	 * This exception class is created when a sequence that contains a single range is created. This may be
@@ -82,7 +94,7 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 	FOSetSequenceOfRanges(String name, Iterable<FOSetRangedNaturals> ranges, boolean transformContiguous) throws FOInvalidSingleRangeSequence
 	{
 		mName = name;
-		mRanges = new ArrayList<>();
+		List<FOSetRangedNaturals> listRanges = new ArrayList<>();
 		
 		Integer prevRangeEndOrInfNext = null;
 		for(FOSetRangedNaturals range : ranges)
@@ -96,10 +108,10 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 					{
 						if(transformContiguous)
 						{
-							FOSetRangedNaturals lastRange = mRanges.get(mRanges.size() - 1);
+							FOSetRangedNaturals lastRange = listRanges.get(listRanges.size() - 1);
 							FOSetRangedNaturals trfRange = new FOSetRangedNaturals(lastRange.getStart().getInteger(), lastRange.getIncludeStart(), 
 																					range.getEnd().getInteger(), range.getIncludeEnd()); 
-							mRanges.set(mRanges.size() - 1, trfRange);
+							listRanges.set(listRanges.size() - 1, trfRange);
 						}
 						else
 							throw new FORuntimeException("Contiguous sequence of ranges creation where not allowed.");
@@ -108,10 +120,10 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 						throw new FORuntimeException("Incorrectly ordered or overlapping invalid range given during creation.");						
 				}
 				else
-					mRanges.add(range);
+					listRanges.add(range);
 			}
 			else
-				mRanges.add(range); // not ideal that this is repeated few lines above.
+				listRanges.add(range); // not ideal that this is repeated few lines above.
 			
 			prevRangeEndOrInfNext = range.getEndOrInfinite(true).getInteger();
 			if(prevRangeEndOrInfNext != Integer.MAX_VALUE)
@@ -121,13 +133,70 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 			}
 		}
 		
-		if(mRanges.size() < 2)
+		if(listRanges.size() < 2)
 		{
-			if(mRanges.size() == 1)
-				throw new FOInvalidSingleRangeSequence(mRanges.get(0)); // don't allow a sequence range of size 1 to be created, throw exception instead. But preserve the newly created range.
+			if(listRanges.size() == 1)
+				throw new FOInvalidSingleRangeSequence(listRanges.get(0)); // don't allow a sequence range of size 1 to be created, throw exception instead. But preserve the newly created range.
 			else
 				throw new FORuntimeException("Trying to create an empty range.");
 		}
+		
+		mFirsts = new int[listRanges.size()];
+		mLasts = new int[listRanges.size()];
+		for(int i = 0; i < listRanges.size(); i++)
+		{
+			mFirsts[i] = listRanges.get(i).getStartOrInfInternal(true);
+			mLasts[i] = listRanges.get(i).getEndOrInfInternal(true);
+		}
+		mSize = calculateSize(mFirsts, mLasts);
+		mRanges = listRanges;
+	}
+	
+	/**
+	 * Creates the sequence directly from the bounds, which have to be in order, disjoint and non-contiguous, and at least two.
+	 */
+	protected FOSetSequenceOfRanges(String name, int[] firsts, int[] lasts)
+	{
+		assert firsts.length >= 2 && firsts.length == lasts.length;
+		mName = name;
+		mFirsts = firsts;
+		mLasts = lasts;
+		mSize = calculateSize(mFirsts, mLasts);
+	}
+	
+	protected static int calculateSize(int[] firsts, int[] lasts)
+	{
+		int totalSize = 0;
+		for(int i = 0; i < firsts.length; i++)
+		{
+			if(firsts[i] == Integer.MIN_VALUE || lasts[i] == Integer.MAX_VALUE)
+				return Integer.MAX_VALUE;
+			totalSize += lasts[i] - firsts[i] + 1;
+		}
+		return totalSize;
+	}
+	
+	/**
+	 * Creates the simplest set for the given bounds: an empty set, a single range or a sequence of ranges.
+	 * @param name Name for the set if it ends up as a sequence, may be null.
+	 * @param firsts
+	 * @param lasts
+	 * @param count Number of ranges to use from the arrays.
+	 * @return
+	 */
+	static FOOrderedEnumerableSet<FOInteger> createFromBounds(String name, int[] firsts, int[] lasts, int count)
+	{
+		if(count == 0)
+			return new FOSetUtils.EmptySet<FOInteger>(FOInteger.class);
+		else if(count == 1)
+			return createRange(firsts[0], lasts[0]);
+		else
+			return new FOSetSequenceOfRanges(name, Arrays.copyOf(firsts, count), Arrays.copyOf(lasts, count));
+	}
+	
+	protected static FOSetRangedNaturals createRange(int first, int last)
+	{
+		return new FOSetRangedNaturals(first, first != Integer.MIN_VALUE, last, last != Integer.MAX_VALUE);
 	}
 	
 	//------ Set incompleteness functionality ---------------------------------------------------
@@ -142,15 +211,7 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 	@Override
 	public int size()
 	{
-		int totalSize = 0;
-		for(FOSetRangedNaturals range : mRanges)
-		{
-			int subRangeSize = range.size();
-			if(subRangeSize == Integer.MAX_VALUE)
-				return Integer.MAX_VALUE;
-			totalSize += range.size();
-		}
-		return totalSize;
+		return mSize;
 	}
 
 	@Override
@@ -161,14 +222,14 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 		StringBuilder sb = new StringBuilder();
 		final int MAX_LEN = 100;
 		String setName;
-		if(mRanges.get(0).getStartOrInfinite(true).getInteger() < 0)
+		if(mFirsts[0] < 0)
 			setName = "Z";
 		else
 			setName = "N";
 		sb.append(setName);
 		sb.append(" ");
 
-		for(FOSetRangedNaturals range : mRanges)
+		for(FOSetRangedNaturals range : getRanges())
 		{
 			if(sb.length() > 2)
 				sb.append(" U ");
@@ -185,11 +246,36 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 	@Override
 	public boolean contains(Object o)
 	{
-		// TODO: This should really be a binary search.
-		for(FOSetRangedNaturals range : mRanges)
-			if(range.contains(o))
-				return true;
-		return false;
+		if(o == null || !(o instanceof FOInteger))
+			throw new FORuntimeException("Unexpected object: " + o);
+		
+		return containsInt(((FOInteger) o).getInteger());
+	}
+	
+	boolean containsInt(int check)
+	{
+		int ix = findRange(check);
+		return ix >= 0 && check <= mLasts[ix];
+	}
+	
+	/**
+	 * Binary search for the range that would contain the element.
+	 * @param elt
+	 * @return The index of the last range that starts at or before the element, or -1 if there's none.
+	 */
+	protected int findRange(int elt)
+	{
+		int low = 0;
+		int high = mFirsts.length - 1;
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if(mFirsts[mid] <= elt)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return high;
 	}
 
 	@Override
@@ -199,132 +285,343 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 		if(relativeSet == this)
 			return new FOSetUtils.EmptySet<>(FOInteger.class);
 		
-		// It'd be easy to generalise this to FOEnumerableSet since we use the generic interface FOEnumerableSet to do all the constraining operations which are the key.
 		if(relativeSet instanceof FOSetRangedNaturals)
 		{
-			// TODO: Would be best to introduce an FOSorted interface here so we get things like getLowest() getHighest()
-			FOSetRangedNaturals relativeEnumSet = (FOSetRangedNaturals) relativeSet;
-			
-			int rsStartOrInf = relativeEnumSet.getStartOrInfinite(true).getInteger();
-			int rsEndOrInf = relativeEnumSet.getEndOrInfinite(true).getInteger();
-			int rsCursor = rsStartOrInf;
-			List<FOSetRangedNaturals> newRanges = new ArrayList<>();
+			FOSetRangedNaturals relativeRange = (FOSetRangedNaturals) relativeSet;
+			int[] relativeFirsts = { relativeRange.getStartOrInfInternal(true) };
+			int[] relativeLasts = { relativeRange.getEndOrInfInternal(true) };
+			int[][] result = difference(relativeFirsts, relativeLasts, mFirsts, mLasts);
+			if(result[0].length == 1 && result[0][0] == relativeFirsts[0] && result[1][0] == relativeLasts[0])
+				return relativeRange; // nothing taken out
+			return withIntCache(FOSetBitmap.createBest(mName != null ? relativeSet.getName() + " \\ " + mName : null, result[0], result[1]),
+					relativeRange.mIntCache);
+		}
+		else if(relativeSet instanceof FOSetSequenceOfRanges)
+		{
+			FOSetSequenceOfRanges relativeSeq = (FOSetSequenceOfRanges) relativeSet;
+			int[][] result = difference(relativeSeq.mFirsts, relativeSeq.mLasts, mFirsts, mLasts);
+			return withIntCache(FOSetBitmap.createBest(mName != null ? relativeSet.getName() + " \\ " + mName : null, result[0], result[1]),
+					relativeSeq.mIntCache);
+		}
+		
+		return null;
+	}
 
-			// TODO: This should really be a binary search.
-			for(FOSetRangedNaturals range : mRanges)
+	@Override
+	public FOSet<FOInteger> complementIn(FOSet<FOInteger> relativeSet)
+	{
+		if(relativeSet == this)
+			return new FOSetUtils.EmptySet<>(FOInteger.class);
+		
+		int[][] result;
+		if(relativeSet instanceof FOSetRangedNaturals)
+		{
+			FOSetRangedNaturals relativeRange = (FOSetRangedNaturals) relativeSet;
+			result = difference(mFirsts, mLasts,
+					new int[] { relativeRange.getStartOrInfInternal(true) }, new int[] { relativeRange.getEndOrInfInternal(true) });
+		}
+		else if(relativeSet instanceof FOSetSequenceOfRanges)
+		{
+			FOSetSequenceOfRanges relativeSeq = (FOSetSequenceOfRanges) relativeSet;
+			result = difference(mFirsts, mLasts, relativeSeq.mFirsts, relativeSeq.mLasts);
+		}
+		else
+			return null;
+		
+		return withIntCache(FOSetBitmap.createBest(mName != null ? mName + " \\ " + relativeSet.getName() : null, result[0], result[1]),
+				mIntCache);
+	}
+	
+	/**
+	 * Lets a subset share the integer cache of the set it's taken from, so that going through it doesn't create integers again.
+	 * @return The subset.
+	 */
+	static FOSet<FOInteger> withIntCache(FOOrderedEnumerableSet<FOInteger> subset, FOIntCache cache)
+	{
+		if(cache != null)
+		{
+			if(subset instanceof FOSetSequenceOfRanges && ((FOSetSequenceOfRanges) subset).mIntCache == null)
+				((FOSetSequenceOfRanges) subset).mIntCache = cache;
+			else if(subset instanceof FOSetRangedNaturals && ((FOSetRangedNaturals) subset).mIntCache == null)
+				((FOSetRangedNaturals) subset).mIntCache = cache;
+		}
+		return subset;
+	}
+	
+	/**
+	 * Merges two lists of ranges to find the ranges of the elements in the first but not in the second.
+	 * Both have to be in order and disjoint.
+	 * @return The firsts and the lasts of the result.
+	 */
+	static int[][] difference(int[] firstsA, int[] lastsA, int[] firstsB, int[] lastsB)
+	{
+		// Each range of B can split at most one range of A in two.
+		int[] firsts = new int[firstsA.length + firstsB.length];
+		int[] lasts = new int[firstsA.length + firstsB.length];
+		int count = 0;
+		int b = 0;
+		for(int a = 0; a < firstsA.length; a++)
+		{
+			int cursor = firstsA[a];
+			int last = lastsA[a];
+			boolean done = false;
+			// Skip the ranges of B that are wholly before this range.
+			while(b < firstsB.length && lastsB[b] < cursor)
+				b++;
+			for(int bx = b; bx < firstsB.length && firstsB[bx] <= last; bx++)
 			{
-				int rangeFirstOrInf = range.getStartOrInfinite(true).getInteger();
-				int rangeLastOrInf = range.getEndOrInfinite(true).getInteger();
-
-				if(rsCursor < rangeFirstOrInf)
+				if(firstsB[bx] > cursor)
 				{
-					int complementEnd = rangeFirstOrInf == Integer.MIN_VALUE ? Integer.MIN_VALUE : rangeFirstOrInf - 1;
-					if(rsCursor <= complementEnd && !(complementEnd == Integer.MIN_VALUE && rsCursor == Integer.MIN_VALUE))
-					{
-						newRanges.add((FOSetRangedNaturals)
-								relativeEnumSet.constrainToRange(new FOElementImpl.FOIntImpl(rsCursor), new FOElementImpl.FOIntImpl(complementEnd)));
-					}
+					firsts[count] = cursor;
+					lasts[count++] = firstsB[bx] - 1;
 				}
-				
-				if(rsCursor <= rangeLastOrInf)
-					rsCursor = rangeLastOrInf == Integer.MAX_VALUE ? Integer.MAX_VALUE : rangeLastOrInf + 1;
-				
-				if(rsCursor > rsEndOrInf)
+				if(lastsB[bx] >= last)
+				{
+					done = true; // the rest of this range is taken out.
 					break;
+				}
+				cursor = lastsB[bx] + 1;
 			}
-			
-			if(rsCursor <= rsEndOrInf && !(rsCursor == Integer.MAX_VALUE && rsEndOrInf == Integer.MAX_VALUE))
+			if(!done)
+			{
+				firsts[count] = cursor;
+				lasts[count++] = last;
+			}
+		}
+		return new int[][] { Arrays.copyOf(firsts, count), Arrays.copyOf(lasts, count) };
+	}
+	
+	/**
+	 * Merges two lists of ranges to find the ranges of the elements in both. Both have to be in order and disjoint.
+	 * @return The firsts and the lasts of the result.
+	 */
+	static int[][] intersection(int[] firstsA, int[] lastsA, int[] firstsB, int[] lastsB)
+	{
+		int[] firsts = new int[firstsA.length + firstsB.length];
+		int[] lasts = new int[firstsA.length + firstsB.length];
+		int count = 0;
+		int a = 0;
+		int b = 0;
+		while(a < firstsA.length && b < firstsB.length)
+		{
+			int first = Math.max(firstsA[a], firstsB[b]);
+			int last = Math.min(lastsA[a], lastsB[b]);
+			if(first <= last)
 			{
-				newRanges.add((FOSetRangedNaturals)
-						relativeEnumSet.constrainToRange(new FOElementImpl.FOIntImpl(rsCursor), relativeEnumSet.getEndOrInfinite(true)));//rsEndOrInf
+				firsts[count] = first;
+				lasts[count++] = last;
+			}
+			// Move on whichever finishes first.
+			if(lastsA[a] < lastsB[b])
+				a++;
+			else
+				b++;
+		}
+		return new int[][] { Arrays.copyOf(firsts, count), Arrays.copyOf(lasts, count) };
+	}
+	
+	/**
+	 * Merges two lists of ranges to find the ranges of the elements in either. Both have to be in order and disjoint.
+	 * @return The firsts and the lasts of the result.
+	 */
+	static int[][] union(int[] firstsA, int[] lastsA, int[] firstsB, int[] lastsB)
+	{
+		int[] firsts = new int[firstsA.length + firstsB.length];
+		int[] lasts = new int[firstsA.length + firstsB.length];
+		int count = 0;
+		int a = 0;
+		int b = 0;
+		while(a < firstsA.length || b < firstsB.length)
+		{
+			int first;
+			int last;
+			if(b == firstsB.length || (a < firstsA.length && firstsA[a] <= firstsB[b]))
+			{
+				first = firstsA[a];
+				last = lastsA[a++];
+			}
+			else
+			{
+				first = firstsB[b];
+				last = lastsB[b++];
 			}
 			
-			if(newRanges.size() == 1)
-				return newRanges.get(0);
-			else if(newRanges.size() == 0) // empty set (possible if effectively complemented to self)
-				return new FOSetUtils.EmptySet<FOElement.FOInteger>(FOInteger.class);
+			// Join with the previous range if they overlap or touch.
+			if(count > 0 && (lasts[count - 1] == Integer.MAX_VALUE || first <= lasts[count - 1] + 1))
+			{
+				if(last > lasts[count - 1])
+					lasts[count - 1] = last;
+			}
 			else
 			{
-				try
-				{
-					if(mName != null)
-							return new FOSetSequenceOfRanges(relativeSet.getName() + " \\ " + mName, newRanges);
-					else
-						return new FOSetSequenceOfRanges(newRanges);
-				}
-				catch (FOInvalidSingleRangeSequence e)
-				{
-					return e.getRange(); // don't think there's every a valid use case for this
-				}
+				firsts[count] = first;
+				lasts[count++] = last;
 			}
 		}
-		
+		return new int[][] { Arrays.copyOf(firsts, count), Arrays.copyOf(lasts, count) };
+	}
+	
+	/**
+	 * Union of two sets of integer ranges, each of which can be a range or a sequence of ranges.
+	 * @return The union, or null if either isn't made of ranges.
+	 */
+	public static FOOrderedEnumerableSet<FOInteger> createUnion(FOSet<FOInteger> set1, FOSet<FOInteger> set2)
+	{
+		int[][] bounds1 = getBounds(set1);
+		int[][] bounds2 = getBounds(set2);
+		if(bounds1 == null || bounds2 == null)
+			return null;
+		int[][] result = union(bounds1[0], bounds1[1], bounds2[0], bounds2[1]);
+		return FOSetBitmap.createBest(null, result[0], result[1]);
+	}
+	
+	/**
+	 * Intersection of two sets of integer ranges, each of which can be a range or a sequence of ranges.
+	 * @return The intersection, or null if either isn't made of ranges.
+	 */
+	public static FOOrderedEnumerableSet<FOInteger> createIntersection(FOSet<FOInteger> set1, FOSet<FOInteger> set2)
+	{
+		int[][] bounds1 = getBounds(set1);
+		int[][] bounds2 = getBounds(set2);
+		if(bounds1 == null || bounds2 == null)
+			return null;
+		int[][] result = intersection(bounds1[0], bounds1[1], bounds2[0], bounds2[1]);
+		return FOSetBitmap.createBest(null, result[0], result[1]);
+	}
+	
+	protected static int[][] getBounds(FOSet<FOInteger> set)
+	{
+		if(set instanceof FOSetSequenceOfRanges)
+			return new int[][] { ((FOSetSequenceOfRanges) set).mFirsts, ((FOSetSequenceOfRanges) set).mLasts };
+		else if(set instanceof FOSetRangedNaturals)
+			return new int[][] { { ((FOSetRangedNaturals) set).getStartOrInfInternal(true) }, { ((FOSetRangedNaturals) set).getEndOrInfInternal(true) } };
+		else if(set instanceof FOSetUtils.EmptySet)
+			return new int[][] { {}, {} };
 		return null;
 	}
 
+	/**
+	 * Goes through the ranges one after the other using the integer cache of the sequence where there's one (see getIntCache()),
+	 * so only the first pass allocates per element. Without it, only the small integers of FOIntImpl.valueOf() aren't allocated.
+	 * Each range is iterated in the direction FOSetRangedNaturals would iterate it.
+	 */
+	protected class SequenceIterator implements Iterator<FOInteger>
+	{
+		final FOIntCache mCache;
+		int mRange;
+		int mIx;
+		int mEnd;
+		int mDir;
+		
+		SequenceIterator()
+		{
+			mCache = getIntCache();
+			startRange(0);
+		}
+		
+		protected void startRange(int range)
+		{
+			mRange = range;
+			if(range >= mFirsts.length)
+				return;
+			mDir = FOSetRangedNaturals.getDir(mFirsts[range], mLasts[range]);
+			if(mDir > 0)
+			{
+				mIx = mFirsts[range];
+				mEnd = mLasts[range];
+			}
+			else
+			{
+				mIx = mLasts[range];
+				mEnd = mFirsts[range];
+			}
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while(mRange < mFirsts.length)
+			{
+				if(mIx == Integer.MAX_VALUE || mIx == Integer.MIN_VALUE)
+					throw new FORuntimeException("Integer overflow - infinite iteration attempted.");
+				if(mDir > 0 ? mIx <= mEnd : mIx >= mEnd)
+					return true;
+				startRange(mRange + 1);
+			}
+			return false;
+		}
+
+		@Override
+		public FOInteger next()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			FOInteger val = mCache != null ? mCache.valueOf(mIx) : FOIntImpl.valueOf(mIx);
+			mIx += mDir;
+			return val;
+		}
+	}
+
 	@Override
 	public Iterator<FOInteger> iterator()
 	{
-		return (Iterator<FOInteger>) Iterables.concat(mRanges).iterator();
+		return new SequenceIterator();
+	}
+	
+	/**
+	 * The cache covers the gaps between the ranges as well, so it's only created when they're no larger than the ranges
+	 * themselves (and the whole is within FOIntCache.MAX_CACHED_RANGE). Otherwise the integers are created for each pass.
+	 * @return The integer cache of this sequence, or null if it doesn't have one.
+	 */
+	protected FOIntCache getIntCache()
+	{
+		FOIntCache cache = mIntCache;
+		if(cache == null && mSize != Integer.MAX_VALUE)
+		{
+			int first = mFirsts[0];
+			int last = mLasts[mLasts.length - 1];
+			if((long) last - first + 1 <= 2L * mSize)
+			{
+				cache = FOIntCache.createFor(first, last);
+				mIntCache = cache;
+			}
+		}
+		return cache;
 	}
 
 	@Override
 	public FOOrderedEnumerableSet<FOInteger> constrainToRange(FOInteger first, FOInteger last)
 	{
-		// This is fairly wasteful and suboptimal but can live with it for now.
-		
 		int intFirstOrInf = first.getInteger();
 		int intLastOrInf = last.getInteger();
 		
-		if(intFirstOrInf <= mRanges.get(0).getStartOrInfInternal(true) && intLastOrInf >= mRanges.get(mRanges.size() - 1).getEndOrInfInternal(true))
+		if(intFirstOrInf <= mFirsts[0] && intLastOrInf >= mLasts[mLasts.length - 1])
 			return this;
 		
-		List<FOSetRangedNaturals> newRanges = new ArrayList<>();
-
-		// TODO: This should really be a binary search.
-		for(FOSetRangedNaturals range : mRanges)
+		// Only the ranges from the one containing the first element are of interest.
+		int start = Math.max(findRange(intFirstOrInf), 0);
+		int[] firsts = new int[mFirsts.length - start];
+		int[] lasts = new int[mFirsts.length - start];
+		int count = 0;
+		for(int i = start; i < mFirsts.length && mFirsts[i] <= intLastOrInf; i++)
 		{
-			int rangeFirstOrInf = range.getStartOrInfinite(true).getInteger();
-			int rangeLastOrInf = range.getEndOrInfinite(true).getInteger();
-
-			if(intFirstOrInf <= rangeFirstOrInf && intLastOrInf >= rangeLastOrInf)
-				newRanges.add(range);
-			else if(intFirstOrInf > rangeFirstOrInf || intLastOrInf < rangeLastOrInf)
+			int newFirst = Math.max(mFirsts[i], intFirstOrInf);
+			int newLast = Math.min(mLasts[i], intLastOrInf);
+			if(newFirst <= newLast)
 			{
-				int newRangeFirstOrInf = Integer.max(rangeFirstOrInf, intFirstOrInf);
-				int newRangeLastOrInf = Integer.min(rangeLastOrInf, intLastOrInf);
-				
-				if(newRangeFirstOrInf <= newRangeLastOrInf)
-				{
-					boolean nrFirstIsInf = newRangeFirstOrInf == Integer.MIN_VALUE;
-					boolean nrLastIsInf = newRangeLastOrInf == Integer.MAX_VALUE;
-					newRanges.add(new FOSetRangedNaturals(newRangeFirstOrInf, !nrFirstIsInf, newRangeLastOrInf, !nrLastIsInf));
-				}
+				firsts[count] = newFirst;
+				lasts[count++] = newLast;
 			}
 		}
 
-		if(newRanges.size() == 1)
-			return newRanges.get(0);
-		else if(newRanges.size() == 0) // empty set (possible if effectively complemented to self)
-			return new FOSetUtils.EmptySet<FOElement.FOInteger>(FOInteger.class);
-		else
+		String name = null;
+		if(mName != null && count > 1)
 		{
-			try
-			{
-				if(mName != null)
-				{
-					String startB = intFirstOrInf == Integer.MIN_VALUE ? "(" : "[";
-					String endB = intFirstOrInf == Integer.MAX_VALUE ? ")" : "]";
-					return new FOSetSequenceOfRanges(String.format("%s %s%d, %d%s", mName, startB, intFirstOrInf, intLastOrInf, endB), newRanges);
-				}
-				else
-					return new FOSetSequenceOfRanges(newRanges);				
-			}
-			catch (FOInvalidSingleRangeSequence e)
-			{
-				return e.getRange(); // don't think there's every a valid use case for this
-			}
+			String startB = intFirstOrInf == Integer.MIN_VALUE ? "(" : "[";
+			String endB = intFirstOrInf == Integer.MAX_VALUE ? ")" : "]";
+			name = String.format("%s %s%d, %d%s", mName, startB, intFirstOrInf, intLastOrInf, endB);
 		}
+		return createFromBounds(name, firsts, lasts, count);
 	}
 
 	@Override
@@ -348,67 +645,76 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 	@Override
 	public FOInteger getFirstOrInfinite()
 	{
-		return mRanges.get(0).getFirstOrInfinite();
+		return FOIntImpl.valueOf(mFirsts[0]);
 	}
 
 	@Override
 	public FOInteger getLastOrInfinite()
 	{
-		return mRanges.get(mRanges.size() - 1).getLastOrInfinite();
+		return FOIntImpl.valueOf(mLasts[mLasts.length - 1]);
 	}
 
 	@Override
 	public FOInteger getNextOrNull(FOInteger element)
 	{
-		// TODO: This should really be a binary search.
-		Iterator<FOSetRangedNaturals> it = mRanges.iterator();
-		FOSetRangedNaturals range = null;
-		int eltInt = element.getInteger(); 
-		while(it.hasNext())
+		List<FOSetRangedNaturals> ranges = getRanges();
+		int ix = findRange(element.getInteger());
+		if(ix == -1)
+			return ranges.get(0).getFirstOrInfinite(); // before all the ranges
+		
+		FOSetRangedNaturals range = ranges.get(ix);
+		if(element.getInteger() <= mLasts[ix])
 		{
-			range = it.next();
-			if(eltInt < range.getFirstOrInfinite().getInteger())
-				return range.getFirstOrInfinite();
-			else if(range.contains(element))
-			{
-				FOInteger next = range.getNextOrNull(element);
-				if(next == null && it.hasNext())
-					return it.next().getFirstOrInfinite();
-				return next;
-			}
+			FOInteger next = range.getNextOrNull(element);
+			if(next == null && ix + 1 < ranges.size())
+				return ranges.get(ix + 1).getFirstOrInfinite();
+			return next;
 		}
+		// In the gap after this range.
+		if(ix + 1 < ranges.size())
+			return ranges.get(ix + 1).getFirstOrInfinite();
 		return range.getNextOrNull(element);
 	}
 
 	@Override
 	public FOInteger getPreviousOrNull(FOInteger element)
 	{
-		// TODO: This should really be a binary search.
-		Iterator<FOSetRangedNaturals> it = mRanges.iterator();
-		FOSetRangedNaturals range = it.next();
-		FOSetRangedNaturals prevRange = null;
+		List<FOSetRangedNaturals> ranges = getRanges();
 		int eltInt = element.getInteger();
-		
-		if(eltInt <= range.getLastOrInfinite().getInteger())
-			return range.getPreviousOrNull(element);
-		while(it.hasNext())
+		// Find the first range which ends at or after the element.
+		int low = 0;
+		int high = mLasts.length;
+		while(low < high)
 		{
-			prevRange = range;
-			range = it.next();
-			if(eltInt <= range.getLastOrInfinite().getInteger())
-			{
-				FOInteger prev = range.getPreviousOrNull(element);
-				if(prev == null)
-					return prevRange.getLastOrInfinite();
-				return prev;
-			}
+			int mid = (low + high) >>> 1;
+			if(mLasts[mid] < eltInt)
+				low = mid + 1;
+			else
+				high = mid;
 		}
-		return range.getPreviousOrNull(element);
+		
+		if(low == 0)
+			return ranges.get(0).getPreviousOrNull(element);
+		if(low == mLasts.length)
+			return ranges.get(mLasts.length - 1).getPreviousOrNull(element);
+		FOInteger prev = ranges.get(low).getPreviousOrNull(element);
+		if(prev == null)
+			return ranges.get(low - 1).getLastOrInfinite();
+		return prev;
 	}
 	
-	public Iterable<FOSetRangedNaturals> getRanges()
+	public List<FOSetRangedNaturals> getRanges()
 	{
-		return mRanges;
+		List<FOSetRangedNaturals> ranges = mRanges;
+		if(ranges == null)
+		{
+			ranges = new ArrayList<>(mFirsts.length);
+			for(int i = 0; i < mFirsts.length; i++)
+				ranges.add(createRange(mFirsts[i], mLasts[i]));
+			ranges = Collections.unmodifiableList(ranges);
+			mRanges = ranges;
+		}
+		return ranges;
 	}
 	
 	public static FOOrderedEnumerableSet<FOInteger> createUnion(List<FOSetRangedNaturals> ranges)
@@ -419,8 +725,7 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 					@Override
 					public int compare(FOSetRangedNaturals arg0, FOSetRangedNaturals arg1)
 					{
-						return FOIntImpl.DEFAULT_COMPARATOR.compare(
-								arg1.getFirstOrInfinite(), arg0.getFirstOrInfinite());
+						return Integer.compare(arg0.getStartOrInfInternal(true), arg1.getStartOrInfInternal(true));
 					}
 		});
 		
@@ -430,22 +735,15 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 		{
 			FOSetRangedNaturals current = unionised.get(unionised.size() - 1);
 			FOSetRangedNaturals next = ranges.get(i);
-			int currentFirst = current.getFirstOrInfinite().getInteger();
-			int currentLast = current.getLastOrInfinite().getInteger();
-			int nextFirst = next.getFirstOrInfinite().getInteger();
-			int nextLast = next.getLastOrInfinite().getInteger();
+			int currentFirst = current.getStartOrInfInternal(true);
+			int currentLast = current.getEndOrInfInternal(true);
+			int nextFirst = next.getStartOrInfInternal(true);
+			int nextLast = next.getEndOrInfInternal(true);
 			
 			if(nextFirst <= currentLast)
 			{
 				if(nextLast > currentLast)
-				{
-					unionised.set(unionised.size() - 1,
-						new FOSetRangedNaturals(
-								currentFirst, currentFirst == Integer.MIN_VALUE ? false : true,
-								nextLast, nextLast == Integer.MAX_VALUE ? false : true
-								)
-						);
-				}
+					unionised.set(unionised.size() - 1, createRange(currentFirst, nextLast));
 				// else ignore it since it's wholly contained in the existing rangef
 			}
 			else
@@ -472,9 +770,17 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 
 	@Override
 	public int hashCode() {
+		return hashBounds(mFirsts, mLasts);
+	}
+	
+	/**
+	 * Hash of a set given by its ranges, shared with FOSetBitmap so that equal sets hash the same in either form.
+	 */
+	static int hashBounds(int[] firsts, int[] lasts) {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((mRanges == null) ? 0 : mRanges.hashCode());
+		result = prime * result + Arrays.hashCode(firsts);
+		result = prime * result + Arrays.hashCode(lasts);
 		return result;
 	}
 
@@ -484,14 +790,11 @@ public class FOSetSequenceOfRanges implements FOOrderedEnumerableSet<FOInteger>
 			return true;
 		if (obj == null)
 			return false;
+		if (obj instanceof FOSetBitmap)
+			return obj.equals(this); // the same set may be kept either way
 		if (getClass() != obj.getClass())
 			return false;
 		FOSetSequenceOfRanges other = (FOSetSequenceOfRanges) obj;
-		if (mRanges == null) {
-			if (other.mRanges != null)
-				return false;
-		} else if (!mRanges.equals(other.mRanges))
-			return false;
-		return true;
+		return Arrays.equals(mFirsts, other.mFirsts) && Arrays.equals(mLasts, other.mLasts);
 	}
 }
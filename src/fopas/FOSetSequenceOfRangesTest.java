@@ -19,7 +19,9 @@ package fopas;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -814,4 +816,89 @@ public class FOSetSequenceOfRangesTest {
 		FOOrderedEnumerableSet<FOInteger> foseq = FOSetSequenceOfRanges.createUnion(Arrays.asList(forange2, forange1));
 		assertEquals("Z", foseq.getName());
 	}
+
+	// Creates a sequence with a range starting at every step, with a gap before the next one.
+	private FOOrderedEnumerableSet<FOInteger> createSteps(int first, int step, int length, int count)
+	{
+		List<FOSetRangedNaturals> ranges = new ArrayList<>();
+		for(int i = 0; i < count; i++)
+			ranges.add(new FOSetRangedNaturals(first + i * step, first + i * step + length - 1));
+		return FOSetSequenceOfRanges.createUnion(ranges);
+	}
+
+	@Test
+	public void testMergedOperations()
+	{
+		FOOrderedEnumerableSet<FOInteger> foseq1 = createSteps(-50, 7, 3, 15); // [-50, -48] U [-43, -41] ...
+		FOOrderedEnumerableSet<FOInteger> foseq2 = createSteps(-45, 5, 2, 20); // [-45, -44] U [-40, -39] ...
+		assertEquals(FOSetSequenceOfRanges.class, foseq1.getClass());
+		
+		FOSet<FOInteger> union = FOSetSequenceOfRanges.createUnion(foseq1, foseq2);
+		FOSet<FOInteger> intersection = FOSetSequenceOfRanges.createIntersection(foseq1, foseq2);
+		FOSet<FOInteger> difference = foseq2.complement(foseq1); // foseq1 \ foseq2
+		FOSet<FOInteger> differenceIn = foseq1.complement(foseq2); // foseq2 \ foseq1
+		
+		// Check everything against the same done element by element.
+		for(int i = -70; i < 70; i++)
+		{
+			FOInteger elt = FOElementImpl.FOIntImpl.valueOf(i);
+			boolean in1 = false;
+			for(FOInteger elt1 : foseq1)
+				in1 |= elt1.getInteger() == i;
+			boolean in2 = false;
+			for(FOInteger elt2 : foseq2)
+				in2 |= elt2.getInteger() == i;
+			
+			assertEquals(in1, foseq1.contains(elt));
+			assertEquals(in1 || in2, union.contains(elt));
+			assertEquals(in1 && in2, intersection.contains(elt));
+			assertEquals(in1 && !in2, difference.contains(elt));
+			assertEquals(in2 && !in1, differenceIn.contains(elt));
+			
+			// The next and previous elements are the nearest ones in the set.
+			FOInteger next = foseq1.getNextOrNull(elt);
+			int expectedNext = i + 1;
+			while(expectedNext < 70 && !foseq1.contains(FOElementImpl.FOIntImpl.valueOf(expectedNext)))
+				expectedNext++;
+			assertEquals(expectedNext < 70 ? Integer.valueOf(expectedNext) : null, next == null ? null : next.getInteger());
+			FOInteger prev = foseq1.getPreviousOrNull(elt);
+			int expectedPrev = i - 1;
+			while(expectedPrev > -70 && !foseq1.contains(FOElementImpl.FOIntImpl.valueOf(expectedPrev)))
+				expectedPrev--;
+			assertEquals(expectedPrev > -70 ? Integer.valueOf(expectedPrev) : null, prev == null ? null : prev.getInteger());
+		}
+		
+		assertEquals(foseq1.size() + foseq2.size() - intersection.size(), union.size());
+		assertEquals(foseq1.size() - intersection.size(), difference.size());
+		assertEquals(Iterables.size((FOOrderedEnumerableSet<FOInteger>) union), union.size());
+	}
+	
+	@Test
+	public void testSequenceIntCache()
+	{
+		// A compact sequence gives the same instances each time it's gone through, even outside the global cache.
+		int first = FOElementImpl.FOIntImpl.CACHE_HIGH + 1000;
+		FOSetSequenceOfRanges foseq = (FOSetSequenceOfRanges) FOSetSequenceOfRanges.createFromBounds(null,
+				new int[] { first, first + 60 }, new int[] { first + 49, first + 99 }, 2);
+		FOInteger[] firstPass = Iterables.toArray(foseq, FOInteger.class);
+		assertEquals(90, firstPass.length);
+		int ix = 0;
+		for(FOInteger elt : foseq)
+			assertSame(firstPass[ix++], elt);
+		
+		// The sequence taken out of a range shares the cache of the range.
+		FOSetRangedNaturals forange = new FOSetRangedNaturals(first, first + 100);
+		FOInteger[] rangePass = Iterables.toArray(forange, FOInteger.class);
+		FOSet<FOInteger> complement = FOSetSequenceOfRanges.createFromBounds(null,
+				new int[] { first + 10, first + 50 }, new int[] { first + 19, first + 59 }, 2).complement(forange);
+		assertEquals(FOSetSequenceOfRanges.class, complement.getClass());
+		for(FOInteger elt : (FOSetSequenceOfRanges) complement)
+			assertSame(rangePass[elt.getInteger() - first], elt);
+		
+		// Ranges far apart don't get a cache.
+		FOSetSequenceOfRanges foseqSparse = (FOSetSequenceOfRanges) FOSetSequenceOfRanges.createFromBounds(null,
+				new int[] { first, first + 5000 }, new int[] { first + 99, first + 5099 }, 2);
+		assertNull(foseqSparse.getIntCache());
+		assertNotSame(foseqSparse.iterator().next(), foseqSparse.iterator().next());
+	}
 }
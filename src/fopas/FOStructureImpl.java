@@ -65,7 +65,7 @@ class FOStructureImpl implements FOStructure
 		mRelations = relations;
 		mFuns = funs;
 		mAliasMapping = new HashMap<>();
-		mRuntime = runtime; // this will have to be refactored so that runtime data is split from code so we can do things like multi-threading.
+		mRuntime = runtime;
 	}
 
 	@Override
@@ -76,17 +76,22 @@ class FOStructureImpl implements FOStructure
 		// TODO: Relations / functions wrong cardinality - can be during exeuction / nice to at the start.
 		
 		// TODO: Also print the explicit version of the formula here.
-		mRuntime.trace(-2, 0, form, "FOStructureImpl", hashCode(), "models", "Start evaluation.");
+		int trace = mRuntime.getTraceLevel();
+		if(trace >= 2)
+			mRuntime.trace(-2, 0, form, "FOStructureImpl", hashCode(), "models", "Start evaluation.");
 		mRuntime.getStats().reset();
+		mRuntime.resetAliasMemo();
 		
 		boolean models = form.models(this);
-		mRuntime.trace(2, 0, form, "FOStructureImpl", hashCode(), "models", "models: %s", models);
+		if(trace >= 2)
+			mRuntime.trace(2, 0, form, "FOStructureImpl", hashCode(), "models", "models: %s", models);
 		return models;
 	}
 
 	@Override
 	public Iterable<Map<FOVariable, FOElement>> getSatisfyingAssignments(FOFormula form) throws FOConstructionException
 	{	
+		mRuntime.resetAliasMemo();
 		return form.getSatisfyingAssignments(this);
 	}
 
@@ -22,8 +22,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import fopas.FOElementImpl.FOIntImpl;
 import fopas.basics.FOConstant;
 import fopas.basics.FOElement;
+import fopas.basics.FOElement.FOInteger;
 import fopas.basics.FOFunction;
 import fopas.basics.FORuntimeException;
 import fopas.basics.FOStructure;
@@ -35,7 +37,6 @@ public abstract class FOTermByRecursionImpl implements FOTerm
 	static class FOTermVariable extends FOTermByRecursionImpl
 	{
 		final protected FOVariable mVar;
-		protected FOElement mAsg;
 		
 		public FOTermVariable(FOVariable var)
 		{
@@ -43,7 +44,7 @@ public abstract class FOTermByRecursionImpl implements FOTerm
 		}
 		
 		@Override
-		public void assignVariables(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial)
+		public FOElement evaluate(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial)
 		{
 			FOElement elt = assignment.get(mVar);
 			
@@ -53,13 +54,27 @@ public abstract class FOTermByRecursionImpl implements FOTerm
 				throw new FORuntimeException("Expected assignment not found for variable."); // This should never happen.
 			}
 			
-			mAsg = elt; // may be null if this assignment is partial
+			return elt; // may be null if this assignment is partial
 		}
 
 		@Override
-		public FOElement getAssignment()
+		FOElement evaluate(FOStructure structure, FOAssignment assignment, boolean isPartial)
 		{
-			return mAsg;
+			FOElement elt = assignment.get(mVar);
+			
+			if(!isPartial && elt == null)
+			{
+				assert false;
+				throw new FORuntimeException("Expected assignment not found for variable."); // This should never happen.
+			}
+			
+			return elt; // may be null if this assignment is partial
+		}
+
+		@Override
+		void assignSlots(FOAssignment.Layout layout)
+		{
+			layout.addVariable(mVar);
 		}
 
 		@Override
@@ -76,36 +91,51 @@ public abstract class FOTermByRecursionImpl implements FOTerm
 	
 	abstract void analyseScope(Set<FOVariable> setVarsSeenInScope);
 	
+	/**
+	 * Same as the public evaluate() but uses the slots given to the variables by the compiled root formula.
+	 */
+	abstract FOElement evaluate(FOStructure structure, FOAssignment assignment, boolean isPartial);
+	
+	abstract void assignSlots(FOAssignment.Layout layout);
+	
 	static class FOTermConstant extends FOTermByRecursionImpl
 	{
 		final protected FOConstant mConst;
-		protected FOElement mAsg;
 		FOTermConstant(FOConstant foconst)
 		{
 			mConst = foconst;
 		}
 		
 		@Override
-		public void assignVariables(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial)
+		public FOElement evaluate(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial)
 		{
-			if(mAsg != null)
-				return; // already set
-			mAsg = structure.getConstantMapping(mConst);
+			// This is looked up each time since the same term can be evaluated in different structures.
+			FOElement asg = structure.getConstantMapping(mConst);
 			
 			//Partial doesn't apply to this since a constant always has to exist.
-			if(mAsg == null)
+			if(asg == null)
 			{
 				assert false; // The structure has to have a mapping for this constant.
 				throw new FORuntimeException("Expected variable assignment not found.");
 			}
+			return asg;
 		}
 
 		@Override
-		public FOElement getAssignment()
+		FOElement evaluate(FOStructure structure, FOAssignment assignment, boolean isPartial)
 		{
-			return mAsg;
+			FOElement asg = structure.getConstantMapping(mConst);
+			if(asg == null)
+			{
+				assert false; // The structure has to have a mapping for this constant.
+				throw new FORuntimeException("Expected variable assignment not found.");
+			}
+			return asg;
 		}
 
+		@Override
+		void assignSlots(FOAssignment.Layout layout) {}
+
 		@Override
 		public TermType getType() { return TermType.CONSTANT; }
 		
@@ -119,7 +149,6 @@ public abstract class FOTermByRecursionImpl implements FOTerm
 	{
 		final protected FOFunction mFunc;
 		final protected List<FOTerm> mTerms;
-		protected FOElement mAsg;
 		FOTermFunction(FOFunction func, List<FOTerm> terms) 
 		{
 			mFunc = func;
@@ -127,21 +156,19 @@ public abstract class FOTermByRecursionImpl implements FOTerm
 		}
 		
 		@Override
-		public void assignVariables(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial)
+		public FOElement evaluate(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial)
 		{
 			FOElement[] args = new FOElement[mTerms.size()];
 			for(int i = 0; i < mTerms.size(); i++)
 			{
 				FOTerm term = mTerms.get(i);
-				term.assignVariables(structure, assignment, isPartial);
-				FOElement assigned = term.getAssignment(); // if partial assignment the value here can be null.
+				FOElement assigned = term.evaluate(structure, assignment, isPartial); // if partial assignment the value here can be null.
 				if(assigned == null)
 				{
 					if(isPartial)
 					{
 						// can't eval the function since at least one arg is undefined.
-						mAsg = null; // clear any previous assignment
-						return;						
+						return null;
 					}
 					else
 					{
@@ -152,13 +179,48 @@ public abstract class FOTermByRecursionImpl implements FOTerm
 				else
 					args[i] = assigned;
 			}
-			mAsg = mFunc.eval(args);
+			return mFunc.eval(args);
 		}
 
 		@Override
-		public FOElement getAssignment()
+		FOElement evaluate(FOStructure structure, FOAssignment assignment, boolean isPartial)
 		{
-			return mAsg;
+			if(mFunc instanceof FOFunctionsInternalInt && mTerms.size() == 2)
+			{
+				// The integer functions can skip both the args array and the boxing in between.
+				FOElement arg0 = ((FOTermByRecursionImpl) mTerms.get(0)).evaluate(structure, assignment, isPartial);
+				FOElement arg1 = ((FOTermByRecursionImpl) mTerms.get(1)).evaluate(structure, assignment, isPartial);
+				if(arg0 == null || arg1 == null)
+				{
+					if(isPartial)
+						return null;
+					assert false; // should never happen
+					throw new FORuntimeException("Expected assignment not found for function.");						
+				}
+				return FOIntImpl.valueOf(((FOFunctionsInternalInt) mFunc).evalInt(((FOInteger) arg0).getInteger(), ((FOInteger) arg1).getInteger()));
+			}
+			
+			FOElement[] args = new FOElement[mTerms.size()];
+			for(int i = 0; i < mTerms.size(); i++)
+			{
+				FOElement assigned = ((FOTermByRecursionImpl) mTerms.get(i)).evaluate(structure, assignment, isPartial);
+				if(assigned == null)
+				{
+					if(isPartial)
+						return null; // can't eval the function since at least one arg is undefined.
+					assert false; // should never happen
+					throw new FORuntimeException("Expected assignment not found for function.");						
+				}
+				args[i] = assigned;
+			}
+			return mFunc.eval(args);
+		}
+
+		@Override
+		void assignSlots(FOAssignment.Layout layout)
+		{
+			for(FOTerm term : mTerms)
+				((FOTermByRecursionImpl) term).assignSlots(layout);
 		}
 
 		@Override
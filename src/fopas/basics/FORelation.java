@@ -40,10 +40,12 @@ public interface FORelation <T extends FOElement>
 	 * @param var
 	 * @param universeSubset
 	 * @param terms
+	 * @param termValues The values of the terms for the partial assignment, null for the terms without a value.
 	 * @param isComplemented Whether the returned set if a relative complement of the universeSubset (useful when relation is used negated).
 	 * @return
 	 */
-	<TI extends T> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset,  List<FOTerm> terms, boolean isComplemented);
+	<TI extends T> FOSet<? extends TI> tryConstrain(FOVariable var, FOSet<TI> universeSubset,  List<FOTerm> terms, FOElement[] termValues,
+			boolean isComplemented);
 	
 	Class<T> getType();
 }
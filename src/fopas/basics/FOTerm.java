@@ -22,13 +22,14 @@ import java.util.Map;
 public interface FOTerm {
 
 	/**
-	 * 
+	 * Evaluates the term for the given assignment. Terms don't keep any evaluation state, so the same term
+	 * can be evaluated re-entrantly or by many threads at once.
+	 * @param structure
 	 * @param assignment
-	 * @return True if the term accepts assignments.
+	 * @param isPartial If set, the assignment may not contain all the variables of the term.
+	 * @return The value of the term, or null for a partial assignment that doesn't give all the variables in the term.
 	 */
-	void assignVariables(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial);
-	
-	FOElement getAssignment();
+	FOElement evaluate(FOStructure structure, Map<FOVariable, FOElement> assignment, boolean isPartial);
 	
 	enum TermType
 	{
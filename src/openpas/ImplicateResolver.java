@@ -19,7 +19,11 @@ package openpas;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import openpas.basics.Assumption;
 import openpas.basics.Expressions.Expression;
@@ -30,8 +34,14 @@ import openpas.basics.LogicalOps.LogicalOr;
 import openpas.basics.PropFactory;
 import openpas.basics.Proposition;
 import openpas.basics.SymbolicResolver;
+import openpas.utils.EncodedExpressions;
 import openpas.utils.Notifier;
 import openpas.utils.Notifying;
+import openpas.utils.QueryControl;
+import openpas.utils.QueryControl.QueryAbortedException;
+import openpas.utils.QueryTrace;
+import openpas.utils.QueryTrace.Count;
+import openpas.utils.QueryTrace.Phase;
 
 // The algorithms used in here are based on the following article designated as HKL2000:
 // R. Haenni, J. Kohlas, and N. Lehmann, 
@@ -49,6 +59,28 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 	Iterable<Assumption> mAsmts;
 
 	Notifier mNotifier = Notifier.NULL_NOTIFIER;// to get verbose output
+	volatile QueryTrace.Listener mTraceListener; // null when not tracing
+
+	/**
+	 * Thrown when a resolution trips one of the resource guards (see {@link ImplicateResolver#setMaxClauses(int)} and others)
+	 * while the resolver isn't set to approximate.
+	 */
+	@SuppressWarnings("serial")
+	public static class ResourceLimitException extends QueryAbortedException
+	{
+		public ResourceLimitException(String msg) { super(msg); }
+	}
+
+	// Resource guards - 0 means no limit.
+	int mMaxClauses;
+	int mMaxClauseLength;
+	double mHeapWatermark;
+	boolean mApproximate;
+	
+	// Peak sizes reached since the last reset, these can be updated by concurrent queries.
+	final AtomicInteger mPeakClauses = new AtomicInteger();
+	final AtomicInteger mPeakClauseLength = new AtomicInteger();
+	volatile boolean mApproximated;
 
 	/***
 	 * Create new resolver
@@ -68,26 +100,98 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 		this.mNotifier = mNotifier;
 	}
 
-	@Override
-	public SimpleSentence<LogicalOr, LogicalAnd> findSP(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) {
-		// Find QS(h) -- quasi-support
-		mNotifier.printfln("findSP: Finding QS for h.");
-		SimpleSentence<LogicalOr, LogicalAnd> qsH = findQS(hypothesis);
+	/**
+	 * Limits the number of clauses in an intermediate sentence during elimination.
+	 * @param maxClauses 0 for no limit.
+	 */
+	public void setMaxClauses(int maxClauses) {
+		mMaxClauses = maxClauses;
+	}
 
-		// Find I_A -- contradictory scenarios
-		mNotifier.printfln("findSP: Finding QS_I.");
-		SimpleSentence<LogicalOr, LogicalAnd> qsI = findQS(mFac.createClause());
+	/**
+	 * Limits the length of the resolvents created during elimination.
+	 * @param maxClauseLength 0 for no limit.
+	 */
+	public void setMaxClauseLength(int maxClauseLength) {
+		mMaxClauseLength = maxClauseLength;
+	}
+
+	/**
+	 * Limits the heap used during elimination to the given fraction of the maximum heap.
+	 * @param heapWatermark A value in (0, 1], or 0 for no limit.
+	 */
+	public void setHeapWatermark(double heapWatermark) {
+		mHeapWatermark = heapWatermark;
+	}
+
+	/**
+	 * Decides what happens when a resource guard trips. By default the resolution is aborted with a
+	 * {@link ResourceLimitException}. When approximating, the offending resolvents are dropped instead
+	 * and the resolution carries on. <br>
+	 * 
+	 * Dropping clauses can only weaken the sentence an elimination works on, so the negation at the end of
+	 * the resolution loses scenarios but never gains any. This means an approximated QS is a subset of the actual QS,
+	 * and its dqs is a lower bound. This is similar to the cost-bounded approximation of arguments where
+	 * long (and so less probable) arguments are ignored. Note that the dsp isn't bounded this way since
+	 * it also depends on the QS for inconsistency.
+	 * 
+	 * @param approximate
+	 */
+	public void setApproximate(boolean approximate) {
+		mApproximate = approximate;
+	}
+	
+	public int getPeakClauses() {
+		return mPeakClauses.get();
+	}
 
-		// Calc C_A -- consistent scenarios
-		mNotifier.printfln("findSP: Finding consistent support (complement).");
-		SimpleSentence<LogicalOr, LogicalAnd> qsC = calcComplement(mFac, qsI);
+	public int getPeakClauseLength() {
+		return mPeakClauseLength.get();
+	}
 
-		// Calc SP(h) -- consistent quasi-support
-		mNotifier.printfln("findSP: Finding consistent support (intersection).");
-		SimpleSentence<LogicalOr, LogicalAnd> spH = calcIntersection(mFac, qsH, qsC);
+	/**
+	 * @return True if any resolvents are dropped since the last reset, ie. if the results can be approximate.
+	 */
+	public boolean isApproximated() {
+		return mApproximated;
+	}
+	
+	public void resetPeaks() {
+		mPeakClauses.set(0);
+		mPeakClauseLength.set(0);
+		mApproximated = false;
+	}
 
-		mNotifier.printfln("findSP: Done.");
-		return spH;
+	@Override
+	public SimpleSentence<LogicalOr, LogicalAnd> findSP(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) {
+		QueryTrace trace = QueryTrace.begin("findSP", mTraceListener);
+		try {
+			// Find QS(h) -- quasi-support
+			mNotifier.printfln("findSP: Finding QS for h.");
+			SimpleSentence<LogicalOr, LogicalAnd> qsH = findQS(hypothesis);
+	
+			// Find I_A -- contradictory scenarios
+			mNotifier.printfln("findSP: Finding QS_I.");
+			SimpleSentence<LogicalOr, LogicalAnd> qsI = findQS(mFac.createClause());
+			QueryControl.checkCurrent();
+	
+			// Calc C_A -- consistent scenarios
+			mNotifier.printfln("findSP: Finding consistent support (complement).");
+			long start = QueryTrace.startPhase();
+			SimpleSentence<LogicalOr, LogicalAnd> qsC = calcComplement(mFac, qsI);
+			QueryTrace.endPhase(Phase.Complement, start);
+	
+			// Calc SP(h) -- consistent quasi-support
+			mNotifier.printfln("findSP: Finding consistent support (intersection).");
+			start = QueryTrace.startPhase();
+			SimpleSentence<LogicalOr, LogicalAnd> spH = calcIntersection(mFac, qsH, qsC);
+			QueryTrace.endPhase(Phase.Intersection, start);
+	
+			mNotifier.printfln("findSP: Done.");
+			return spH;
+		} finally {
+			QueryTrace.end(trace);
+		}
 	}
 
 	/**
@@ -103,14 +207,22 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 	 */
 	@Override
 	public SimpleSentence<LogicalOr, LogicalAnd> findQS(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) {
-		mNotifier.printfln("findQS: Finding QS for h.");
-		SimpleSentence<LogicalOr, LogicalAnd> qs = mFac.getTrueDNF().cloneSimpleSentence();
-		for (Expression<LogicalOr> cla : hypothesis.getElements()) {
-			SimpleSentence<LogicalOr, LogicalAnd> inqs = findQS(cla);
-			qs = calcIntersection(mFac, inqs, qs);
+		QueryTrace trace = QueryTrace.begin("findQS", mTraceListener);
+		try {
+			mNotifier.printfln("findQS: Finding QS for h.");
+			SimpleSentence<LogicalOr, LogicalAnd> qs = mFac.getTrueDNF().cloneSimpleSentence();
+			for (Expression<LogicalOr> cla : hypothesis.getElements()) {
+				SimpleSentence<LogicalOr, LogicalAnd> inqs = findQS(cla);
+				QueryControl.checkCurrent();
+				long start = QueryTrace.startPhase();
+				qs = calcIntersection(mFac, inqs, qs);
+				QueryTrace.endPhase(Phase.Intersection, start);
+			}
+			mNotifier.printfln("findQS: Finding QS for h - done.");
+			return qs;
+		} finally {
+			QueryTrace.end(trace);
 		}
-		mNotifier.printfln("findQS: Finding QS for h - done.");
-		return qs;
 	}
 
 	/**
@@ -129,11 +241,19 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 	 * @return The \Sigma_H for the hypothesis.
 	 */
 	public SimpleSentence<LogicalOr, LogicalAnd> findQS(Expression<LogicalOr> hclause) {
-		mNotifier.printfln("findQS: Finding QS for clause.");
-		SimpleSentence<LogicalAnd, LogicalOr> sigmaH = computeSigmaH(hclause);
-//		System.out.println("sigma_H: " + sigmaH);
-
-		return computeNegatedPrimeImplicatesSubsetOfD_A(sigmaH);
+		QueryTrace trace = QueryTrace.begin("findQS", mTraceListener);
+		try {
+			mNotifier.printfln("findQS: Finding QS for clause.");
+			SimpleSentence<LogicalAnd, LogicalOr> sigmaH = computeSigmaH(hclause);
+	//		System.out.println("sigma_H: " + sigmaH);
+	
+			SimpleSentence<LogicalOr, LogicalAnd> qs = computeNegatedPrimeImplicatesSubsetOfD_A(sigmaH);
+			mNotifier.printfln("findQS: Peak clauses: %d, peak clause length: %d%s.", mPeakClauses.get(), mPeakClauseLength.get(),
+					mApproximated ? " (approximated)" : "");
+			return qs;
+		} finally {
+			QueryTrace.end(trace);
+		}
 	}
 
 	/**
@@ -151,7 +271,8 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 	 * @return Sigma_H for the hypothesis.
 	 */
 	protected SimpleSentence<LogicalAnd, LogicalOr> computeSigmaH(Expression<LogicalOr> hclause) {
-		SimpleSentence<LogicalAnd, LogicalOr> sigmaH = mKB.cloneSimpleSentence();
+		// The eliminations don't modify the clauses they're given, so there's no need to deep clone the KB here.
+		SimpleSentence<LogicalAnd, LogicalOr> sigmaH = mFac.createCNFSentence(mKB.getElements());
 		for (Literal lit : hclause.getLiterals()) {
 			Expression<LogicalOr> cl = mFac.createClause();
 			cl.addLiteral(lit.getNegated());
@@ -181,29 +302,47 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 	protected SimpleSentence<LogicalOr, LogicalAnd> computeNegatedPrimeImplicatesSubsetOfD_A(
 			SimpleSentence<LogicalAnd, LogicalOr> cnf) {
 
+		QueryTrace trace = QueryTrace.current();
+		
 		// Elim_P
+		long start = QueryTrace.startPhase();
 		for (Proposition prop : mProps) {
-			cnf = elimX(cnf, prop);
+			QueryControl.checkCurrent();
+			if (trace == null)
+				cnf = elimX(cnf, prop);
+			else {
+				long propStart = System.nanoTime();
+				long resolvents = trace.getCount(Count.Resolvents);
+				cnf = elimX(cnf, prop);
+				trace.addElimination(prop.getName(), System.nanoTime() - propStart, trace.getCount(Count.Resolvents) - resolvents);
+			}
 //			System.out.println("*:" + cnf);
 		}
+		QueryTrace.endPhase(Phase.ElimP, start);
 
 		// Cons_A - this step is not necessary for probability computations (HKL2000,
 		// p33)
+		start = QueryTrace.startPhase();
 		for (Assumption asm : mAsmts) {
+			QueryControl.checkCurrent();
 			cnf = consX(cnf, asm);
 //			System.out.println("*:" + cnf);
 		}
+		QueryTrace.endPhase(Phase.ConsA, start);
 
 		// We have the prime implicates of cnf subset of D_A by this point.
 
 		// Negate the result before we return it.
+		start = QueryTrace.startPhase();
 		SimpleSentence<LogicalOr, LogicalAnd> qs = mFac.getNegation().negateCNF(cnf);
+		QueryTrace.endPhase(Phase.Negation, start);
 
 		return qs;
 	}
 
 	/***
-	 * Acts on elements of sigma (ie. mutates) and eliminates x. Elim_x(\Sigma) =
+	 * Eliminates x from sigma. The clauses of sigma aren't modified, and sigma's clauses without x are shared
+	 * with the result. Elim_x(\Sigma) =
 	 * Del_x(Cons_x(\Sigma)) = \mu( \Sigma_{\dot{x}} \cup R_x ( \Sigma_x,
 	 * \Sigma_{\bar{x}} ) ) where x \in P HKL2000, p31
 	 */
@@ -220,24 +359,38 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 
 		Literal neglit = lit.getNegated();
 		for (Expression<LogicalOr> sclause : sigma.getElements()) {
-			if (sclause.isContained(lit)) {
-				sclause.removeLiteral(lit);
+			if (sclause.isContained(lit))
 				sigmaXPlu.add(sclause);
-			} else if (sclause.isContained(neglit)) {
-				sclause.removeLiteral(neglit);
+			else if (sclause.isContained(neglit))
 				sigmaXNeg.add(sclause);
-			} else {
+			else
 				sigmaXDot.add(sclause);
-			}
 		}
 
 		// Add R_xy
 		SimpleSentence<LogicalAnd, LogicalOr> elim = mFac.createCNFSentence();
-		for (Expression<LogicalOr> exPlu : sigmaXPlu)
+		long resolvents = 0;
+		long subsumed = 0;
+		long dropped = 0;
+		resolve: for (Expression<LogicalOr> exPlu : sigmaXPlu) {
+			QueryControl.checkCurrent(); // a single elimination can be large enough to need checks in between
+			if (!checkHeap(lit))
+				break;
 			for (Expression<LogicalOr> exNeg : sigmaXNeg) {
-				Expression<LogicalOr> rXY = exPlu.cloneExpression().addLiterals(exNeg.getLiterals());
-				elim.addElement(rXY);
+				Expression<LogicalOr> rXY = resolve(exPlu, exNeg, lit, neglit);
+				++resolvents;
+				if (!checkClauseLength(rXY, lit)) {
+					++dropped;
+					continue;
+				}
+				rXY = mFac.intern(rXY);
+				if (!elim.addElement(rXY))
+					++subsumed;
+				if (!checkClauses(elim, lit))
+					break resolve;
 			}
+		}
+		traceResolvents(resolvents, subsumed, dropped);
 
 		// Add \Sigma_{\dot{x}}
 		for (Expression<LogicalOr> exDot : sigmaXDot)
@@ -247,7 +400,7 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 	}
 
 	/***
-	 * Acts on elements of sigma (ie. mutates) and returns consequence sentence.
+	 * Adds the resolvents to sigma (ie. mutates) and returns the consequence sentence.
 	 * Cons_x(\Sigma)=\mu(\Sigma \cup R_x( \Sigma_x, \Sigma_{x^-})) where x \in P.
 	 * This is defined for P, however it's later used also in A. HKL2000, p29
 	 * 
@@ -258,8 +411,6 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 	protected SimpleSentence<LogicalAnd, LogicalOr> consX(SimpleSentence<LogicalAnd, LogicalOr> sigma, Literal lit) {
 		if (lit.isSpecial())
 			return null; // only defined for a proposition or assumption.
-		SimpleSentence<LogicalAnd, LogicalOr> sigmaPrime = sigma.cloneSimpleSentence();
-
 		List<Expression<LogicalOr>> sigmaXNeg = null;
 		List<Expression<LogicalOr>> sigmaXPlu = null;
 
@@ -267,24 +418,115 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 		sigmaXNeg = new ArrayList<Expression<LogicalOr>>();
 
 		Literal neglit = lit.getNegated();
-		for (Expression<LogicalOr> sclause : sigmaPrime.getElements()) {
-			if (sclause.isContained(lit)) {
-				sclause.removeLiteral(lit);
+		for (Expression<LogicalOr> sclause : sigma.getElements()) {
+			if (sclause.isContained(lit))
 				sigmaXPlu.add(sclause);
-			} else if (sclause.isContained(neglit)) {
-				sclause.removeLiteral(neglit);
+			else if (sclause.isContained(neglit))
 				sigmaXNeg.add(sclause);
-			}
 		}
 
-		for (Expression<LogicalOr> exPlu : sigmaXPlu)
+		long resolvents = 0;
+		long subsumed = 0;
+		long dropped = 0;
+		resolve: for (Expression<LogicalOr> exPlu : sigmaXPlu) {
+			QueryControl.checkCurrent();
+			if (!checkHeap(lit))
+				break;
 			for (Expression<LogicalOr> exNeg : sigmaXNeg) {
-				Expression<LogicalOr> rXY = exPlu.cloneExpression().addLiterals(exNeg.getLiterals());
-				sigma.addElement(rXY);
+				Expression<LogicalOr> rXY = resolve(exPlu, exNeg, lit, neglit);
+				++resolvents;
+				if (!checkClauseLength(rXY, lit)) {
+					++dropped;
+					continue;
+				}
+				rXY = mFac.intern(rXY);
+				if (!sigma.addElement(rXY))
+					++subsumed;
+				if (!checkClauses(sigma, lit))
+					break resolve;
 			}
+		}
+		traceResolvents(resolvents, subsumed, dropped);
 
 		return sigma;
 	}
+	
+	private static void traceResolvents(long resolvents, long subsumed, long dropped) {
+		QueryTrace trace = QueryTrace.current();
+		if (trace != null) {
+			trace.add(Count.Resolvents, resolvents);
+			trace.add(Count.Subsumed, subsumed);
+			trace.add(Count.Dropped, dropped);
+		}
+	}
+
+	/**
+	 * Returns the resolvent of the clauses exPlu containing lit and exNeg containing neglit, as a new clause.
+	 */
+	protected Expression<LogicalOr> resolve(Expression<LogicalOr> exPlu, Expression<LogicalOr> exNeg, Literal lit,
+			Literal neglit) {
+		Expression<LogicalOr> rXY = exPlu.cloneExpression();
+		rXY.removeLiteral(lit);
+		for (Literal l : exNeg.getLiterals())
+			if (!l.equals(neglit))
+				rXY.addLiteral(l);
+		return rXY;
+	}
+
+	/**
+	 * Resource guard for the length of a resolvent. Also tracks the peak length.
+	 * @return False if the resolvent should be dropped.
+	 * @throws ResourceLimitException If the guard trips and we're not approximating.
+	 */
+	protected boolean checkClauseLength(Expression<LogicalOr> resolvent, Literal lit) {
+		int length = resolvent.getLength();
+		mPeakClauseLength.accumulateAndGet(length, Math::max);
+		if (mMaxClauseLength <= 0 || length <= mMaxClauseLength)
+			return true;
+		return tripGuard(String.format("Clause length %d exceeds the limit %d while eliminating %s.", length,
+				mMaxClauseLength, lit.getName()));
+	}
+
+	/**
+	 * Resource guard for the number of clauses in an intermediate sentence. Also tracks the peak number of clauses.
+	 * @return False if no more resolvents should be added for this elimination.
+	 * @throws ResourceLimitException If the guard trips and we're not approximating.
+	 */
+	protected boolean checkClauses(SimpleSentence<LogicalAnd, LogicalOr> sigma, Literal lit) {
+		int clauses = sigma.getLength();
+		mPeakClauses.accumulateAndGet(clauses, Math::max);
+		if (mMaxClauses <= 0 || clauses < mMaxClauses)
+			return true;
+		return tripGuard(String.format("Number of clauses reached the limit %d while eliminating %s.", mMaxClauses,
+				lit.getName()));
+	}
+
+	/**
+	 * Resource guard for the heap usage.
+	 * @return False if no more resolvents should be added for this elimination.
+	 * @throws ResourceLimitException If the guard trips and we're not approximating.
+	 */
+	protected boolean checkHeap(Literal lit) {
+		if (mHeapWatermark <= 0)
+			return true;
+		Runtime rt = Runtime.getRuntime();
+		long used = rt.totalMemory() - rt.freeMemory();
+		if (used <= mHeapWatermark * rt.maxMemory())
+			return true;
+		return tripGuard(String.format("Heap usage %d MB exceeds the watermark %.2f of %d MB while eliminating %s.",
+				used >> 20, mHeapWatermark, rt.maxMemory() >> 20, lit.getName()));
+	}
+
+	private boolean tripGuard(String diagnostic) {
+		if (!mApproximate)
+			throw new ResourceLimitException(String.format("%s (peak clauses: %d, peak clause length: %d)", diagnostic,
+					mPeakClauses.get(), mPeakClauseLength.get()));
+		if (!mApproximated) {
+			mApproximated = true;
+			mNotifier.printfln("Approximating: " + diagnostic);
+		}
+		return false;
+	}
 
 	// TODO: This is and'ing two DNFs, should probably go into the And operator.
 	// Based on HKL2000, p20.
@@ -311,14 +553,14 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 			return sen2;
 		else if (sen2.isTrue())
 			return sen1;
-
-		LogicalAnd band = fac.getAnd();
-		SimpleSentence<LogicalOr, LogicalAnd> insec = fac.createDNFSentence();
-
-		for (Expression<LogicalAnd> exp1 : sen1.getElements())
-			for (Expression<LogicalAnd> exp2 : sen2.getElements())
-				insec.addElement(band.and(exp1, exp2));
-		return insec;
+		else if (sen1.isFalse() || sen2.isFalse())
+			return fac.createDNFSentence();
+
+		// The terms are encoded as arrays of literal codes, see EncodedExpressions.
+		Map<Integer, Literal> lits = new HashMap<Integer, Literal>();
+		List<int[]> insec = EncodedExpressions.distribute(EncodedExpressions.encode(sen1.getElements(), lits),
+				EncodedExpressions.encode(sen2.getElements(), lits));
+		return fac.createDNFSentence(EncodedExpressions.decode(fac, fac.getAnd(), insec, lits));
 	}
 
 	// Based on HKL2000, p21.
@@ -334,30 +576,50 @@ public class ImplicateResolver implements SymbolicResolver, Notifying {
 		// N_A - S = \cap_{\alpha \in \mu T(S)}\( N_A(\neg \alpha) \)
 		// where \alpha is a term.
 		// N_A(\neg \alpha) is found by inverting \alpha, which becomes a clause with
-		// single
-		// literals, and so a DNF sentence: negtermsen
-		SimpleSentence<LogicalOr, LogicalAnd> comp = null;
-		for (Expression<LogicalAnd> trm : sen.getElements()) {
-			// The following simply complements a term, to get a clause,
-			// which in turn we represent as a DNF.
-			// TODO: Check - don't we already do this with operator Not?
-			SimpleSentence<LogicalOr, LogicalAnd> negtermsen = fac.createDNFSentence();
-			for (Literal lit : trm.getLiterals()) {
-				Expression<LogicalAnd> intrm = fac.createTerm();
-				intrm.addLiteral(lit.getNegated());
-				negtermsen.addElement(intrm);
+		// single literals, and so a DNF of unit terms.
+		// The intersections are done on the encoded terms, and shortest terms first since
+		// those keep the intermediate results smallest.
+		Map<Integer, Literal> lits = new HashMap<Integer, Literal>();
+		List<int[]> terms = EncodedExpressions.encode(sen.getElements(), lits);
+		terms.sort((t1, t2) -> t1.length - t2.length);
+
+		List<int[]> comp = null;
+		for (int[] trm : terms) {
+			List<int[]> negtermsen = new ArrayList<int[]>(trm.length);
+			for (int code : trm) {
+				int negcode = code ^ 1;
+				if (!lits.containsKey(negcode))
+					lits.put(negcode, lits.get(code).getNegated());
+				negtermsen.add(new int[] { negcode });
 			}
 
 			if (comp == null)
 				comp = negtermsen;
 			else
-				comp = calcIntersection(fac, comp, negtermsen);
+				comp = EncodedExpressions.distribute(comp, negtermsen);
 		}
-		return comp;
+		return fac.createDNFSentence(EncodedExpressions.decode(fac, fac.getAnd(), comp, lits));
+	}
+
+	@Override
+	public CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findQSAsync(
+			SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis) {
+		return QueryControl.supplyAsync(() -> findQS(hypothesis), timeoutMillis);
+	}
+
+	@Override
+	public CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findSPAsync(
+			SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis) {
+		return QueryControl.supplyAsync(() -> findSP(hypothesis), timeoutMillis);
 	}
 
 	@Override
 	public void setNotifier(PrintStream ps) {
 		mNotifier = new Notifier(ps);
 	}
+
+	@Override
+	public void setTraceListener(QueryTrace.Listener listener) {
+		mTraceListener = listener;
+	}
 }
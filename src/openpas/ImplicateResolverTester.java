@@ -18,12 +18,18 @@
 package openpas;
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import openpas.ImplicateResolver.ResourceLimitException;
 import openpas.basics.Assumption;
+import openpas.basics.Expressions;
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
 import openpas.basics.Literal;
@@ -35,6 +41,7 @@ import openpas.basics.PropFactory;
 import openpas.basics.Proposition;
 import openpas.basics.SymbolicResolver;
 import openpas.utils.ArrayIterable;
+import openpas.utils.QueryTrace;
 
 public class ImplicateResolverTester {
 	
@@ -117,6 +124,87 @@ public class ImplicateResolverTester {
 		String str = mFac.getDefaultStringer().stringise(qs);
 		Assert.assertEquals("[b c + a ¬c + a b]", str);
 	}
+
+	@Test
+	public void testResolveQSClauseInterned() throws KBException
+	{
+		setLiterals();
+		LBImpls.LBImplFactory lbfac = (LBImpls.LBImplFactory) mFac;
+		lbfac.setInterning(true);
+
+		Expression<LogicalOr> cla1 = mFac.intern(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAna, mPy})));
+		Expression<LogicalOr> cla2 = mFac.intern(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPy, mAna})));
+		Assert.assertSame(cla1, cla2);
+		Assert.assertEquals(cla1, mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAna, mPy})));
+		try {
+			cla1.addLiteral(mPz);
+			Assert.fail("Interned expression modified.");
+		} catch (Expressions.IllegalOperationException e) {
+		}
+
+		SimpleSentence<LogicalAnd, LogicalOr> kbCNF = getKB1();
+		String kbStr = kbCNF.toString();
+		PAS pas = new PASImpl(kbCNF, mFac); 
+		ImplicateResolver ir = new ImplicateResolver(kbCNF, pas.getPropositions(), pas.getAssumptions(), mFac);
+		
+		Expression<LogicalOr> hclause = mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPy}));
+		SimpleSentence<LogicalOr, LogicalAnd> qs = ir.findQS(hclause);
+		Assert.assertEquals("[b c + a ¬c + a b]", mFac.getDefaultStringer().stringise(qs));
+		// The eliminations must leave the KB alone.
+		Assert.assertEquals(kbStr, kbCNF.toString());
+		Assert.assertEquals(qs, ir.findQS(hclause));
+		Assert.assertTrue(lbfac.getInternedCount() > 1);
+	}
+
+	@Test
+	public void testResourceLimitAbort() throws KBException
+	{
+		setLiterals();
+		SimpleSentence<LogicalAnd, LogicalOr> kbCNF = getKB1();
+		PAS pas = new PASImpl(kbCNF, mFac); 
+		ImplicateResolver ir = new ImplicateResolver(kbCNF, pas.getPropositions(), pas.getAssumptions(), mFac);
+		ir.setMaxClauseLength(1);
+		
+		Expression<LogicalOr> hclause = mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPy}));
+		try {
+			ir.findQS(hclause);
+			Assert.fail("Clause length limit not enforced.");
+		} catch (ResourceLimitException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Clause length"));
+		}
+		Assert.assertTrue(ir.getPeakClauseLength() > 1);
+		Assert.assertFalse(ir.isApproximated());
+	}
+
+	@Test
+	public void testResourceLimitApproximate() throws KBException
+	{
+		setLiterals();
+		Expression<LogicalOr> hclause = mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPy}));
+
+		SimpleSentence<LogicalAnd, LogicalOr> kbCNF = getKB1();
+		PAS pas = new PASImpl(kbCNF, mFac); 
+		ImplicateResolver ir = new ImplicateResolver(kbCNF, pas.getPropositions(), pas.getAssumptions(), mFac);
+		SimpleSentence<LogicalOr, LogicalAnd> qs = ir.findQS(hclause);
+		Assert.assertTrue(ir.getPeakClauses() > 0);
+		Assert.assertFalse(ir.isApproximated());
+
+		// The resolver works on the kb given, so start again with a fresh one.
+		kbCNF = getKB1();
+		ImplicateResolver irApprox = new ImplicateResolver(kbCNF, pas.getPropositions(), pas.getAssumptions(), mFac);
+		irApprox.setMaxClauseLength(2);
+		irApprox.setApproximate(true);
+		SimpleSentence<LogicalOr, LogicalAnd> qsApprox = irApprox.findQS(hclause);
+		Assert.assertTrue(irApprox.isApproximated());
+		Assert.assertTrue(irApprox.getPeakClauseLength() > 2);
+
+		// The approximation can only lose scenarios.
+		double dqs = ProbabilityComputer_BDD.computeDNFProbability(qs, 1000, null);
+		double dqsApprox = ProbabilityComputer_BDD.computeDNFProbability(qsApprox, 1000, null);
+		Assert.assertTrue(dqsApprox < dqs);
+		Assert.assertEquals(ImplicateResolver.calcIntersection(mFac, qs, qsApprox), qsApprox);
+	}
+
 	@Test
 	public void testResolveQSContradiction() throws KBException
 	{
@@ -195,6 +283,38 @@ public class ImplicateResolverTester {
 	}
 	
 	
+	@Test
+	public void testIntersectionMatchesNaive()
+	{
+		setLiterals();
+		Literal[] lits = new Literal[] {mAa, mAna, mAb, mAnb, mAc, mAnc};
+		Random rand = new Random(5);
+
+		for(int round = 0; round < 20; ++round)
+		{
+			SimpleSentence<LogicalOr, LogicalAnd> sen1 = mFac.createDNFSentence();
+			SimpleSentence<LogicalOr, LogicalAnd> sen2 = mFac.createDNFSentence();
+			for(int i = 0; i < 4; ++i)
+			{
+				sen1.addElement(mFac.createTerm(new ArrayIterable<Literal>(new Literal[]{lits[rand.nextInt(6)], lits[rand.nextInt(6)]})));
+				sen2.addElement(mFac.createTerm(new ArrayIterable<Literal>(new Literal[]{lits[rand.nextInt(6)], lits[rand.nextInt(6)]})));
+			}
+
+			// The cross product of all the terms put through \mu.
+			SimpleSentence<LogicalOr, LogicalAnd> naive = mFac.createDNFSentence();
+			for(Expression<LogicalAnd> exp1 : sen1.getElements())
+				for(Expression<LogicalAnd> exp2 : sen2.getElements())
+					naive.addElement(mFac.getAnd().and(exp1, exp2));
+
+			SimpleSentence<LogicalOr, LogicalAnd> insec = ImplicateResolver.calcIntersection(mFac, sen1, sen2);
+			Assert.assertEquals(naive.toString(), insec.toString());
+
+			// A sentence and its complement have no scenarios in common.
+			SimpleSentence<LogicalOr, LogicalAnd> comp = ImplicateResolver.calcComplement(mFac, sen1);
+			Assert.assertTrue(ImplicateResolver.calcIntersection(mFac, sen1, comp).isFalse());
+		}
+	}
+
 	@Test
 	public void testTruesIntersection()
 	{
@@ -281,5 +401,38 @@ public class ImplicateResolverTester {
 		String str = mFac.getDefaultStringer().stringise(sp);
 		Assert.assertEquals("[a ¬b ¬c]", str);			
 	}
-}
 
+	@Test
+	public void testTrace() throws KBException
+	{
+		setLiterals();
+		SimpleSentence<LogicalAnd, LogicalOr> kbCNF = getKB1();
+		PAS pas = new PASImpl(kbCNF, mFac);
+		ImplicateResolver ir = new ImplicateResolver(kbCNF, pas.getPropositions(), pas.getAssumptions(), mFac);
+		
+		SimpleSentence<LogicalAnd, LogicalOr> hypothesis = mFac.createCNFSentence();
+		hypothesis.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPy})));
+
+		List<QueryTrace> traces = new ArrayList<>();
+		ir.setTraceListener(traces::add);
+		SimpleSentence<LogicalOr, LogicalAnd> sp = ir.findSP(hypothesis);
+		Assert.assertEquals("[a ¬b ¬c]", mFac.getDefaultStringer().stringise(sp));
+		Assert.assertNull(QueryTrace.current());
+		
+		// The nested queries are part of the outermost one.
+		Assert.assertEquals(1, traces.size());
+		QueryTrace trace = traces.get(0);
+		Assert.assertEquals("findSP", trace.getQuery());
+		Assert.assertTrue(trace.getCount(QueryTrace.Count.Resolvents) > 0);
+		Assert.assertTrue(trace.getNanos(QueryTrace.Phase.ElimP) > 0);
+		Assert.assertTrue(trace.getNanos(QueryTrace.Phase.Complement) > 0);
+		Assert.assertTrue(trace.getTotalNanos() >= trace.getNanos(QueryTrace.Phase.ElimP));
+		for(Proposition prop : pas.getPropositions())
+			Assert.assertTrue(trace.getEliminations().containsKey(prop.getName()));
+		Assert.assertTrue(trace.toJSON(), trace.toJSON().startsWith("{\"query\":\"findSP\",\"ms\":"));
+		
+		ir.setTraceListener(null);
+		ir.findSP(hypothesis);
+		Assert.assertEquals(1, traces.size());
+	}
+}
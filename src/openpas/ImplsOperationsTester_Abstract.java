@@ -23,8 +23,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import openpas.basics.Expressions.Expression;
+import openpas.basics.Expressions.SimpleSentence;
 import openpas.basics.Literal;
+import openpas.basics.LogicalOps.ConversionLimitException;
 import openpas.basics.LogicalOps.LogicalAnd;
+import openpas.basics.LogicalOps.LogicalOr;
 import openpas.basics.PropFactory;
 import openpas.utils.ArrayIterable;
 
@@ -91,4 +94,61 @@ public abstract class ImplsOperationsTester_Abstract {
 		Assert.assertEquals("a ¬b c", str);
 		
 	}
+
+	@Test
+	public void testConvertCNFAndBack()
+	{
+		setLiterals();
+		
+		SimpleSentence<LogicalAnd, LogicalOr> cnf = mFac.createCNFSentence();
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLa, mLb})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLna, mLc})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLb})));
+
+		SimpleSentence<LogicalOr, LogicalAnd> dnf = mFac.getConverter().convertCNF(cnf);
+		Assert.assertEquals("[¬a b + b c]", mFac.getDefaultStringer().stringise(dnf));
+
+		SimpleSentence<LogicalAnd, LogicalOr> cnfBack = mFac.getConverter().convertDNF(dnf);
+		Assert.assertEquals("[(¬a + c)(b)]", mFac.getDefaultStringer().stringise(cnfBack));
+
+		Assert.assertTrue(mFac.getConverter().convertCNF(mFac.getTrueCNF()).isTrue());
+		Assert.assertTrue(mFac.getConverter().convertCNF(mFac.getFalseCNF()).isFalse());
+	}
+
+	@Test
+	public void testConvertWithBudget()
+	{
+		setLiterals();
+		
+		SimpleSentence<LogicalAnd, LogicalOr> cnf = mFac.createCNFSentence();
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLa, mLb})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLc, mLd})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLe, mLf})));
+
+		int[] progress = new int[3];
+		SimpleSentence<LogicalOr, LogicalAnd> dnf = mFac.getConverter().convertCNF(cnf, 8, 
+				(done, total, elements) -> { progress[0] = done; progress[1] = total; progress[2] = elements; });
+		Assert.assertEquals(8, dnf.getLength());
+		Assert.assertArrayEquals(new int[] {3, 3, 8}, progress);
+
+		try {
+			mFac.getConverter().convertCNF(cnf, 7, null);
+			Assert.fail("Conversion budget not enforced.");
+		} catch (ConversionLimitException e) {
+			Assert.assertEquals(3, e.getDone());
+			Assert.assertEquals(8, e.getElements());
+		}
+		
+		// The budget is also checked in the middle of a step, so it gives up before forming all of its 10 terms.
+		SimpleSentence<LogicalAnd, LogicalOr> cnfWide = mFac.createCNFSentence();
+		cnfWide.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLa, mLb})));
+		cnfWide.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[] {mLc, mLd, mLe, mLf, mLg})));
+		try {
+			mFac.getConverter().convertCNF(cnfWide, 2, null);
+			Assert.fail("Conversion budget not enforced.");
+		} catch (ConversionLimitException e) {
+			Assert.assertEquals(2, e.getDone());
+			Assert.assertEquals(5, e.getElements());
+		}
+	}
 }
@@ -17,11 +17,93 @@
 
 package openpas;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import openpas.basics.Assumption;
+import openpas.basics.Literal;
 import openpas.basics.PropFactory;
+import openpas.basics.Proposition;
 
 public class ImplsPrimitivesTester_LB extends ImplsPrimitivesTester_Abstract {
 	PropFactory createFactory()
 	{
 		return new LBImpls.LBImplFactory();
 	}
+	
+	@Test
+	public void testLiteralTable() {
+		LBImpls.LBImplFactory fac = (LBImpls.LBImplFactory) mFac;
+		Assumption a = fac.createAssumption("a", false, 0.3);
+		Proposition x = fac.createProposition("x", true);
+		Assumption b = fac.createAssumption("b", true, 0.4);
+
+		// Negation is a round trip to the same objects.
+		Assert.assertSame(a, a.getNegated().getNegated());
+		Assert.assertSame(x, x.getNegated().getNegated());
+		Assert.assertEquals(0.4, b.getProbability(), DOUBLE_COMPARE_DELTA);
+		Assert.assertEquals(0.6, ((Assumption) b.getNegated()).getProbability(), DOUBLE_COMPARE_DELTA);
+		Assert.assertEquals(0.6, fac.getProbability(b.getIndex()), DOUBLE_COMPARE_DELTA);
+
+		// Lookups give the positive literals.
+		Assert.assertSame(a, fac.getLiteral("a"));
+		Assert.assertSame(x.getNegated(), fac.getLiteral(x.getIndex()));
+		Assert.assertEquals("b", fac.getLiteral(b.getIndex()).getName());
+		Assert.assertNull(fac.getLiteral("y"));
+		Assert.assertNull(fac.getLiteral(-1));
+		
+		int mark = fac.markLiterals();
+		for(int i = 0; i < 200; i++)
+			fac.createProposition("p" + i, false);
+		Assert.assertEquals(203, fac.getNumLiterals());
+		Assert.assertEquals("p150", fac.getLiteral("p150").getName());
+		
+		fac.releaseLiterals(mark);
+		Assert.assertEquals(3, fac.getNumLiterals());
+		Assert.assertNull(fac.getLiteral("p0"));
+		Assert.assertEquals(Arrays.asList(a, b.getNegated()), toList(fac.getAssumptions()));
+		Assert.assertEquals(Arrays.asList(x.getNegated()), toList(fac.getPropositions()));
+
+		// Released slots are reused.
+		Proposition z = fac.createProposition("z", false);
+		Assert.assertEquals(mark, (int) z.getIndex());
+		Assert.assertEquals("z", z.getName());
+	}
+	
+	@Test
+	public void testLiteralTableReset() {
+		LBImpls.LBImplFactory fac = (LBImpls.LBImplFactory) mFac;
+		fac.createProposition("kept", false);
+		for(int i = 0; i < 100; i++)
+			fac.createAssumption("dropped" + i, i % 2 == 0, 0.5);
+		
+		// Literals nobody refers to stay in the table until they're released explicitly.
+		System.gc();
+		Assert.assertEquals(101, fac.getNumLiterals());
+		Assert.assertEquals("dropped0", fac.getLiteral("dropped0").getName());
+		Assert.assertEquals(100, toList(fac.getAssumptions()).size());
+		
+		fac.resetLiterals();
+		Assert.assertEquals(0, fac.getNumLiterals());
+		Assert.assertNull(fac.getLiteral("kept"));
+		Assert.assertNull(fac.getLiteral(0));
+		Assert.assertTrue(toList(fac.getAssumptions()).isEmpty());
+		Assert.assertTrue(toList(fac.getPropositions()).isEmpty());
+		
+		Assumption y = fac.createAssumption("y", true, 0.1);
+		Assert.assertEquals(0, (int) y.getIndex());
+		Assert.assertEquals(0.1, y.getProbability(), DOUBLE_COMPARE_DELTA);
+		Assert.assertEquals(0.9, ((Assumption) y.getNegated()).getProbability(), DOUBLE_COMPARE_DELTA);
+	}
+	
+	private static List<Literal> toList(Iterable<? extends Literal> lits) {
+		List<Literal> list = new ArrayList<Literal>();
+		for(Literal l : lits)
+			list.add(l);
+		return list;
+	}
 }
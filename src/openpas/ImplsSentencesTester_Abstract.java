@@ -18,7 +18,10 @@
 package openpas;
 
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -223,6 +226,27 @@ public abstract class ImplsSentencesTester_Abstract{
 		String str = mFac.getDefaultStringer().stringise(sen);
 		Assert.assertEquals("[(a + ¬b + ¬c)(¬c + d)]", str);
 	}
+	
+	@Test
+	public void testAddElementDropsScatteredSubsumed()
+	{
+		setLiterals();
+		
+		// The clauses containing 'a' are interleaved with ones that don't, so the kept ones have to move down.
+		SimpleSentence<LogicalAnd, LogicalOr> sen = mFac.createCNFSentence();
+		Assert.assertTrue(sen.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mLa, mLnb}))));
+		Assert.assertTrue(sen.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mLc}))));
+		Assert.assertTrue(sen.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mLa, mLd}))));
+		Assert.assertTrue(sen.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mLe}))));
+		Assert.assertTrue(sen.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mLa, mLnf}))));
+		Assert.assertTrue(sen.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mLa}))));
+		Assert.assertEquals("[(c)(e)(a)]", mFac.getDefaultStringer().stringise(sen));
+		
+		Assert.assertFalse(sen.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mLe, mLg}))));
+		Assert.assertEquals("[(c)(e)(a)]", mFac.getDefaultStringer().stringise(sen));
+		Assert.assertEquals(3, sen.getLength());
+	}
+	
 	@Test
 	public void testCreateCNFWithFalse()
 	{
@@ -291,6 +315,44 @@ public abstract class ImplsSentencesTester_Abstract{
 		Assert.assertEquals("[(False)]", str);
 	}
 	
+	@Test
+	public void testUpdateMinimisesLikeAddElement()
+	{
+		setLiterals();
+		Literal[] lits = new Literal[] {mLa, mLnb, mLc, mLnd, mLe, mLnf, mLg};
+
+		// Build clauses of varying lengths including duplicates and subsumed ones.
+		Random rand = new Random(17);
+		List<Expression<LogicalOr>> clauses = new ArrayList<Expression<LogicalOr>>();
+		for(int i = 0; i < 60; ++i)
+		{
+			Expression<LogicalOr> cla = mFac.createClause();
+			int len = 1 + rand.nextInt(4);
+			for(int j = 0; j < len; ++j)
+				cla.addLiteral(lits[rand.nextInt(lits.length)]);
+			clauses.add(cla);
+		}
+
+		SimpleSentence<LogicalAnd, LogicalOr> added = mFac.createCNFSentence();
+		for(Expression<LogicalOr> cla : clauses)
+			added.addElement(cla);
+		SimpleSentence<LogicalAnd, LogicalOr> constructed = mFac.createCNFSentence(clauses);
+		Assert.assertEquals(added.toString(), constructed.toString());
+
+		// Shorten one of the clauses so that it subsumes others, and check update() catches up with it.
+		Expression<LogicalOr> cla = constructed.getElements().iterator().next();
+		Literal removed = cla.getLiterals().iterator().next();
+		if(cla.getLength() > 1)
+			cla.removeLiteral(removed);
+		constructed.update();
+
+		SimpleSentence<LogicalAnd, LogicalOr> readded = mFac.createCNFSentence();
+		for(Expression<LogicalOr> elt : added.getElements())
+			readded.addElement(elt);
+		Assert.assertEquals(readded.toString(), constructed.toString());
+		Assert.assertEquals(constructed, constructed.cloneSimpleSentence());
+	}
+
 	@Test
 	public void testExceptionFiredBeforeUpdate()
 	{
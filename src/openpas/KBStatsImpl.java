@@ -0,0 +1,302 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package openpas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import openpas.basics.Expressions.Expression;
+import openpas.basics.KBStats;
+import openpas.basics.Literal;
+import openpas.basics.LogicalOps.LogicalOr;
+
+/**
+ * These are kept up to date by {@link PASImpl} as clauses are added, so reading them is cheap. The one exception is
+ * {@link #estimateTreewidth()} which is worked out when it's asked for (and cached until the next change).
+ */
+public class KBStatsImpl implements KBStats
+{
+	protected int mNumAssumptions;
+	protected int mNumPropositions;
+	
+	protected int mNumClauses;
+	protected long mNumOccurrences;
+	protected int mNumHorn;
+	protected final SortedMap<Integer, Integer> mLengths = new TreeMap<>();
+	protected final Map<Integer, int[]> mOccurrences = new HashMap<>(); // index -> {positive, negative}
+	protected final Map<Integer, Literal> mLiterals = new HashMap<>(); // index -> positive literal
+	
+	protected final Map<Integer, Set<Integer>> mNeighbours = new HashMap<>();
+	protected long mNumEdges;
+	protected int mMaxDegree;
+	protected final Map<Integer, Integer> mComponentParent = new HashMap<>();
+	protected int mNumComponents;
+	
+	protected int mTreewidth = -1; // cached, -1 if not known
+	
+	protected KBStatsImpl()
+	{
+	}
+	
+	void onAssumptionAdded()
+	{
+		++mNumAssumptions;
+	}
+	
+	void onPropositionAdded()
+	{
+		++mNumPropositions;
+	}
+	
+	void reset(Iterable<Expression<LogicalOr>> clauses)
+	{
+		mNumClauses = 0;
+		mNumOccurrences = 0;
+		mNumHorn = 0;
+		mLengths.clear();
+		mOccurrences.clear();
+		mLiterals.clear();
+		mNeighbours.clear();
+		mNumEdges = 0;
+		mMaxDegree = 0;
+		mComponentParent.clear();
+		mNumComponents = 0;
+		mTreewidth = -1;
+		for(Expression<LogicalOr> cla : clauses)
+			addClause(cla);
+	}
+	
+	void addClause(Expression<LogicalOr> cla)
+	{
+		mTreewidth = -1;
+		++mNumClauses;
+		List<Integer> indices = new ArrayList<>(cla.getLength());
+		int numPositive = 0;
+		for(Literal lit : cla.getLiterals())
+		{
+			if(lit.isSpecial())
+				continue;
+			if(!lit.getNeg())
+				++numPositive;
+			indices.add(lit.getIndex());
+			int[] occurs = mOccurrences.get(lit.getIndex());
+			if(occurs == null)
+			{
+				occurs = new int[2];
+				mOccurrences.put(lit.getIndex(), occurs);
+				mLiterals.put(lit.getIndex(), lit.getNeg() ? lit.getNegated() : lit);
+				mNeighbours.put(lit.getIndex(), new HashSet<>());
+				mComponentParent.put(lit.getIndex(), lit.getIndex());
+				++mNumComponents;
+			}
+			++occurs[lit.getNeg() ? 1 : 0];
+		}
+		mNumOccurrences += indices.size();
+		mLengths.merge(indices.size(), 1, Integer::sum);
+		if(numPositive <= 1)
+			++mNumHorn;
+		
+		for(int i = 0; i < indices.size(); ++i)
+		{
+			int index = indices.get(i);
+			for(int j = i + 1; j < indices.size(); ++j)
+			{
+				int other = indices.get(j);
+				if(index == other || !mNeighbours.get(index).add(other))
+					continue;
+				mNeighbours.get(other).add(index);
+				++mNumEdges;
+				mMaxDegree = Math.max(mMaxDegree, Math.max(mNeighbours.get(index).size(), mNeighbours.get(other).size()));
+			}
+			if(i > 0)
+				union(indices.get(0), index);
+		}
+	}
+	
+	protected int findComponent(int index)
+	{
+		int root = index;
+		while(mComponentParent.get(root) != root)
+			root = mComponentParent.get(root);
+		// Compress the path for the next time
+		while(index != root)
+		{
+			int next = mComponentParent.get(index);
+			mComponentParent.put(index, root);
+			index = next;
+		}
+		return root;
+	}
+	
+	protected void union(int index1, int index2)
+	{
+		int root1 = findComponent(index1);
+		int root2 = findComponent(index2);
+		if(root1 != root2)
+		{
+			mComponentParent.put(root1, root2);
+			--mNumComponents;
+		}
+	}
+
+	@Override
+	public int getNumAssumptions() {
+		return mNumAssumptions;
+	}
+	
+	@Override
+	public int getNumPropositions() {
+		return mNumPropositions;
+	}
+	
+	@Override
+	public double getNumScenarios() {
+		return Math.pow(2, mNumAssumptions);
+	}
+	
+	@Override
+	public int getNumClauses() {
+		return mNumClauses;
+	}
+	
+	@Override
+	public SortedMap<Integer, Integer> getClauseLengthHistogram() {
+		return Collections.unmodifiableSortedMap(mLengths);
+	}
+	
+	@Override
+	public int getMaxClauseLength() {
+		return mLengths.isEmpty() ? 0 : mLengths.lastKey();
+	}
+	
+	@Override
+	public double getAverageClauseLength() {
+		return mNumClauses == 0 ? 0 : (double) mNumOccurrences / mNumClauses;
+	}
+	
+	@Override
+	public int getNumHorn() {
+		return mNumHorn;
+	}
+	
+	@Override
+	public double getHornRatio() {
+		return mNumClauses == 0 ? 1 : (double) mNumHorn / mNumClauses;
+	}
+	
+	@Override
+	public int getOccurrences(Literal lit) {
+		int[] occurs = mOccurrences.get(lit.getIndex());
+		return occurs == null ? 0 : occurs[lit.getNeg() ? 1 : 0];
+	}
+	
+	@Override
+	public List<Literal> getMostFrequent(int num) {
+		List<Integer> indices = new ArrayList<>(mOccurrences.keySet());
+		indices.sort((i1, i2) -> Integer.compare(totalOccurrences(i2), totalOccurrences(i1)));
+		List<Literal> frequent = new ArrayList<>(Math.min(num, indices.size()));
+		for(int i = 0; i < num && i < indices.size(); ++i)
+			frequent.add(mLiterals.get(indices.get(i)));
+		return frequent;
+	}
+	
+	protected int totalOccurrences(int index) {
+		int[] occurs = mOccurrences.get(index);
+		return occurs[0] + occurs[1];
+	}
+	
+	@Override
+	public int getNumVariables() {
+		return mNeighbours.size();
+	}
+	
+	@Override
+	public long getNumEdges() {
+		return mNumEdges;
+	}
+	
+	@Override
+	public int getMaxDegree() {
+		return mMaxDegree;
+	}
+	
+	@Override
+	public int getNumComponents() {
+		return mNumComponents;
+	}
+	
+	@Override
+	public int getLargestComponentSize() {
+		Map<Integer, Integer> sizes = new HashMap<>();
+		int largest = 0;
+		for(int index : mComponentParent.keySet())
+			largest = Math.max(largest, sizes.merge(findComponent(index), 1, Integer::sum));
+		return largest;
+	}
+	
+	/**
+	 * Finds an upper bound for the treewidth of the interaction graph using the min-degree heuristic: 
+	 * the vertex with the fewest neighbours is eliminated each time, connecting all its neighbours. 
+	 * The bound is the largest number of neighbours seen while eliminating. <br>
+	 * This is how proposition elimination behaves too, so the bound is a guide to how large the clauses resolved can get.
+	 * @return The treewidth estimate, 0 for an empty KB.
+	 */
+	@Override
+	public int estimateTreewidth() {
+		if(mTreewidth >= 0)
+			return mTreewidth;
+		
+		Map<Integer, Set<Integer>> graph = new HashMap<>(mNeighbours.size());
+		PriorityQueue<int[]> byDegree = new PriorityQueue<>((e1, e2) -> Integer.compare(e1[1], e2[1])); // {index, degree}
+		for(Map.Entry<Integer, Set<Integer>> vertex : mNeighbours.entrySet())
+		{
+			graph.put(vertex.getKey(), new HashSet<>(vertex.getValue()));
+			byDegree.add(new int[] {vertex.getKey(), vertex.getValue().size()});
+		}
+		
+		int width = 0;
+		while(!byDegree.isEmpty())
+		{
+			int[] entry = byDegree.poll();
+			Set<Integer> neighbours = graph.get(entry[0]);
+			if(neighbours == null || neighbours.size() != entry[1])
+				continue; // eliminated already or its degree has changed since
+			width = Math.max(width, neighbours.size());
+			graph.remove(entry[0]);
+			for(int n : neighbours)
+			{
+				Set<Integer> nn = graph.get(n);
+				nn.remove(entry[0]);
+				for(int other : neighbours)
+					if(other != n)
+						nn.add(other);
+				byDegree.add(new int[] {n, nn.size()});
+			}
+		}
+		mTreewidth = width;
+		return width;
+	}
+}
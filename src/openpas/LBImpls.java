@@ -19,16 +19,17 @@ package openpas;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 import openpas.StringOps.LogicalSmyboliser;
@@ -39,6 +40,7 @@ import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SentenceNotUpdatedException;
 import openpas.basics.Expressions.SimpleSentence;
 import openpas.basics.Literal;
+import openpas.basics.Literal.LiteralType;
 import openpas.basics.LogicalOps;
 import openpas.basics.LogicalOps.LogicalAnd;
 import openpas.basics.LogicalOps.LogicalConverter;
@@ -49,7 +51,6 @@ import openpas.basics.LogicalOps.OperatorException;
 import openpas.basics.PropFactory;
 import openpas.basics.Proposition;
 import openpas.utils.ArrayIterable;
-import openpas.utils.WeakIterator;
 
 /**
  * This file contains an implementation of a PropFactory and everything created from it which together
@@ -95,13 +96,21 @@ class LBImpls {
 	
 	static class LBImplFactory implements PropFactory
 	{
-		private int mLiteralsIndex = 0;
 		private NegationImpl mNeg = new NegationImpl(this);
 		private BinaryOrImpl mOr = new BinaryOrImpl(this);
 		private LogicalAndImpl mAnd = new LogicalAndImpl(this);
 				
-		List<WeakReference<Assumption>> mAssumptions = new LinkedList<WeakReference<Assumption>>();
-		List<WeakReference<Proposition>> mPropositions = new LinkedList<WeakReference<Proposition>>();
+		// Literal table: all the metadata for a literal lives here addressed by its index, the literal objects
+		// are only handles onto it. Both signs of a literal are created together so negation doesn't allocate.
+		// Entries stay until they're released explicitly with releaseLiterals() or resetLiterals(), which is also
+		// the only way their slots get reused.
+		private static final int INITIAL_LITERALS_SIZE = 64;
+		private int mNumLiterals = 0;
+		private volatile String[] mLitNames = new String[INITIAL_LITERALS_SIZE];
+		private LiteralType[] mLitTypes = new LiteralType[INITIAL_LITERALS_SIZE];
+		private volatile double[] mLitProbs = new double[INITIAL_LITERALS_SIZE]; // probability of the positive assumption
+		private LiteralLBImpl[] mLitPositives = new LiteralLBImpl[INITIAL_LITERALS_SIZE];
+		private Map<String, Integer> mLitIndexByName = new HashMap<String, Integer>();
 
     	Map<Integer, Literal> mFalseLiterals;
     	Map<Integer, Literal> mTrueLiterals;
@@ -128,6 +137,12 @@ class LBImpls {
     	private LogicalStringer mLogStringiser;
     	private LogicalStringer mHornStringer;
 
+    	// Hash-consing of expressions, see intern(). The canonical expressions are the keys, and they're only
+    	// weakly held so the table doesn't keep alive resolvents nobody refers to anymore.
+    	private boolean mInterning = false;
+    	private Map<Expression<? extends LogicalOp>, WeakReference<Expression<? extends LogicalOp>>> mInternTable = 
+    			new WeakHashMap<Expression<? extends LogicalOp>, WeakReference<Expression<? extends LogicalOp>>>();
+
     	public LBImplFactory()
     	{
         	mLogSymboliser = StringOps.createLogicalSymboliser();
@@ -183,22 +198,156 @@ class LBImpls {
 		}
 
 		@Override
-		public Proposition createProposition(String name, boolean neg) {
+		public synchronized Proposition createProposition(String name, boolean neg) {
 			if(!sValidLiteralName.matcher(name).matches()) // this really throw an exception
 				return null; // refuse to create with invalid name
-			Proposition prop = new PropositionLBImpl(name, neg, mLiteralsIndex++);
-			mPropositions.add(new WeakReference<Proposition>(prop));
-			return prop;
+			int index = addLiteral(name, LiteralType.Proposition, 0);
+			PropositionLBImpl pos = new PropositionLBImpl(this, false, index);
+			PropositionLBImpl negated = new PropositionLBImpl(this, true, index);
+			pairLiterals(index, pos, negated);
+			return neg ? negated : pos;
 		}
 
 		@Override
-		public Assumption createAssumption(String name, boolean neg,
+		public synchronized Assumption createAssumption(String name, boolean neg,
 				double probability) {
 			if(!sValidLiteralName.matcher(name).matches()) // this really throw an exception
 				return null; // refuse to create with invalid name
-			Assumption asmt = new AssumptionLBImpl(name, neg, mLiteralsIndex++, probability);
-			mAssumptions.add(new WeakReference<Assumption>(asmt));
-			return asmt;
+			int index = addLiteral(name, LiteralType.Assumption, neg ? 1 - probability : probability);
+			AssumptionLBImpl pos = new AssumptionLBImpl(this, false, index);
+			AssumptionLBImpl negated = new AssumptionLBImpl(this, true, index);
+			pairLiterals(index, pos, negated);
+			return neg ? negated : pos;
+		}
+		
+		private int addLiteral(String name, LiteralType type, double posProbability) {
+			int index = mNumLiterals;
+			if(index == mLitTypes.length) {
+				int size = index * 2;
+				mLitTypes = Arrays.copyOf(mLitTypes, size);
+				mLitPositives = Arrays.copyOf(mLitPositives, size);
+				double[] probs = Arrays.copyOf(mLitProbs, size);
+				probs[index] = posProbability;
+				mLitProbs = probs;
+				String[] names = Arrays.copyOf(mLitNames, size);
+				names[index] = name;
+				mLitNames = names;
+			}
+			else {
+				mLitProbs[index] = posProbability;
+				mLitNames[index] = name;
+			}
+			mLitTypes[index] = type;
+			mLitIndexByName.put(name, index);
+			mNumLiterals++;
+			return index;
+		}
+		
+		private void pairLiterals(int index, LiteralLBImpl pos, LiteralLBImpl neg) {
+			pos.mNegation = neg;
+			neg.mNegation = pos;
+			mLitPositives[index] = pos;
+		}
+		
+		private void clearLiteral(int index) {
+			Integer named = mLitIndexByName.get(mLitNames[index]);
+			if(named != null && named == index)
+				mLitIndexByName.remove(mLitNames[index]);
+			mLitNames[index] = null;
+			mLitTypes[index] = null;
+			mLitPositives[index] = null;
+		}
+		
+		String getLiteralName(int index) {
+			return mLitNames[index];
+		}
+		
+		double getLiteralProbability(int index) {
+			return mLitProbs[index];
+		}
+		
+		/**
+		 * Returns the positive literal with the given index or null if there isn't one.
+		 * @param index
+		 * @return
+		 */
+		public synchronized Literal getLiteral(int index) {
+			return index >= 0 && index < mNumLiterals ? mLitPositives[index] : null;
+		}
+
+		/**
+		 * Returns the positive literal last created with the given name or null if there isn't one.
+		 * @param name
+		 * @return
+		 */
+		public synchronized Literal getLiteral(String name) {
+			Integer index = mLitIndexByName.get(name);
+			return index == null ? null : mLitPositives[index];
+		}
+		
+		/**
+		 * Returns the probability of the positive assumption with the given index.
+		 * @param index
+		 * @return
+		 */
+		public synchronized double getProbability(int index) {
+			if(index < 0 || index >= mNumLiterals || mLitTypes[index] != LiteralType.Assumption)
+				throw new IllegalArgumentException("No assumption at index: " + index);
+			return mLitProbs[index];
+		}
+		
+		/**
+		 * Size of the literal table, i.e. the number of propositions and assumptions created by this factory and not
+		 * released yet.
+		 * @return
+		 */
+		public synchronized int getNumLiterals() {
+			return mNumLiterals;
+		}
+
+		/**
+		 * Marks the current end of the literal table to be used with {@link #releaseLiterals(int)}.
+		 * @return
+		 */
+		public synchronized int markLiterals() {
+			return mNumLiterals;
+		}
+		
+		/**
+		 * Drops all the literals created since the given mark from the literal table, so their slots get reused.<br>
+		 * Literals released this way (and any expression that contains them) shouldn't be used afterwards.
+		 * @param mark
+		 */
+		public synchronized void releaseLiterals(int mark) {
+			if(mark < 0 || mark > mNumLiterals)
+				throw new IllegalArgumentException("Invalid literal mark: " + mark);
+			for(int i = mark; i < mNumLiterals; i++)
+				clearLiteral(i);
+			mNumLiterals = mark;
+		}
+		
+		/**
+		 * Drops all the literals from the literal table, e.g. when the KB they're for is discarded.<br>
+		 * The same as releasing them to the mark at the start of the table, see {@link #releaseLiterals(int)}.
+		 */
+		public synchronized void resetLiterals() {
+			releaseLiterals(0);
+		}
+		
+		@SuppressWarnings("unchecked")
+		private <T extends Literal> Iterable<T> getLiteralsOfType(final LiteralType type) {
+			return new Iterable<T>() {
+				@Override
+				public Iterator<T> iterator() {
+					List<T> lits = new ArrayList<T>();
+					synchronized(LBImplFactory.this) {
+						for(int i = 0; i < mNumLiterals; i++)
+							if(mLitTypes[i] == type)
+								lits.add((T) mLitPositives[i]);
+					}
+					return Collections.unmodifiableList(lits).iterator();
+				}
+			};
 		}
 
 		@Override
@@ -213,23 +362,12 @@ class LBImpls {
 		
 		@Override
 		public Iterable<Proposition> getPropositions() {
-			return new Iterable<Proposition>() {
-				@Override
-				public Iterator<Proposition> iterator() 
-				{
-					return new WeakIterator<Proposition>(mPropositions);
-				}
-			};
+			return getLiteralsOfType(LiteralType.Proposition);
 		}
 
 		@Override
 		public Iterable<Assumption> getAssumptions() {
-			return new Iterable<Assumption> () {
-				@Override
-				public Iterator<Assumption> iterator() {
-					return new WeakIterator<Assumption>(mAssumptions);
-				}				
-			};
+			return getLiteralsOfType(LiteralType.Assumption);
 		}
 
 		@Override
@@ -284,6 +422,47 @@ class LBImpls {
 			throw new Expressions.UnsupportedConstructException("Unsupported custom expression.");			
 		}
 
+		/**
+		 * Turns on/off the hash-consing of expressions via {@link #intern(Expression)}. This is off by default,
+		 * in which case intern() returns its argument as is.<br>
+		 * Turning it off doesn't thaw the expressions already interned.
+		 */
+		public synchronized void setInterning(boolean interning) {
+			mInterning = interning;
+			if(!interning)
+				mInternTable.clear();
+		}
+
+		public synchronized boolean isInterning() {
+			return mInterning;
+		}
+
+		/**
+		 * Returns the number of canonical expressions currently alive in the intern table.
+		 */
+		public synchronized int getInternedCount() {
+			return mInternTable.size();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public synchronized <OpE extends LogicalOp> Expression<OpE> intern(Expression<OpE> exp) {
+			if(!mInterning || !(exp instanceof CIExpressionLBImpl))
+				return exp;
+			CIExpressionLBImpl<OpE> lbexp = (CIExpressionLBImpl<OpE>) exp;
+			// Ordered expressions are equal to unordered ones with the same literals, so don't let them
+			// collapse to a canonical object that may have lost the order.
+			if(lbexp.mInterned || lbexp.mOrdered || lbexp.mFac != this)
+				return exp;
+			WeakReference<Expression<? extends LogicalOp>> ref = mInternTable.get(exp);
+			Expression<? extends LogicalOp> canonical = ref == null ? null : ref.get();
+			if(canonical != null)
+				return (Expression<OpE>) canonical;
+			lbexp.freeze();
+			mInternTable.put(exp, new WeakReference<Expression<? extends LogicalOp>>(exp));
+			return exp;
+		}
+
 		@Override
 		public SimpleSentence<LogicalAnd, LogicalOr> createCNFSentence() {
 			return new CNFImpl(mAnd, this);
@@ -897,23 +1076,26 @@ class LBImpls {
 	
 	protected static abstract class LiteralLBImpl implements Literal
 	{		
-		protected String mName;
+		protected LBImplFactory mFac; // The name and the rest of the metadata live in the factory's literal table.
 		protected boolean mNeg;
 		protected Integer mIndex; // TODO: Convert this to be int, this is quite confusing like this.
+		protected LiteralLBImpl mNegation; // Set by the factory, the literal for the same index with the opposite sign.
 		
-		protected LiteralLBImpl(String name, boolean neg, int index)
+		protected LiteralLBImpl(LBImplFactory fac, boolean neg, int index)
 		{
-			mName = name;
+			mFac = fac;
 			mNeg = neg;
 			mIndex = index;
 		}
 		@Override
-		public String getName() { return mName; }
+		public String getName() { return mFac.getLiteralName(mIndex); }
 		@Override
 		public boolean getNeg() { return mNeg; }
 		@Override
 		public Integer getIndex() { return mIndex; }
 		@Override
+		public Literal getNegated() { return mNegation; }
+		@Override
 		public abstract LiteralType getType();		
 		@Override
 		public boolean isAssumption() { return getType() == LiteralType.Assumption; }
@@ -954,13 +1136,17 @@ class LBImpls {
 	
 	private static class SpecialLBImpl extends LiteralLBImpl
 	{
-		LBImplFactory mFac; // Specials needs access to the factory to compare against singletons.
+		// Specials aren't in the factory's literal table, so they keep their own name.
+		private String mName;
 		protected SpecialLBImpl(LBImplFactory fac, String name, boolean neg, int index)
 		{
-			super(name, neg, index);
-			mFac = fac;
+			super(fac, neg, index);
+			mName = name;
 		}
 
+		@Override
+		public String getName() { return mName; }
+
 		@Override
 		public Literal getNegated() {
 			if(this == mFac.getTrue())
@@ -978,12 +1164,9 @@ class LBImpls {
 
 	private static class AssumptionLBImpl extends LiteralLBImpl implements Assumption
 	{
-		protected double mProbability;
-		
-		protected AssumptionLBImpl(String name, boolean neg, int index, double probability)
+		protected AssumptionLBImpl(LBImplFactory fac, boolean neg, int index)
 		{
-			super(name, neg, index);
-			mProbability = probability;
+			super(fac, neg, index);
 		}
 	
 		@Override
@@ -992,31 +1175,23 @@ class LBImpls {
 		}		
 
 		@Override
-		public double getProbability() { return mProbability; }
-		
-		// TODO: Need to test 1-p stuff below
-		@Override
-		public Literal getNegated() {
-			return new AssumptionLBImpl(mName, !mNeg, mIndex, 1 - mProbability);
-		} 		
+		public double getProbability() {
+			double posProbability = mFac.getLiteralProbability(mIndex);
+			return mNeg ? 1 - posProbability : posProbability;
+		}
 	}
 
 	private static class PropositionLBImpl extends LiteralLBImpl implements Proposition
 	{
-		protected PropositionLBImpl(String name, boolean neg, int index)
+		protected PropositionLBImpl(LBImplFactory fac, boolean neg, int index)
 		{
-			super(name, neg, index);
+			super(fac, neg, index);
 		}
 		
 		@Override
 		public LiteralType getType() {
 			return LiteralType.Proposition;
 		}
-		
-		@Override
-		public Literal getNegated() {
-			return new PropositionLBImpl(mName, !mNeg, mIndex);
-		}
 	}
 	
 	protected static abstract class CIExpressionLBImpl<OpE extends LogicalOp> implements Expression<OpE>
@@ -1025,6 +1200,9 @@ class LBImpls {
 		protected final OpE mOp;
 		protected LBImplFactory mFac;
 		protected boolean mOrdered;
+		// Set once the expression is made canonical by LBImplFactory.intern(), after which it can't be modified.
+		protected boolean mInterned;
+		protected int mHash;
 		
 		public CIExpressionLBImpl(OpE op, boolean ordered, LBImplFactory fac)
 		{
@@ -1056,9 +1234,36 @@ class LBImpls {
 
 		@Override
 		public boolean removeLiteral(Literal lit) {
+			checkMutable();
 			return mLiterals.remove(lit.getIndex()) != null;
 		}
 
+		/**
+		 * Returns true if this expression contains all the literals of the other expression.
+		 * This uses the index of the literals instead of scanning the literals.
+		 */
+		boolean containsAllOf(CIExpressionLBImpl<OpE> other) {
+			if(other.mLiterals.size() > mLiterals.size())
+				return false;
+			for(Literal lit : other.mLiterals.values())
+				if(!lit.equals(mLiterals.get(lit.getIndex())))
+					return false;
+			return true;
+		}
+
+		protected void checkMutable() {
+			if(mInterned)
+				throw new Expressions.IllegalOperationException("Can't modify an interned expression.");
+		}
+
+		/**
+		 * Makes this expression canonical: it can't be modified after this, and its hash is computed once.
+		 */
+		void freeze() {
+			mHash = computeHash();
+			mInterned = true;
+		}
+
 		public Iterable<Literal> getLiterals() 
 		{
 			if(mLiterals.isEmpty())
@@ -1099,6 +1304,12 @@ class LBImpls {
 
 		@Override
 		public int hashCode() {
+			if(mInterned)
+				return mHash;
+			return computeHash();
+		}
+
+		private int computeHash() {
 			final int prime = 31;
 			int result = 1;
 			result = prime * result
@@ -1117,6 +1328,9 @@ class LBImpls {
 			if (getClass() != obj.getClass())
 				return false;
 			CIExpressionLBImpl<OpE> other = (CIExpressionLBImpl<OpE>) obj;
+			// Canonical expressions from the same factory are only ever equal to themselves.
+			if (mInterned && other.mInterned && mFac == other.mFac)
+				return false;
 			if (mLiterals == null) {
 				if (other.mLiterals != null)
 					return false;
@@ -1158,6 +1372,7 @@ class LBImpls {
 		@Override
 		public boolean addLiteral(Literal lit) 
 		{
+			checkMutable();
 			if(isFalse())
 				return false;
 			else if(lit.equals(mFac.getFalse()))
@@ -1228,6 +1443,7 @@ class LBImpls {
 
 		@Override
 		public boolean addLiteral(Literal lit) {
+			checkMutable();
 			if(isTrue())
 				return false;
 			else if(lit.equals(mFac.getFalse()))
@@ -1283,11 +1499,12 @@ class LBImpls {
 
 		transient Set<Expression<OpE>> mBagElements; // cache
 		transient int mLastHash; // to notice undated sentences
+		transient ExpsIterable<OpE> mElementsView; // cache for getElements()
 		
 		public SimpleSentenceImpl(OpS op, LBImplFactory fac)
 		{
 			mOp = op;
-			mElements = new LinkedList<Expressions.Expression<OpE>>();
+			mElements = new ArrayList<Expressions.Expression<OpE>>();
 			mFac = fac;
 		}
 
@@ -1295,11 +1512,153 @@ class LBImpls {
 		{
 			this(op, fac);
 			for(Expressions.Expression<OpE> el : elements)
-				addElement(el);
+				mElements.add(el);
+			mElements = minimise(mElements);
 
 			if(isUnmodifiable)
 				mElements = Collections.unmodifiableList(mElements);
 		}
+
+		/**
+		 * Returns true if the element makes the whole sentence collapse to its special value, ie. false for a CNF.
+		 */
+		abstract protected boolean isAbsorbing(Expression<OpE> el);
+		/**
+		 * Returns true if the element has no effect on the sentence, ie. true for a CNF.
+		 */
+		abstract protected boolean isNeutral(Expression<OpE> el);
+		/**
+		 * Returns the shared unmodifiable elements of the absorbing sentence, ie. the false CNF.
+		 */
+		abstract protected List<Expression<OpE>> getAbsorbingElements();
+
+		/**
+		 * The \mu operation on a list of elements done in a single sweep. The elements are visited shortest
+		 * first so each is only checked against the elements already kept, which can never contain it.<br>
+		 * The elements kept retain their relative order in the given list, and the last of any equal elements is
+		 * kept. This gives the same result as adding the elements one by one using addElement().
+		 * @return A new list of the minimal elements, or getAbsorbingElements().
+		 */
+		@SuppressWarnings("unchecked")
+		protected List<Expression<OpE>> minimise(List<Expression<OpE>> elements)
+		{
+			final int size = elements.size();
+			final int[] lengths = new int[size];
+			Integer[] order = new Integer[size];
+			for(int i = 0; i < size; ++i)
+			{
+				Expression<OpE> el = elements.get(i);
+				if(isAbsorbing(el))
+					return getAbsorbingElements();
+				lengths[i] = el.getLength();
+				order[i] = i;
+			}
+			// Shortest first, and for equal lengths the later element first so it's the one kept.
+			Arrays.sort(order, (i1, i2) -> lengths[i1] != lengths[i2] ? lengths[i1] - lengths[i2] : i2 - i1);
+
+			boolean[] keep = new boolean[size];
+			List<CIExpressionLBImpl<OpE>> kept = new ArrayList<CIExpressionLBImpl<OpE>>(size);
+			sweep: for(int i : order)
+			{
+				Expression<OpE> el = elements.get(i);
+				if(isNeutral(el))
+					continue;
+				CIExpressionLBImpl<OpE> lbel = (CIExpressionLBImpl<OpE>) el;
+				for(CIExpressionLBImpl<OpE> lbkept : kept)
+					if(lbel.containsAllOf(lbkept))
+						continue sweep;
+				kept.add(lbel);
+				keep[i] = true;
+			}
+
+			List<Expression<OpE>> minimised = new ArrayList<Expression<OpE>>(kept.size());
+			for(int i = 0; i < size; ++i)
+				if(keep[i])
+					minimised.add(elements.get(i));
+			return minimised;
+		}
+
+		/**
+		 * The \mu operation for adding a single element to the minimal elements. The elements it subsumes are dropped
+		 * by compacting the list in place during the same pass that checks whether an element subsumes it.
+		 * @return true if the element was added.
+		 */
+		@SuppressWarnings("unchecked")
+		protected boolean addMinimal(Expression<OpE> el)
+		{
+			CIExpressionLBImpl<OpE> lbel = (CIExpressionLBImpl<OpE>) el;
+			final int lenEl = el.getLength();
+			final int size = mElements.size();
+			int kept = 0;
+			for(int i = 0; i < size; ++i)
+			{
+				Expression<OpE> elin = mElements.get(i);
+				CIExpressionLBImpl<OpE> lbelin = (CIExpressionLBImpl<OpE>) elin;
+				
+				if(elin == el) // cheap check first, this is common when expressions are interned
+					return compactTail(kept, i);
+				
+				// Drop the existing element if it's longer and contains el.
+				if(elin.getLength() >= lenEl && lbelin.containsAllOf(lbel))
+					continue;
+				
+				if(lenEl >= elin.getLength() && lbel.containsAllOf(lbelin))
+					return compactTail(kept, i); // shorter element already in
+				
+				if(kept < i)
+					mElements.set(kept, elin);
+				++kept;
+			}
+			if(kept < size)
+				mElements.subList(kept, size).clear();
+			
+			// Ready to add the new element
+			mElements.add(el);
+			return true;
+		}
+
+		/**
+		 * Moves the elements from the given index down to where the kept ones end, when addMinimal() stops early.
+		 * @return false, as the element wasn't added.
+		 */
+		private boolean compactTail(int kept, int from)
+		{
+			final int size = mElements.size();
+			if(kept < from)
+			{
+				for(int j = from; j < size; ++j)
+					mElements.set(kept++, mElements.get(j));
+				mElements.subList(kept, size).clear();
+			}
+			return false;
+		}
+
+		/**
+		 * Clones the elements as they are, ie. without applying \mu which the elements should already satisfy.
+		 */
+		protected List<Expression<OpE>> cloneElements()
+		{
+			if(mElements == getAbsorbingElements())
+				return mElements; // this is unmodifiable and shared anyway
+			List<Expression<OpE>> clonedElts = new ArrayList<Expression<OpE>>(mElements.size());
+			for(Expression<OpE> elt : mElements)
+				clonedElts.add(elt.cloneExpression());
+			return clonedElts;
+		}
+
+		/**
+		 * Returns a cached wrapper of the elements, which is renewed only when the element list is replaced.
+		 */
+		protected Iterable<Expression<OpE>> getElementsView()
+		{
+			ExpsIterable<OpE> view = mElementsView;
+			if(view == null || view.mElements != mElements)
+			{
+				view = new ExpsIterable<OpE>(mElements);
+				mElementsView = view;
+			}
+			return view;
+		}
 		
 		@Override
 		public String toString() {
@@ -1434,14 +1793,10 @@ class LBImpls {
 		 */
 		@Override
 		public void update() {
-			List<Expressions.Expression<OpE>> currentElts = mElements;
-			mElements = new LinkedList<Expressions.Expression<OpE>>();
-			for(Iterator<Expression<OpE>> it = currentElts.iterator(); it.hasNext(); )
-			{
-				Expression<OpE> exp = it.next();
-				it.remove();
-				addElement(exp);
-			}
+			if(mElements == getAbsorbingElements())
+				return; // point of no return
+			mElements = minimise(mElements);
+			clearCache();
 		}
 		
 		public static class ExpsIterable<OpE extends LogicalOp> implements Iterable<Expression<OpE>>
@@ -1511,42 +1866,29 @@ class LBImpls {
 				return false;
 
 			// \mu operation - keep only minimal clauses
-			CIExpressionLBImpl<LogicalOr> lbel = (CIExpressionLBImpl<LogicalOr>) el;
-			int lenEl = el.getLength();
-			
-			for(Iterator<Expression<LogicalOr>> it = mElements.iterator(); it.hasNext(); )
-			{
-				Expression<LogicalOr> elin = it.next();
-				CIExpressionLBImpl<LogicalOr> lbelin = (CIExpressionLBImpl<LogicalOr>) elin;
+			return addMinimal(el);
+		}
 
-				// Check if remove existing clause is longer, then remove.
-				if(elin.getLength() >= lenEl 
-						&& lbelin.mLiterals.values()
-							.containsAll(lbel.mLiterals.values()))
-				{
-					it.remove(); 
-					continue;
-				}
-				
-				if(lenEl >= elin.getLength()
-						&& lbel.mLiterals.values()
-							.containsAll(lbelin.mLiterals.values()))
-				{
-					return false;
-				}
-			}
-			
-			// Ready to add the new clause
-			mElements.add(el);
-			return true;
+		@Override
+		protected boolean isAbsorbing(Expression<LogicalOr> el) {
+			return el.isFalse();
+		}
+
+		@Override
+		protected boolean isNeutral(Expression<LogicalOr> el) {
+			return el.isTrue();
+		}
+
+		@Override
+		protected List<Expression<LogicalOr>> getAbsorbingElements() {
+			return mFac.mFalseClauses;
 		}
 
 		@Override
 		public SimpleSentence<LogicalAnd, LogicalOr> cloneSimpleSentence() {
-			List<Expression<LogicalOr>> clonedElts = new ArrayList<Expressions.Expression<LogicalOr>>(mElements.size());
-			for(Expression<LogicalOr> elt : mElements)
-				clonedElts.add(elt.cloneExpression());
-			return new CNFImpl(mOp, clonedElts, mFac, false);
+			CNFImpl cloned = new CNFImpl(mOp, mFac);
+			cloned.mElements = cloneElements();
+			return cloned;
 		}
 
 		@Override
@@ -1561,8 +1903,7 @@ class LBImpls {
 		
 		@Override
 		public Iterable<Expression<LogicalOr>> getElements() {
-			// TODO: Would be nice to cache these. iterator() creates a new iterator in any case.
-			return new ExpsIterable<LogicalOr>(mElements); 
+			return getElementsView(); 
 		}
 	}
 	
@@ -1588,44 +1929,30 @@ class LBImpls {
 			else if(el.isFalse()) //short-cut to avoid \mu below
 				return false;
 			
-			// \mu operation - keep only minimal term
-			CIExpressionLBImpl<LogicalAnd> lbel = (CIExpressionLBImpl<LogicalAnd>) el;
-			int lenEl = el.getLength();
-			
-			for(Iterator<Expression<LogicalAnd>> it = mElements.iterator(); it.hasNext(); )
-			{
-				Expression<LogicalAnd> elin = it.next();
-				CIExpressionLBImpl<LogicalAnd> lbelin = (CIExpressionLBImpl<LogicalAnd>) elin;
-	
-				// Check if el is subset of this sentence
-				// Shorter clause coming in, remove the longer clause
-				if(elin.getLength() >= lenEl 
-						&& lbelin.mLiterals.values()
-							.containsAll(lbel.mLiterals.values()))
-				{
-					it.remove();
-					continue;
-				}
-				
-				if(lenEl >= elin.getLength()
-						&& lbel.mLiterals.values()
-							.containsAll(lbelin.mLiterals.values()))
-				{
-					return false; // shorter clause already in
-				}
-			}
-			
-			// Ready to add the new clause
-			mElements.add(el);
-			return true;
+			// \mu operation - keep only minimal terms
+			return addMinimal(el);
+		}
+
+		@Override
+		protected boolean isAbsorbing(Expression<LogicalAnd> el) {
+			return el.isTrue();
+		}
+
+		@Override
+		protected boolean isNeutral(Expression<LogicalAnd> el) {
+			return el.isFalse();
+		}
+
+		@Override
+		protected List<Expression<LogicalAnd>> getAbsorbingElements() {
+			return mFac.mTrueTerms;
 		}
 
 		@Override
 		public SimpleSentence<LogicalOr, LogicalAnd> cloneSimpleSentence() {
-			List<Expression<LogicalAnd>> clonedElts = new ArrayList<Expression<LogicalAnd>>(mElements.size());
-			for(Expression<LogicalAnd> elt : mElements)
-				clonedElts.add(elt.cloneExpression());
-			return new DNFImpl(mOp, clonedElts, mFac, false);
+			DNFImpl cloned = new DNFImpl(mOp, mFac);
+			cloned.mElements = cloneElements();
+			return cloned;
 		}
 
 		@Override
@@ -1640,8 +1967,7 @@ class LBImpls {
 		
 		@Override
 		public Iterable<Expression<LogicalAnd>> getElements() {
-			// TODO: Would be nice to cache these. iterator() creates a new iterator in any case.
-			return new ExpsIterable<LogicalAnd>(mElements); 
+			return getElementsView(); 
 		}		
 	}
 }
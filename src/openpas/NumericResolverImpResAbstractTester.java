@@ -17,6 +17,11 @@
 
 package openpas;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -36,6 +41,8 @@ import openpas.basics.PropFactory;
 import openpas.basics.Proposition;
 import openpas.basics.SymbolicResolver;
 import openpas.utils.ArrayIterable;
+import openpas.utils.QueryControl;
+import openpas.utils.QueryControl.QueryAbortedException;
 
 public abstract class NumericResolverImpResAbstractTester {
 	
@@ -69,6 +76,11 @@ public abstract class NumericResolverImpResAbstractTester {
 	abstract SymbolicResolver createSymResolver(PAS kb);
 	abstract ProbabilityComputer createProbabilityComputer();
 	
+	NumericResolver createNumericResolver(PAS kb)
+	{
+		return new NumericResolverImpl(createSymResolver(kb), createProbabilityComputer(), mFac);
+	}
+	
 	void setLiterals()
 	{
 		mPra = 0.1;
@@ -120,7 +132,7 @@ public abstract class NumericResolverImpResAbstractTester {
 		SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
 		hypo.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPv})));
 		
-		NumericResolver nr = new NumericResolverImpl(createSymResolver(kb), createProbabilityComputer(), mFac);
+		NumericResolver nr = createNumericResolver(kb);
 		double dqs = nr.calcDQS(hypo);
 		double expected = mPra * mPrb;
 		
@@ -142,7 +154,7 @@ public abstract class NumericResolverImpResAbstractTester {
 		SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
 		hypo.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPv})));
 		
-		NumericResolver nr = new NumericResolverImpl(createSymResolver(kb), createProbabilityComputer(), mFac);
+		NumericResolver nr = createNumericResolver(kb);
 		double dqs = nr.calcDQS(hypo);
 		
 		double expect = 1-(1-mPra)*(1-mPrb);
@@ -164,7 +176,7 @@ public abstract class NumericResolverImpResAbstractTester {
 		SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
 		hypo.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPv})));
 		
-		NumericResolver nr = new NumericResolverImpl(createSymResolver(kb), createProbabilityComputer(), mFac);
+		NumericResolver nr = createNumericResolver(kb);
 
 		// qs: (a b c) + d
 		double dqs = nr.calcDQS(hypo);
@@ -190,7 +202,7 @@ public abstract class NumericResolverImpResAbstractTester {
 		SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
 		hypo.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPv, mPw, mPx})));
 		
-		NumericResolver nr = new NumericResolverImpl(createSymResolver(kb), createProbabilityComputer(), mFac);
+		NumericResolver nr = createNumericResolver(kb);
 
 		// qs: a + b + c
 		double dqs = nr.calcDQS(hypo);
@@ -275,7 +287,7 @@ public abstract class NumericResolverImpResAbstractTester {
 
 		PAS kb = new PASImpl(cnfKB, mFac); // Use a PAS instance to extract the props and assumptions.
 
-		NumericResolver nr = new NumericResolverImpl(createSymResolver(kb), createProbabilityComputer(), mFac);
+		NumericResolver nr = createNumericResolver(kb);
 		double dqsH = nr.calcNormalisedDSP(cnfH);
 		Assert.assertEquals(0.545, dqsH, 1e-3);
 		Assert.assertEquals(0.12, nr.calcDQS_I(), 1e-3);
@@ -357,7 +369,7 @@ public abstract class NumericResolverImpResAbstractTester {
 
 		PAS pas = new PASImpl(cnf, mFac);
 		
-		NumericResolver nr = new NumericResolverImpl(createSymResolver(pas), createProbabilityComputer(), mFac);
+		NumericResolver nr = createNumericResolver(pas);
 
 		//h = S -> T = ~S + T
 		SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
@@ -369,4 +381,98 @@ public abstract class NumericResolverImpResAbstractTester {
 		//Answer as seein on p150:
 		Assert.assertEquals(0.97848, dqs, 1e-5);
 	}
+
+	@Test
+	public void testBatchMatchesSingle() throws KBException
+	{
+		setLiterals();
+		
+		// kb: a -> x, b -> y, x y c -> v, ¬d -> w
+		SimpleSentence<LogicalAnd, LogicalOr> cnf = mFac.createCNFSentence();
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAna, mPx})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAnb, mPy})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPnx, mPny, mAnc, mPv})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAd, mPw})));
+		PAS kb = new PASImpl(cnf, mFac);
+
+		// Hypotheses share clauses to exercise reuse within the batch, including a repeated hypothesis and an empty one.
+		List<SimpleSentence<LogicalAnd, LogicalOr>> hypos = new ArrayList<>();
+		Literal[][][] hypoLits = new Literal[][][] {
+			{{mPx}},
+			{{mPx}, {mPy}},
+			{{mPv}},
+			{{mPv}, {mPw}},
+			{{mPx, mPw}},
+			{{mPx}},
+			{}
+		};
+		for(Literal[][] clauses : hypoLits)
+		{
+			SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
+			for(Literal[] lits : clauses)
+				hypo.addElement(mFac.createClause(new ArrayIterable<Literal>(lits)));
+			hypos.add(hypo);
+		}
+
+		NumericResolver nr = createNumericResolver(kb);
+		double[] streamed = new double[hypos.size()];
+		boolean[] seen = new boolean[hypos.size()];
+		double[] dqsBatch = nr.calcDQS(hypos, (index, degree) -> {
+			Assert.assertFalse(seen[index]);
+			seen[index] = true;
+			streamed[index] = degree;
+		});
+		double[] dspBatch = nr.calcNormalisedDSP(hypos, null);
+		
+		Assert.assertEquals(hypos.size(), dqsBatch.length);
+		for(int i = 0; i < hypos.size(); i++)
+		{
+			Assert.assertTrue(seen[i]);
+			Assert.assertEquals(dqsBatch[i], streamed[i], 0);
+			Assert.assertEquals(nr.calcDQS(hypos.get(i)), dqsBatch[i], DOUBLE_COMPARE_DELTA);
+			Assert.assertEquals(nr.calcNormalisedDSP(hypos.get(i)), dspBatch[i], DOUBLE_COMPARE_DELTA);
+		}
+		Assert.assertEquals(mPra, dqsBatch[0], DOUBLE_COMPARE_DELTA);
+		Assert.assertEquals(mPra * mPrb, dqsBatch[1], DOUBLE_COMPARE_DELTA);
+		Assert.assertEquals(1, dqsBatch[6], DOUBLE_COMPARE_DELTA);
+	}
+
+	@Test
+	public void testAsyncAndCancellation() throws KBException, InterruptedException, ExecutionException
+	{
+		setLiterals();
+		
+		// kb: (a b) -> v, c -> v
+		SimpleSentence<LogicalAnd, LogicalOr> cnf = mFac.createCNFSentence();
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAna, mAnb, mPv})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAnc, mPv})));
+		PAS kb = new PASImpl(cnf, mFac);
+
+		// h: v
+		SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
+		hypo.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mPv})));
+		
+		NumericResolver nr = createNumericResolver(kb);
+		CompletableFuture<Double> dqs = nr.calcDQSAsync(hypo, 0);
+		Assert.assertEquals(nr.calcDQS(hypo), dqs.get(), DOUBLE_COMPARE_DELTA);
+		Assert.assertEquals(nr.findQS(hypo), nr.findQSAsync(hypo, 60 * 1000).get());
+		
+		// Cancelled from within so that the abort has to come from a check inside the resolver.
+		QueryControl control = new QueryControl(0);
+		try {
+			control.run(() -> {
+				control.cancel();
+				return nr.calcDQS(hypo);
+			});
+			Assert.fail("Cancelled query not aborted.");
+		} catch (QueryAbortedException e) {
+			Assert.assertEquals("Query cancelled.", e.getMessage());
+		}
+		
+		// Checks outside of a control don't do anything.
+		QueryControl.checkCurrent();
+		CompletableFuture<Double> cancelled = nr.calcDQSAsync(hypo, 0);
+		cancelled.cancel(true);
+		Assert.assertTrue(cancelled.isDone());
+	}
 }
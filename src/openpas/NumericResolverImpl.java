@@ -18,6 +18,17 @@
 package openpas;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
@@ -29,6 +40,9 @@ import openpas.basics.PropFactory;
 import openpas.basics.SymbolicResolver;
 import openpas.utils.Notifier;
 import openpas.utils.Notifying;
+import openpas.utils.PairT;
+import openpas.utils.QueryControl;
+import openpas.utils.QueryTrace;
 
 class NumericResolverImpl implements NumericResolver, Notifying
 {
@@ -36,9 +50,13 @@ class NumericResolverImpl implements NumericResolver, Notifying
 	SymbolicResolver mSr;
 	ProbabilityComputer mPC;
 	
-	double mDQSI = Double.NaN;
+	volatile double mDQSI = Double.NaN; // cached, see calcDQS_I
+	final Object mDQSILock = new Object();
+	
+	int mBatchThreads = Runtime.getRuntime().availableProcessors(); // upper limit for the pool used for batches
 	
 	Notifier mNotifier = Notifier.NULL_NOTIFIER;// to get verbose output
+	volatile QueryTrace.Listener mTraceListener; // null when not tracing
 	
 	// Once the NR is created the underlying KB shouldn't be changed.
 	protected NumericResolverImpl(SymbolicResolver sr, ProbabilityComputer pc, PropFactory fac)
@@ -51,44 +69,228 @@ class NumericResolverImpl implements NumericResolver, Notifying
 	@Override
 	public double calcDQS(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) 
 	{
-		mNotifier.printfln("calcDQS: Finding QS for h.");
-		SimpleSentence<LogicalOr, LogicalAnd> qs = mSr.findQS(hypothesis);
-		
-		mNotifier.printfln("calcDQS: Calculating DQS for hypothesis...");
-		double dqs = mPC.computeDNFProbability(qs);
-		mNotifier.printfln("calcDQS: Done.");
-		
-		return dqs;
+		QueryTrace trace = QueryTrace.begin("calcDQS", mTraceListener);
+		try
+		{
+			mNotifier.printfln("calcDQS: Finding QS for h.");
+			SimpleSentence<LogicalOr, LogicalAnd> qs = mSr.findQS(hypothesis);
+			QueryControl.checkCurrent();
+			
+			mNotifier.printfln("calcDQS: Calculating DQS for hypothesis...");
+			double dqs = mPC.computeDNFProbability(qs);
+			mNotifier.printfln("calcDQS: Done.");
+			
+			return dqs;
+		}
+		finally
+		{
+			QueryTrace.end(trace);
+		}
 	}
 
 	@Override
 	public double calcNormalisedDSP(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) {
-		return calcNonNormalisedDSP(hypothesis)/(1 - mDQSI);
+		QueryTrace trace = QueryTrace.begin("calcNormalisedDSP", mTraceListener);
+		try
+		{
+			double dqsi = calcDQS_I();
+			return (calcDQS(hypothesis) - dqsi)/(1 - dqsi);
+		}
+		finally
+		{
+			QueryTrace.end(trace);
+		}
 	}
 
 	@Override
 	public double calcDQS_I() 
 	{
-		mNotifier.printfln("calcDQS_I: Finding QS for inconsistency.");
-		// Find \mu QS_I - quasi-support for inconsistent scenarios.
-		SimpleSentence<LogicalOr, LogicalAnd> qsi = mSr.findQS(mFac.createClause());
-
-		mNotifier.printfln("calcDQS_I: Calculating probability for inconsistency...");
-		double dqsi = mPC.computeDNFProbability(qsi);
-		mNotifier.printfln("calcDQS_I: Done.");
-		
-		return dqsi;
+		// The dqs for inconsistency is the same for all hypotheses, so it's calculated once and cached.
+		// Concurrent callers wait for the same calculation rather than repeating it.
+		double dqsi = mDQSI;
+		if(!Double.isNaN(dqsi))
+			return dqsi;
+		synchronized(mDQSILock)
+		{
+			if(Double.isNaN(mDQSI))
+				mDQSI = calcDQS_I_Uncached();
+			return mDQSI;
+		}
+	}
+	
+	protected double calcDQS_I_Uncached()
+	{
+		QueryTrace trace = QueryTrace.begin("calcDQS_I", mTraceListener);
+		try
+		{
+			mNotifier.printfln("calcDQS_I: Finding QS for inconsistency.");
+			// Find \mu QS_I - quasi-support for inconsistent scenarios.
+			SimpleSentence<LogicalOr, LogicalAnd> qsi = mSr.findQS(mFac.createClause());
+	
+			mNotifier.printfln("calcDQS_I: Calculating probability for inconsistency...");
+			double dqsi = mPC.computeDNFProbability(qsi);
+			mNotifier.printfln("calcDQS_I: Done.");
+			
+			return dqsi;
+		}
+		finally
+		{
+			QueryTrace.end(trace);
+		}
 	}
 
 	@Override
 	public double calcNonNormalisedDSP(
 			SimpleSentence<LogicalAnd, LogicalOr> hypothesis) 
 	{
-		if(Double.isNaN(mDQSI))
-			mDQSI = calcDQS_I();
-		
+		double dqsi = calcDQS_I();
 		double dqs = calcDQS(hypothesis);
-		return dqs - mDQSI;
+		return dqs - dqsi;
+	}
+
+	@Override
+	public CompletableFuture<Double> calcDQSAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis)
+	{
+		return QueryControl.supplyAsync(() -> calcDQS(hypothesis), timeoutMillis);
+	}
+
+	@Override
+	public CompletableFuture<Double> calcNormalisedDSPAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis)
+	{
+		return QueryControl.supplyAsync(() -> calcNormalisedDSP(hypothesis), timeoutMillis);
+	}
+
+	@Override
+	public double[] calcDQS(List<SimpleSentence<LogicalAnd, LogicalOr>> hypotheses, BatchListener listener)
+	{
+		return calcBatch(hypotheses, false, listener);
+	}
+
+	@Override
+	public double[] calcNormalisedDSP(List<SimpleSentence<LogicalAnd, LogicalOr>> hypotheses, BatchListener listener)
+	{
+		calcDQS_I(); // calculated once up front for the whole batch
+		return calcBatch(hypotheses, true, listener);
+	}
+	
+	void setBatchThreads(int numThreads)
+	{
+		mBatchThreads = numThreads;
+	}
+
+	protected double[] calcBatch(List<SimpleSentence<LogicalAnd, LogicalOr>> hypotheses, boolean normalise, BatchListener listener)
+	{
+		double[] results = new double[hypotheses.size()];
+		if(hypotheses.isEmpty())
+			return results;
+		
+		final double dqsi = mDQSI;
+		final QueryControl control = QueryControl.current(); // carried over to the pool if the batch itself is under control
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(mBatchThreads, hypotheses.size())));
+		try
+		{
+			// With the implicate resolution, each distinct clause in the batch is resolved only once and shared by all
+			// the hypotheses that contain it. The clause tasks are all queued before any of the hypothesis tasks, so by 
+			// the time a hypothesis task is picked up by the (FIFO) pool, the clause tasks it waits on are either running or done.
+			// Other resolvers are given each hypothesis as a whole.
+			final boolean shareClauses = mSr instanceof ImplicateResolver;
+			Map<Expression<LogicalOr>, Future<SimpleSentence<LogicalOr, LogicalAnd>>> clauseQS = new HashMap<>();
+			if(shareClauses)
+			{
+				for(SimpleSentence<LogicalAnd, LogicalOr> hypothesis : hypotheses)
+					for(Expression<LogicalOr> cla : hypothesis.getElements())
+						if(!clauseQS.containsKey(cla))
+							clauseQS.put(cla, executor.submit(() -> QueryControl.runUnder(control, () -> mSr.findQS(cla))));
+				mNotifier.printfln("calcBatch: Resolving %d distinct clauses for %d hypotheses.", clauseQS.size(), hypotheses.size());
+			}
+
+			CompletionService<PairT<Integer, Double>> completion = new ExecutorCompletionService<>(executor);
+			for(int i = 0; i < hypotheses.size(); i++)
+			{
+				final int index = i;
+				final List<Future<SimpleSentence<LogicalOr, LogicalAnd>>> parts = new ArrayList<>();
+				if(shareClauses)
+					for(Expression<LogicalOr> cla : hypotheses.get(i).getElements())
+						parts.add(clauseQS.get(cla));
+				
+				completion.submit(() -> {
+					List<SimpleSentence<LogicalOr, LogicalAnd>> partsQS = new ArrayList<>(parts.size());
+					for(Future<SimpleSentence<LogicalOr, LogicalAnd>> part : parts)
+						partsQS.add(part.get());
+
+					return QueryControl.runUnder(control, () -> {
+						QueryTrace trace = QueryTrace.begin("calcBatch", mTraceListener);
+						try
+						{
+							SimpleSentence<LogicalOr, LogicalAnd> qs;
+							if(shareClauses)
+							{
+								// QS_A(h_1 \wedge h_2, \xi) = QS_A(h_1, \xi) \cap QS_A(h_2, \xi) (HKL2000, p17)
+								long start = QueryTrace.startPhase();
+								qs = mFac.getTrueDNF();
+								for(SimpleSentence<LogicalOr, LogicalAnd> partQS : partsQS)
+									qs = ImplicateResolver.calcIntersection(mFac, partQS, qs);
+								QueryTrace.endPhase(QueryTrace.Phase.Intersection, start);
+							}
+							else
+								qs = mSr.findQS(hypotheses.get(index));
+							
+							QueryControl.checkCurrent();
+							double dqs = mPC.computeDNFProbability(qs);
+							return new PairT<>(index, normalise ? (dqs - dqsi) / (1 - dqsi) : dqs);
+						}
+						finally
+						{
+							QueryTrace.end(trace);
+						}
+					});
+				});
+			}
+
+			collectBatch(completion, results, listener);
+			mNotifier.printfln("calcBatch: Done.");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Takes the results of the hypotheses submitted to the given completion service as they come,
+	 * and rethrows what a task threw in the first place if any of them fails. 
+	 */
+	protected static void collectBatch(CompletionService<PairT<Integer, Double>> completion, double[] results, BatchListener listener)
+	{
+		try
+		{
+			for(int i = 0; i < results.length; i++)
+			{
+				PairT<Integer, Double> result = completion.take().get();
+				results[result.first] = result.second;
+				if(listener != null)
+					listener.onResult(result.first, result.second);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Batch calculation interrupted.", e);
+		}
+		catch (ExecutionException e)
+		{
+			// Unwrap to rethrow what the resolver threw in the first place.
+			Throwable cause = e;
+			while(cause instanceof ExecutionException && cause.getCause() != null)
+				cause = cause.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
 	}
 
 	// From SymbolicResolver interface - relay the results from the impl object.
@@ -104,6 +306,14 @@ class NumericResolverImpl implements NumericResolver, Notifying
 	public SimpleSentence<LogicalOr, LogicalAnd> findQS(Expression<LogicalOr> hclause) {
 		return mSr.findQS(hclause);
 	}
+	@Override
+	public CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findQSAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis) {
+		return QueryControl.supplyAsync(() -> mSr.findQS(hypothesis), timeoutMillis);
+	}
+	@Override
+	public CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findSPAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis) {
+		return QueryControl.supplyAsync(() -> mSr.findSP(hypothesis), timeoutMillis);
+	}
 	// From Probability computing interface
 	@Override
 	public double computeDNFProbability(SimpleSentence<LogicalOr, LogicalAnd> dnf) {
@@ -115,4 +325,10 @@ class NumericResolverImpl implements NumericResolver, Notifying
 			((Notifying) mSr).setNotifier(ps);
 		mNotifier = new Notifier(ps);
 	}
+	@Override
+	public void setTraceListener(QueryTrace.Listener listener) {
+		if(mSr instanceof Notifying)
+			((Notifying) mSr).setTraceListener(listener);
+		mTraceListener = listener;
+	}
 }
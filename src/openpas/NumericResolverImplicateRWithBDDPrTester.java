@@ -17,9 +17,24 @@
 
 package openpas;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import openpas.basics.Expressions.Expression;
+import openpas.basics.Expressions.SimpleSentence;
+import openpas.basics.Literal;
+import openpas.basics.LogicalOps.LogicalAnd;
+import openpas.basics.LogicalOps.LogicalOr;
+import openpas.basics.NumericResolver;
 import openpas.basics.PAS;
+import openpas.basics.PAS.KBException;
 import openpas.basics.ProbabilityComputer;
 import openpas.basics.SymbolicResolver;
+import openpas.utils.ArrayIterable;
 
 public class NumericResolverImplicateRWithBDDPrTester extends NumericResolverImpResAbstractTester {
 
@@ -32,4 +47,54 @@ public class NumericResolverImplicateRWithBDDPrTester extends NumericResolverImp
 	ProbabilityComputer createProbabilityComputer() {
 		return new ProbabilityComputer_BDD(1024);
 	}
+	
+	@Test
+	public void testBatchWithOtherResolver() throws KBException
+	{
+		setLiterals();
+		
+		// kb: a -> x, b -> y
+		SimpleSentence<LogicalAnd, LogicalOr> cnf = mFac.createCNFSentence();
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAna, mPx})));
+		cnf.addElement(mFac.createClause(new ArrayIterable<Literal>(new Literal[]{mAnb, mPy})));
+		PAS kb = new PASImpl(cnf, mFac);
+		
+		// Only takes whole hypotheses, so the batch can't go through the clauses of the implicate resolution.
+		SymbolicResolver imp = createSymResolver(kb);
+		SymbolicResolver sr = new SymbolicResolver() {
+			@Override
+			public SimpleSentence<LogicalOr, LogicalAnd> findQS(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) {
+				return imp.findQS(hypothesis);
+			}
+			@Override
+			public SimpleSentence<LogicalOr, LogicalAnd> findSP(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) {
+				return imp.findSP(hypothesis);
+			}
+			@Override
+			public SimpleSentence<LogicalOr, LogicalAnd> findQS(Expression<LogicalOr> hclause) {
+				throw new UnsupportedOperationException();
+			}
+			@Override
+			public CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findQSAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis) {
+				return imp.findQSAsync(hypothesis, timeoutMillis);
+			}
+			@Override
+			public CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findSPAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis) {
+				return imp.findSPAsync(hypothesis, timeoutMillis);
+			}
+		};
+		
+		List<SimpleSentence<LogicalAnd, LogicalOr>> hypos = new ArrayList<>();
+		for(Literal[][] clauses : new Literal[][][] {{{mPx}}, {{mPx}, {mPy}}, {}})
+		{
+			SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
+			for(Literal[] lits : clauses)
+				hypo.addElement(mFac.createClause(new ArrayIterable<Literal>(lits)));
+			hypos.add(hypo);
+		}
+		
+		NumericResolver nr = new NumericResolverImpl(sr, createProbabilityComputer(), mFac);
+		double[] dqsBatch = nr.calcDQS(hypos, null);
+		Assert.assertArrayEquals(new double[] {mPra, mPra * mPrb, 1}, dqsBatch, DOUBLE_COMPARE_DELTA);
+	}
 }
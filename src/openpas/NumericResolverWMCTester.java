@@ -0,0 +1,111 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package openpas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import openpas.basics.Assumption;
+import openpas.basics.Literal;
+import openpas.basics.LogicalOps.LogicalAnd;
+import openpas.basics.LogicalOps.LogicalOr;
+import openpas.basics.Expressions.Expression;
+import openpas.basics.Expressions.SimpleSentence;
+import openpas.basics.NumericResolver;
+import openpas.basics.PAS;
+import openpas.basics.PAS.KBException;
+import openpas.basics.ProbabilityComputer;
+import openpas.basics.Proposition;
+import openpas.basics.SymbolicResolver;
+import openpas.utils.ArrayIterable;
+
+public class NumericResolverWMCTester extends NumericResolverImpResAbstractTester {
+
+	@Override
+	SymbolicResolver createSymResolver(PAS pas) {
+		return new ImplicateResolver(pas.getKB(), pas.getPropositions(), pas.getAssumptions(), mFac);
+	}
+
+	@Override
+	ProbabilityComputer createProbabilityComputer() {
+		return new ProbabilityComputer_BDD(1024);
+	}
+	
+	@Override
+	NumericResolver createNumericResolver(PAS kb) {
+		return new NumericResolver_WMC(kb, createSymResolver(kb), createProbabilityComputer(), mFac);
+	}
+	
+	Expression<LogicalOr> randomClause(Random rand, Literal[] lits, int maxLen)
+	{
+		Expression<LogicalOr> cla = mFac.createClause();
+		int len = 1 + rand.nextInt(maxLen);
+		for(int i = 0; i < len; ++i)
+		{
+			Literal lit = lits[rand.nextInt(lits.length)];
+			cla.addLiteral(rand.nextBoolean() ? lit : lit.getNegated());
+		}
+		return cla;
+	}
+	
+	@Test
+	public void testMatchesImplicateResolution() throws KBException
+	{
+		setLiterals();
+		Literal[] lits = new Literal[] {mAa, mAb, mAc, mAd, mPv, mPw, mPx, mPy};
+		Random rand = new Random(42);
+		for(int iter = 0; iter < 30; ++iter)
+		{
+			SimpleSentence<LogicalAnd, LogicalOr> cnf = mFac.createCNFSentence();
+			int numClauses = 2 + rand.nextInt(5);
+			for(int i = 0; i < numClauses; ++i)
+				cnf.addElement(randomClause(rand, lits, 3));
+			// The implicate resolver only eliminates the propositions it's given, so they're all given even if unused.
+			PAS kb = new PASImpl(cnf, 
+					new ArrayIterable<Assumption>(new Assumption[]{mAa, mAb, mAc, mAd}), 
+					new ArrayIterable<Proposition>(new Proposition[]{mPv, mPw, mPx, mPy}), mFac);
+			
+			NumericResolver nrWMC = createNumericResolver(kb);
+			NumericResolver nrImp = super.createNumericResolver(kb);
+			Assert.assertEquals(cnf.toString(), nrImp.calcDQS_I(), nrWMC.calcDQS_I(), DOUBLE_COMPARE_DELTA);
+			
+			List<SimpleSentence<LogicalAnd, LogicalOr>> hypos = new ArrayList<>();
+			for(int h = 0; h < 4; ++h)
+			{
+				SimpleSentence<LogicalAnd, LogicalOr> hypo = mFac.createCNFSentence();
+				int numHClauses = 1 + rand.nextInt(3);
+				for(int i = 0; i < numHClauses; ++i)
+					hypo.addElement(randomClause(rand, lits, 2));
+				hypos.add(hypo);
+				Assert.assertEquals(cnf + " h: " + hypo, nrImp.calcDQS(hypo), nrWMC.calcDQS(hypo), DOUBLE_COMPARE_DELTA);
+			}
+			double[] dqsImp = nrImp.calcDQS(hypos, null);
+			double[] dqsWMC = nrWMC.calcDQS(hypos, null);
+			Assert.assertArrayEquals(dqsImp, dqsWMC, DOUBLE_COMPARE_DELTA);
+			
+			// The batch on a cold cache, where the hypotheses are counted concurrently.
+			NumericResolver_WMC nrCold = (NumericResolver_WMC) createNumericResolver(kb);
+			nrCold.setBatchThreads(4);
+			Assert.assertArrayEquals(dqsImp, nrCold.calcDQS(hypos, null), DOUBLE_COMPARE_DELTA);
+		}
+	}
+}
@@ -0,0 +1,476 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package openpas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import openpas.basics.Assumption;
+import openpas.basics.Expressions.Expression;
+import openpas.basics.Expressions.SimpleSentence;
+import openpas.basics.Literal;
+import openpas.basics.LogicalOps.LogicalAnd;
+import openpas.basics.LogicalOps.LogicalOr;
+import openpas.basics.PAS;
+import openpas.basics.ProbabilityComputer;
+import openpas.basics.PropFactory;
+import openpas.basics.SymbolicResolver;
+import openpas.utils.PairT;
+import openpas.utils.QueryControl;
+
+/**
+ * A numeric resolver that finds the degrees of support by weighted model counting, without finding the QS first. <br>
+ * 
+ * A scenario s is in $QS(h, \xi)$ iff $\xi \wedge \neg h \wedge s$ is unsatisfiable, so dqs(h) is 1 minus the probability
+ * of the scenarios for which $\xi \wedge \neg h$ has a model over the propositions. This probability is counted
+ * by a top-down search over the CNF for $\xi \wedge \neg h$ (in the style of a decision-DNNF compiler): <br>
+ * - Unit clauses are propagated, and propositions that appear with a single sign are satisfied away. <br>
+ * - The remaining clauses are split into components that share no literals, and each is counted on its own. <br>
+ * - A component is decided on an assumption while it has any, weighting the two branches by its probability.
+ * Once it's left with propositions only, it's counted as 1 if it's satisfiable and 0 otherwise. <br>
+ * - The count for every component is cached using its clauses as the key. The cache is kept across queries since
+ * the knowledgebase doesn't change, so the parts of $\xi$ a hypothesis doesn't touch are counted only once. 
+ * There's no clause learning: a refuted component is only reused when the very same component comes up again,
+ * and a conflict doesn't prune any other branch of the search. <br>
+ * 
+ * This can answer queries where the QS is too large to be found, but it can also take exponential time where the
+ * implicate based resolution is quick, so it's a complement to {@link NumericResolverImpl} rather than a replacement.
+ * The symbolic resolution and DNF probability computation are relayed to the given resolver and computer as before.
+ */
+class NumericResolver_WMC extends NumericResolverImpl
+{
+	static final int MAX_CACHE_ENTRIES = 1 << 20;
+	
+	protected final Map<Integer, Integer> mIndex2Var = new HashMap<>();
+	protected final List<Double> mVarProbs = new ArrayList<>(); // NaN for propositions
+	protected final List<Integer> mSelectors = new ArrayList<>(); // propositions used to encode \neg h
+	protected final List<int[]> mKBClauses;
+	protected final Map<ComponentKey, Double> mCache = new ConcurrentHashMap<>();
+	
+	protected NumericResolver_WMC(PAS pas, SymbolicResolver sr, ProbabilityComputer pc, PropFactory fac)
+	{
+		super(sr, pc, fac);
+		for(Assumption asm : pas.getAssumptions())
+			varOf(asm);
+		mKBClauses = new ArrayList<>();
+		for(Expression<LogicalOr> cla : pas.getKB().getElements())
+		{
+			int[] encoded = encodeClause(cla);
+			if(encoded != null)
+				mKBClauses.add(encoded);
+		}
+	}
+	
+	@Override
+	public double calcDQS(SimpleSentence<LogicalAnd, LogicalOr> hypothesis) 
+	{
+		mNotifier.printfln("calcDQS: Counting models for the negated hypothesis.");
+		
+		// \neg h is the disjunction of the negated clauses of h, where the clauses that are always true drop out.
+		List<int[]> disjuncts = new ArrayList<>();
+		for(Expression<LogicalOr> cla : hypothesis.getElements())
+		{
+			int[] encoded = encodeClause(cla);
+			if(encoded == null)
+				continue;
+			if(encoded.length == 0)
+				return calcDQS_I(); // h is false, so only the inconsistent scenarios support it.
+			disjuncts.add(encoded);
+		}
+		if(disjuncts.isEmpty())
+			return 1; // h is true
+		
+		List<int[]> clauses = new ArrayList<>(mKBClauses);
+		if(disjuncts.size() == 1)
+		{
+			for(int code : disjuncts.get(0))
+				clauses.add(new int[] {code ^ 1});
+		}
+		else
+		{
+			// Each disjunct j gets a selector s_j: (s_1 + ... + s_m) and s_j -> \neg l for all l in clause j.
+			int[] selectors = new int[disjuncts.size()];
+			for(int j = 0; j < disjuncts.size(); ++j)
+			{
+				selectors[j] = selectorVar(j) * 2;
+				for(int code : disjuncts.get(j))
+					clauses.add(sorted(new int[] {selectors[j] ^ 1, code ^ 1}));
+			}
+			clauses.add(selectors);
+		}
+		
+		double dqs = 1 - new Counter().count(clauses);
+		mNotifier.printfln("calcDQS: Done.");
+		return dqs;
+	}
+	
+	@Override
+	protected double calcDQS_I_Uncached()
+	{
+		mNotifier.printfln("calcDQS_I: Counting models for the knowledgebase.");
+		double dqsi = 1 - new Counter().count(mKBClauses);
+		mNotifier.printfln("calcDQS_I: Done.");
+		return dqsi;
+	}
+	
+	@Override
+	protected double[] calcBatch(List<SimpleSentence<LogicalAnd, LogicalOr>> hypotheses, boolean normalise, BatchListener listener)
+	{
+		// There's no QS to share across the hypotheses here, so each one is counted on its own in the pool. The counts
+		// share the component cache and the encoded variables, which are both safe to use from several threads.
+		double[] results = new double[hypotheses.size()];
+		if(hypotheses.isEmpty())
+			return results;
+		
+		final double dqsi = mDQSI;
+		final QueryControl control = QueryControl.current(); // carried over to the pool if the batch itself is under control
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(mBatchThreads, hypotheses.size())));
+		try
+		{
+			CompletionService<PairT<Integer, Double>> completion = new ExecutorCompletionService<>(executor);
+			for(int i = 0; i < hypotheses.size(); i++)
+			{
+				final int index = i;
+				completion.submit(() -> QueryControl.runUnder(control, () -> {
+					double dqs = calcDQS(hypotheses.get(index));
+					return new PairT<>(index, normalise ? (dqs - dqsi) / (1 - dqsi) : dqs);
+				}));
+			}
+			collectBatch(completion, results, listener);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		
+		return results;
+	}
+	
+	protected synchronized int varOf(Literal lit)
+	{
+		Integer var = mIndex2Var.get(lit.getIndex());
+		if(var == null)
+		{
+			var = mVarProbs.size();
+			mIndex2Var.put(lit.getIndex(), var);
+			// The probability of a negated assumption is that of the negation, so it's taken from the positive one.
+			Literal pos = lit.getNeg() ? lit.getNegated() : lit;
+			mVarProbs.add(pos.isAssumption() ? ((Assumption) pos).getProbability() : Double.NaN);
+		}
+		return var;
+	}
+	
+	protected synchronized int selectorVar(int j)
+	{
+		while(mSelectors.size() <= j)
+		{
+			mSelectors.add(mVarProbs.size());
+			mVarProbs.add(Double.NaN);
+		}
+		return mSelectors.get(j);
+	}
+	
+	protected synchronized double[] getVarProbs()
+	{
+		double[] probs = new double[mVarProbs.size()];
+		for(int i = 0; i < probs.length; ++i)
+			probs[i] = mVarProbs.get(i);
+		return probs;
+	}
+	
+	/**
+	 * Encodes a clause as a sorted array of literal codes, where the code for a literal is 2 * var + neg.
+	 * @return The encoded clause, empty if it's false, or null if it's always true.
+	 */
+	protected int[] encodeClause(Expression<LogicalOr> cla)
+	{
+		Set<Integer> codes = new HashSet<>();
+		for(Literal lit : cla.getLiterals())
+		{
+			if(lit.isSpecial())
+			{
+				if(lit.equals(mFac.getTrue()))
+					return null;
+				continue; // False doesn't add anything to a clause
+			}
+			int code = varOf(lit) * 2 + (lit.getNeg() ? 1 : 0);
+			if(codes.contains(code ^ 1))
+				return null;
+			codes.add(code);
+		}
+		int[] encoded = new int[codes.size()];
+		int i = 0;
+		for(int code : codes)
+			encoded[i++] = code;
+		return sorted(encoded);
+	}
+	
+	static int[] sorted(int[] codes)
+	{
+		Arrays.sort(codes);
+		return codes;
+	}
+	
+	/**
+	 * Key for the component cache, the sorted clauses of a component flattened with the length of each clause before it.
+	 */
+	protected static class ComponentKey
+	{
+		protected final int[] mFlat;
+		protected final int mHash;
+		
+		protected ComponentKey(List<int[]> clauses)
+		{
+			List<int[]> sortedClauses = new ArrayList<>(clauses);
+			sortedClauses.sort((c1, c2) -> {
+				for(int i = 0; i < c1.length && i < c2.length; ++i)
+					if(c1[i] != c2[i])
+						return Integer.compare(c1[i], c2[i]);
+				return Integer.compare(c1.length, c2.length);
+			});
+			int size = 0;
+			for(int[] cla : sortedClauses)
+				size += cla.length + 1;
+			mFlat = new int[size];
+			int pos = 0;
+			for(int[] cla : sortedClauses)
+			{
+				mFlat[pos++] = cla.length;
+				System.arraycopy(cla, 0, mFlat, pos, cla.length);
+				pos += cla.length;
+			}
+			mHash = Arrays.hashCode(mFlat);
+		}
+		
+		@Override
+		public int hashCode() {
+			return mHash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ComponentKey && mHash == ((ComponentKey) obj).mHash && Arrays.equals(mFlat, ((ComponentKey) obj).mFlat);
+		}
+	}
+	
+	/**
+	 * Counts a single query, using the probabilities of the variables known when it's created.
+	 */
+	protected class Counter
+	{
+		protected final double[] mProbs = getVarProbs();
+		
+		protected boolean isAssumption(int code)
+		{
+			return !Double.isNaN(mProbs[code >> 1]);
+		}
+		
+		protected double probOf(int code)
+		{
+			double p = mProbs[code >> 1];
+			return (code & 1) == 0 ? p : 1 - p;
+		}
+
+		/**
+		 * @return Probability of the scenarios for which the clauses are satisfiable.
+		 */
+		protected double count(List<int[]> clauses)
+		{
+			QueryControl.checkCurrent();
+			double weight = 1;
+			// Simplify with unit clauses and pure propositions until neither is left.
+			while(!clauses.isEmpty())
+			{
+				Set<Integer> assigned = new HashSet<>();
+				Map<Integer, Integer> signs = new HashMap<>(); // for the propositions: 1 positive, 2 negative, 3 both
+				for(int[] cla : clauses)
+				{
+					if(cla.length == 1)
+					{
+						if(assigned.contains(cla[0] ^ 1))
+							return 0;
+						if(assigned.add(cla[0]) && isAssumption(cla[0]))
+							weight *= probOf(cla[0]);
+					}
+					for(int code : cla)
+						if(!isAssumption(code))
+							signs.merge(code >> 1, 1 << (code & 1), (s1, s2) -> s1 | s2);
+				}
+				if(assigned.isEmpty())
+				{
+					for(Map.Entry<Integer, Integer> sign : signs.entrySet())
+						if(sign.getValue() != 3)
+							assigned.add(sign.getKey() * 2 + (sign.getValue() == 1 ? 0 : 1));
+					if(assigned.isEmpty())
+						break;
+				}
+				clauses = condition(clauses, assigned);
+				if(clauses == null)
+					return 0;
+			}
+			
+			for(List<int[]> component : split(clauses))
+			{
+				weight *= countComponent(component);
+				if(weight == 0)
+					return 0;
+			}
+			return weight;
+		}
+		
+		protected double countComponent(List<int[]> component)
+		{
+			ComponentKey key = new ComponentKey(component);
+			Double cached = mCache.get(key);
+			if(cached != null)
+				return cached;
+			
+			// Decide on the most frequent assumption, or the most frequent proposition if there are no assumptions left.
+			Map<Integer, Integer> occurs = new HashMap<>();
+			int best = -1;
+			int bestOccurs = 0;
+			boolean bestIsAsm = false;
+			for(int[] cla : component)
+				for(int code : cla)
+				{
+					int occ = occurs.merge(code >> 1, 1, Integer::sum);
+					boolean isAsm = isAssumption(code);
+					if((isAsm && !bestIsAsm) || (isAsm == bestIsAsm && occ > bestOccurs))
+					{
+						best = code >> 1;
+						bestOccurs = occ;
+						bestIsAsm = isAsm;
+					}
+				}
+			
+			double value;
+			int pos = best * 2;
+			if(bestIsAsm)
+				value = probOf(pos) * countBranch(component, pos) + probOf(pos ^ 1) * countBranch(component, pos ^ 1);
+			else
+				value = countBranch(component, pos) > 0 || countBranch(component, pos ^ 1) > 0 ? 1 : 0;
+			
+			if(mCache.size() >= MAX_CACHE_ENTRIES)
+				mCache.clear();
+			mCache.put(key, value);
+			return value;
+		}
+		
+		protected double countBranch(List<int[]> clauses, int code)
+		{
+			Set<Integer> assigned = new HashSet<>();
+			assigned.add(code);
+			List<int[]> conditioned = condition(clauses, assigned);
+			return conditioned == null ? 0 : count(conditioned);
+		}
+	}
+	
+	/**
+	 * Conditions the clauses on the given literals being true.
+	 * @return The remaining clauses, or null if one of them became false.
+	 */
+	static List<int[]> condition(List<int[]> clauses, Set<Integer> assigned)
+	{
+		List<int[]> conditioned = new ArrayList<>(clauses.size());
+		for(int[] cla : clauses)
+		{
+			int numFalse = 0;
+			boolean satisfied = false;
+			for(int code : cla)
+			{
+				if(assigned.contains(code))
+				{
+					satisfied = true;
+					break;
+				}
+				if(assigned.contains(code ^ 1))
+					++numFalse;
+			}
+			if(satisfied)
+				continue;
+			if(numFalse == cla.length)
+				return null;
+			if(numFalse == 0)
+				conditioned.add(cla);
+			else
+			{
+				int[] reduced = new int[cla.length - numFalse];
+				int i = 0;
+				for(int code : cla)
+					if(!assigned.contains(code ^ 1))
+						reduced[i++] = code;
+				conditioned.add(reduced);
+			}
+		}
+		return conditioned;
+	}
+	
+	/**
+	 * Splits the clauses into components that don't share any variables.
+	 */
+	static List<List<int[]>> split(List<int[]> clauses)
+	{
+		int[] parent = new int[clauses.size()];
+		for(int i = 0; i < parent.length; ++i)
+			parent[i] = i;
+		Map<Integer, Integer> firstClause = new HashMap<>();
+		for(int i = 0; i < parent.length; ++i)
+			for(int code : clauses.get(i))
+			{
+				Integer first = firstClause.putIfAbsent(code >> 1, i);
+				if(first != null)
+					parent[find(parent, i)] = find(parent, first);
+			}
+		
+		Map<Integer, List<int[]>> components = new HashMap<>();
+		List<List<int[]>> result = new ArrayList<>();
+		for(int i = 0; i < parent.length; ++i)
+		{
+			int root = find(parent, i);
+			List<int[]> component = components.get(root);
+			if(component == null)
+			{
+				component = new ArrayList<>();
+				components.put(root, component);
+				result.add(component);
+			}
+			component.add(clauses.get(i));
+		}
+		return result;
+	}
+	
+	static int find(int[] parent, int i)
+	{
+		while(parent[i] != i)
+		{
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
@@ -338,6 +338,11 @@ public class OBImpls {
 			return null;
 		}
 
+		@Override
+		public <OpE extends LogicalOp> Expression<OpE> intern(Expression<OpE> exp) {
+			return exp; // no hash-consing here
+		}
+
 		@Override
 		public SimpleSentence<LogicalAnd, LogicalOr> createCNFSentence() {
 			// TODO Auto-generated method stub
@@ -160,4 +160,18 @@ public class OpenPAS {
 	{
 		return new NumericResolverImpl(sr, pc, getFactory());
 	}
+
+	/**
+	 * Create a numeric resolver that calculates the degrees of support by weighted model counting over the knowledgebase
+	 * and the hypothesis, without finding the QS first. See {@link NumericResolver_WMC} for more. The symbolic resolver
+	 * and probability computer are only used for symbolic queries and DNF probabilities.
+	 * @param pas The PAS instance to analyse.
+	 * @param sr A symbolic resolver created for the same PAS instance passed as a parameter.
+	 * @param pc
+	 * @return
+	 */
+	public static NumericResolver createNumericResolverWMC(PAS pas, SymbolicResolver sr, ProbabilityComputer pc)
+	{
+		return new NumericResolver_WMC(pas, sr, pc, getFactory());
+	}
 }
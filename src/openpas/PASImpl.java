@@ -29,6 +29,7 @@ import com.google.common.collect.FluentIterable;
 import openpas.basics.Assumption;
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
+import openpas.basics.KBStats;
 import openpas.basics.Literal;
 import openpas.basics.LogicalOps.LogicalAnd;
 import openpas.basics.LogicalOps.LogicalOp;
@@ -48,6 +49,8 @@ class PASImpl implements PAS {
 	protected Map<String, Proposition> mProps;
 	protected Map<String, Assumption> mAsmts;
 	protected Map<String, Literal> mSpecials;
+	protected KBStatsImpl mStats;
+	protected boolean mStatsStale; // set when mStats needs to be worked out again
 	
 	protected volatile SymbolicResolver mSR;
 	protected volatile NumericResolver mNR;
@@ -72,6 +75,7 @@ class PASImpl implements PAS {
 		mProps = new LinkedHashMap<>(); // use linkedhashmap to ease debugging stuff
 		mAsmts = new LinkedHashMap<>(); // use linkedhashmap to ease debugging stuff
 		mSpecials = new HashMap<>(2); // Of course we don't need this, but it's the cleanest way of handling it.
+		mStats = new KBStatsImpl();
 
 		mCachedSupport = new HashMap<>();
 	}
@@ -106,6 +110,7 @@ class PASImpl implements PAS {
 			for(Expression<LogicalOr> exp : mCNF.getElements())
 				for(Literal lit : exp.getLiterals())
 					addLiteral(lit);					
+			mStats.reset(mCNF.getElements());
 		}
 
 		if(asmts != null)
@@ -153,6 +158,7 @@ class PASImpl implements PAS {
 				Literal negLit = lit.getNeg() ? lit : lit.getNegated();
 				mAsmts.put(lit.getName(), (Assumption) posLit);
 				mAsmts.put(getNegation() + lit.getName(), (Assumption) negLit);
+				mStats.onAssumptionAdded();
 			}
 			else
 			{
@@ -175,6 +181,7 @@ class PASImpl implements PAS {
 			Literal negLit = lit.getNeg() ? lit : lit.getNegated();
 			mProps.put(lit.getName(), (Proposition) posLit);
 			mProps.put(getNegation() + lit.getName(), (Proposition) negLit);
+			mStats.onPropositionAdded();
 		}
 		else
 		{
@@ -262,14 +269,38 @@ class PASImpl implements PAS {
 			cla.addLiteral(l.getNegated());
 		cla.addLiteral(head);
 		
-		return mCNF.addElement(cla);
+		return addClause(cla);
 	}
 
 	@Override
 	public boolean addHornClause(String hcDesc) throws KBException 
 	{
 		Expression<LogicalOr> clause = constructHornClause(hcDesc);
-		return mCNF.addElement(clause);
+		return addClause(clause);
+	}
+	
+	protected boolean addClause(Expression<LogicalOr> clause)
+	{
+		int prevLength = mCNF.getLength();
+		boolean added = mCNF.addElement(clause);
+		// If the new clause subsumed others the stats are left out of date and redone in getStats.
+		if(added && mCNF.getLength() == prevLength + 1 && mStats.getNumClauses() == prevLength)
+			mStats.addClause(clause);
+		else if(added)
+			mStatsStale = true;
+		return added;
+	}
+	
+	@Override
+	public KBStats getStats()
+	{
+		// Changes made directly to the KB are only caught if they change its length.
+		if(mStatsStale || mStats.getNumClauses() != mCNF.getLength())
+		{
+			mStats.reset(mCNF.getElements());
+			mStatsStale = false;
+		}
+		return mStats;
 	}
 
 	@Override
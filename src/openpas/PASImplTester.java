@@ -17,6 +17,8 @@
 
 package openpas;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -31,6 +33,8 @@ import openpas.StringOps.LogicalStringer;
 import openpas.basics.Assumption;
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
+import openpas.basics.KBStats;
+import openpas.basics.Literal;
 import openpas.basics.LogicalOps.LogicalAnd;
 import openpas.basics.LogicalOps.LogicalOr;
 import openpas.basics.NumericResolver;
@@ -196,6 +200,52 @@ public class PASImplTester {
 		}
 	}
 
+	@Test
+	public void testStats() throws KBException
+	{
+		PAS pas = new PASImpl(mFac);
+		Assumption a = pas.createAssumption("a", false, 0.5);
+		pas.createAssumption("b", false, 0.5);
+		pas.createProposition("x", false);
+		pas.createProposition("y", false);
+		pas.createProposition("z", false);
+		
+		pas.addHornClause("a -> x");
+		pas.addHornClause("x -> y");
+		pas.addHornClause("b y -> z");
+		KBStats stats = pas.getStats();
+		Assert.assertEquals(2, stats.getNumAssumptions());
+		Assert.assertEquals(3, stats.getNumPropositions());
+		Assert.assertEquals(3, stats.getNumClauses());
+		Assert.assertEquals(3, stats.getNumHorn());
+		Assert.assertEquals(Integer.valueOf(2), stats.getClauseLengthHistogram().get(2));
+		Assert.assertEquals(Integer.valueOf(1), stats.getClauseLengthHistogram().get(3));
+		Assert.assertEquals(3, stats.getMaxClauseLength());
+		Assert.assertEquals(1, stats.getOccurrences(a.getNegated()));
+		Assert.assertEquals(0, stats.getOccurrences(a));
+		Assert.assertEquals(5, stats.getNumVariables());
+		Assert.assertEquals(5, stats.getNumEdges());
+		Assert.assertEquals(1, stats.getNumComponents());
+		Assert.assertEquals(2, stats.estimateTreewidth()); // b, y, z form a triangle
+		
+		// A separate component that isn't Horn.
+		pas.createProposition("v", false);
+		pas.createProposition("w", false);
+		pas.getKB().addElement(pas.constructClause("v + w"));
+		Assert.assertEquals(4, pas.getStats().getNumClauses());
+		Assert.assertEquals(3, pas.getStats().getNumHorn());
+		Assert.assertEquals(2, pas.getStats().getNumComponents());
+		Assert.assertEquals(5, pas.getStats().getLargestComponentSize());
+		
+		// This subsumes b y -> z so the stats are worked out again.
+		pas.addHornClause("y -> z");
+		Assert.assertEquals(4, pas.getStats().getNumClauses());
+		Assert.assertEquals(Integer.valueOf(4), pas.getStats().getClauseLengthHistogram().get(2));
+		Assert.assertNull(pas.getStats().getClauseLengthHistogram().get(3));
+		Assert.assertEquals(0, pas.getStats().getOccurrences(pas.getAssumption("b", true)));
+		Assert.assertEquals(1, pas.getStats().estimateTreewidth());
+	}
+
 	@Test
 	public void testGetAssumptions() throws KBException
 	{
@@ -615,6 +665,40 @@ public class PASImplTester {
 		}
 	}
 
+	@Test
+	public void testStreamingStringise() throws KBException, IOException
+	{
+		PAS pas = createBasePAS(mFac);
+		pas.addHornClause("A C B -> ¬y");
+		pas.addHornClause("y A B -> x");
+		LogicalStringer stringer = mFac.getDefaultStringer();
+		LogicalStringer horn = mFac.getHornStringer();
+
+		StringBuilder sb = new StringBuilder();
+		Assert.assertTrue(stringer.stringise(sb, pas.getKB(), StringOps.NO_LIMIT));
+		Assert.assertEquals(pas.getKB().toString(), sb.toString());
+		
+		sb.setLength(0);
+		Assert.assertTrue(horn.stringise(sb, pas.getKB(), StringOps.NO_LIMIT));
+		Assert.assertEquals(horn.stringise(pas.getKB()), sb.toString());
+		
+		// A term can't be written as a horn clause.
+		sb.setLength(0);
+		Assert.assertFalse(horn.stringise(sb, mFac.createTerm(), StringOps.NO_LIMIT));
+		Assert.assertEquals(0, sb.length());
+
+		// The String forms are cut at the max size, the streaming form can write all of it.
+		List<Literal> lits = new ArrayList<>();
+		for(int i = 0; i < 300; i++)
+			lits.add(pas.createProposition("p" + i, false));
+		Expression<LogicalOr> clause = mFac.createClause(lits);
+		Assert.assertTrue(stringer.stringise(clause).endsWith("...)"));
+		sb.setLength(0);
+		stringer.stringise(sb, clause, StringOps.NO_LIMIT);
+		Assert.assertTrue(sb.toString().endsWith("p298 + p299)"));
+		Assert.assertTrue(sb.length() > stringer.getMaxSize());
+	}
+
 	@Test(expected = KBException.class)
 	public void testHCBadTerm() throws KBException 
 	{
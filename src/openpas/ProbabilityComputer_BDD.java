@@ -42,6 +42,9 @@ import openpas.basics.LogicalOps.LogicalOr;
 import openpas.basics.ProbabilityComputer;
 import openpas.utils.MutableDouble;
 import openpas.utils.PairT;
+import openpas.utils.QueryTrace;
+import openpas.utils.QueryTrace.Count;
+import openpas.utils.QueryTrace.Phase;
 
 /**
  * A class that implements the ProbabilityComputer interface using a binary decision diagrams (BDD) based implementation. <br>
@@ -125,10 +128,14 @@ class ProbabilityComputer_BDD implements ProbabilityComputer
 		try
 		{
 			// Convert the DNF to a BDD
+			long start = QueryTrace.startPhase();
 			PairT<BDD, List<Assumption>> bl = ProbabilityComputer_BDD.createBDDfromDNF(bddf, dnf);
 			if(bl == null)
 				return Double.NaN; // This will happen when the DNF specified has propositions in it.
 			BDD bddDNF = bl.first;
+			QueryTrace.endPhase(Phase.BDDBuild, start);
+			if(QueryTrace.current() != null)
+				QueryTrace.count(Count.BDDNodes, bddDNF.nodeCount());
 			// To make sense of the BDD we need the matching list of assumptions used.
 			List<Assumption> listAsmts = bl.second;
 			
@@ -182,7 +189,9 @@ class ProbabilityComputer_BDD implements ProbabilityComputer
 				}
 			}
 	
+			start = QueryTrace.startPhase();
 			double dqs = computeBDDProb(bddf, bddDNF, probs);
+			QueryTrace.endPhase(Phase.BDDSweep, start);
 			return dqs;
 		}
 		finally
@@ -17,14 +17,10 @@
 
 package openpas;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.List;
-
-import com.google.common.collect.FluentIterable;
-import com.google.common.collect.Iterators;
 
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
@@ -57,6 +53,10 @@ import openpas.basics.LogicalOps.MaterialImplication;
 */
 public class StringOps {
 	final static private int DEFAULT_MAX_STR_LEN = 1000;
+	/**
+	 * Max length to use with the streaming stringise methods to have the whole of the input written.
+	 */
+	final static public long NO_LIMIT = Long.MAX_VALUE;
 	
 	public static LogicalSmyboliser createLogicalSymboliser()
 	{
@@ -86,13 +86,26 @@ public class StringOps {
 		String getTrue();
 		String getFalse();
 		String getImplication();
-		void symboliseLiteral(StringBuffer buf, Literal l, boolean negate);
+		void symboliseLiteral(Appendable out, Literal l, boolean negate) throws IOException;
 	}
 	
 	static public interface LogicalStringer
 	{
 		<OpE extends LogicalOp> String stringise(Expression<OpE> exp);
 		<OpS extends LogicalOp, OpE extends LogicalOp> String stringise(SimpleSentence<OpS, OpE> sen);
+		/**
+		 * Writes the string form of an expression directly to the output without building intermediate strings.
+		 * @param out
+		 * @param exp
+		 * @param maxLength The output is cut where this is exceeded, use {@link StringOps#NO_LIMIT} to write all of it.
+		 * @return false if the expression isn't supported by this stringer, in which case nothing is written.
+		 * @throws IOException
+		 */
+		<OpE extends LogicalOp> boolean stringise(Appendable out, Expression<OpE> exp, long maxLength) throws IOException;
+		/**
+		 * Writes the string form of a sentence directly to the output, see {@link #stringise(Appendable, Expression, long)}.
+		 */
+		<OpS extends LogicalOp, OpE extends LogicalOp> boolean stringise(Appendable out, SimpleSentence<OpS, OpE> sen, long maxLength) throws IOException;
 		long getMaxSize();
 	}
 	
@@ -126,10 +139,10 @@ public class StringOps {
 		}
 
 		@Override
-		public void symboliseLiteral(StringBuffer buf, Literal l, boolean negate) {
+		public void symboliseLiteral(Appendable out, Literal l, boolean negate) throws IOException {
 			if(negate ^ l.getNeg())
-				buf.append(getNegation());
-			buf.append(l.getName());
+				out.append(getNegation());
+			out.append(l.getName());
 		}
 
 		@Override
@@ -138,13 +151,132 @@ public class StringOps {
 		}
 	}
 	
-	static class DefaultStringerant implements LogicalStringer
+	/**
+	 * Keeps count of what's written so the stringers can cut long outputs without having to build strings.
+	 */
+	protected static class CountingAppender implements Appendable
+	{
+		final Appendable mOut;
+		long mLength;
+		
+		CountingAppender(Appendable out)
+		{
+			mOut = out;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq) throws IOException {
+			mLength += csq.length();
+			mOut.append(csq);
+			return this;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) throws IOException {
+			mLength += end - start;
+			mOut.append(csq, start, end);
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) throws IOException {
+			mLength++;
+			mOut.append(c);
+			return this;
+		}
+	}
+	
+	/**
+	 * Common parts of the stringers: the String methods are written in terms of the streaming ones.
+	 */
+	protected static abstract class AbstractStringer implements LogicalStringer
 	{
 		LogicalSmyboliser mSyer;
 		Comparator<Literal> mOrderLits;
 		int mMaxStringLen;
+		
+		protected AbstractStringer(LogicalSmyboliser syer, Comparator<Literal> orderLiterals, int maxStringLen)
+		{
+			mSyer = syer;
+			mOrderLits = orderLiterals;
+			mMaxStringLen = maxStringLen;
+		}
+
+		protected abstract <OpE extends LogicalOp> boolean write(CountingAppender out, Expression<OpE> exp, long maxLength) throws IOException;
+		protected abstract <OpS extends LogicalOp, OpE extends LogicalOp> boolean write(CountingAppender out, SimpleSentence<OpS, OpE> sen, long maxLength) throws IOException;
+
+		@Override
+		public <OpE extends LogicalOp> String stringise(Expression<OpE> exp)
+		{
+			StringBuilder sb = new StringBuilder();
+			try {
+				return write(new CountingAppender(sb), exp, mMaxStringLen) ? sb.toString() : null;
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // can't happen with a StringBuilder
+			}
+		}
+
+		@Override
+		public <OpS extends LogicalOp, OpE extends LogicalOp> String stringise(SimpleSentence<OpS, OpE> sen)
+		{
+			StringBuilder sb = new StringBuilder();
+			try {
+				return write(new CountingAppender(sb), sen, mMaxStringLen) ? sb.toString() : null;
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // can't happen with a StringBuilder
+			}
+		}
+
+		@Override
+		public <OpE extends LogicalOp> boolean stringise(Appendable out, Expression<OpE> exp, long maxLength) throws IOException {
+			return write(new CountingAppender(out), exp, maxLength);
+		}
+
+		@Override
+		public <OpS extends LogicalOp, OpE extends LogicalOp> boolean stringise(Appendable out, SimpleSentence<OpS, OpE> sen, long maxLength) throws IOException {
+			return write(new CountingAppender(out), sen, maxLength);
+		}
 
+		@Override
+		public long getMaxSize() {
+			return mMaxStringLen;
+		}
 		
+		/**
+		 * Returns true if the first count literals are already in the literal order.<br>
+		 * The implementations keep literals by index, so most expressions iterate in order already and
+		 * checking this is a lot cheaper than copying and sorting them every time.
+		 */
+		protected boolean isInOrder(Iterable<Literal> literals, int count)
+		{
+			Literal prev = null;
+			Iterator<Literal> it = literals.iterator();
+			for(int i = 0; i < count && it.hasNext(); i++)
+			{
+				Literal lit = it.next();
+				if(prev != null && mOrderLits.compare(prev, lit) > 0)
+					return false;
+				prev = lit;
+			}
+			return true;
+		}
+		
+		/**
+		 * Copies the literals to an array, and sorts the first count of them.
+		 */
+		protected Literal[] sortLiterals(Expression<?> exp, int count)
+		{
+			Literal[] lits = new Literal[exp.getLength()];
+			int i = 0;
+			for(Literal lit : exp.getLiterals())
+				lits[i++] = lit;
+			Arrays.sort(lits, 0, count, mOrderLits);
+			return lits;
+		}
+	}
+	
+	static class DefaultStringerant extends AbstractStringer
+	{
 		public DefaultStringerant(LogicalSmyboliser syer, Comparator<Literal> orderLiterals)
 		{
 			this(syer, orderLiterals, DEFAULT_MAX_STR_LEN);
@@ -157,24 +289,22 @@ public class StringOps {
 		 */
 		public DefaultStringerant(LogicalSmyboliser syer, Comparator<Literal> orderLiterals, int maxStringLen)
 		{
-			mSyer = syer;
-			mOrderLits = orderLiterals;
-			mMaxStringLen = maxStringLen;
+			super(syer, orderLiterals, maxStringLen);
 		}
 		
 		@Override
-		public <OpE extends LogicalOp> String stringise(Expression<OpE> exp)
+		protected <OpE extends LogicalOp> boolean write(CountingAppender out, Expression<OpE> exp, long maxLength) throws IOException
 		{
-			StringBuffer sb = new StringBuffer();
+			long start = out.mLength;
 			
 			// The following surrounds clauses with a "(". This emphasises the lower precedence of OR
 			// compared to AND. In doing so, it also allows us spot the difference between an term and a clause.
 			if(exp.getOp() instanceof LogicalOr)
-				sb.append("(");
+				out.append("(");
 			if(exp.isTrue())
-				sb.append(mSyer.getTrue());
+				out.append(mSyer.getTrue());
 			else if(exp.isFalse())
-				sb.append(mSyer.getFalse());
+				out.append(mSyer.getFalse());
 			else
 			{
 				String sym;
@@ -185,68 +315,62 @@ public class StringOps {
 					sym = "?";
 				}
 				
-				boolean first = true;
 				Iterable<Literal> literals;
-				if(mOrderLits == null)
+				if(mOrderLits == null || isInOrder(exp.getLiterals(), exp.getLength()))
 					literals = exp.getLiterals();
 				else
-				{
-					List<Literal> lits = new ArrayList<Literal>();
-					for(Literal lit : exp.getLiterals())
-						lits.add(lit);
-					Collections.sort(lits, mOrderLits);
-					literals = lits;
-				}
+					literals = Arrays.asList(sortLiterals(exp, exp.getLength()));
 				
+				boolean first = true;
 				for(Literal lit : literals)
 				{
 					if(first)
 						first = false;
 					else
 					{
-						sb.append(" ");
-						sb.append(sym);
+						out.append(' ');
+						out.append(sym);
 						if(sym.length() > 0)
-							sb.append(" ");
+							out.append(' ');
 					}
 
-					mSyer.symboliseLiteral(sb, lit, false);
+					mSyer.symboliseLiteral(out, lit, false);
 					
-					if(sb.length() > mMaxStringLen)
+					if(out.mLength - start > maxLength)
 					{
-						sb.append("...");
+						out.append("...");
 						break;
 					}
 				}				
 			}
 			
 			if(exp.getOp() instanceof LogicalOr)
-				sb.append(")");
+				out.append(")");
 			
-			return sb.toString();
+			return true;
 		}
 		
 		@Override
-		public <OpS extends LogicalOp, OpE extends LogicalOp> String stringise(SimpleSentence<OpS, OpE> sen)
+		protected <OpS extends LogicalOp, OpE extends LogicalOp> boolean write(CountingAppender out, SimpleSentence<OpS, OpE> sen, long maxLength) throws IOException
 		{
-			StringBuffer sb = new StringBuffer();
+			long start = out.mLength;
 			
-			sb.append("["); // this helps distinguish between an expression and a sentence easily.
+			out.append("["); // this helps distinguish between an expression and a sentence easily.
 			if(sen.isFalse())
 			{
 				if(sen.getOp() instanceof LogicalAnd) //adding special clause
-					sb.append("(");
-				sb.append("False");
+					out.append("(");
+				out.append("False");
 				if(sen.getOp() instanceof LogicalAnd)
-					sb.append(")");
+					out.append(")");
 			}
 			else if(sen.isTrue())
 			{
 				if(sen.getOp() instanceof LogicalAnd) //adding special clause
-					sb.append("(");
-				sb.append("True");
+					out.append("(");
+				out.append("True");
 				if(sen.getOp() instanceof LogicalAnd)
-					sb.append(")");				
+					out.append(")");				
 			}
 			else
 			{
@@ -262,7 +386,7 @@ public class StringOps {
 				// pad with extra space for OR since it has the lower precedence
 				// AND based expressions won't have brackets.
 				if(sen.getOp() instanceof LogicalOr)
-					sym = String.format(" %s ", sym);
+					sym = " " + sym + " ";
 				
 				boolean first = true;
 				for(Expression<OpE> exp : sen.getElements())
@@ -270,135 +394,120 @@ public class StringOps {
 					if(first)
 						first = false;
 					else
-						sb.append(sym);
+						out.append(sym);
 					
-					sb.append(stringise(exp));
+					write(out, exp, maxLength);
 					
-					if(sb.length() > mMaxStringLen - 4)
+					if(out.mLength - start > maxLength - 4)
 					{
-						sb.append("...");
+						out.append("...");
 						break;
 					}
 				}				
 			}
-			sb.append("]");
-			return sb.toString();
-		}
-
-		@Override
-		public long getMaxSize() {
-			return mMaxStringLen;
+			out.append("]");
+			return true;
 		}
 	}
 	
-	static class HornStringer implements LogicalStringer
+	static class HornStringer extends AbstractStringer
 	{
-		LogicalSmyboliser mSyer;
-		int mMaxStringLen;
-		Comparator<Literal> mOrderLits;
-
 		public HornStringer(LogicalSmyboliser syer, Comparator<Literal> orderLiterals, int maxStringLen)
 		{
-			mSyer = syer;
-			mOrderLits = orderLiterals;
-			mMaxStringLen = maxStringLen;
+			super(syer, orderLiterals, maxStringLen);
 		}
 
 		@Override
-		public <OpE extends LogicalOp> String stringise(Expression<OpE> exp) {
+		protected <OpE extends LogicalOp> boolean write(CountingAppender out, Expression<OpE> exp, long maxLength) throws IOException {
 			if(!(exp.getOp() instanceof LogicalOr))
-				return null; // can only process a clause
-			StringBuffer sb = new StringBuffer();
+				return false; // can only process a clause
+			long start = out.mLength;
 
-			sb.append("("); // clauses always start with (
+			out.append("("); // clauses always start with (
 			
-			if(exp.getLength() > 1)
+			int length = exp.getLength();
+			if(length > 1)
 			{ // We have at least two literals to deal with in the clause.
 				
-				// We'll iterate over the raw iterable or a sorted one depending on whether we have an order.
+				// The head is the last literal, and only the body is put in order if there's an order, which
+				// it usually already is.
 				Iterator<Literal> itAll;
-
-				if(mOrderLits != null)
-				{
-					// If we have an ordering, we'll need to sort the body of the clause, and pick the head from the end:
-					List<Literal> listLiterals = FluentIterable.from(exp.getLiterals()).copyInto(new ArrayList<>(exp.getLength()));
-
-					// Sort the body part of the clause
-					Collections.sort(listLiterals.subList(0, listLiterals.size() - 1), mOrderLits);
-					itAll = listLiterals.iterator();
-				}
+				if(mOrderLits == null || isInOrder(exp.getLiterals(), length - 1))
+					itAll = exp.getLiterals().iterator();
 				else
-					itAll = exp.getLiterals().iterator(); // unordered
+					itAll = Arrays.asList(sortLiterals(exp, length - 1)).iterator();
 
 				// Iterate first over the body.
-				Iterator<Literal> itBody = Iterators.limit(itAll, exp.getLength() - 1);
-				while(itBody.hasNext())
+				for(int i = 0; i < length - 1; i++)
 				{
-					Literal l = itBody.next();
+					Literal l = itAll.next();
+					if(i > 0)
+						out.append(' ');
 					// Negate the body of the clause when symbolising
-					mSyer.symboliseLiteral(sb, l, true);
+					mSyer.symboliseLiteral(out, l, true);
 					
-					if(sb.length() > mMaxStringLen - 4)
+					if(out.mLength - start > maxLength - 4)
 					{
-						sb.append("...");
+						out.append("...");
+						// Skip the rest of the body to get to the head.
+						for(i++; i < length - 1; i++)
+							itAll.next();
 						break;
 					}
-					if(itBody.hasNext())
-						sb.append(" ");
 				}
-				sb.append(" ");
-				sb.append(mSyer.getImplication());
-				sb.append(" ");
+				out.append(' ');
+				out.append(mSyer.getImplication());
+				out.append(' ');
 				// Get the head in the head which won't be negated:
 				Literal litHead = itAll.next(); // this should never fail
-				mSyer.symboliseLiteral(sb, litHead, false);
+				mSyer.symboliseLiteral(out, litHead, false);
 			}
-			else if(exp.getLength() == 1)
+			else if(length == 1)
 			{
 				// We insert the single literal as a free standing head.
-				mSyer.symboliseLiteral(sb, exp.getLiterals().iterator().next(), false);
+				mSyer.symboliseLiteral(out, exp.getLiterals().iterator().next(), false);
 			}
 			else
 			{ // empty
 				assert exp.isFalse(); // empty clause is falsity
-				sb.append(mSyer.getFalse());
+				out.append(mSyer.getFalse());
 			}
-			sb.append(")");
-			return sb.toString();
+			out.append(")");
+			return true;
 		}
 
 		@Override
-		public <OpS extends LogicalOp, OpE extends LogicalOp> String stringise(SimpleSentence<OpS, OpE> sen) {
+		protected <OpS extends LogicalOp, OpE extends LogicalOp> boolean write(CountingAppender out, SimpleSentence<OpS, OpE> sen, long maxLength) throws IOException {
 			if(!(sen.getOp() instanceof LogicalAnd))
-				return null; // only CNF supported
+				return false; // only CNF supported
 			if(sen.isFalse())
-				return "[(" + mSyer.getFalse() + ")]";
+			{
+				out.append("[(").append(mSyer.getFalse()).append(")]");
+				return true;
+			}
 			if(sen.isTrue())
-				return "[(" + mSyer.getTrue() + ")]";
+			{
+				out.append("[(").append(mSyer.getTrue()).append(")]");
+				return true;
+			}
 			
 			// Check the first element for CNF
 			if(!(sen.getElements().iterator().next().getOp() instanceof LogicalOr))
-				return null;
+				return false;
 			
-			StringBuffer sb = new StringBuffer();
-			sb.append("[");
+			out.append("[");
 			
 			Iterator<Expression<OpE>> it = sen.getElements().iterator();
 			while(it.hasNext())
 			{
 				Expression<OpE> expr = it.next();
-				sb.append(stringise(expr));
+				write(out, expr, maxLength);
 				
 				if(it.hasNext())
-					sb.append(",");
+					out.append(",");
 			}
-			sb.append("]");
-			return sb.toString();
-		}
-
-		@Override
-		public long getMaxSize() {
-			return mMaxStringLen;
+			out.append("]");
+			return true;
 		}
 	}
 }
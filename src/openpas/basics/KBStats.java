@@ -0,0 +1,87 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package openpas.basics;
+
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Statistics for the knowledgebase of a PAS instance that help predict the cost of resolution and BDD construction. <br>
+ * 
+ * The interaction graph has a vertex for each literal (ignoring the sign) used in the KB, with an edge between
+ * two literals that appear together in a clause. The components of this graph can be resolved separately, and its
+ * treewidth bounds the size of the sentences found while eliminating propositions. <br>
+ * 
+ * Like the KB itself, the instance returned by {@link PAS#getStats()} is live and reflects later changes to the KB.
+ */
+public interface KBStats {
+	public int getNumAssumptions();
+	
+	public int getNumPropositions();
+	
+	/**
+	 * @return Number of scenarios for the assumptions, i.e. 2^n.
+	 */
+	public double getNumScenarios();
+	
+	public int getNumClauses();
+	
+	/**
+	 * @return Number of clauses for each clause length, in increasing length.
+	 */
+	public SortedMap<Integer, Integer> getClauseLengthHistogram();
+	
+	public int getMaxClauseLength();
+	
+	public double getAverageClauseLength();
+	
+	/**
+	 * @return Number of clauses with at most one positive literal.
+	 */
+	public int getNumHorn();
+	
+	public double getHornRatio();
+	
+	/**
+	 * @return Number of clauses the given literal appears in with the same sign.
+	 */
+	public int getOccurrences(Literal lit);
+	
+	/**
+	 * @return Up to the given number of literals (positive instances) in decreasing order of their occurrences with either sign.
+	 */
+	public List<Literal> getMostFrequent(int num);
+	
+	/**
+	 * @return Number of literals used in the clauses, i.e. the vertices of the interaction graph.
+	 */
+	public int getNumVariables();
+	
+	public long getNumEdges();
+	
+	public int getMaxDegree();
+	
+	public int getNumComponents();
+	
+	public int getLargestComponentSize();
+	
+	/**
+	 * @return An upper bound for the treewidth of the interaction graph, 0 for an empty KB.
+	 */
+	public int estimateTreewidth();
+}
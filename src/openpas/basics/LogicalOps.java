@@ -17,10 +17,14 @@
 
 package openpas.basics;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
+import openpas.utils.EncodedExpressions;
 
 /**
  * This class defines the logical operators used in OpenPAS.
@@ -194,6 +198,38 @@ public abstract class LogicalOps {
 				SimpleSentence<LogicalOr, LogicalAnd> dnf2);
 	}
 	
+	/**
+	 * Thrown when a conversion exceeds its size budget, see {@link LogicalConverter#convertCNF(SimpleSentence, int, ConversionListener)}.
+	 * It tells how far the conversion got before it was abandoned.
+	 */
+	public static class ConversionLimitException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+		private final int mDone;
+		private final int mTotal;
+		private final int mElements;
+
+		public ConversionLimitException(int done, int total, int elements)
+		{
+			super(String.format("Conversion abandoned after %d of %d elements with %d elements in the intermediate sentence.",
+					done, total, elements));
+			mDone = done;
+			mTotal = total;
+			mElements = elements;
+		}
+		public int getDone() { return mDone; }
+		public int getTotal() { return mTotal; }
+		public int getElements() { return mElements; }
+	}
+	
+	/**
+	 * Receives the progress of a conversion after each element of the sentence converted is distributed.
+	 */
+	public interface ConversionListener
+	{
+		void onProgress(int done, int total, int elements);
+	}
+	
 	public interface LogicalConverter
 	{
 		// Specific interface
@@ -202,6 +238,23 @@ public abstract class LogicalOps {
 		
 		SimpleSentence<LogicalAnd, LogicalOr> convertDNF(SimpleSentence<LogicalOr, LogicalAnd> dnf);
 		SimpleSentence<LogicalOr, LogicalAnd> convertCNF(SimpleSentence<LogicalAnd, LogicalOr> cnf);
+
+		/**
+		 * Same as {@link #convertDNF(SimpleSentence)} but with a size budget.
+		 * @param maxElements The conversion throws {@link ConversionLimitException} when an intermediate sentence grows
+		 * larger than this, 0 for no limit.
+		 * @param listener Told the progress of the conversion, may be null.
+		 */
+		SimpleSentence<LogicalAnd, LogicalOr> convertDNF(SimpleSentence<LogicalOr, LogicalAnd> dnf, int maxElements,
+				ConversionListener listener);
+		/**
+		 * Same as {@link #convertCNF(SimpleSentence)} but with a size budget.
+		 * @param maxElements The conversion throws {@link ConversionLimitException} when an intermediate sentence grows
+		 * larger than this, 0 for no limit.
+		 * @param listener Told the progress of the conversion, may be null.
+		 */
+		SimpleSentence<LogicalOr, LogicalAnd> convertCNF(SimpleSentence<LogicalAnd, LogicalOr> cnf, int maxElements,
+				ConversionListener listener);
 	
 		// Generic interface
 		SimpleSentence<? extends LogicalOp, ? extends LogicalOp> convert(LogicalOp op2S, LogicalOp op2E, Expression<? extends LogicalOp> exp)
@@ -224,18 +277,16 @@ public abstract class LogicalOps {
 		public SimpleSentence<OpS, OpE> distribute(
 				SimpleSentence<OpS, OpE> sen1, SimpleSentence<OpS, OpE> sen2) {
 			
-			LogicalOp ops = sen1.getOp();
-			LogicalOp ope = sen1.getElements().iterator().next().getOp();
+			OpS ops = sen1.getOp();
+			OpE ope = (OpE) (mFac.getAnd().equals(ops) ? mFac.getOr() : mFac.getAnd());
 			
-			SimpleSentence<OpS, OpE> sen = (SimpleSentence<OpS, OpE>) mFac.createSentece(ops, ope);
-			Iterator<Expression<OpE>> it1 = sen1.getElements().iterator();			
-			while(it1.hasNext())
-			{
-				Iterator<Expression<OpE>> it2 = sen2.getElements().iterator();
-				Expression<OpE> exp1 = it1.next();
-				while(it2.hasNext())
-					sen.addElement(exp1.cloneExpression().addLiterals(it2.next().getLiterals()));
-			}
+			// Products are formed on the encoded elements, so those that would be discarded by \mu are never created.
+			Map<Integer, Literal> lits = new HashMap<Integer, Literal>();
+			List<int[]> dist = EncodedExpressions.distribute(EncodedExpressions.encode(sen1.getElements(), lits),
+					EncodedExpressions.encode(sen2.getElements(), lits));
+			SimpleSentence<OpS, OpE> sen = mFac.createSentece(ops, ope);
+			for(Expression<OpE> exp : EncodedExpressions.decode(mFac, ope, dist, lits))
+				sen.addElement(exp);
 			return sen;
 		}
 	}
@@ -277,29 +328,62 @@ public abstract class LogicalOps {
 		@Override
 		public SimpleSentence<LogicalOr, LogicalAnd> convertCNF(
 				SimpleSentence<LogicalAnd, LogicalOr> cnf) {
-			Iterator<Expression<LogicalOr>> it = cnf.getElements().iterator();
-			LogicalOr bor = mFac.getOr();
-			SimpleSentence<LogicalOr, LogicalAnd> dnf = convertClause(it.next());
-			while(it.hasNext())
-			{
-				SimpleSentence<LogicalOr, LogicalAnd> dnf2 = convertClause(it.next());
-				dnf = bor.distribute(dnf, dnf2);
-			}
-			return dnf;
+			return convertCNF(cnf, 0, null);
 		}
 
 		@Override
 		public SimpleSentence<LogicalAnd, LogicalOr> convertDNF(
 				SimpleSentence<LogicalOr, LogicalAnd> dnf) {
-			Iterator<Expression<LogicalAnd>> it = dnf.getElements().iterator();
-			LogicalAnd band = mFac.getAnd();
-			SimpleSentence<LogicalAnd, LogicalOr> cnf = convertTerm(it.next());
-			while(it.hasNext())
+			return convertDNF(dnf, 0, null);
+		}
+
+		@Override
+		public SimpleSentence<LogicalOr, LogicalAnd> convertCNF(SimpleSentence<LogicalAnd, LogicalOr> cnf,
+				int maxElements, ConversionListener listener) {
+			Map<Integer, Literal> lits = new HashMap<Integer, Literal>();
+			List<int[]> terms = distributeAll(cnf.getElements(), lits, maxElements, listener);
+			return mFac.createDNFSentence(EncodedExpressions.decode(mFac, mFac.getAnd(), terms, lits));
+		}
+
+		@Override
+		public SimpleSentence<LogicalAnd, LogicalOr> convertDNF(SimpleSentence<LogicalOr, LogicalAnd> dnf,
+				int maxElements, ConversionListener listener) {
+			Map<Integer, Literal> lits = new HashMap<Integer, Literal>();
+			List<int[]> clauses = distributeAll(dnf.getElements(), lits, maxElements, listener);
+			return mFac.createCNFSentence(EncodedExpressions.decode(mFac, mFac.getOr(), clauses, lits));
+		}
+
+		/**
+		 * Distributes the elements of a sentence over each other, eg. (a + b)(c + d) -> a c + a d + b c + b d,
+		 * on their encoded forms (see {@link EncodedExpressions}).<br>
+		 * Shorter elements go first since they keep the intermediate sentence smallest, and unit elements fix
+		 * their literals before anything else. A product with a literal and its negation is dropped as soon as
+		 * it's formed, and a product that already contains a literal of the next element is kept as is.
+		 * The size budget is checked within each step as well as after it, see {@link EncodedExpressions#distribute(List, List, int)}.
+		 */
+		protected <OpE extends LogicalOp> List<int[]> distributeAll(Iterable<Expression<OpE>> elements,
+				Map<Integer, Literal> lits, int maxElements, ConversionListener listener) {
+			List<int[]> encoded = EncodedExpressions.encode(elements, lits);
+			encoded.sort((e1, e2) -> e1.length - e2.length);
+
+			List<int[]> dist = new ArrayList<int[]>();
+			dist.add(new int[0]); // identity of the product, ie. a true term for a CNF, a false clause for a DNF
+			int done = 0;
+			for(int[] exp : encoded)
 			{
-				SimpleSentence<LogicalAnd, LogicalOr> cnf2 = convertTerm(it.next());
-				cnf = band.distribute(cnf, cnf2);
+				List<int[]> units = new ArrayList<int[]>(exp.length);
+				for(int code : exp)
+					units.add(new int[] {code});
+				dist = EncodedExpressions.distribute(dist, units, maxElements);
+				++done;
+				if(listener != null)
+					listener.onProgress(done, encoded.size(), dist.size());
+				if(maxElements > 0 && dist.size() > maxElements)
+					throw new ConversionLimitException(done, encoded.size(), dist.size());
+				if(dist.isEmpty())
+					break; // point of no return
 			}
-			return cnf;
+			return dist;
 		}
 
 		/**
@@ -17,6 +17,9 @@
 
 package openpas.basics;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import openpas.basics.Expressions.SimpleSentence;
 import openpas.basics.LogicalOps.LogicalAnd;
 import openpas.basics.LogicalOps.LogicalOr;
@@ -87,4 +90,63 @@ public interface NumericResolver extends SymbolicResolver, ProbabilityComputer
 	 * @return
 	 */
 	double calcNormalisedDSP(SimpleSentence<LogicalAnd, LogicalOr> hypothesis);
+	
+	/**
+	 * Starts {@link #calcDQS(SimpleSentence)} in the background, see {@link #findQSAsync(SimpleSentence, long)} for how it can be stopped.
+	 * The deadline is checked during the symbolic resolution, which is normally the expensive part of the calculation.
+	 * @param hypothesis
+	 * @param timeoutMillis Time allowed for the query, 0 or less for no deadline.
+	 * @return
+	 */
+	CompletableFuture<Double> calcDQSAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis);
+	
+	/**
+	 * Starts {@link #calcNormalisedDSP(SimpleSentence)} in the background, see {@link #findQSAsync(SimpleSentence, long)} for how it can be stopped.
+	 * @param hypothesis
+	 * @param timeoutMillis Time allowed for the query, 0 or less for no deadline.
+	 * @return
+	 */
+	CompletableFuture<Double> calcNormalisedDSPAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis);
+
+	/**
+	 * Receives the results of a batch calculation (e.g. {@link NumericResolver#calcDQS(List, BatchListener)})
+	 * as they become available. Results arrive in the order they complete rather than the order of the hypotheses,
+	 * but they're always delivered on the thread that called the batch method.
+	 */
+	interface BatchListener
+	{
+		/**
+		 * @param index The position of the hypothesis in the batch.
+		 * @param degree The degree calculated for the hypothesis.
+		 */
+		void onResult(int index, double degree);
+	}
+
+	/**
+	 * Calculate the degree of quasi-support for each of the given hypotheses against the same knowledgebase. <br>
+	 * 
+	 * This gives the same results as calling {@link #calcDQS(SimpleSentence)} for each hypothesis, but the work
+	 * is shared across the batch: every distinct clause seen in the hypotheses is resolved only once, and the
+	 * per-hypothesis work can be scheduled concurrently. <br>
+	 * 
+	 * This relies on Theorem 2.1 property (3) (HKL2000, p17) as it's the case for resolving a single CNF hypothesis: <br>
+	 * $QS_A(h_1 \wedge h_2, \xi) = QS_A(h_1, \xi) \cap QS_A(h_2, \xi)$
+	 * 
+	 * @param hypotheses
+	 * @param listener Notified as each result completes, may be null.
+	 * @return The dqs for each hypothesis in the order they're given.
+	 */
+	double[] calcDQS(List<SimpleSentence<LogicalAnd, LogicalOr>> hypotheses, BatchListener listener);
+
+	/**
+	 * Calculate the normalised degree of support for each of the given hypotheses against the same knowledgebase. <br>
+	 * 
+	 * This is the batch version of {@link #calcNormalisedDSP(SimpleSentence)}, and shares work across the batch
+	 * the same way as {@link #calcDQS(List, BatchListener)}. The dqs for inconsistency is calculated at most once.
+	 * 
+	 * @param hypotheses
+	 * @param listener Notified as each result completes, may be null.
+	 * @return The dsp for each hypothesis in the order they're given.
+	 */
+	double[] calcNormalisedDSP(List<SimpleSentence<LogicalAnd, LogicalOr>> hypotheses, BatchListener listener);
 }
@@ -189,6 +189,13 @@ public interface PAS
 	 */
 	SimpleSentence<LogicalOr, LogicalAnd> constructDNF(String dnf) throws KBException;
 	
+	/**
+	 * Returns the statistics for the knowledgebase, which are kept up to date as clauses are added to this instance.
+	 * If the KB is modified directly (see {@link #getKB()}) the statistics are only worked out again if the number of clauses has changed.
+	 * @return
+	 */
+	KBStats getStats();
+	
 	/**
 	 * Return the factory that this PAS instance was created with. It helps avoid passing a factory reference
 	 * everywhere a PAS instance is given where the receiver may have to create further objects or refer to special objects.
@@ -209,6 +209,15 @@ public interface PropFactory
 	 */
 	<OpE extends LogicalOp> Expression<OpE> createCustomExpression(OpE op, Iterable<Literal> lits);
 	
+	/**
+	 * Returns the canonical instance of an expression equal to the one given when the factory supports hash-consing and
+	 * it's turned on, otherwise returns the expression as is. Canonical expressions are immutable, and two equal canonical
+	 * expressions are the same object. The caller must not modify the expression given after this call.
+	 * @param exp
+	 * @return
+	 */
+	<OpE extends LogicalOp> Expression<OpE> intern(Expression<OpE> exp);
+	
 	// Sentences
 	/**
 	 * Create an empty CNF sentence.
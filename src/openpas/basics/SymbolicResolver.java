@@ -17,6 +17,8 @@
 
 package openpas.basics;
 
+import java.util.concurrent.CompletableFuture;
+
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
 import openpas.basics.LogicalOps.LogicalAnd;
@@ -52,4 +54,22 @@ public interface SymbolicResolver {
 	 * @return
 	 */
 	SimpleSentence<LogicalOr, LogicalAnd> findQS(Expression<LogicalOr> hclause);
+	
+	/**
+	 * Starts {@link #findQS(SimpleSentence)} in the background. Cancelling the returned future stops the resolution
+	 * at its next elimination step, and so does running past the given deadline. An aborted query completes the future
+	 * exceptionally with a {@link openpas.utils.QueryControl.QueryAbortedException}.
+	 * @param hypothesis
+	 * @param timeoutMillis Time allowed for the query, 0 or less for no deadline.
+	 * @return
+	 */
+	CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findQSAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis);
+	
+	/**
+	 * Starts {@link #findSP(SimpleSentence)} in the background, see {@link #findQSAsync(SimpleSentence, long)} for how it can be stopped.
+	 * @param hypothesis
+	 * @param timeoutMillis Time allowed for the query, 0 or less for no deadline.
+	 * @return
+	 */
+	CompletableFuture<SimpleSentence<LogicalOr, LogicalAnd>> findSPAsync(SimpleSentence<LogicalAnd, LogicalOr> hypothesis, long timeoutMillis);
 }
@@ -0,0 +1,271 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package openpas.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import openpas.basics.Expressions.Expression;
+import openpas.basics.Literal;
+import openpas.basics.LogicalOps.LogicalOp;
+import openpas.basics.PropFactory;
+
+/**
+ * Expressions encoded as sorted arrays of literal codes for the sentence operations that form many products of
+ * expressions, such as intersecting DNFs and converting between CNFs and DNFs. <br>
+ * The code of a literal is 2 * index + (negated ? 1 : 0), so that a literal and its negation are adjacent. <br>
+ * The operations don't depend on the operator of the expressions: the product of two terms is their conjunction,
+ * and the product of two clauses their disjunction. A product with both a literal and its negation is dropped since
+ * it's a contradiction for a term (in a DNF) or a tautology for a clause (in a CNF), and contributes nothing either way.
+ * An expression with no literals (ie. a true term or a false clause) is encoded as an empty array.
+ */
+public class EncodedExpressions
+{
+	public static int encode(Literal lit)
+	{
+		return 2 * lit.getIndex() + (lit.getNeg() ? 1 : 0);
+	}
+	
+	/**
+	 * Encodes an expression and records its literals against their codes in lits for decoding later.
+	 */
+	public static int[] encode(Expression<? extends LogicalOp> exp, Map<Integer, Literal> lits)
+	{
+		int[] codes = new int[exp.getLength()];
+		if(codes.length == 0)
+			return codes; // special expression, the special literal has no place in the products
+		int i = 0;
+		for(Literal lit : exp.getLiterals())
+		{
+			int code = encode(lit);
+			lits.put(code, lit);
+			codes[i++] = code;
+		}
+		Arrays.sort(codes);
+		return codes;
+	}
+
+	public static <OpE extends LogicalOp> List<int[]> encode(Iterable<Expression<OpE>> exps, Map<Integer, Literal> lits)
+	{
+		List<int[]> encoded = new ArrayList<int[]>();
+		for(Expression<OpE> exp : exps)
+			encoded.add(encode(exp, lits));
+		return encoded;
+	}
+
+	/**
+	 * Creates the expressions for the encoded ones using the given operator.
+	 * @param lits Literals for all the codes used, see {@link #encode(Expression, Map)}.
+	 */
+	public static <OpE extends LogicalOp> List<Expression<OpE>> decode(PropFactory fac, OpE op, List<int[]> encoded,
+			Map<Integer, Literal> lits)
+	{
+		List<Expression<OpE>> exps = new ArrayList<Expression<OpE>>(encoded.size());
+		for(int[] codes : encoded)
+		{
+			Literal[] explits = new Literal[codes.length];
+			for(int i = 0; i < codes.length; ++i)
+				explits[i] = lits.get(codes[i]);
+			exps.add(fac.createCustomExpression(op, new ArrayIterable<Literal>(explits)));
+		}
+		return exps;
+	}
+
+	/**
+	 * Returns the product of two encoded expressions, or null if it has both a literal and its negation.
+	 */
+	public static int[] product(int[] exp1, int[] exp2)
+	{
+		int[] prod = new int[exp1.length + exp2.length];
+		int i = 0, j = 0, k = 0;
+		while(i < exp1.length && j < exp2.length)
+		{
+			int c1 = exp1[i], c2 = exp2[j];
+			if(c1 == c2)
+			{
+				prod[k++] = c1;
+				++i;
+				++j;
+			}
+			else if((c1 >> 1) == (c2 >> 1))
+				return null; // x and \neg x
+			else if(c1 < c2)
+				prod[k++] = exp1[i++];
+			else
+				prod[k++] = exp2[j++];
+		}
+		while(i < exp1.length)
+			prod[k++] = exp1[i++];
+		while(j < exp2.length)
+			prod[k++] = exp2[j++];
+		return k == prod.length ? prod : Arrays.copyOf(prod, k);
+	}
+
+	/**
+	 * Returns true if the encoded expression sub has no literals other than those in sup.
+	 */
+	public static boolean isSubset(int[] sub, int[] sup)
+	{
+		if(sub.length > sup.length)
+			return false;
+		int j = 0;
+		for(int code : sub)
+		{
+			while(j < sup.length && sup[j] < code)
+				++j;
+			if(j == sup.length || sup[j] != code)
+				return false;
+			++j;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the encoded expression sub has no literals other than those in the product of exp1 and exp2,
+	 * and fewer literals than it, without forming the product. This is also true for some products with a literal
+	 * and its negation, which are dropped anyway.
+	 */
+	public static boolean isStrictSubsetOfProduct(int[] sub, int[] exp1, int[] exp2)
+	{
+		if(sub.length >= exp1.length + exp2.length)
+			return false; // can't be smaller than the product
+		int i = 0, j = 0, k = 0, length = 0;
+		while(i < exp1.length || j < exp2.length)
+		{
+			// Next code of the product in order, taking shared codes once.
+			int code;
+			if(j == exp2.length || (i < exp1.length && exp1[i] < exp2[j]))
+				code = exp1[i++];
+			else if(i == exp1.length || exp2[j] < exp1[i])
+				code = exp2[j++];
+			else
+			{
+				code = exp1[i++];
+				++j;
+			}
+			++length;
+			if(k < sub.length)
+			{
+				if(sub[k] < code)
+					return false; // sub[k] isn't in the product
+				if(sub[k] == code)
+					++k;
+			}
+		}
+		return k == sub.length && sub.length < length;
+	}
+
+	/**
+	 * The \mu operation on encoded expressions, keeping only the ones that don't contain another.<br>
+	 * The expressions are accepted shortest first so each one is only checked against the accepted ones.
+	 * The result keeps the given order, and the last of any equal expressions, the same as adding the
+	 * expressions one by one to a sentence.
+	 */
+	public static List<int[]> minimise(List<int[]> exps)
+	{
+		final int size = exps.size();
+		Integer[] order = new Integer[size];
+		for(int i = 0; i < size; ++i)
+			order[i] = i;
+		// Shortest first, and for equal lengths the later expression first so it's the one kept.
+		Arrays.sort(order, (i1, i2) -> {
+			int len1 = exps.get(i1).length, len2 = exps.get(i2).length;
+			return len1 != len2 ? len1 - len2 : i2 - i1;
+		});
+
+		boolean[] keep = new boolean[size];
+		List<int[]> accepted = new ArrayList<int[]>();
+		sweep: for(int i : order)
+		{
+			int[] exp = exps.get(i);
+			for(int[] acc : accepted)
+				if(isSubset(acc, exp))
+					continue sweep;
+			accepted.add(exp);
+			keep[i] = true;
+		}
+
+		List<int[]> minimised = new ArrayList<int[]>(accepted.size());
+		for(int i = 0; i < size; ++i)
+			if(keep[i])
+				minimised.add(exps.get(i));
+		return minimised;
+	}
+
+	/**
+	 * \mu (\{e_1 e_2: e_1 \in E_1, e_2 \in E_2\}) where e_1 e_2 is the product of the two expressions, ie. the
+	 * distribution of one sentence over another, such as the intersection of two DNFs.<br>
+	 * Products with a literal and its negation are dropped as they're formed. When an expression of E_1 already
+	 * contains an expression of E_2 it's taken as is, since it's contained in all of its other products.
+	 * A product is only created if none of the products formed so far is strictly contained in it, as \mu would drop it.<br>
+	 * The result is in the order the products are formed, the same as adding them to a sentence one by one.
+	 */
+	public static List<int[]> distribute(List<int[]> exps1, List<int[]> exps2)
+	{
+		return distribute(exps1, exps2, 0);
+	}
+
+	/**
+	 * Same as {@link #distribute(List, List)}, but gives up once there are more than maxProducts products after \mu,
+	 * and returns those formed so far. This is checked as the products are formed, whenever there are twice as many
+	 * of them, so an oversized result is found before all the products are created.
+	 * @param maxProducts Largest number of products, 0 for no limit.
+	 * @return The products, which are more than maxProducts if it gave up.
+	 */
+	public static List<int[]> distribute(List<int[]> exps1, List<int[]> exps2, int maxProducts)
+	{
+		List<int[]> products = new ArrayList<int[]>();
+		for(int[] e1 : exps1)
+		{
+			QueryControl.checkCurrent();
+			boolean absorbs = false;
+			for(int[] e2 : exps2)
+			{
+				if(isSubset(e2, e1))
+				{
+					absorbs = true;
+					break;
+				}
+			}
+			if(absorbs)
+			{
+				products.add(e1);
+				continue;
+			}
+			pairs: for(int[] e2 : exps2)
+			{
+				for(int[] formed : products)
+					if(isStrictSubsetOfProduct(formed, e1, e2))
+						continue pairs;
+				int[] prod = product(e1, e2);
+				if(prod != null)
+					products.add(prod);
+			}
+			if(maxProducts > 0 && products.size() > 2 * maxProducts)
+			{
+				// \mu of the products so far, which is the same as doing it once in the end.
+				products = minimise(products);
+				if(products.size() > maxProducts)
+					return products;
+			}
+		}
+		return minimise(products);
+	}
+}
@@ -19,8 +19,6 @@ package openpas.utils;
 
 import java.io.PrintStream;
 import java.sql.Timestamp;
-import java.util.Date;
-import java.util.List;
 
 public class Notifier {
 	
@@ -32,19 +30,35 @@ public class Notifier {
 		mPS = ps;
 	}
 	
+	/**
+	 * @return False if the messages are discarded, so that callers can skip building expensive messages.
+	 */
+	public boolean isEnabled()
+	{
+		return mPS != null;
+	}
+	
 	public void printfln(String message)
 	{
-		printfln(message, null);
+		if(mPS == null)
+			return;
+		printTimestamp();
+		mPS.println(message);
 	}
 	
-	public void printfln(String fmt, List<String> args)
+	public void printfln(String fmt, Object... args)
 	{
 		if(mPS == null)
 			return;
-		mPS.print("[");
-		mPS.print(new Timestamp(new Date().getTime()));
-		mPS.print("] ");
+		printTimestamp();
 		mPS.printf(fmt, args);
 		mPS.println();
-	}	
+	}
+	
+	protected void printTimestamp()
+	{
+		mPS.print("[");
+		mPS.print(new Timestamp(System.currentTimeMillis()));
+		mPS.print("] ");
+	}
 }
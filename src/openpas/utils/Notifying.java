@@ -26,4 +26,11 @@ public interface Notifying {
 	 * @param ps
 	 */
 	void setNotifier(PrintStream ps);
+	
+	/**
+	 * Nominates a listener to receive the timers and counters for each query, see {@link QueryTrace}.
+	 * Tracing is off while the listener is null, which is the default.
+	 * @param listener
+	 */
+	void setTraceListener(QueryTrace.Listener listener);
 }
@@ -0,0 +1,219 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package openpas.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Controls a single long running query so that it can be cancelled, or bounded by a deadline. <br>
+ * 
+ * Resolvers call {@link #checkCurrent()} between their elimination steps. This finds the control of the query
+ * running on the current thread (if any) and aborts the query with a {@link QueryAbortedException}
+ * if it's been cancelled or its deadline has passed. Nothing is checked for threads that aren't running
+ * under a control, so synchronous callers don't pay for this other than a thread-local lookup. <br>
+ * 
+ * The simplest way to use this is through {@link #supplyAsync(Supplier, long)} which returns a future that
+ * cancels the underlying query when it's cancelled.
+ */
+public class QueryControl
+{
+	/**
+	 * Thrown from within a query when it's aborted, either due to cancellation or due to its deadline.
+	 */
+	@SuppressWarnings("serial")
+	public static class QueryAbortedException extends RuntimeException
+	{
+		public QueryAbortedException(String msg) { super(msg); }
+	}
+	
+	// Queries can run for hours, so they're not suitable for the common fork-join pool.
+	// The threads here are daemons so that an abandoned query doesn't stop the JVM from exiting.
+	private static final ExecutorService sExecutor = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "openpas-query");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private static final ThreadLocal<QueryControl> sCurrent = new ThreadLocal<>();
+
+	protected volatile boolean mCancelled;
+	protected final long mDeadline; // in System.nanoTime() terms, only valid if mHasDeadline
+	protected final boolean mHasDeadline;
+	protected final QueryControl mParent; // may be null
+	
+	/**
+	 * @param timeoutMillis Time allowed for the query from now, 0 or less for no deadline.
+	 */
+	public QueryControl(long timeoutMillis)
+	{
+		this(timeoutMillis, null);
+	}
+	
+	/**
+	 * @param timeoutMillis Time allowed for the query from now, 0 or less for no deadline.
+	 * @param parent The query is also aborted when the parent is, this may be null.
+	 */
+	public QueryControl(long timeoutMillis, QueryControl parent)
+	{
+		mHasDeadline = timeoutMillis > 0;
+		mDeadline = mHasDeadline ? System.nanoTime() + timeoutMillis * 1000000L : 0;
+		mParent = parent;
+	}
+	
+	public void cancel()
+	{
+		mCancelled = true;
+	}
+	
+	public boolean isCancelled()
+	{
+		return mCancelled;
+	}
+	
+	public boolean isExpired()
+	{
+		return mHasDeadline && System.nanoTime() - mDeadline > 0;
+	}
+	
+	/**
+	 * Aborts the query if it's been cancelled or it's passed its deadline.
+	 * @throws QueryAbortedException
+	 */
+	public void check()
+	{
+		if(mCancelled)
+			throw new QueryAbortedException("Query cancelled.");
+		if(isExpired())
+			throw new QueryAbortedException("Query deadline exceeded.");
+		if(mParent != null)
+			mParent.check();
+	}
+	
+	/**
+	 * Checks the control for the query running on the current thread, if there's one.
+	 * @throws QueryAbortedException
+	 */
+	public static void checkCurrent()
+	{
+		QueryControl control = sCurrent.get();
+		if(control != null)
+			control.check();
+	}
+	
+	/**
+	 * @return The control for the query running on the current thread, or null if there's none.
+	 */
+	public static QueryControl current()
+	{
+		return sCurrent.get();
+	}
+	
+	/**
+	 * Runs the given query on the current thread under the given control, or without one if it's null.
+	 * This is useful to carry the control of a query over to the threads that work on its parts.
+	 */
+	public static <T> T runUnder(QueryControl control, Supplier<T> query)
+	{
+		return control == null ? query.get() : control.run(query);
+	}
+	
+	/**
+	 * Runs the given query on the current thread under this control.
+	 */
+	public <T> T run(Supplier<T> query)
+	{
+		QueryControl prev = enter();
+		try
+		{
+			check(); // don't start if we're already done.
+			return query.get();
+		}
+		finally
+		{
+			exit(prev);
+		}
+	}
+	
+	/**
+	 * Same as {@link #run(Supplier)} but for queries that throw checked exceptions.
+	 */
+	public <T> T call(Callable<T> query) throws Exception
+	{
+		QueryControl prev = enter();
+		try
+		{
+			check();
+			return query.call();
+		}
+		finally
+		{
+			exit(prev);
+		}
+	}
+	
+	private QueryControl enter()
+	{
+		QueryControl prev = sCurrent.get();
+		sCurrent.set(this);
+		return prev;
+	}
+	
+	private static void exit(QueryControl prev)
+	{
+		if(prev == null)
+			sCurrent.remove();
+		else
+			sCurrent.set(prev);
+	}
+	
+	/**
+	 * Starts the given query in the background under a new control.
+	 * Cancelling the returned future also cancels the query, which then stops at its next check.
+	 * 
+	 * @param query
+	 * @param timeoutMillis Time allowed for the query, 0 or less for no deadline.
+	 * @return A future that completes with the result of the query, or exceptionally with
+	 * a {@link QueryAbortedException} if the query is aborted.
+	 */
+	public static <T> CompletableFuture<T> supplyAsync(Supplier<T> query, long timeoutMillis)
+	{
+		final QueryControl control = new QueryControl(timeoutMillis);
+		final CompletableFuture<T> future = new CompletableFuture<T>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				control.cancel();
+				return super.cancel(mayInterruptIfRunning);
+			}
+		};
+		sExecutor.execute(() -> {
+			try
+			{
+				future.complete(control.run(query));
+			}
+			catch (Throwable e)
+			{
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+}
@@ -0,0 +1,224 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package openpas.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Timers and counters for the phases of a single query, e.g. a {@link openpas.basics.SymbolicResolver#findSP} or
+ * {@link openpas.basics.NumericResolver#calcDQS} call. <br>
+ * 
+ * Tracing is enabled by giving a {@link Listener} to a resolver through {@link Notifying#setTraceListener(Listener)}.
+ * The outermost traced call on a thread then starts a trace which collects the phases of all the nested calls
+ * on the same thread, and hands it to the listener once the call is over. Work done on other threads (e.g. the clauses
+ * resolved in parallel for a batch) is traced separately. <br>
+ * 
+ * While a thread isn't tracing, each of the static methods here costs a thread-local lookup, and the hot loops
+ * look up the current trace once and skip the counting if it's null.
+ */
+public class QueryTrace
+{
+	/**
+	 * Phases timed during a query. A phase may be entered several times in a query, the times add up.
+	 */
+	public enum Phase
+	{
+		/** Elimination of the propositions (HKL2000 Elim_P). */
+		ElimP,
+		/** Consequence finding for the assumptions (HKL2000 Cons_A). */
+		ConsA,
+		/** Negation of the resulting CNF to get the QS. */
+		Negation,
+		/** Complement of the QS for inconsistency. */
+		Complement,
+		/** Intersections of the QS for the clauses of a hypothesis, or for finding SP. */
+		Intersection,
+		/** Construction of a BDD from a DNF. */
+		BDDBuild,
+		/** The sweep over a BDD that finds its probability. */
+		BDDSweep,
+	}
+	
+	/**
+	 * Counts kept during a query.
+	 */
+	public enum Count
+	{
+		/** Resolvents generated during eliminations and consequence finding. */
+		Resolvents,
+		/** Resolvents that weren't added since they were subsumed by a clause in the sentence. */
+		Subsumed,
+		/** Resolvents dropped by the resource guards while approximating. */
+		Dropped,
+		/** Number of BDD nodes for the DNFs whose probabilities are found. */
+		BDDNodes,
+	}
+	
+	/**
+	 * Receives the trace for each traced query once it's over. This is called on the thread that ran the query.
+	 */
+	public interface Listener
+	{
+		void onTrace(QueryTrace trace);
+	}
+	
+	private static final ThreadLocal<QueryTrace> sCurrent = new ThreadLocal<>();
+	
+	protected final String mQuery;
+	protected final Listener mListener;
+	protected final long mStart = System.nanoTime();
+	protected long mTotalNanos;
+	protected final long[] mPhaseNanos = new long[Phase.values().length];
+	protected final long[] mCounts = new long[Count.values().length];
+	protected final Map<String, long[]> mEliminations = new LinkedHashMap<>(); // name -> {nanos, resolvents}
+	
+	protected QueryTrace(String query, Listener listener)
+	{
+		mQuery = query;
+		mListener = listener;
+	}
+	
+	/**
+	 * Starts a trace for a query on the current thread unless the listener is null or the thread is already tracing.
+	 * @return The new trace, which should be passed to {@link #end(QueryTrace)} in a finally block, or null.
+	 */
+	public static QueryTrace begin(String query, Listener listener)
+	{
+		if(listener == null || sCurrent.get() != null)
+			return null;
+		QueryTrace trace = new QueryTrace(query, listener);
+		sCurrent.set(trace);
+		return trace;
+	}
+	
+	/**
+	 * Ends a trace started by {@link #begin(String, Listener)} and passes it to its listener. Does nothing for null.
+	 */
+	public static void end(QueryTrace trace)
+	{
+		if(trace == null)
+			return;
+		sCurrent.remove();
+		trace.mTotalNanos = System.nanoTime() - trace.mStart;
+		trace.mListener.onTrace(trace);
+	}
+	
+	/**
+	 * @return The trace for the current thread, or null if it's not tracing.
+	 */
+	public static QueryTrace current()
+	{
+		return sCurrent.get();
+	}
+	
+	/**
+	 * @return A start time to pass to {@link #endPhase(Phase, long)}, 0 if the thread isn't tracing.
+	 */
+	public static long startPhase()
+	{
+		return sCurrent.get() == null ? 0 : System.nanoTime();
+	}
+	
+	public static void endPhase(Phase phase, long start)
+	{
+		QueryTrace trace = sCurrent.get();
+		if(trace != null && start != 0)
+			trace.mPhaseNanos[phase.ordinal()] += System.nanoTime() - start;
+	}
+	
+	public static void count(Count count, long num)
+	{
+		QueryTrace trace = sCurrent.get();
+		if(trace != null)
+			trace.add(count, num);
+	}
+	
+	public void add(Count count, long num)
+	{
+		mCounts[count.ordinal()] += num;
+	}
+	
+	/**
+	 * Records the elimination of a single proposition.
+	 */
+	public void addElimination(String name, long nanos, long resolvents)
+	{
+		long[] elim = mEliminations.computeIfAbsent(name, n -> new long[2]);
+		elim[0] += nanos;
+		elim[1] += resolvents;
+	}
+	
+	public String getQuery() {
+		return mQuery;
+	}
+	
+	public long getTotalNanos() {
+		return mTotalNanos;
+	}
+	
+	public long getNanos(Phase phase) {
+		return mPhaseNanos[phase.ordinal()];
+	}
+	
+	public long getCount(Count count) {
+		return mCounts[count.ordinal()];
+	}
+	
+	/**
+	 * @return Time (ns) and number of resolvents for each proposition eliminated, in the order of elimination.
+	 */
+	public Map<String, long[]> getEliminations() {
+		return mEliminations;
+	}
+	
+	/**
+	 * @return A single line JSON summary of the trace, with the times in milliseconds.
+	 */
+	public String toJSON()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "{\"query\":\"%s\",\"ms\":%.3f,\"phases\":{", escape(mQuery), mTotalNanos / 1e6));
+		for(Phase phase : Phase.values())
+			sb.append(String.format(Locale.ROOT, "%s\"%s\":%.3f", phase.ordinal() == 0 ? "" : ",", phase, mPhaseNanos[phase.ordinal()] / 1e6));
+		sb.append("},\"counts\":{");
+		for(Count count : Count.values())
+			sb.append(String.format(Locale.ROOT, "%s\"%s\":%d", count.ordinal() == 0 ? "" : ",", count, mCounts[count.ordinal()]));
+		sb.append("},\"elim\":[");
+		boolean first = true;
+		for(Map.Entry<String, long[]> elim : mEliminations.entrySet())
+		{
+			sb.append(String.format(Locale.ROOT, "%s{\"name\":\"%s\",\"ms\":%.3f,\"resolvents\":%d}", first ? "" : ",", 
+					escape(elim.getKey()), elim.getValue()[0] / 1e6, elim.getValue()[1]));
+			first = false;
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+	
+	protected static String escape(String str)
+	{
+		return str.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+	
+	@Override
+	public String toString() {
+		return toJSON();
+	}
+}
@@ -18,6 +18,7 @@
 package pasc;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -31,10 +32,19 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,10 +55,13 @@ import com.google.common.io.ByteStreams;
 import analytics.Scenarios;
 import analytics.Stats;
 import openpas.OpenPAS;
+import openpas.StringOps;
 import openpas.StringOps.LogicalStringer;
 import openpas.basics.Assumption;
 import openpas.basics.Expressions.Expression;
 import openpas.basics.Expressions.SimpleSentence;
+import openpas.basics.LogicalOps.ConversionLimitException;
+import openpas.basics.LogicalOps.ConversionListener;
 import openpas.basics.LogicalOps.LogicalAnd;
 import openpas.basics.LogicalOps.LogicalOr;
 import openpas.basics.NumericResolver;
@@ -57,6 +70,8 @@ import openpas.basics.PAS.KBException;
 import openpas.basics.ProbabilityComputer;
 import openpas.basics.Proposition;
 import openpas.utils.Notifying;
+import openpas.utils.QueryControl;
+import openpas.utils.QueryControl.QueryAbortedException;
 
 /**
  * OpenPAS console application.
@@ -77,15 +92,71 @@ public class PASC {
 	static String bddDotFile = "dotfile.dot";
 	static int numMaxAssumptionsForDot = 20; // TODO: Make this configurable.
 	static int numMinAssumptionsForNotifications = 18; // TODO: Make this configurable
+	static long queryTimeoutSeconds = 0; // 0 for no limit
+	static int conversionBudget = 0; // max elements in an intermediate sentence for to_cnf/to_dnf, 0 for no limit
+	static boolean pipelined = false;
+	static int numPipelineThreads = Runtime.getRuntime().availableProcessors();
+	static ExecutorService pipelineExecutor; // created when first needed
 	enum ProbabilityComputerType
 	{
 		BDD,
-		SPExpansion
+		SPExpansion,
+		WMC
 	}
 	static ProbabilityComputerType usePC = ProbabilityComputerType.BDD;
 	
+	/**
+	 * The state that a script sets up as it runs. The state is kept statically, so this is used for running a script
+	 * on a state of its own and putting back the state there was before it (see {@link PASServer#loadKB}).
+	 */
+	static class Session
+	{
+		PAS pas;
+		NumericResolver numResolver;
+		String sepParameters;
+		int numBddNodes;
+		String bddDotFile;
+		long queryTimeoutSeconds;
+		int conversionBudget;
+		boolean pipelined;
+		ProbabilityComputerType usePC;
+		
+		static Session save()
+		{
+			Session session = new Session();
+			session.pas = PASC.pas;
+			session.numResolver = PASC.numResolver;
+			session.sepParameters = PASC.sepParameters;
+			session.numBddNodes = PASC.numBddNodes;
+			session.bddDotFile = PASC.bddDotFile;
+			session.queryTimeoutSeconds = PASC.queryTimeoutSeconds;
+			session.conversionBudget = PASC.conversionBudget;
+			session.pipelined = PASC.pipelined;
+			session.usePC = PASC.usePC;
+			return session;
+		}
+		
+		void restore()
+		{
+			PASC.pas = pas;
+			PASC.numResolver = numResolver;
+			PASC.sepParameters = sepParameters;
+			PASC.numBddNodes = numBddNodes;
+			PASC.bddDotFile = bddDotFile;
+			PASC.queryTimeoutSeconds = queryTimeoutSeconds;
+			PASC.conversionBudget = conversionBudget;
+			PASC.pipelined = pipelined;
+			PASC.usePC = usePC;
+		}
+	}
+	// The state before any script has run.
+	static final Session initialSession = Session.save();
+	
 	static PrintStream cmd_out;
 	static PrintStream notifier;
+	// Lines that run in the background in the pipelined mode print here so that the output can be put in script order.
+	static final ThreadLocal<PrintStream> lineCmdOut = new ThreadLocal<>();
+	static final ThreadLocal<PrintStream> lineNotifier = new ThreadLocal<>();
 	// To be used for testing
 	protected static PrintStream getCmdOut() {
 		return cmd_out;
@@ -122,9 +193,16 @@ public class PASC {
 	// name for a command comes first, followed by aliases. We later sort the commands
 	// according to their main name when we display the help.
 	static Map<String, CLICommand> commandsCLI;
+	// Commands that only query the PAS instance. These can run concurrently in the pipelined mode.
+	static Set<CLICommand> concurrentCommands;
+	// Commands that only read the PAS instance. Any other line may change the knowledgebase (eg. run executes a script that
+	// adds to it), so the numeric resolver preparation of the pipelined mode is stopped before it.
+	static Set<CLICommand> readOnlyCommands;
 	
 	protected static void defineCommands() {
 		commandsCLI = new LinkedHashMap<String, PASC.CLICommand>();
+		concurrentCommands = new HashSet<>();
+		readOnlyCommands = new HashSet<>();
 				
 		CLICommand clear = new CLICommand() {
 			@Override
@@ -162,6 +240,9 @@ public class PASC {
 						case "sp":
 							usePC = ProbabilityComputerType.SPExpansion;
 							break;
+						case "wmc":
+							usePC = ProbabilityComputerType.WMC;
+							break;
 						default:
 							throw new CommandException("Unknown probability computer specified.");
 					}
@@ -174,7 +255,7 @@ public class PASC {
 				return 	"Initialise the PAS system by specfying the desired parameters for the system.\n" +
 						"init is a pre-requisite for all the PAS related commands.\n" +
 						"Parameters: [num_resolver_type],[resolver specific params]\n" +
-						"	num_resolver_type: 'bdd' or 'sp'\n" +
+						"	num_resolver_type: 'bdd', 'sp' or 'wmc'\n" +
 						"=== Resolver specific params: ===\n" +
 						"== BDD resolver ==\n" +
 						"Uses a Binary Decision Diagrams based resolver.\n" +
@@ -187,7 +268,12 @@ public class PASC {
 						"\n" + 
 						"== Sylvester Pointcare expansion ==\n" + 
 						"Creates an exponential number of terms using term expansion, and computes the probability using these.\n" + 
-						"Parameters: sp (no parameters)";
+						"Parameters: sp (no parameters)\n" +
+						"\n" + 
+						"== Weighted model counting ==\n" + 
+						"Calculates the degrees of support by counting the models of the knowledgebase and the negated hypothesis,\n" + 
+						"without finding the QS first. The BDD resolver is still used for the probability of DNFs.\n" + 
+						"Parameters: wmc (no parameters)";
 			}
 		};
 		commandsCLI.put("init", init);
@@ -276,8 +362,12 @@ public class PASC {
 					outln("KB:");
 					// This command lists the KB as a list of clauses.
 					LogicalStringer hs = OpenPAS.getFactory().getHornStringer();
+					PrintStream out = currentCmdOut();
 					for(Expression<LogicalOr> exp : pas.getKB().getElements())
-						outln(hs.stringise(exp));
+					{
+						hs.stringise(out, exp, StringOps.NO_LIMIT);
+						out.println();
+					}
 				}
 				return true;
 			}
@@ -319,7 +409,9 @@ public class PASC {
 			public boolean execute(String param) throws CommandException, KBException, IOException {
 				verifyInitialised();
 				notifyln("KB:");
-				outln(pas.getKB().toString());
+				PrintStream out = currentCmdOut();
+				OpenPAS.getFactory().getDefaultStringer().stringise(out, pas.getKB(), OpenPAS.getFactory().getDefaultStringer().getMaxSize());
+				out.println();
 				//TODO: Set an option to change the stringerant max size limitation.
 				return true;
 			}
@@ -341,7 +433,8 @@ public class PASC {
 					throw new CommandException("calc_dqs needs CNF hypothesis");
 				ensureNumResolver();
 				long timeStart = System.nanoTime();
-				double degree = numResolver.calcDQS(obtainCommandCNF(param));
+				SimpleSentence<LogicalAnd, LogicalOr> hypothesis = obtainCommandCNF(param);
+				double degree = runQuery(() -> numResolver.calcDQS(hypothesis));
 				long timeEnd = System.nanoTime();
 				outln("%s", degree);
 				notifyln("(duration = %f miliseconds)", 1e-6 * (timeEnd - timeStart));
@@ -365,7 +458,8 @@ public class PASC {
 					throw new CommandException("calc_dsp needs CNF hypothesis");
 				ensureNumResolver();
 				long timeStart = System.nanoTime();
-				double degree = numResolver.calcNormalisedDSP(obtainCommandCNF(param));
+				SimpleSentence<LogicalAnd, LogicalOr> hypothesis = obtainCommandCNF(param);
+				double degree = runQuery(() -> numResolver.calcNormalisedDSP(hypothesis));
 				long timeEnd = System.nanoTime();
 				notifyln("(duration = %f miliseconds)", 1e-6 * (timeEnd - timeStart));
 				outln("%s", degree);
@@ -393,7 +487,8 @@ public class PASC {
 					throw new CommandException("calc_unnormalised_dsp needs CNF hypothesis");
 				ensureNumResolver();
 				long timeStart = System.nanoTime();
-				double degree = numResolver.calcNonNormalisedDSP(obtainCommandCNF(param));
+				SimpleSentence<LogicalAnd, LogicalOr> hypothesis = obtainCommandCNF(param);
+				double degree = runQuery(() -> numResolver.calcNonNormalisedDSP(hypothesis));
 				long timeEnd = System.nanoTime();
 				notifyln("(duration = %f miliseconds)", 1e-6 * (timeEnd - timeStart));
 				outln("%s", degree);
@@ -420,7 +515,8 @@ public class PASC {
 				if(param == null)
 					throw new CommandException("find_qs needs CNF hypothesis");
 				ensureNumResolver();
-				SimpleSentence<LogicalOr, LogicalAnd> support = numResolver.findQS(obtainCommandCNF(param));
+				SimpleSentence<LogicalAnd, LogicalOr> hypothesis = obtainCommandCNF(param);
+				SimpleSentence<LogicalOr, LogicalAnd> support = runQuery(() -> numResolver.findQS(hypothesis));
 				outln("%s", support);
 				return true;
 			}
@@ -442,7 +538,8 @@ public class PASC {
 				if(param == null)
 					throw new CommandException("find_sp needs CNF hypothesis");
 				ensureNumResolver();
-				SimpleSentence<LogicalOr, LogicalAnd> support = numResolver.findSP(obtainCommandCNF(param));
+				SimpleSentence<LogicalAnd, LogicalOr> hypothesis = obtainCommandCNF(param);
+				SimpleSentence<LogicalOr, LogicalAnd> support = runQuery(() -> numResolver.findSP(hypothesis));
 				outln("%s", support);
 				return true;
 			}
@@ -615,6 +712,8 @@ public class PASC {
 						initLine = "bdd," + numBddNodes;
 					else if(usePC == ProbabilityComputerType.SPExpansion)
 						initLine = "sp";
+					else if(usePC == ProbabilityComputerType.WMC)
+						initLine = "wmc";
 					else
 						throw new CommandException("Uknown PC type during save.");
 					
@@ -717,12 +816,14 @@ public class PASC {
 					throw new CommandException("Parameter as DNF needed.");
 				
 				SimpleSentence<LogicalOr, LogicalAnd> dnf = pas.constructDNF(param);
-				outln(OpenPAS.getFactory().getConverter().convertDNF(dnf).toString());
+				SimpleSentence<LogicalAnd, LogicalOr> cnf = runConversion(
+						() -> OpenPAS.getFactory().getConverter().convertDNF(dnf, conversionBudget, conversionProgress()));
+				outln(cnf.toString());
 				return true;
 			}
 			@Override
 			public String help() {
-				return 	"Converts a given DNF to CNF form.\n" +
+				return 	"Converts a given DNF to CNF form. See set_conversion_budget for limiting the work done.\n" +
 						"Parameters: <dnf>\n" + 
 						"	dnf: A propositional sentence in DNF form.";
 			}
@@ -737,18 +838,46 @@ public class PASC {
 					throw new CommandException("Parameter as CNF needed.");
 				
 				SimpleSentence<LogicalAnd, LogicalOr> cnf = pas.constructCNF(param);
-				outln(OpenPAS.getFactory().getConverter().convertCNF(cnf).toString());
+				SimpleSentence<LogicalOr, LogicalAnd> dnf = runConversion(
+						() -> OpenPAS.getFactory().getConverter().convertCNF(cnf, conversionBudget, conversionProgress()));
+				outln(dnf.toString());
 				return true;
 			}
 			@Override
 			public String help() {
-				return 	"Converts a given CNF to DNF form.\n" +
+				return 	"Converts a given CNF to DNF form. See set_conversion_budget for limiting the work done.\n" +
 						"Parameters: <cnf>\n" + 
 						"	cnf: A propositional sentence in CNF form.";
 			}
 		};
 		commandsCLI.put("to_dnf", to_dnf);
 
+		CLICommand setConversionBudget = new CLICommand() {			
+			@Override
+			public boolean execute(String param) throws CommandException, KBException {
+				if(param == null)
+					throw new CommandException(
+							"set_conversion_budget needs the number of elements allowed. Current value: " + conversionBudget);
+				try {
+					conversionBudget = Integer.parseInt(param.trim());
+				} catch (NumberFormatException e) {
+					throw new CommandException("Conversion budget needs to be a whole number.");
+				}
+				if(conversionBudget < 0)
+					throw new CommandException("Conversion budget can't be negative.");
+				return true;
+			}
+			@Override
+			public String help() {
+				return 	"Sets the largest sentence to_cnf and to_dnf may build while converting.\n" +
+						"A conversion that needs a larger intermediate sentence is abandoned, reporting how far it got.\n" +
+						"Conversions are also bound by set_timeout.\n" +
+						"Parameters: <elements>\n" + 
+						"	elements: Number of clauses or terms, 0 for no limit. Default value: 0";
+			}
+		};
+		commandsCLI.put("set_conversion_budget", setConversionBudget);
+
 		CLICommand scenarios = new CLICommand() {			
 			@Override
 			public boolean execute(String param) throws CommandException, KBException, IOException {
@@ -757,15 +886,50 @@ public class PASC {
 				if(param == null)
 					throw new CommandException("Parameter as DNF needed.");
 				
-				SimpleSentence<LogicalOr, LogicalAnd> dnf = pas.constructDNF(param);
-				Scenarios.printScenarios(dnf, pas, numResolver, cmd_out);
+				String[] params = splitParams(param);
+				Scenarios.Filter filter = Scenarios.Filter.All;
+				if(params.length > 1)
+				{
+					switch(params[1])
+					{
+						case "all": filter = Scenarios.Filter.All; break;
+						case "sat": filter = Scenarios.Filter.Satisfying; break;
+						case "unsat": filter = Scenarios.Filter.NotSatisfying; break;
+						case "inconsistent": filter = Scenarios.Filter.Inconsistent; break;
+						case "partial": filter = Scenarios.Filter.PartiallyInconsistent; break;
+						case "consistent": filter = Scenarios.Filter.Consistent; break;
+						case "none": filter = Scenarios.Filter.None; break;
+						default:
+							throw new CommandException("Unknown scenario filter: " + params[1]);
+					}
+				}
+				long offset = 0;
+				long limit = 0;
+				try {
+					if(params.length > 2)
+						offset = Long.parseLong(params[2]);
+					if(params.length > 3)
+						limit = Long.parseLong(params[3]);
+				} catch (NumberFormatException e) {
+					throw new CommandException("Offset and limit should be numbers.");
+				}
+				if(offset < 0 || limit < 0)
+					throw new CommandException("Offset and limit can't be negative.");
+				
+				SimpleSentence<LogicalOr, LogicalAnd> dnf = pas.constructDNF(params[0]);
+				Scenarios.printScenarios(dnf, pas, numResolver, filter, offset, limit, cmd_out);
 				return true;
 			}
 			@Override
 			public String help() {
 				return 	"Runs a scenario analysis on the given DNF.\n" +
-						"Parameters: <dnf>\n" + 
+						"Parameters: <dnf>[, <filter>[, <offset>[, <limit>]]]\n" + 
 						"	dnf: A propositional sentence in DNF form.\n" +
+						"	filter: Scenarios to list, one of all, sat, unsat, inconsistent, partial, consistent or none. Default value: all\n" +
+						"	offset: Number of listed scenarios to skip. Default value: 0\n" +
+						"	limit: Largest number of scenarios to list, 0 for no limit. Default value: 0\n" +
+						"The totals are computed without going through the scenarios, so they're available even when\n" +
+						"there are too many scenarios to list.\n" +
 						"This works by extracting all the assumptions from the given DNF. Then these are put\n" +
 						"on a truth table. The table looks at things like whether the given assumption assignment\n" +
 						"satisfies the DNF, whether it's part of the KBs inconsistency, and the probability of the \n" +
@@ -780,13 +944,23 @@ public class PASC {
 			@Override
 			public boolean execute(String param) throws CommandException, KBException, IOException {
 				verifyInitialised();
+				boolean full = false;
+				if(param != null)
+				{
+					if(!param.trim().equals("full"))
+						throw new CommandException("Unknown stats option: " + param.trim());
+					full = true;
+				}
 
-				Stats.printPASStats(pas, cmd_out);
+				Stats.printPASStats(pas, full, cmd_out);
 				return true;
 			}
 			@Override
 			public String help() {
-				return 	"Prints various stats about the current PAS instance.";
+				return 	"Prints various stats about the current PAS instance.\n" +
+						"Parameters: [full]\n" + 
+						"	full: Also print the clause length histogram, literal occurrences, the ratio of Horn clauses, \n" +
+						"		and the components and a treewidth estimate for the interaction graph of the KB.";
 			}
 		};
 		commandsCLI.put("stats", stats);
@@ -812,6 +986,62 @@ public class PASC {
 		};
 		commandsCLI.put("set_parameter_seperator", setSep);
 		commandsCLI.put("sep", setSep);		
+		
+		CLICommand setTimeout = new CLICommand() {			
+			@Override
+			public boolean execute(String param) throws CommandException, KBException {
+				if(param == null)
+					throw new CommandException(
+							"set_timeout needs the number of seconds allowed per query. Current value: " + queryTimeoutSeconds);
+				try {
+					queryTimeoutSeconds = Long.parseLong(param.trim());
+				} catch (NumberFormatException e) {
+					throw new CommandException("Timeout needs to be a whole number of seconds.");
+				}
+				if(queryTimeoutSeconds < 0)
+					throw new CommandException("Timeout can't be negative.");
+				return true;
+			}
+			@Override
+			public String help() {
+				return 	"Sets the time allowed for each query (dqs, dsp, udsp, qs and sp) and each shell execution.\n" +
+						"A query that runs longer is aborted at its next elimination step.\n" +
+						"Parameters: <seconds>\n" + 
+						"	seconds: Time allowed in seconds, 0 for no limit (shell executions are still limited to 24 hours). Default value: 0";
+			}
+		};
+		commandsCLI.put("set_timeout", setTimeout);
+		commandsCLI.put("timeout", setTimeout);
+		
+		CLICommand setPipeline = new CLICommand() {			
+			@Override
+			public boolean execute(String param) throws CommandException, KBException {
+				if(param == null)
+					throw new CommandException("pipeline needs 'on' or 'off'. Current value: " + (pipelined ? "on" : "off"));
+				switch(param)
+				{
+					case "on": pipelined = true; break;
+					case "off": pipelined = false; break;
+					default:
+						throw new CommandException("pipeline needs 'on' or 'off'.");
+				}
+				return true;
+			}
+			@Override
+			public String help() {
+				return 	"Switches the pipelined execution of scripts on or off.\n" +
+						"In the pipelined mode the query lines (dqs, dsp, udsp, qs and sp) run concurrently in the background,\n" +
+						"while their output is still printed in script order. Any other line waits for the queries before it.\n" +
+						"Once the knowledgebase is built, the numeric resolver and the dqs for inconsistency are prepared in the background.\n" +
+						"Parameters: <on|off>\n" + 
+						"	Default value: off";
+			}
+		};
+		commandsCLI.put("pipeline", setPipeline);
+		
+		concurrentCommands.addAll(Arrays.asList(calcDQS, calcDSP, calcUDSP, findQS, findSP));
+		readOnlyCommands.addAll(concurrentCommands);
+		readOnlyCommands.addAll(Arrays.asList(listLiterals, showKB, stats, help));
 	}
 
 	public static boolean executeStream(InputStream inStream) throws IOException, CommandException, KBException 
@@ -820,15 +1050,267 @@ public class PASC {
 						
 		boolean canContinue;
 		String line;
-		while((line = reader.readLine()) != null)
+		Pipeline pipeline = new Pipeline();
+		boolean completed = false;
+		try
+		{
+			while((line = reader.readLine()) != null)
+			{
+				if(pipelined && pipeline.offer(line))
+					continue; // running in the background
+				pipeline.drain(); // anything else waits for the lines before it
+				notifyln(".: %s", line);
+				canContinue = executeLine(line);
+				if(!canContinue)
+					return false; // exits PASC
+			}
+			pipeline.drain();
+			completed = true; // a preparation of the numeric resolver may carry on for the commands after the script
+		}
+		finally
 		{
-			notifyln(".: %s", line);
-			canContinue = executeLine(line);
-			if(!canContinue)
-				return false; // exits PASC
+			if(!completed)
+				pipeline.cancel();
 		}
 		return true;
 	}
+	
+	/**
+	 * Runs the query lines of a script concurrently for the pipelined mode. <br>
+	 * 
+	 * The output of each line that runs in the background is captured, and it's printed in script order
+	 * when the line is drained. Lines that aren't queries drain all the lines before them, so a query always
+	 * sees the PAS instance as it was when it was read. <br>
+	 * 
+	 * Once the knowledgebase is built (ie. the first query after a line that may change it is seen), the numeric resolver
+	 * is created and the dqs for inconsistency is calculated in the background, so that it's off the critical path
+	 * of the queries that come later. This preparation can outlive the script that started it, so it's stopped by
+	 * {@link PASC#executeLine} before any line that isn't known to be read-only, wherever the line comes from.
+	 */
+	static class Pipeline
+	{
+		static class PendingLine
+		{
+			final Future<Boolean> result;
+			final QueryControl control;
+			final ByteArrayOutputStream out;
+			final ByteArrayOutputStream notify;
+			
+			PendingLine(Future<Boolean> result, QueryControl control, ByteArrayOutputStream out, ByteArrayOutputStream notify)
+			{
+				this.result = result;
+				this.control = control;
+				this.out = out;
+				this.notify = notify;
+			}
+		}
+		
+		// The numeric resolver preparation that's running in the background, if any.
+		static PendingLine sPrefetch;
+		
+		final List<PendingLine> mPending = new ArrayList<>();
+		boolean mKBChanged;
+		
+		/**
+		 * @return True if the line is taken to run in the background, false if it should be run in the foreground after a drain.
+		 */
+		boolean offer(String line) throws CommandException, KBException
+		{
+			CLICommand command = findCommand(line);
+			if(command == null)
+				return false;
+			if(!readOnlyCommands.contains(command))
+			{
+				mKBChanged = true; // executeLine stops the preparation before the line runs
+				return false;
+			}
+			if(mKBChanged && pas != null)
+			{
+				mKBChanged = false;
+				prefetch();
+			}
+			if(!concurrentCommands.contains(command))
+				return false;
+			
+			// The commands would do these themselves, but they aren't thread-safe so they're done here first.
+			verifyInitialised();
+			ensureNumResolver();
+			mPending.add(submit(() -> {
+				notifyln(".: %s", line);
+				return executeLine(line);
+			}));
+			return true;
+		}
+		
+		void prefetch()
+		{
+			if(sPrefetch != null)
+				return; // still preparing for the same knowledgebase
+			ensureNumResolver();
+			NumericResolver nr = numResolver;
+			sPrefetch = submit(() -> {
+				nr.calcDQS_I();
+				return true;
+			});
+		}
+		
+		static PendingLine submit(Callable<Boolean> task)
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream notify = cmd_out == notifier ? out : new ByteArrayOutputStream();
+			QueryControl control = new QueryControl(0);
+			Future<Boolean> result = getPipelineExecutor().submit(() -> {
+				lineCmdOut.set(new PrintStream(out, true));
+				lineNotifier.set(out == notify ? lineCmdOut.get() : new PrintStream(notify, true));
+				try
+				{
+					return control.call(task);
+				}
+				finally
+				{
+					lineCmdOut.remove();
+					lineNotifier.remove();
+				}
+			});
+			return new PendingLine(result, control, out, notify);
+		}
+		
+		/**
+		 * Cancels the preparation of the numeric resolver, and waits for it to stop since it reads the knowledgebase
+		 * which is about to be changed. Its abort is expected, but any other failure is thrown from here.
+		 */
+		static void stopPrefetch() throws CommandException, KBException
+		{
+			PendingLine prefetch = sPrefetch;
+			if(prefetch == null)
+				return;
+			sPrefetch = null;
+			prefetch.control.cancel();
+			try
+			{
+				waitPrefetch(prefetch);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new CommandException("Interrupted while waiting for the numeric resolver preparation to stop.");
+			}
+		}
+		
+		static void waitPrefetch(PendingLine prefetch) throws InterruptedException, CommandException, KBException
+		{
+			try
+			{
+				prefetch.result.get();
+			}
+			catch (ExecutionException e)
+			{
+				if(!(e.getCause() instanceof QueryAbortedException))
+					throwFailure(e.getCause());
+			}
+		}
+		
+		/**
+		 * Waits for all the lines running in the background, and prints their output in order.
+		 * The first line that failed stops the drain, and its exception is thrown from here.
+		 * The preparation of the numeric resolver is not waited for since it has no output, and it holds nothing up,
+		 * but if it's finished and failed, its failure is thrown from here too.
+		 */
+		void drain() throws CommandException, KBException, IOException
+		{
+			boolean drained = false;
+			try
+			{
+				for(PendingLine pending : mPending)
+				{
+					try
+					{
+						pending.result.get();
+					}
+					catch (ExecutionException e)
+					{
+						print(pending);
+						throwFailure(e.getCause());
+					}
+					print(pending);
+				}
+				PendingLine prefetch = sPrefetch;
+				if(prefetch != null && prefetch.result.isDone())
+				{
+					sPrefetch = null;
+					waitPrefetch(prefetch);
+				}
+				drained = true;
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new CommandException("Interrupted while waiting for the pipelined lines.");
+			}
+			finally
+			{
+				if(drained)
+					mPending.clear();
+				else
+					cancel();
+			}
+		}
+		
+		static void throwFailure(Throwable cause) throws CommandException, KBException
+		{
+			if(cause instanceof CommandException)
+				throw (CommandException) cause;
+			if(cause instanceof KBException)
+				throw (KBException) cause;
+			if(cause instanceof QueryAbortedException)
+				throw new CommandException(cause.getMessage());
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new CommandException("Error executing line: " + cause);
+		}
+		
+		void print(PendingLine pending) throws IOException
+		{
+			pending.notify.writeTo(notifier);
+			if(pending.out != pending.notify)
+				pending.out.writeTo(cmd_out);
+		}
+		
+		/**
+		 * Cancels and forgets all the lines that are still running. The preparation of the numeric resolver is
+		 * cancelled too, but it's kept so that the next line that changes the knowledgebase still waits for it to stop.
+		 */
+		void cancel()
+		{
+			for(PendingLine pending : mPending)
+				pending.control.cancel();
+			mPending.clear();
+			if(sPrefetch != null)
+				sPrefetch.control.cancel();
+		}
+	}
+	
+	static synchronized ExecutorService getPipelineExecutor()
+	{
+		if(pipelineExecutor == null)
+			pipelineExecutor = Executors.newFixedThreadPool(numPipelineThreads, r -> {
+				Thread thread = new Thread(r, "pasc-pipeline");
+				thread.setDaemon(true);
+				return thread;
+			});
+		return pipelineExecutor;
+	}
+	
+	/**
+	 * @return The command for the line, or null if the line is empty, a comment, or the command is not known.
+	 */
+	static CLICommand findCommand(String line)
+	{
+		line = line.trim();
+		if(line.length() == 0 || line.startsWith("#"))
+			return null;
+		return commandsCLI.get(line.split("[ ]*:[ ]*")[0]);
+	}
 
 	static boolean readAndProcessCommand() throws CommandException, KBException
 	{
@@ -861,6 +1343,8 @@ public class PASC {
 			CLICommand commandFound = commandsCLI.get(commandArgs[0]);
 			if(commandFound == null)
 				throw new CommandException("Unknown command given: " + commandArgs[0]);
+			if(!readOnlyCommands.contains(commandFound))
+				Pipeline.stopPrefetch(); // the line may change the knowledgebase the preparation is reading
 			return commandFound.execute(param);
 		} 
 		catch (java.lang.NumberFormatException e) 
@@ -873,6 +1357,11 @@ public class PASC {
 	}
 
 	static SimpleSentence<LogicalAnd, LogicalOr> obtainCommandCNF(String param) throws KBException 
+	{
+		return obtainCommandCNF(pas, param);
+	}
+
+	static SimpleSentence<LogicalAnd, LogicalOr> obtainCommandCNF(PAS pas, String param) throws KBException 
 	{
 		SimpleSentence<LogicalAnd, LogicalOr> hypo;
 		if(param.contains("->"))
@@ -915,7 +1404,7 @@ public class PASC {
 			int numAssumptions = Iterables.size(pas.getAssumptions(true));
 			
 			ProbabilityComputer pc = null;
-			if(usePC == ProbabilityComputerType.BDD)
+			if(usePC == ProbabilityComputerType.BDD || usePC == ProbabilityComputerType.WMC)
 			{
 				notifyln("Creating BDD probability computer with %d nodes", numBddNodes);
 				String dotfile = null;
@@ -932,21 +1421,65 @@ public class PASC {
 				pc = OpenPAS.createProabilityComputerSPX();
 			}
 			
-			numResolver = OpenPAS.createNumericResolver(pas, OpenPAS.createImplicateResolver(pas), pc);
+			if(usePC == ProbabilityComputerType.WMC)
+			{
+				notifyln("Creating weighted model counting resolver.");
+				numResolver = OpenPAS.createNumericResolverWMC(pas, OpenPAS.createImplicateResolver(pas), pc);
+			}
+			else
+				numResolver = OpenPAS.createNumericResolver(pas, OpenPAS.createImplicateResolver(pas), pc);
 			if(numAssumptions >= numMinAssumptionsForNotifications && numResolver instanceof Notifying)
 				((Notifying) numResolver).setNotifier(notifier);
 		}
 	}
 	
+	/**
+	 * Runs a query on the current thread, bounded by the timeout that's set.
+	 */
+	static <T> T runQuery(Supplier<T> query) throws CommandException
+	{
+		try {
+			return new QueryControl(queryTimeoutSeconds * 1000, QueryControl.current()).run(query);
+		} catch (QueryAbortedException e) {
+			throw new CommandException(String.format("%s (timeout = %d seconds)", e.getMessage(), queryTimeoutSeconds));
+		}
+	}
+
+	static <T> T runConversion(Supplier<T> conversion) throws CommandException
+	{
+		try {
+			return runQuery(conversion);
+		} catch (ConversionLimitException e) {
+			throw new CommandException(String.format("%s (budget = %d elements)", e.getMessage(), conversionBudget));
+		}
+	}
+
+	static ConversionListener conversionProgress()
+	{
+		return (done, total, elements) -> notifyln("Converted %d of %d elements, the sentence has %d elements.", done, total, elements);
+	}
+
 	static void notifyln(String format, Object... args)
 	{
-		notifier.format(format, args);
-		notifier.println();
+		PrintStream ps = lineNotifier.get();
+		if(ps == null)
+			ps = notifier;
+		ps.format(format, args);
+		ps.println();
+	}
+	/**
+	 * The stream the command output of the current line goes to.
+	 */
+	static PrintStream currentCmdOut()
+	{
+		PrintStream ps = lineCmdOut.get();
+		return ps == null ? cmd_out : ps;
 	}
 	static void outln(String format, Object...args)
 	{
-		cmd_out.format(format, args);
-		cmd_out.println();
+		PrintStream ps = currentCmdOut();
+		ps.format(format, args);
+		ps.println();
 	}
 	
 	protected static InputStream executeCommandAsBinary(String commands, List<String> rawCommands, boolean printOutput) throws CommandException, IOException {
@@ -972,10 +1505,8 @@ public class PASC {
 
 		Process process = new ProcessBuilder(args).start();
 		try {
-			synchronized (process) {
-				if(process.isAlive())
-					process.wait(24 * 60 * 60 * 1000); // wait 24 hours by default TODO: Make this configurable.
-			}
+			// wait 24 hours by default
+			process.waitFor(queryTimeoutSeconds > 0 ? queryTimeoutSeconds : 24 * 60 * 60, TimeUnit.SECONDS);
 		} catch (InterruptedException e) { }
 
 		if(process.getErrorStream().available() > 0)
@@ -1037,8 +1568,16 @@ public class PASC {
 		saver.println();
 		saver.printf("#KB:\n");
 		LogicalStringer hs = OpenPAS.getFactory().getHornStringer();
-		for(Expression<LogicalOr> expr : pas.getKB().getElements())
-			saver.printf("add_horn: %s\n", hs.stringise(expr));
+		try {
+			for(Expression<LogicalOr> expr : pas.getKB().getElements())
+			{
+				saver.print("add_horn: ");
+				hs.stringise(saver, expr, StringOps.NO_LIMIT);
+				saver.print('\n');
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // PrintStream doesn't throw
+		}
 	}
 
 	protected static void initialiseCommon() {
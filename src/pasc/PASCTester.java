@@ -17,7 +17,10 @@
 
 package pasc;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
@@ -132,4 +135,191 @@ public class PASCTester {
 		// Check that a proposition with a comma in it is processed correctly.
 		Assert.assertNotNull(PASC.pas.getProposition("proposition{with,comma}", true));
 	}
+
+	@Test
+	public void testPipelinedOutputOrder() throws CommandException, KBException, IOException
+	{
+		String script = 
+				"init\n" +
+				"ca: a,0.6\n" +
+				"ca: b,0.2\n" +
+				"ca: c,0.3\n" +
+				"cp: x,y,z\n" +
+				"ah: a -> x\n" +
+				"ah: b -> x\n" +
+				"ah: x c -> y\n" +
+				"ah: y -> z\n" +
+				"dqs: x\n" +
+				"qs: y\n" +
+				"dsp: z\n" +
+				"# comment\n" +
+				"dqs: (x)(z + y)\n" +
+				"ah: a -> z\n" +
+				"dsp: z\n" +
+				"udsp: y\n" +
+				"sp: x\n";
+
+		String sequential = runScript("pipeline: off\n" + script);
+		String pipelined;
+		try {
+			pipelined = runScript("pipeline: on\n" + script);
+		} finally {
+			PASC.pipelined = false;
+		}
+		Assert.assertEquals(sequential, pipelined);
+		Assert.assertEquals(7, sequential.split("\n").length);
+	}
+	
+	@Test
+	public void testPipelinePrefetchStoppedBeforeBuilding() throws CommandException, KBException, IOException
+	{
+		runCommands(Arrays.asList(
+				"init",
+				"sep: ,",
+				"ca: a,0.6",
+				"ca: b,0.2",
+				"cp: x"
+				));
+		PASC.Pipeline pipeline = new PASC.Pipeline();
+		try {
+			Assert.assertFalse(pipeline.offer("ah: a -> x"));
+			runCommands(Arrays.asList("ah: a -> x"));
+			Assert.assertTrue(pipeline.offer("qs: x")); // also starts the numeric resolver preparation
+			PASC.Pipeline.PendingLine prefetch = PASC.Pipeline.sPrefetch;
+			Assert.assertNotNull(prefetch);
+	
+			// The preparation has to have stopped before the knowledgebase is changed.
+			Assert.assertFalse(pipeline.offer("ah: b -> x"));
+			pipeline.drain();
+			runCommands(Arrays.asList("ah: b -> x"));
+			Assert.assertTrue(prefetch.result.isDone());
+			Assert.assertNull(PASC.Pipeline.sPrefetch);
+		} finally {
+			pipeline.cancel();
+		}
+	}
+	
+	@Test
+	public void testPipelinePrefetchStoppedBeforeRun() throws CommandException, KBException, IOException
+	{
+		// run isn't a building command itself, but the script it runs changes the knowledgebase under the preparation.
+		File added = File.createTempFile("pasc_pipeline", ".ops");
+		added.deleteOnExit();
+		try(PrintStream ps = new PrintStream(added, StandardCharsets.UTF_8.name()))
+		{
+			ps.print(
+					"ah: b c -> y\n" +
+					"ah: c -> x\n" +
+					"ah: y -> False\n" +
+					"qs: x\n");
+		}
+		String script = 
+				"init\n" +
+				"sep: ,\n" +
+				"ca: a,0.6\n" +
+				"ca: b,0.2\n" +
+				"ca: c,0.3\n" +
+				"cp: x,y\n" +
+				"ah: a -> x\n" +
+				"ah: x b -> False\n" +
+				"dqs: x\n" +
+				"run: " + added.getPath() + "\n" +
+				"dqs: x\n" +
+				"dsp: y\n";
+		
+		String sequential = runScript("pipeline: off\n" + script);
+		String pipelined;
+		try {
+			pipelined = runScript("pipeline: on\n" + script);
+		} finally {
+			PASC.pipelined = false;
+		}
+		Assert.assertEquals(sequential, pipelined);
+		Assert.assertArrayEquals(new String[] {"0.6", "[a + c]", "0.72", "0.0"}, sequential.split("\n"));
+	}
+
+	@Test
+	public void testConversionBudget() throws CommandException, KBException
+	{
+		runCommands(Arrays.asList(
+				"init", 
+				"sep: ,",
+				"cp: a,b,c,d",
+				"to_dnf: (a + b)(c + d)"
+				));
+		Assert.assertEquals("[a c + a d + b c + b d]", getPASCOutput().trim());
+		Assert.assertTrue(getPASCNotify().contains("Converted 2 of 2 elements"));
+
+		try {
+			runCommands(Arrays.asList("set_conversion_budget: 3"));
+			PASC.executeLine("to_dnf: (a + b)(c + d)");
+			Assert.fail("Conversion budget not enforced.");
+		} catch (CommandException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("after 2 of 2 elements"));
+		} finally {
+			PASC.conversionBudget = 0;
+		}
+	}
+
+	@Test
+	public void testScenarios() throws CommandException, KBException, IOException
+	{
+		runScript(
+				"init\n" +
+				"sep: ,\n" +
+				"ca: a,0.6\n" +
+				"ca: b,0.2\n" +
+				"ca: c,0.3\n" +
+				"ca: e,0.5\n" +
+				"cp: x\n" +
+				"ah: a b -> x\n" +
+				"ah: x -> False\n" +
+				"ah: c e -> x\n" +
+				"ah: a -> x\n");
+		String out = runScript("scenarios: [a + b c]\n");
+		Assert.assertTrue(out, out.contains("003| F | T | T | Y | P |0.0240000|0.0240000|"));
+		Assert.assertTrue(out, out.contains("004| T | F | F | Y | Y |0.3360000|0.3360000|"));
+		Assert.assertTrue(out, out.contains("Probability of expression: 0.624 (not normalised)"));
+		Assert.assertTrue(out, out.contains("# satisfying (quasi-supporting): 5"));
+		Assert.assertTrue(out, out.contains("# inconsistent: 4"));
+		Assert.assertTrue(out, out.contains("# partially inconsistent: 2"));
+
+		out = runScript("scenarios: [a + b c], partial\n");
+		Assert.assertTrue(out, out.contains("001| F | F | T |   | P |"));
+		Assert.assertTrue(out, out.contains("003| F | T | T | Y | P |"));
+		Assert.assertFalse(out, out.contains("004|"));
+
+		out = runScript("scenarios: [a + b c], all, 2, 3\n");
+		Assert.assertFalse(out, out.contains("001|"));
+		Assert.assertTrue(out, out.contains("002|"));
+		Assert.assertTrue(out, out.contains("004|"));
+		Assert.assertFalse(out, out.contains("005|"));
+		Assert.assertTrue(out, out.contains("... 3 more scenarios."));
+		Assert.assertTrue(out, out.contains("# inconsistent: 4"));
+	}
+	
+	@Test
+	public void testScenariosFullyInconsistent() throws CommandException, KBException, IOException
+	{
+		// The inconsistency here doesn't depend on any assumption, so its QS_I is just True.
+		runScript(
+				"init\n" +
+				"sep: ,\n" +
+				"ca: a,0.6\n" +
+				"ca: b,0.2\n" +
+				"cp: x\n" +
+				"ah: x -> False\n" +
+				"ah: True -> x\n");
+		String out = runScript("scenarios: [a + b]\n");
+		Assert.assertTrue(out, out.contains("# inconsistent: 4"));
+		Assert.assertTrue(out, out.contains("# partially inconsistent: 0"));
+		Assert.assertFalse(out, out.contains("| P |"));
+	}
+
+	String runScript(String script) throws CommandException, KBException, IOException
+	{
+		sBAOSOut.reset();
+		Assert.assertTrue(PASC.executeStream(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8))));
+		return getPASCOutput();
+	}
 }
@@ -0,0 +1,417 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package pasc;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import openpas.basics.Expressions.SimpleSentence;
+import openpas.basics.LogicalOps.LogicalAnd;
+import openpas.basics.LogicalOps.LogicalOr;
+import openpas.basics.NumericResolver;
+import openpas.basics.PAS;
+import openpas.basics.PAS.KBException;
+import openpas.utils.QueryControl;
+import openpas.utils.QueryControl.QueryAbortedException;
+import pasc.PASC.CommandException;
+
+/**
+ * A local HTTP server that answers queries against PAS knowledgebases loaded once at start up. <br>
+ * 
+ * Knowledgebases are loaded from PASC scripts (see {@link PASC}), and they're kept in memory along with
+ * their resolvers between requests. Queries are made as follows: <br>
+ * 
+ * GET or POST /qs, /sp, /dqs, /dsp with the parameters: <br>
+ * 	h: The hypothesis in the same syntax as PASC, e.g.: '(a b)+(c d)' or 'a b -> c' <br>
+ * 	kb: The name of the knowledgebase, optional if there's only one. <br>
+ * 	timeout: Time allowed in milliseconds, optional and capped by the server timeout. <br>
+ * 
+ * Parameters can be given in the query string or as a form encoded body. The result is returned in JSON, e.g.: <br>
+ * {"kb": "fire", "query": "dqs", "hypothesis": "fire", "result": 0.62, "millis": 1.52} <br>
+ * 
+ * GET /kbs lists the knowledgebases loaded. <br>
+ * 
+ * Queries run on a bounded pool of workers. When all the workers are busy and the queue is full the server responds
+ * with 503, and when a query runs past its timeout it's aborted (see {@link QueryControl}) and the server responds with 504.
+ */
+public class PASServer
+{
+	static class KB
+	{
+		final String name;
+		final PAS pas;
+		final NumericResolver resolver;
+		
+		KB(String name, PAS pas, NumericResolver resolver)
+		{
+			this.name = name;
+			this.pas = pas;
+			this.resolver = resolver;
+		}
+	}
+	
+	@SuppressWarnings("serial")
+	static class RequestException extends Exception
+	{
+		final int status;
+		RequestException(int status, String msg) { super(msg); this.status = status; }
+	}
+	
+	static interface Query
+	{
+		Object answer(NumericResolver resolver, SimpleSentence<LogicalAnd, LogicalOr> hypothesis);
+	}
+	
+	// Guards the static state of PASC while a knowledgebase is loaded, for all the servers in the process.
+	protected static final Object sLoadLock = new Object();
+	
+	protected final Map<String, KB> mKBs = new LinkedHashMap<>();
+	protected final long mTimeoutMillis;
+	protected final ThreadPoolExecutor mWorkers;
+	protected final ExecutorService mDispatchers;
+	protected final HttpServer mServer;
+	protected final PrintStream mLog;
+	
+	/**
+	 * @param port Port to listen on, or 0 for any free port.
+	 * @param numWorkers Number of queries that run at the same time.
+	 * @param queueSize Number of queries that can wait for a worker.
+	 * @param timeoutMillis Maximum time allowed for a query.
+	 * @param log Where the requests and loading is logged.
+	 * @throws IOException
+	 */
+	public PASServer(int port, int numWorkers, int queueSize, long timeoutMillis, PrintStream log) throws IOException
+	{
+		mTimeoutMillis = timeoutMillis;
+		mLog = log;
+		mWorkers = new ThreadPoolExecutor(numWorkers, numWorkers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+		// Dispatchers only parse, wait for the workers and respond, so they're cheap. There's one for each query that can
+		// be running or waiting for a worker, and one more to turn down the requests over the limit and list the knowledgebases.
+		// Connections beyond that wait for a dispatcher in the server's queue.
+		int numDispatchers = numWorkers + queueSize + 1;
+		ThreadPoolExecutor dispatchers = new ThreadPoolExecutor(numDispatchers, numDispatchers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		dispatchers.allowCoreThreadTimeOut(true); // only kept while there are requests
+		mDispatchers = dispatchers;
+
+		// Only listen locally - this is not meant to be a public service.
+		mServer = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		mServer.setExecutor(mDispatchers);
+		mServer.createContext("/kbs", this::handleListKBs);
+		mServer.createContext("/qs", exchange -> handleQuery(exchange, "qs", (nr, h) -> nr.findQS(h)));
+		mServer.createContext("/sp", exchange -> handleQuery(exchange, "sp", (nr, h) -> nr.findSP(h)));
+		mServer.createContext("/dqs", exchange -> handleQuery(exchange, "dqs", (nr, h) -> nr.calcDQS(h)));
+		mServer.createContext("/dsp", exchange -> handleQuery(exchange, "dsp", (nr, h) -> nr.calcNormalisedDSP(h)));
+	}
+	
+	/**
+	 * Loads a PASC script as a new knowledgebase and creates its resolver so that it's ready to be queried.
+	 * This is not meant to be called once the server is started.
+	 */
+	public void loadKB(String name, InputStream script) throws IOException, CommandException, KBException
+	{
+		// PASC keeps its state statically, so each knowledgebase is loaded on a fresh state of its own, one at a time,
+		// and the results are taken out before the state there was before is put back.
+		KB kb;
+		synchronized(sLoadLock)
+		{
+			PASC.Session previous = PASC.Session.save();
+			try
+			{
+				PASC.initialSession.restore();
+				PASC.executeStream(script);
+				PASC.verifyInitialised();
+				PASC.bddDotFile = null; // can't be shared by concurrent queries.
+				PASC.ensureNumResolver();
+				kb = new KB(name, PASC.pas, PASC.numResolver);
+			}
+			finally
+			{
+				previous.restore();
+			}
+			
+			if(mKBs.put(name, kb) != null)
+				throw new CommandException("Knowledgebase loaded more than once: " + name);
+		}
+		mLog.printf("Loaded %s with %d assumptions, %d propositions and %d clauses.%n", name,
+				Iterables.size(kb.pas.getAssumptions(true)), Iterables.size(kb.pas.getPropositions(true)), kb.pas.getKB().getLength());
+	}
+	
+	public void start()
+	{
+		mServer.start();
+		mLog.printf("Listening on port %d.%n", getPort());
+	}
+	
+	public void stop()
+	{
+		mServer.stop(0);
+		mWorkers.shutdownNow();
+		mDispatchers.shutdownNow();
+	}
+	
+	public int getPort()
+	{
+		return mServer.getAddress().getPort();
+	}
+	
+	protected void handleListKBs(HttpExchange exchange) throws IOException
+	{
+		StringBuilder sb = new StringBuilder("{\"kbs\": [");
+		boolean first = true;
+		for(KB kb : mKBs.values())
+		{
+			if(!first)
+				sb.append(", ");
+			first = false;
+			sb.append("{\"name\": ").append(jsonString(kb.name));
+			sb.append(", \"assumptions\": ").append(Iterables.size(kb.pas.getAssumptions(true)));
+			sb.append(", \"propositions\": ").append(Iterables.size(kb.pas.getPropositions(true)));
+			sb.append(", \"clauses\": ").append(kb.pas.getKB().getLength()).append('}');
+		}
+		sb.append("]}");
+		respond(exchange, 200, sb.toString());
+	}
+	
+	protected void handleQuery(HttpExchange exchange, String queryName, Query query) throws IOException
+	{
+		try
+		{
+			Map<String, String> params = readParams(exchange);
+			KB kb = findKB(params.get("kb"));
+			String hypothesisDesc = params.get("h");
+			if(hypothesisDesc == null)
+				throw new RequestException(400, "Hypothesis parameter h is missing.");
+			long timeoutMillis = mTimeoutMillis;
+			if(params.containsKey("timeout"))
+			{
+				try {
+					long requested = Long.parseLong(params.get("timeout"));
+					if(requested > 0 && (timeoutMillis <= 0 || requested < timeoutMillis))
+						timeoutMillis = requested;
+				} catch (NumberFormatException e) {
+					throw new RequestException(400, "Timeout needs to be a whole number of milliseconds.");
+				}
+			}
+			
+			SimpleSentence<LogicalAnd, LogicalOr> hypothesis;
+			try {
+				hypothesis = PASC.obtainCommandCNF(kb.pas, hypothesisDesc);
+			} catch (KBException e) {
+				throw new RequestException(400, e.getMessage());
+			}
+			
+			QueryControl control = new QueryControl(timeoutMillis);
+			Future<Object> answer;
+			try {
+				answer = mWorkers.submit(() -> control.run(() -> query.answer(kb.resolver, hypothesis)));
+			} catch (RejectedExecutionException e) {
+				throw new RequestException(503, "Server busy.");
+			}
+			
+			long timeStart = System.nanoTime();
+			Object result;
+			try {
+				result = timeoutMillis > 0 ? answer.get(timeoutMillis, TimeUnit.MILLISECONDS) : answer.get();
+			} catch (TimeoutException e) {
+				control.cancel(); // the worker stops at its next check.
+				throw new RequestException(504, "Query timed out.");
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof QueryAbortedException)
+					throw new RequestException(504, e.getCause().getMessage());
+				throw new RequestException(500, String.valueOf(e.getCause()));
+			} catch (InterruptedException e) {
+				control.cancel();
+				Thread.currentThread().interrupt();
+				throw new RequestException(503, "Server stopping.");
+			}
+			long timeEnd = System.nanoTime();
+			
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"kb\": ").append(jsonString(kb.name));
+			sb.append(", \"query\": ").append(jsonString(queryName));
+			sb.append(", \"hypothesis\": ").append(jsonString(hypothesisDesc));
+			sb.append(", \"result\": ").append(result instanceof Double && Double.isFinite((Double) result) ? result.toString() : jsonString(result.toString()));
+			sb.append(String.format(", \"millis\": %.3f}", 1e-6 * (timeEnd - timeStart)));
+			mLog.printf("%s %s: %s (%.3f ms)%n", queryName, kb.name, hypothesisDesc, 1e-6 * (timeEnd - timeStart));
+			respond(exchange, 200, sb.toString());
+		}
+		catch (RequestException e)
+		{
+			mLog.printf("%s failed (%d): %s%n", queryName, e.status, e.getMessage());
+			respond(exchange, e.status, "{\"error\": " + jsonString(e.getMessage()) + "}");
+		}
+	}
+	
+	protected KB findKB(String name) throws RequestException
+	{
+		if(name == null)
+		{
+			if(mKBs.size() != 1)
+				throw new RequestException(400, "Knowledgebase parameter kb is needed when there isn't exactly one loaded.");
+			return mKBs.values().iterator().next();
+		}
+		KB kb = mKBs.get(name);
+		if(kb == null)
+			throw new RequestException(404, "Unknown knowledgebase: " + name);
+		return kb;
+	}
+	
+	protected static Map<String, String> readParams(HttpExchange exchange) throws IOException
+	{
+		Map<String, String> params = new LinkedHashMap<>();
+		parseParams(exchange.getRequestURI().getRawQuery(), params);
+		if("POST".equals(exchange.getRequestMethod()))
+		{
+			try(InputStream body = exchange.getRequestBody())
+			{
+				parseParams(new String(ByteStreams.toByteArray(body), StandardCharsets.UTF_8), params);
+			}
+		}
+		return params;
+	}
+	
+	protected static void parseParams(String encoded, Map<String, String> params) throws UnsupportedEncodingException
+	{
+		if(encoded == null || encoded.isEmpty())
+			return;
+		for(String pair : encoded.split("&"))
+		{
+			int eq = pair.indexOf('=');
+			if(eq < 0)
+				params.put(URLDecoder.decode(pair, "UTF-8"), "");
+			else
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+	}
+	
+	protected static String jsonString(String str)
+	{
+		StringBuilder sb = new StringBuilder(str.length() + 2);
+		sb.append('"');
+		for(int i = 0; i < str.length(); i++)
+		{
+			char c = str.charAt(i);
+			switch(c)
+			{
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if(c < 0x20)
+						sb.append(String.format("\\u%04x", (int) c));
+					else
+						sb.append(c);
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+	
+	protected static void respond(HttpExchange exchange, int status, String json) throws IOException
+	{
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try(OutputStream os = exchange.getResponseBody())
+		{
+			os.write(bytes);
+		}
+	}
+	
+	public static void main(String args[])
+	{
+		int port = 8123;
+		int numWorkers = Runtime.getRuntime().availableProcessors();
+		int queueSize = 64;
+		long timeoutSeconds = 60;
+		Map<String, String> kbFiles = new LinkedHashMap<>();
+		
+		try
+		{
+			for(int i = 0; i < args.length; i++)
+			{
+				switch(args[i])
+				{
+					case "-p": port = Integer.parseInt(args[++i]); break;
+					case "-w": numWorkers = Integer.parseInt(args[++i]); break;
+					case "-q": queueSize = Integer.parseInt(args[++i]); break;
+					case "-t": timeoutSeconds = Long.parseLong(args[++i]); break;
+					default:
+						int eq = args[i].indexOf('=');
+						if(eq <= 0)
+							throw new IllegalArgumentException("Knowledgebases need to be given as name=script.ops: " + args[i]);
+						kbFiles.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+				}
+			}
+			if(kbFiles.isEmpty())
+				throw new IllegalArgumentException("No knowledgebases given.");
+		}
+		catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: PASServer [-p port] [-w workers] [-q queue_size] [-t timeout_seconds] name=script.ops [name=script.ops ...]");
+			System.exit(1);
+		}
+
+		PASC.initialiseCommon();
+		PASC.notifier = new PrintStream(ByteStreams.nullOutputStream());
+		PASC.cmd_out = PASC.notifier; // the output of the scripts is not needed
+		
+		try
+		{
+			PASServer server = new PASServer(port, numWorkers, queueSize, timeoutSeconds * 1000, System.out);
+			for(Map.Entry<String, String> kbFile : kbFiles.entrySet())
+				try(FileInputStream fis = new FileInputStream(kbFile.getValue()))
+				{
+					server.loadKB(kbFile.getKey(), fis);
+				}
+			server.start();
+		}
+		catch (IOException | CommandException | KBException e)
+		{
+			System.err.println(String.format("Error starting server: %s", e));
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+//    Copyright (c) 2017, 2021 Burak Cetin
+//
+//    This file is part of OpenPAS.
+//
+//    OpenPAS is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    OpenPAS is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with OpenPAS.  If not, see <https://www.gnu.org/licenses/>.
+
+package pasc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import openpas.basics.PAS;
+import openpas.basics.PAS.KBException;
+import pasc.PASC.CommandException;
+
+public class PASServerTester {
+	
+	PASServer mServer;
+	
+	@Before
+	public void setUp() throws Exception {
+		PASC.initialiseCommon();
+		PASC.notifier = new PrintStream(new ByteArrayOutputStream());
+		PASC.cmd_out = PASC.notifier;
+		PASC.sepParameters = ",";
+		
+		mServer = new PASServer(0, 2, 2, 60 * 1000, new PrintStream(new ByteArrayOutputStream()));
+		String script = 
+				"init\n" +
+				"ca: a,0.6\n" +
+				"ca: b,0.2\n" +
+				"cp: x\n" +
+				"ah: a -> x\n" +
+				"ah: b -> x\n";
+		mServer.loadKB("test", new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+		mServer.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mServer.stop();
+	}
+	
+	String get(String path, int expectedStatus) throws IOException
+	{
+		HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + mServer.getPort() + path).openConnection();
+		Assert.assertEquals(expectedStatus, conn.getResponseCode());
+		try(InputStream is = expectedStatus == 200 ? conn.getInputStream() : conn.getErrorStream())
+		{
+			return new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+		}
+	}
+	
+	@Test
+	public void testQueries() throws IOException, CommandException, KBException
+	{
+		// 1 - (1 - 0.6)(1 - 0.2) = 0.68
+		String dqs = get("/dqs?h=x", 200);
+		Matcher m = Pattern.compile("\\{\"kb\": \"test\", \"query\": \"dqs\", \"hypothesis\": \"x\", \"result\": ([0-9.]+), \"millis\": [0-9.]+\\}").matcher(dqs);
+		Assert.assertTrue(dqs, m.matches());
+		Assert.assertEquals(0.68, Double.parseDouble(m.group(1)), 1e-6);
+		
+		String qs = get("/qs?kb=test&h=" + URLEncoder.encode("(x)", "UTF-8"), 200);
+		Assert.assertTrue(qs, qs.contains("\"result\": \"[b + a]\"") || qs.contains("\"result\": \"[a + b]\""));
+		
+		String kbs = get("/kbs", 200);
+		Assert.assertEquals("{\"kbs\": [{\"name\": \"test\", \"assumptions\": 2, \"propositions\": 1, \"clauses\": 2}]}", kbs);
+	}
+	
+	static InputStream script(String script)
+	{
+		return new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testLoadKeepsStateApart() throws IOException, CommandException, KBException
+	{
+		PASC.executeStream(script("init\nca: z,0.5\n"));
+		PAS callerPAS = PASC.pas;
+		
+		// The settings of one script don't carry over to the next one, nor to the caller.
+		PASServer server = new PASServer(0, 1, 1, 60 * 1000, new PrintStream(new ByteArrayOutputStream()));
+		try
+		{
+			server.loadKB("wmc", script("init: wmc\nca: a,0.6\ncp: x\nah: a -> x\n"));
+			try
+			{
+				// This has no init of its own, so it can't add to the knowledgebase of the previous script.
+				server.loadKB("bdd", script("ca: a,0.5\ncp: x\nah: a -> x\n"));
+				Assert.fail("Loaded without init.");
+			}
+			catch (CommandException e)
+			{
+				Assert.assertEquals("System not initialised.", e.getMessage());
+			}
+		}
+		finally
+		{
+			server.stop();
+		}
+		Assert.assertSame(callerPAS, PASC.pas);
+		Assert.assertEquals(PASC.ProbabilityComputerType.BDD, PASC.usePC);
+		Assert.assertEquals("NumericResolver_WMC", server.mKBs.get("wmc").resolver.getClass().getSimpleName());
+		Assert.assertEquals(1, server.mKBs.size());
+	}
+	
+	@Test
+	public void testErrors() throws IOException
+	{
+		Assert.assertEquals("{\"error\": \"Unknown knowledgebase: none\"}", get("/dqs?kb=none&h=x", 404));
+		Assert.assertEquals("{\"error\": \"Hypothesis parameter h is missing.\"}", get("/dsp", 400));
+		get("/dqs?h=unknown_literal", 400);
+	}
+}